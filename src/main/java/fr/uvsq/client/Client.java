@@ -1,9 +1,33 @@
 package fr.uvsq.client;
 
+import fr.uvsq.core.ArchiveReader;
+import fr.uvsq.core.ArchiveSummary;
+import fr.uvsq.core.ArchiveWriter;
+import fr.uvsq.core.AtomicFileWriter;
+import fr.uvsq.core.BufferPool;
+import fr.uvsq.core.CommandResult;
+import fr.uvsq.core.CommandUsage;
+import fr.uvsq.core.FileListing;
+import fr.uvsq.core.LineDiff;
+import fr.uvsq.core.ProtocolInputStream;
+import fr.uvsq.core.RemoteFile;
+import fr.uvsq.core.ResourceUsage;
+import fr.uvsq.core.StreamDigest;
+import fr.uvsq.core.TlsProfile;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
 import javax.net.ssl.SSLSocket;
-import javax.net.ssl.SSLSocketFactory;
 import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * La classe `Client` représente un client pour le système de contrôle à distance.
@@ -13,8 +37,12 @@ import java.nio.charset.StandardCharsets;
 public class Client {
     private SSLSocket socket; // Socket SSL pour la communication sécurisée avec le serveur
     private PrintWriter out; // Flux de sortie pour envoyer des données au serveur
-    private BufferedReader in; // Flux d'entrée pour recevoir des données du serveur
+    private ProtocolInputStream in; // Flux d'entrée (lignes et données binaires) pour recevoir des données du serveur
     private static final String END_MARKER = "###END###"; // Marqueur de fin de réponse du serveur
+    private static final String GOODBYE_MARKER = "###BYE###"; // Annonce de la fermeture de la session par le serveur
+    private static final String STATS_MARKER = "###STATS### "; // Ressources consommées par une commande, avant la fin de réponse
+    private static final int TRANSFER_BUFFER_SIZE = 64 * 1024; // Taille des blocs des transferts de fichiers
+    private String digestAlgorithm = StreamDigest.CRC32C_ALGORITHM; // Empreinte vérifiée lors des transferts de fichiers
 
     /**
      * Constructeur de la classe `Client`.
@@ -25,19 +53,36 @@ public class Client {
      * @throws IOException Si une erreur d'entrée/sortie se produit lors de la connexion.
      */
     public Client(String host, int port) throws IOException {
+        this(host, port, TlsProfile.DEFAULT);
+    }
+
+    /**
+     * Constructeur de la classe `Client` avec un profil TLS (versions, suites de chiffrement).
+     * Le serveur doit accepter au moins une suite du profil.
+     *
+     * @param host       L'adresse IP ou le nom d'hôte du serveur.
+     * @param port       Le port sur lequel le serveur écoute.
+     * @param tlsProfile Le profil TLS de la connexion.
+     * @throws IOException Si une erreur d'entrée/sortie se produit lors de la connexion.
+     */
+    public Client(String host, int port, TlsProfile tlsProfile) throws IOException {
         System.out.println("[Client] Tentative de connexion à " + host + ":" + port);
         try {
             // Configuration du truststore pour la connexion SSL
             System.setProperty("javax.net.ssl.trustStore", "server_keystore.jks");
             System.setProperty("javax.net.ssl.trustStorePassword", "password");
 
-            // Création d'une socket SSL
-            SSLSocketFactory factory = (SSLSocketFactory) SSLSocketFactory.getDefault();
-            socket = (SSLSocket) factory.createSocket(host, port);
+            // Création d'une socket SSL, configurée selon le profil avant la poignée de main
+            SSLContext context = SSLContext.getDefault();
+            SSLParameters parameters = tlsProfile.parameters(context);
+            socket = (SSLSocket) context.getSocketFactory().createSocket(host, port);
+            socket.setSSLParameters(parameters);
             // Initialisation des flux d'entrée et de sortie
             out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true);
-            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
-            System.out.println("[Client] Connexion SSL réussie !");
+            in = new ProtocolInputStream(socket.getInputStream());
+            System.out.println("[Client] Connexion SSL réussie ! (profil " + tlsProfile + ")");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("TLS indisponible : " + e.getMessage(), e);
         } catch (IOException e) {
             System.err.println("[Client] Erreur de connexion : " + e.getMessage());
             throw new IOException("Impossible de se connecter au serveur à " + host + ":" + port, e);
@@ -65,12 +110,12 @@ public class Client {
         out.println(password); // Envoie le mot de passe
 
         // Lit la réponse du serveur
-        String response = in.readLine();
+        String response = readLine();
         System.out.println("[Client] Réponse d'authentification : " + response);
         if ("OK".equals(response)) {
             return true;
         } else if ("ERROR".equals(response)) {
-            String error = in.readLine();
+            String error = readLine();
             throw new IOException("Erreur d'authentification : " + error);
         } else {
             throw new IOException("Réponse inattendue du serveur : " + response);
@@ -86,6 +131,24 @@ public class Client {
      * @throws IOException Si une erreur d'entrée/sortie se produit ou si la connexion est perdue.
      */
     public String sendCommand(String command) throws IOException {
+        StringBuilder response = new StringBuilder();
+        sendCommand(command, line -> response.append(line).append("\n"));
+        System.out.println("[Client] Réponse reçue : " + response.toString().trim());
+        return response.toString().trim();
+    }
+
+    /**
+     * Envoie une commande au serveur et transmet sa réponse ligne par ligne, au rythme de sa réception.
+     * Les lignes ne sont lues sur le socket qu'une fois la précédente consommée : un consommateur lent
+     * ralentit donc le serveur (via la fenêtre TCP) au lieu d'accumuler la réponse en mémoire.
+     *
+     * @param command      La commande à envoyer.
+     * @param lineConsumer Le consommateur des lignes de la réponse.
+     * @return Le code de sortie et les ressources consommées par la commande sur le serveur,
+     * ou `null` si le serveur ne les a pas transmis.
+     * @throws IOException Si une erreur d'entrée/sortie se produit ou si la connexion est perdue.
+     */
+    public ResourceUsage sendCommand(String command, Consumer<String> lineConsumer) throws IOException {
         if (socket == null || socket.isClosed()) {
             throw new IOException("Connexion au serveur perdue.");
         }
@@ -93,26 +156,341 @@ public class Client {
         System.out.println("[Client] Envoi de la commande : " + command);
         out.println(command);
 
-        StringBuilder response = new StringBuilder();
         String line;
+        // Ligne des ressources consommées, qui précède immédiatement le marqueur de fin.
+        String stats = null;
         // Lit la réponse du serveur ligne par ligne jusqu'à recevoir le marqueur de fin.
-        while ((line = in.readLine()) != null) {
+        while ((line = readLine()) != null) {
             if (line.equals(END_MARKER)) {
-                break;
+                return stats == null ? null : parseStats(stats, lineConsumer);
             }
             if (line.equals("ERROR")) {
-                String error = in.readLine();
+                String error = readLine();
                 throw new IOException("Erreur du serveur : " + error);
             }
-            response.append(line).append("\n");
+            if (stats != null) {
+                // La ligne n'était pas la dernière : elle faisait partie de la sortie de la commande.
+                lineConsumer.accept(stats);
+                stats = null;
+            }
+            if (line.startsWith(STATS_MARKER)) {
+                stats = line;
+                continue;
+            }
+            lineConsumer.accept(line);
+        }
+        throw new IOException("Connexion au serveur perdue.");
+    }
+
+    /**
+     * Décode la ligne des ressources consommées par une commande ; une ligne mal formée faisait partie de sa sortie.
+     */
+    private static ResourceUsage parseStats(String line, Consumer<String> lineConsumer) {
+        try {
+            return ResourceUsage.parse(line.substring(STATS_MARKER.length()));
+        } catch (IllegalArgumentException e) {
+            lineConsumer.accept(line);
+            return null;
         }
-        System.out.println("[Client] Réponse reçue : " + response.toString().trim());
-        return response.toString().trim();
     }
 
 
+    /**
+     * Envoie un lot de commandes au serveur en un seul aller-retour.
+     *
+     * Avec un parallélisme de 1, les commandes sont exécutées dans l'ordre et le lot s'arrête
+     * à la première commande dont le code de sortie est non nul ; les commandes suivantes ne sont
+     * alors pas exécutées et n'apparaissent pas dans le résultat. Au-delà, les commandes sont
+     * exécutées en parallèle (le serveur peut plafonner ce parallélisme) et toutes sont exécutées.
+     *
+     * @param commands    Les commandes à exécuter.
+     * @param parallelism Le nombre maximal de commandes exécutées simultanément.
+     * @return Les résultats des commandes exécutées, dans l'ordre du lot.
+     * @throws IOException Si une erreur d'entrée/sortie se produit ou si la connexion est perdue.
+     */
+    public List<CommandResult> sendBatch(List<String> commands, int parallelism) throws IOException {
+        if (socket == null || socket.isClosed()) {
+            throw new IOException("Connexion au serveur perdue.");
+        }
+        for (String command : commands) {
+            if (command.contains("\n") || command.contains("\r")) {
+                throw new IOException("Commande multiligne non supportée : " + command);
+            }
+        }
+
+        System.out.println("[Client] Envoi d'un lot de " + commands.size() + " commandes");
+        // Les lignes de la requête sont regroupées en une seule écriture réseau.
+        StringBuilder request = new StringBuilder("BATCH\n");
+        request.append(parallelism <= 1 ? "SEQUENTIAL" : "PARALLEL " + parallelism).append("\n");
+        request.append(commands.size()).append("\n");
+        for (String command : commands) {
+            request.append(command).append("\n");
+        }
+        out.print(request);
+        out.flush();
+
+        CommandResult[] results = new CommandResult[commands.size()];
+        String line;
+        while ((line = readLine()) != null) {
+            if (line.equals(END_MARKER)) {
+                List<CommandResult> executed = new ArrayList<>();
+                for (CommandResult result : results) {
+                    if (result != null) {
+                        executed.add(result);
+                    }
+                }
+                return executed;
+            }
+            if (line.equals("ERROR")) {
+                String error = readLine();
+                throw new IOException("Erreur du serveur : " + error);
+            }
+            String[] header = line.split(" ");
+            if (header[0].equals("RESULT") && (header.length == 4 || header.length == 7)) {
+                int index = Integer.parseInt(header[1]);
+                int exitCode = Integer.parseInt(header[2]);
+                int lineCount = Integer.parseInt(header[3]);
+                // Ressources consommées, ajoutées à l'en-tête par les serveurs qui les mesurent.
+                ResourceUsage usage = header.length == 7 ? new ResourceUsage(exitCode, Long.parseLong(header[4]),
+                        Long.parseLong(header[5]), Long.parseLong(header[6])) : null;
+                StringBuilder output = new StringBuilder();
+                for (int i = 0; i < lineCount; i++) {
+                    String outputLine = readLine();
+                    if (outputLine == null) {
+                        throw new IOException("Connexion au serveur perdue.");
+                    }
+                    output.append(i == 0 ? "" : "\n").append(outputLine);
+                }
+                results[index] = new CommandResult(commands.get(index), output.toString(), exitCode, usage);
+            } else if (!header[0].equals("SKIPPED")) {
+                throw new IOException("Réponse inattendue du serveur : " + line);
+            }
+        }
+        throw new IOException("Connexion au serveur perdue.");
+    }
+
+
+    /**
+     * Liste une page des fichiers du répertoire partagé du serveur.
+     *
+     * @param filter Un motif glob (`*.log`) ou un préfixe de nom ; vide pour tout lister.
+     * @param offset Le nombre de fichiers à sauter.
+     * @param limit  Le nombre maximal de fichiers à renvoyer (le serveur le plafonne).
+     * @return La page de fichiers et le nombre total de fichiers correspondant au filtre.
+     * @throws IOException Si une erreur d'entrée/sortie se produit ou si la connexion est perdue.
+     */
+    public FileListing listFiles(String filter, int offset, int limit) throws IOException {
+        if (socket == null || socket.isClosed()) {
+            throw new IOException("Connexion au serveur perdue.");
+        }
+        if (filter.contains("\n") || filter.contains("\r")) {
+            throw new IOException("Filtre invalide : " + filter);
+        }
+        out.print("LIST\n" + filter + "\n" + offset + " " + limit + "\n");
+        out.flush();
+
+        String header = readResponseLine();
+        if (!header.startsWith("TOTAL ")) {
+            throw new IOException("Réponse inattendue du serveur : " + header);
+        }
+        int total = Integer.parseInt(header.substring("TOTAL ".length()));
+        List<RemoteFile> files = new ArrayList<>();
+        String line;
+        while (!(line = readResponseLine()).equals(END_MARKER)) {
+            files.add(RemoteFile.parse(line));
+        }
+        return new FileListing(total, files);
+    }
+
+    /**
+     * Retourne la description d'un fichier du répertoire partagé du serveur.
+     *
+     * @param fileName Le nom du fichier, relatif au répertoire partagé.
+     * @return La description du fichier.
+     * @throws IOException Si le fichier n'existe pas, si une erreur d'entrée/sortie se produit ou si la connexion est perdue.
+     */
+    public RemoteFile statFile(String fileName) throws IOException {
+        if (socket == null || socket.isClosed()) {
+            throw new IOException("Connexion au serveur perdue.");
+        }
+        out.print("STAT\n" + fileName + "\n");
+        out.flush();
+
+        RemoteFile file = RemoteFile.parse(readResponseLine());
+        String end = readResponseLine();
+        if (!end.equals(END_MARKER)) {
+            throw new IOException("Réponse inattendue du serveur : " + end);
+        }
+        return file;
+    }
+
+    /**
+     * Suit un fichier du serveur : transmet ses dernières lignes, puis chaque ligne qui lui est ajoutée.
+     * La méthode est bloquante et ne se termine qu'après un appel à `stopFollow()` depuis un autre thread.
+     * Les rotations et troncatures du fichier sont signalées par des lignes commençant par `###`.
+     *
+     * @param filePath     Le chemin du fichier sur le serveur (absolu ou relatif au répertoire du serveur).
+     * @param initialLines Le nombre de dernières lignes à recevoir d'abord.
+     * @param lineConsumer Le consommateur des lignes reçues.
+     * @throws IOException Si le fichier ne peut pas être suivi, si une erreur d'entrée/sortie se produit ou si la connexion est perdue.
+     */
+    public void follow(String filePath, int initialLines, Consumer<String> lineConsumer) throws IOException {
+        if (socket == null || socket.isClosed()) {
+            throw new IOException("Connexion au serveur perdue.");
+        }
+        if (filePath.contains("\n") || filePath.contains("\r")) {
+            throw new IOException("Chemin invalide : " + filePath);
+        }
+        System.out.println("[Client] Suivi du fichier : " + filePath);
+        out.print("FOLLOW\n" + filePath + "\n" + initialLines + "\n");
+        out.flush();
+
+        String line;
+        while (!(line = readResponseLine()).equals(END_MARKER)) {
+            lineConsumer.accept(line);
+        }
+    }
+
+    /**
+     * Demande l'arrêt du suivi en cours ; `follow()` se termine une fois les dernières lignes reçues.
+     */
+    public void stopFollow() {
+        sendStop();
+    }
+
+    /**
+     * Exécute une commande à intervalle régulier sur le serveur et transmet sa sortie à chaque changement.
+     * Le serveur n'envoie que les lignes modifiées ; la sortie complète est reconstruite ici.
+     * La méthode est bloquante et ne se termine qu'après un appel à `stopWatch()` depuis un autre thread.
+     *
+     * @param command        La commande à exécuter.
+     * @param intervalMillis L'intervalle entre deux exécutions, en millisecondes (le serveur impose un minimum).
+     * @param resultConsumer Le consommateur des résultats, appelé à chaque changement de la sortie.
+     * @throws IOException Si une erreur d'entrée/sortie se produit ou si la connexion est perdue.
+     */
+    public void watch(String command, long intervalMillis, Consumer<CommandResult> resultConsumer) throws IOException {
+        if (socket == null || socket.isClosed()) {
+            throw new IOException("Connexion au serveur perdue.");
+        }
+        if (command.contains("\n") || command.contains("\r")) {
+            throw new IOException("Commande multiligne non supportée : " + command);
+        }
+        System.out.println("[Client] Surveillance de la commande : " + command);
+        out.print("WATCH\n" + intervalMillis + "\n" + command + "\n");
+        out.flush();
+
+        List<String> view = new ArrayList<>();
+        String line;
+        while (!(line = readResponseLine()).equals(END_MARKER)) {
+            String[] header = line.split(" ");
+            if (!header[0].equals("FRAME") || header.length != 3) {
+                throw new IOException("Réponse inattendue du serveur : " + line);
+            }
+            int exitCode = Integer.parseInt(header[1]);
+            int opCount = Integer.parseInt(header[2]);
+            List<String> ops = new ArrayList<>(opCount);
+            for (int i = 0; i < opCount; i++) {
+                ops.add(readResponseLine());
+            }
+            try {
+                view = LineDiff.apply(view, ops);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Trame invalide reçue du serveur : " + e.getMessage(), e);
+            }
+            resultConsumer.accept(new CommandResult(command, String.join("\n", view), exitCode));
+        }
+    }
+
+    /**
+     * Demande l'arrêt de la surveillance en cours ; `watch()` se termine une fois la dernière trame reçue.
+     */
+    public void stopWatch() {
+        sendStop();
+    }
+
+    /**
+     * Retourne les ressources consommées par les commandes exécutées sur le serveur depuis son démarrage,
+     * cumulées par motif de commande (`tail -n * *`) puis par utilisateur, chacune par temps processeur décroissant.
+     *
+     * @return Les cumuls par motif, puis par utilisateur.
+     * @throws IOException Si une erreur d'entrée/sortie se produit ou si la connexion est perdue.
+     */
+    public List<CommandUsage> commandUsage() throws IOException {
+        if (socket == null || socket.isClosed()) {
+            throw new IOException("Connexion au serveur perdue.");
+        }
+        out.println("STATS");
+        List<CommandUsage> usages = new ArrayList<>();
+        String line;
+        while (!(line = readResponseLine()).equals(END_MARKER)) {
+            try {
+                usages.add(CommandUsage.parse(line));
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Réponse inattendue du serveur : " + line, e);
+            }
+        }
+        return usages;
+    }
+
+    /**
+     * Envoie le signal d'arrêt d'une requête continue (FOLLOW ou WATCH).
+     */
+    private void sendStop() {
+        if (socket != null && !socket.isClosed()) {
+            out.println("STOP");
+        }
+    }
+
+    /**
+     * Lit une ligne du serveur. L'annonce de fermeture d'un serveur qui s'arrête (`###BYE###` suivie
+     * d'un message) est transformée en exception et la connexion est fermée.
+     *
+     * @return La ligne lue, ou `null` en fin de flux.
+     * @throws IOException Si la connexion est perdue ou fermée par le serveur.
+     */
+    private String readLine() throws IOException {
+        String line = in.readLine();
+        if (GOODBYE_MARKER.equals(line)) {
+            String message = in.readLine();
+            disconnect();
+            throw new IOException("Connexion fermée par le serveur : " + message);
+        }
+        return line;
+    }
+
+    /**
+     * Lit une ligne de réponse du serveur, en transformant une réponse `ERROR` en exception.
+     *
+     * @return La ligne lue.
+     * @throws IOException Si le serveur signale une erreur ou si la connexion est perdue.
+     */
+    private String readResponseLine() throws IOException {
+        String line = readLine();
+        if (line == null) {
+            throw new IOException("Connexion au serveur perdue.");
+        }
+        if (line.equals("ERROR")) {
+            String error = readLine();
+            throw new IOException("Erreur du serveur : " + error);
+        }
+        return line;
+    }
+
+
+    /**
+     * Définit l'algorithme d'empreinte des transferts de fichiers (UPLOAD et DOWNLOAD).
+     *
+     * @param digestAlgorithm `CRC32C` (par défaut) ou `SHA-256` pour une vérification cryptographique.
+     * @throws IllegalArgumentException Si l'algorithme n'est pas supporté.
+     */
+    public void setDigestAlgorithm(String digestAlgorithm) {
+        StreamDigest.create(digestAlgorithm);
+        this.digestAlgorithm = digestAlgorithm;
+    }
+
     /**
      * Envoie un fichier au serveur.
+     * Son empreinte est calculée au fil de l'envoi et le serveur ne l'installe qu'après l'avoir vérifiée.
      *
      * @param filePath Le chemin du fichier hrows IOException Si une erreur d'entrée/sortie se produit, si le fichier n'existe pas, ou si la connexion est perdue.
      */
@@ -126,69 +504,190 @@ public class Client {
             throw new IOException("Le fichier n'existe pas : " + filePath);
         }
 
-        // Envoie la commande UPLOAD et le nom du fichier
-        out.println("UPLOAD");
-        out.println(file.getName());
-        out.println(file.length()); // Envoie la taille du fichier en octets
+        // Envoie la commande UPLOAD, le nom du fichier, sa taille et l'algorithme d'empreinte
+        long fileSize = file.length();
+        out.print("UPLOAD\n" + file.getName() + "\n" + fileSize + "\n" + digestAlgorithm + "\n");
+        out.flush();
 
-        // Envoie le contenu du fichier
-        try (FileInputStream fis = new FileInputStream(file)) {
-            byte[] buffer = new byte[4096];
-            int bytesRead;
-            while ((bytesRead = fis.read(buffer)) != -1) {
-                socket.getOutputStream().write(buffer, 0, bytesRead);
+        // Envoie le contenu du fichier, puis son empreinte calculée au fil de l'envoi
+        StreamDigest digest = StreamDigest.create(digestAlgorithm);
+        OutputStream fileOut = socket.getOutputStream();
+        long remaining = fileSize;
+        IOException openError = null;
+        try (BufferPool.Buffer pooled = BufferPool.shared().acquire(TRANSFER_BUFFER_SIZE)) {
+            byte[] buffer = pooled.array();
+            try (FileInputStream fis = new FileInputStream(file)) {
+                int bytesRead;
+                while (remaining > 0 && (bytesRead = fis.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1) {
+                    fileOut.write(buffer, 0, bytesRead);
+                    digest.update(buffer, 0, bytesRead);
+                    remaining -= bytesRead;
+                }
+            } catch (FileNotFoundException e) {
+                openError = e;
+            }
+            if (remaining > 0) {
+                // Le fichier a raccourci (ou n'a pas pu être ouvert) : la taille annoncée est respectée pour que
+                // le serveur reste synchronisé sur le flux, et l'empreinte `-` lui fait rejeter l'envoi.
+                Arrays.fill(buffer, (byte) 0);
+                while (remaining > 0) {
+                    int length = (int) Math.min(buffer.length, remaining);
+                    fileOut.write(buffer, 0, length);
+                    remaining -= length;
+                }
+                fileOut.write("-\n".getBytes(StandardCharsets.UTF_8));
+                fileOut.flush();
+                try {
+                    readResponseLine();
+                } catch (IOException e) {
+                    // Refus attendu du serveur.
+                }
+                throw new IOException("Le fichier a été modifié pendant l'envoi : " + filePath, openError);
             }
-            socket.getOutputStream().flush();
         }
+        String expectedDigest = digest.toHex();
+        fileOut.write((expectedDigest + "\n").getBytes(StandardCharsets.UTF_8));
+        fileOut.flush();
 
-        // Lit la réponse du serveur
-        String response = in.readLine();
+        // Lit la réponse du serveur, qui confirme l'empreinte du fichier reçu
+        String response = readResponseLine();
         System.out.println("[Client] Réponse du serveur après upload : " + response);
-        if ("ERROR".equals(response)) {
-            String error = in.readLine();
-            throw new IOException("Erreur du serveur : " + error);
+        if (!response.equals("OK " + expectedDigest)) {
+            throw new IOException("Réponse inattendue du serveur : " + response);
         }
     }
 
 
     /**
+     * Le fichier est écrit dans un fichier temporaire et n'est installé qu'après vérification de son empreinte.
+     *
      * TvePath Le chemin où sauvegarder le fichier téléchargé.
      * @return Un message indiquant le succès ou l'échec du téléchargement.
-     * @throws IOException Si une erreur d'entrée/sortie se produit ou si la connexion est perdue.
+     * @throws IOException Si une erreur d'entrée/sortie se produit, si l'empreinte ne correspond pas, ou si la connexion est perdue.
      */
     public String downloadFile(String fileName, String savePath) throws IOException {
         if (socket == null || socket.isClosed()) {
             throw new IOException("Connexion au serveur perdue.");
         }
 
-        // Envoie la commande DOWNLOAD et le nom du fichier
-        out.println("DOWNLOAD");
-        out.println(fileName);
+        // Envoie la commande DOWNLOAD, le nom du fichier et l'algorithme d'empreinte
+        out.print("DOWNLOAD\n" + fileName + "\n" + digestAlgorithm + "\n");
+        out.flush();
 
         // Lit la taille du fichier envoyée par le serveur
-        String sizeStr = in.readLine();
+        String sizeStr = readLine();
+        if (sizeStr == null) {
+            throw new IOException("Connexion au serveur perdue.");
+        }
         long fileSize = Long.parseLong(sizeStr);
         if (fileSize == -1) {
-            String error = in.readLine();
+            String error = readLine();
             throw new IOException("Erreur du serveur : " + error);
         }
 
-        // Reçoit le fichier et l’écrit à l’emplacement spécifié
-        try (FileOutputStream fos = new FileOutputStream(savePath)) {
-            byte[] buffer = new byte[4096];
+        // Reçoit le fichier dans un fichier temporaire ; il est lu jusqu'au bout même si l'écriture échoue,
+        // afin que la connexion reste utilisable.
+        AtomicFileWriter writer;
+        IOException error = null;
+        try {
+            writer = new AtomicFileWriter(Paths.get(savePath), fileSize, digestAlgorithm, AtomicFileWriter.SyncPolicy.NONE);
+        } catch (IOException e) {
+            writer = null;
+            error = e;
+        }
+        try (BufferPool.Buffer pooled = BufferPool.shared().acquire(TRANSFER_BUFFER_SIZE)) {
+            byte[] buffer = pooled.array();
             long bytesReceived = 0;
-            int bytesRead;
-            while (bytesReceived < fileSize && (bytesRead = socket.getInputStream().read(buffer)) != -1) {
-                fos.write(buffer, 0, bytesRead);
+            while (bytesReceived < fileSize) {
+                int bytesRead = in.read(buffer, 0, (int) Math.min(buffer.length, fileSize - bytesReceived));
+                if (bytesRead == -1) {
+                    throw new IOException("Connexion au serveur perdue.");
+                }
                 bytesReceived += bytesRead;
+                if (writer != null) {
+                    try {
+                        writer.write(buffer, 0, bytesRead);
+                    } catch (IOException e) {
+                        writer.abort();
+                        writer = null;
+                        error = e;
+                    }
+                }
+            }
+            String expectedDigest = readResponseLine();
+            if (writer == null) {
+                throw error;
+            }
+            writer.commit(expectedDigest);
+        } finally {
+            if (writer != null) {
+                writer.close();
             }
-            fos.flush();
         }
 
         return "Fichier téléchargé avec succès à : " + savePath;
     }
 
 
+    /**
+     * Envoie un répertoire complet au serveur sous forme d'une archive unique (voir `ArchiveWriter`),
+     * en conservant les chemins relatifs et les dates de modification.
+     *
+     * @param localDirectory  Le répertoire local à envoyer.
+     * @param remoteDirectory Le répertoire de destination, relatif au répertoire partagé du serveur.
+     * @return Le résumé du transfert confirmé par le serveur.
+     * @throws IOException Si le serveur refuse la destination ou n'a pas pu tout écrire, ou si la connexion est perdue.
+     */
+    public ArchiveSummary uploadDirectory(String localDirectory, String remoteDirectory) throws IOException {
+        if (socket == null || socket.isClosed()) {
+            throw new IOException("Connexion au serveur perdue.");
+        }
+        Path source = Paths.get(localDirectory);
+        if (!Files.isDirectory(source)) {
+            throw new IOException("Le répertoire n'existe pas : " + localDirectory);
+        }
+        out.print("UPLOAD_DIR\n" + remoteDirectory + "\n");
+        out.flush();
+        String ready = readResponseLine();
+        if (!ready.equals("READY")) {
+            throw new IOException("Réponse inattendue du serveur : " + ready);
+        }
+
+        BufferedOutputStream archiveOut = new BufferedOutputStream(socket.getOutputStream(), 64 * 1024);
+        ArchiveSummary sent = new ArchiveWriter(ArchiveWriter.DEFAULT_PARALLELISM).write(source, archiveOut);
+        String response = readResponseLine();
+        System.out.println("[Client] Réponse du serveur après envoi du répertoire : " + response);
+        String[] counts = response.split(" ");
+        if (!counts[0].equals("OK") || counts.length != 4) {
+            throw new IOException("Réponse inattendue du serveur : " + response);
+        }
+        return new ArchiveSummary(Integer.parseInt(counts[1]), Integer.parseInt(counts[2]),
+                Long.parseLong(counts[3]), sent.getErrors());
+    }
+
+    /**
+     * Télécharge un répertoire complet du serveur, reçu sous forme d'une archive unique,
+     * en conservant les chemins relatifs et les dates de modification.
+     *
+     * @param remoteDirectory Le répertoire à télécharger, relatif au répertoire partagé du serveur (`.` pour tout).
+     * @param localDirectory  Le répertoire local de destination, créé si besoin.
+     * @return Le résumé du transfert, avec les éventuelles erreurs (fichiers illisibles côté serveur...).
+     * @throws IOException Si le répertoire n'existe pas sur le serveur ou si la connexion est perdue.
+     */
+    public ArchiveSummary downloadDirectory(String remoteDirectory, String localDirectory) throws IOException {
+        if (socket == null || socket.isClosed()) {
+            throw new IOException("Connexion au serveur perdue.");
+        }
+        out.print("DOWNLOAD_DIR\n" + remoteDirectory + "\n");
+        out.flush();
+        String header = readResponseLine();
+        if (!header.equals("ARCHIVE")) {
+            throw new IOException("Réponse inattendue du serveur : " + header);
+        }
+        return new ArchiveReader(ArchiveWriter.DEFAULT_PARALLELISM).read(in, Paths.get(localDirectory));
+    }
+
+
     /**
      * Déconnecte le client du serveur en fermant le socket.
      */
@@ -0,0 +1,573 @@
+package fr.uvsq.client;
+
+import fr.uvsq.core.DaemonThreadFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * La classe `CommandHistory` est l'historique persistant des commandes envoyées à un serveur.
+ *
+ * L'historique est conservé dans un fichier par serveur (une ligne `<nombre>\t<commande>` par ajout,
+ * compacté au chargement) et chargé en arrière-plan. Trois recherches sont servies depuis la mémoire :
+ * - `suggest` : les commandes commençant par un préfixe, classées par fréquence puis par récence.
+ *   Un arbre radix conserve dans chaque nœud les `MAX_SUGGESTIONS` meilleures commandes de son sous-arbre :
+ *   une suggestion ne coûte que la descente le long du préfixe ;
+ * - `search` : les commandes contenant un texte (sans tenir compte de la casse), via un index des fragments
+ *   de une à trois lettres dont les listes sont intersectées avant vérification des candidats. Un texte trop
+ *   courant est plutôt recherché dans les commandes parcourues par rang, jusqu'au nombre de résultats demandé ;
+ * - `recent` : les dernières commandes, de la plus récente à la plus ancienne.
+ */
+public class CommandHistory implements Closeable {
+    /** Nombre maximal de suggestions par préfixe. */
+    public static final int MAX_SUGGESTIONS = 10;
+    private static final String DIRECTORY = ".remote-control/history";
+    // Le fichier est réécrit au chargement s'il contient trop de lignes redondantes.
+    private static final int COMPACTION_THRESHOLD = 1000;
+    // Au-delà de ce nombre de candidats, une recherche parcourt les commandes par rang plutôt que l'index.
+    private static final int MAX_CANDIDATES = 2048;
+    // Longueur maximale des fragments indexés (trigrammes) ; les fragments plus courts servent aux recherches courtes.
+    private static final int GRAM_LENGTH = 3;
+
+    private final Path file;
+    // Commandes par texte, de la moins récente à la plus récente.
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final List<Entry> byId = new ArrayList<>();
+    private final Node root = new Node("");
+    private final Map<Long, IdList> grams = new HashMap<>();
+    // Commandes par rang décroissant, pour les recherches peu sélectives.
+    private Entry[] ranked = new Entry[16];
+    private int rankedSize = 0;
+    private boolean loading = false;
+    private long clock = 0;
+    private BufferedWriter writer;
+
+    private CommandHistory(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Retourne le fichier d'historique d'un serveur, dans le répertoire de l'utilisateur.
+     *
+     * @param host L'adresse du serveur.
+     * @param port Le port du serveur.
+     * @return Le chemin du fichier (il n'est pas créé).
+     */
+    public static Path defaultFile(String host, int port) {
+        String name = (host + "_" + port).replaceAll("[^A-Za-z0-9._-]", "_");
+        return Paths.get(System.getProperty("user.home"), DIRECTORY, name + ".history");
+    }
+
+    /**
+     * Charge un historique en arrière-plan.
+     *
+     * @param file Le fichier d'historique, créé au premier ajout s'il n'existe pas.
+     * @return L'historique, disponible une fois le fichier lu.
+     */
+    public static CompletableFuture<CommandHistory> load(Path file) {
+        return CompletableFuture.supplyAsync(() -> {
+            CommandHistory history = new CommandHistory(file);
+            try {
+                history.read();
+            } catch (IOException e) {
+                throw new IllegalStateException("Lecture impossible de l'historique " + file + " : " + e.getMessage(), e);
+            }
+            return history;
+        }, command -> new DaemonThreadFactory("history-load").newThread(command).start());
+    }
+
+    /**
+     * Ajoute une commande exécutée à l'historique et au fichier.
+     *
+     * @param command La commande.
+     * @throws IOException Si le fichier ne peut pas être écrit.
+     */
+    public synchronized void add(String command) throws IOException {
+        if (command.isEmpty() || command.indexOf('\n') >= 0 || command.indexOf('\r') >= 0) {
+            return;
+        }
+        record(command, 1);
+        if (writer == null) {
+            Files.createDirectories(file.getParent());
+            writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+        writer.write("1\t" + command);
+        writer.newLine();
+        writer.flush();
+    }
+
+    /**
+     * Suggère les commandes commençant par un préfixe.
+     *
+     * @param prefix Le début de la commande.
+     * @param limit  Le nombre maximal de suggestions (au plus `MAX_SUGGESTIONS`).
+     * @return Les commandes, de la plus fréquente à la moins fréquente.
+     */
+    public synchronized List<String> suggest(String prefix, int limit) {
+        Node node = root;
+        int position = 0;
+        while (position < prefix.length()) {
+            Node child = node.child(prefix.charAt(position));
+            if (child == null) {
+                return List.of();
+            }
+            int common = commonPrefix(child.label, prefix, position);
+            if (common < child.label.length() && position + common < prefix.length()) {
+                return List.of();
+            }
+            position += common;
+            node = child;
+        }
+        List<String> suggestions = new ArrayList<>();
+        for (int i = 0; i < node.top.length && i < limit; i++) {
+            suggestions.add(node.top[i].command);
+        }
+        return suggestions;
+    }
+
+    /**
+     * Recherche les commandes contenant un texte, sans tenir compte de la casse.
+     *
+     * @param text  Le texte recherché.
+     * @param limit Le nombre maximal de résultats.
+     * @return Les commandes, de la plus fréquente à la moins fréquente.
+     */
+    public synchronized List<String> search(String text, int limit) {
+        String needle = text.toLowerCase(Locale.ROOT);
+        if (!needle.isEmpty()) {
+            int length = Math.min(GRAM_LENGTH, needle.length());
+            IdList[] lists = new IdList[needle.length() - length + 1];
+            IdList smallest = null;
+            for (int i = 0; i < lists.length; i++) {
+                lists[i] = grams.get(gram(needle, i, length));
+                if (lists[i] == null) {
+                    return List.of();
+                }
+                if (smallest == null || lists[i].size < smallest.size) {
+                    smallest = lists[i];
+                }
+            }
+            if (smallest.size <= MAX_CANDIDATES) {
+                return rank(candidates(smallest, lists), needle, limit);
+            }
+        }
+        // Texte trop courant : les commandes sont parcourues par rang décroissant
+        // et le parcours s'arrête dès que `limit` commandes correspondent.
+        List<String> results = new ArrayList<>();
+        for (int i = 0; i < rankedSize && results.size() < limit; i++) {
+            if (ranked[i].lowerCase.contains(needle)) {
+                results.add(ranked[i].command);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * @param limit Le nombre maximal de commandes.
+     * @return Les dernières commandes, de la plus récente à la plus ancienne.
+     */
+    public synchronized List<String> recent(int limit) {
+        List<String> commands = new ArrayList<>(Math.min(limit, entries.size()));
+        Iterator<String> iterator = entries.sequencedKeySet().reversed().iterator();
+        while (iterator.hasNext() && commands.size() < limit) {
+            commands.add(iterator.next());
+        }
+        return commands;
+    }
+
+    /**
+     * @return Le nombre de commandes distinctes de l'historique.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Ferme le fichier d'historique.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    /**
+     * Lit le fichier d'historique et le compacte s'il contient trop de lignes redondantes.
+     */
+    private void read() throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+        int lines = 0;
+        loading = true;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int tab = line.indexOf('\t');
+                if (tab <= 0 || tab == line.length() - 1) {
+                    continue;
+                }
+                try {
+                    record(line.substring(tab + 1), Integer.parseInt(line.substring(0, tab)));
+                    lines++;
+                } catch (NumberFormatException e) {
+                    // Ligne corrompue (écriture interrompue) : ignorée.
+                }
+            }
+        }
+        loading = false;
+        // Le classement est trié une seule fois à la fin du chargement.
+        ranked = byId.toArray(new Entry[Math.max(16, byId.size())]);
+        rankedSize = byId.size();
+        Arrays.sort(ranked, 0, rankedSize, (a, b) -> compare(b, a));
+        if (lines > entries.size() + COMPACTION_THRESHOLD) {
+            compact();
+        }
+    }
+
+    /**
+     * Réécrit le fichier avec une ligne par commande distincte, dans l'ordre de récence.
+     */
+    private void compact() throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (Entry entry : entries.values()) {
+                out.write(entry.count + "\t" + entry.command);
+                out.newLine();
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Ajoute des utilisations d'une commande et met à jour les index.
+     */
+    private void record(String command, int count) {
+        Entry entry = entries.get(command);
+        // Position dans le classement avant la mise à jour (à la fin pour une nouvelle commande).
+        int position = rankedSize;
+        if (entry == null) {
+            entry = new Entry(command, byId.size());
+            entries.put(command, entry);
+            byId.add(entry);
+            indexGrams(entry);
+        } else if (!loading) {
+            position = insertionPoint(entry, rankedSize);
+        }
+        entry.count += Math.max(1, count);
+        entry.lastUsed = ++clock;
+        if (!loading) {
+            promote(entry, position);
+        }
+        // Le rang d'une commande ne fait que croître : il suffit de la proposer à chaque nœud de son chemin.
+        for (Node node : insertPath(command)) {
+            node.offer(entry);
+        }
+    }
+
+    /**
+     * Remonte dans le classement une commande dont le rang vient de croître.
+     *
+     * @param entry    La commande.
+     * @param position Sa position avant la mise à jour, ou `rankedSize` pour une nouvelle commande.
+     */
+    private void promote(Entry entry, int position) {
+        if (position == rankedSize) {
+            if (rankedSize == ranked.length) {
+                ranked = Arrays.copyOf(ranked, rankedSize * 2);
+            }
+            rankedSize++;
+        }
+        int target = insertionPoint(entry, position);
+        System.arraycopy(ranked, target, ranked, target + 1, position - target);
+        ranked[target] = entry;
+    }
+
+    /**
+     * Recherche dichotomique, parmi les `end` premières commandes du classement, de la position
+     * d'une commande ou de la première commande moins bien classée qu'elle.
+     */
+    private int insertionPoint(Entry entry, int end) {
+        int low = 0;
+        int high = end - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int order = compare(ranked[middle], entry);
+            if (order > 0) {
+                low = middle + 1;
+            } else if (order < 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Retourne les nœuds de l'arbre radix menant à une commande, en les créant si besoin.
+     */
+    private List<Node> insertPath(String command) {
+        List<Node> path = new ArrayList<>();
+        Node node = root;
+        path.add(node);
+        int position = 0;
+        while (position < command.length()) {
+            Node child = node.child(command.charAt(position));
+            if (child == null) {
+                child = new Node(command.substring(position));
+                node.addChild(child);
+                path.add(child);
+                break;
+            }
+            int common = commonPrefix(child.label, command, position);
+            if (common < child.label.length()) {
+                // Le nœud est scindé : le nouveau nœud intermédiaire a le même sous-arbre, donc le même classement.
+                Node middle = new Node(child.label.substring(0, common));
+                middle.top = child.top.clone();
+                node.replaceChild(middle);
+                child.label = child.label.substring(common);
+                middle.addChild(child);
+                child = middle;
+            }
+            path.add(child);
+            node = child;
+            position += common;
+        }
+        return path;
+    }
+
+    /**
+     * Indexe les fragments de une à `GRAM_LENGTH` lettres d'une commande.
+     */
+    private void indexGrams(Entry entry) {
+        String text = entry.lowerCase;
+        for (int length = 1; length <= GRAM_LENGTH; length++) {
+            long[] keys = new long[Math.max(0, text.length() - length + 1)];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = gram(text, i, length);
+            }
+            Arrays.sort(keys);
+            for (int i = 0; i < keys.length; i++) {
+                if (i == 0 || keys[i] != keys[i - 1]) {
+                    grams.computeIfAbsent(keys[i], k -> new IdList()).add(entry.id);
+                }
+            }
+        }
+    }
+
+    /**
+     * Code un fragment de une à trois lettres : sa longueur, puis ses caractères sur 16 bits chacun.
+     */
+    private static long gram(String text, int offset, int length) {
+        long key = length;
+        for (int i = 0; i < length; i++) {
+            key = (key << 16) | text.charAt(offset + i);
+        }
+        return key;
+    }
+
+    /**
+     * Retourne les identifiants de la plus courte liste présents dans toutes les autres.
+     */
+    private static int[] candidates(IdList smallest, IdList[] lists) {
+        int[] result = new int[smallest.size];
+        int count = 0;
+        for (int i = 0; i < smallest.size; i++) {
+            int id = smallest.ids[i];
+            boolean everywhere = true;
+            for (IdList list : lists) {
+                if (list != smallest && Arrays.binarySearch(list.ids, 0, list.size, id) < 0) {
+                    everywhere = false;
+                    break;
+                }
+            }
+            if (everywhere) {
+                result[count++] = id;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Vérifie les candidats et garde les `limit` mieux classés.
+     */
+    private List<String> rank(int[] candidates, String needle, int limit) {
+        PriorityQueue<Entry> best = new PriorityQueue<>(CommandHistory::compare);
+        for (int id : candidates) {
+            Entry entry = byId.get(id);
+            if (entry.lowerCase.contains(needle)) {
+                keep(best, entry, limit);
+            }
+        }
+        List<String> results = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            results.add(best.poll().command);
+        }
+        Collections.reverse(results);
+        return results;
+    }
+
+    private static void keep(PriorityQueue<Entry> best, Entry entry, int limit) {
+        if (best.size() < limit) {
+            best.add(entry);
+        } else if (limit > 0 && compare(entry, best.peek()) > 0) {
+            best.poll();
+            best.add(entry);
+        }
+    }
+
+    private static int commonPrefix(String label, String text, int offset) {
+        int length = Math.min(label.length(), text.length() - offset);
+        int i = 0;
+        while (i < length && label.charAt(i) == text.charAt(offset + i)) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Compare le rang de deux commandes : fréquence, puis récence.
+     */
+    private static int compare(Entry a, Entry b) {
+        int byCount = Integer.compare(a.count, b.count);
+        return byCount != 0 ? byCount : Long.compare(a.lastUsed, b.lastUsed);
+    }
+
+    /**
+     * Commande de l'historique.
+     */
+    private static final class Entry {
+        private final String command;
+        private final String lowerCase;
+        private final int id;
+        private int count = 0;
+        private long lastUsed = 0;
+
+        Entry(String command, int id) {
+            this.command = command;
+            this.lowerCase = command.toLowerCase(Locale.ROOT);
+            this.id = id;
+        }
+    }
+
+    /**
+     * Nœud de l'arbre radix : une arête étiquetée, les enfants triés par premier caractère
+     * et les meilleures commandes du sous-arbre.
+     */
+    private static final class Node {
+        private static final Node[] NO_CHILDREN = new Node[0];
+        private static final Entry[] NO_ENTRIES = new Entry[0];
+        private String label;
+        private Node[] children = NO_CHILDREN;
+        private Entry[] top = NO_ENTRIES;
+
+        Node(String label) {
+            this.label = label;
+        }
+
+        Node child(char first) {
+            int index = indexOf(first);
+            return index >= 0 ? children[index] : null;
+        }
+
+        void addChild(Node child) {
+            int index = -indexOf(child.label.charAt(0)) - 1;
+            Node[] grown = new Node[children.length + 1];
+            System.arraycopy(children, 0, grown, 0, index);
+            grown[index] = child;
+            System.arraycopy(children, index, grown, index + 1, children.length - index);
+            children = grown;
+        }
+
+        void replaceChild(Node child) {
+            children[indexOf(child.label.charAt(0))] = child;
+        }
+
+        private int indexOf(char first) {
+            int low = 0;
+            int high = children.length - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                char c = children[middle].label.charAt(0);
+                if (c < first) {
+                    low = middle + 1;
+                } else if (c > first) {
+                    high = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+            return -low - 1;
+        }
+
+        /**
+         * Place une commande dont le rang vient de croître parmi les meilleures du nœud.
+         */
+        void offer(Entry entry) {
+            int index = -1;
+            for (int i = 0; i < top.length; i++) {
+                if (top[i] == entry) {
+                    index = i;
+                    break;
+                }
+            }
+            if (index < 0) {
+                if (top.length < MAX_SUGGESTIONS) {
+                    top = Arrays.copyOf(top, top.length + 1);
+                } else if (compare(entry, top[top.length - 1]) <= 0) {
+                    return;
+                }
+                index = top.length - 1;
+                top[index] = entry;
+            }
+            while (index > 0 && compare(top[index], top[index - 1]) > 0) {
+                Entry swap = top[index - 1];
+                top[index - 1] = top[index];
+                top[index] = swap;
+                index--;
+            }
+        }
+    }
+
+    /**
+     * Liste croissante d'identifiants de commandes, sans objet par élément.
+     */
+    private static final class IdList {
+        private int[] ids = new int[4];
+        private int size = 0;
+
+        void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(ids, size);
+        }
+    }
+}
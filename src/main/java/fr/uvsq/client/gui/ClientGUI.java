@@ -1,42 +1,64 @@
 package fr.uvsq.client.gui;
 
 import fr.uvsq.client.Client;
+import fr.uvsq.client.CommandHistory;
+import fr.uvsq.core.ArchiveSummary;
+import fr.uvsq.core.ResourceUsage;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
+import javafx.geometry.Side;
 import javafx.scene.Scene;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
+import javafx.scene.control.ContextMenu;
 import javafx.scene.control.Label;
 import javafx.scene.control.ListView;
+import javafx.scene.control.MenuItem;
 import javafx.scene.control.SplitPane;
 import javafx.scene.control.TextArea;
 import javafx.scene.control.TextField;
 import javafx.scene.control.ToggleButton;
+import javafx.scene.input.MouseButton;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
+import javafx.stage.DirectoryChooser;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
 import javafx.scene.control.TextInputDialog;
 import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * La classe `ClientGUI` représente l'interface graphique du client pour le système de contrôle à distance.
  * Elle permet à l'utilisateur de se connecter à un serveur, d'exécuter des commandes et de voir l'historique et la sortie des commandes.
  */
 public class ClientGUI extends Application {
+    // Nombre maximal de commandes affichées dans l'historique.
+    private static final int HISTORY_DISPLAY_LIMIT = 500;
     private TextArea outputArea;
     private TextField commandField;
     private ListView<String> historyList;
+    private TextField historySearchField; // Recherche dans l'historique
+    private final ContextMenu suggestionsMenu = new ContextMenu(); // Autocomplétion de commandField
+    private CompletableFuture<CommandHistory> history; // Historique persistant du serveur connecté
     private Client client;
     private boolean isConnected = false;
     private String serverIP = "127.0.0.1"; // Modifier si besoin (ex. IP WSL)
     private TextField loginField; // Champ pour le login
     private TextField passwordField; // Champ pour le mot de passe
+    private volatile boolean streaming = false; // Suivi de fichier (FOLLOW) ou surveillance (WATCH) en cours
+    private final Queue<String> followedLines = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean followRefreshScheduled = new AtomicBoolean(false);
 
     /**
      * Méthode principale pour démarrer l'application JavaFX.
@@ -112,10 +134,20 @@ public class ClientGUI extends Application {
         historyPane.setMinWidth(250);
 
         Label historyLabel = new Label("Command History");
+        historySearchField = new TextField();
+        historySearchField.setPromptText("Search history...");
+        historySearchField.textProperty().addListener((obs, oldText, newText) -> refreshHistory());
         historyList = new ListView<>();
         historyList.setPlaceholder(new Label("No commands executed yet"));
+        // Un double-clic reprend la commande dans le champ de saisie
+        historyList.setOnMouseClicked(e -> {
+            String selected = historyList.getSelectionModel().getSelectedItem();
+            if (e.getButton() == MouseButton.PRIMARY && e.getClickCount() == 2 && selected != null) {
+                setCommandText(selected);
+            }
+        });
         VBox.setVgrow(historyList, Priority.ALWAYS);
-        historyPane.getChildren().addAll(historyLabel, historyList);
+        historyPane.getChildren().addAll(historyLabel, historySearchField, historyList);
 
         // Zone de sortie
         VBox outputPane = new VBox(10);
@@ -148,6 +180,12 @@ public class ClientGUI extends Application {
         commandField.setPromptText("Enter system command...");
         commandField.setPrefWidth(200); // Réduit encore pour faire de la place
         HBox.setHgrow(commandField, Priority.ALWAYS);
+        commandField.textProperty().addListener((obs, oldText, newText) -> showSuggestions(newText));
+        commandField.focusedProperty().addListener((obs, wasFocused, focused) -> {
+            if (!focused) {
+                suggestionsMenu.hide();
+            }
+        });
 
         Button sendBtn = new Button("Execute");
         sendBtn.getStyleClass().add("action-btn");
@@ -161,11 +199,31 @@ public class ClientGUI extends Application {
         downloadBtn.getStyleClass().add("action-btn");
         downloadBtn.setOnAction(e -> downloadFile());
 
+        Button uploadDirBtn = new Button("Upload Folder");
+        uploadDirBtn.getStyleClass().add("action-btn");
+        uploadDirBtn.setOnAction(e -> uploadDirectory());
+
+        Button downloadDirBtn = new Button("Download Folder");
+        downloadDirBtn.getStyleClass().add("action-btn");
+        downloadDirBtn.setOnAction(e -> downloadDirectory());
+
+        Button browseBtn = new Button("Browse Files");
+        browseBtn.getStyleClass().add("action-btn");
+        browseBtn.setOnAction(e -> browseFiles());
+
+        Button watchBtn = new Button("Watch");
+        watchBtn.getStyleClass().add("action-btn");
+        watchBtn.setOnAction(e -> watchCommand());
+
+        ToggleButton followBtn = new ToggleButton("Follow File");
+        followBtn.getStyleClass().add("action-btn");
+        followBtn.setOnAction(e -> toggleFollow(followBtn));
+
         Button clearBtn = new Button("Clear");
         clearBtn.getStyleClass().add("secondary-btn");
         clearBtn.setOnAction(e -> outputArea.clear());
 
-        footer.getChildren().addAll(commandField, sendBtn, uploadBtn, downloadBtn, clearBtn);
+        footer.getChildren().addAll(commandField, sendBtn, watchBtn, uploadBtn, downloadBtn, uploadDirBtn, downloadDirBtn, browseBtn, followBtn, clearBtn);
         return footer;
     }
 
@@ -187,6 +245,7 @@ public class ClientGUI extends Application {
                 if (client.authenticate(login, password)) {
                     isConnected = true;
                     btn.setText("Disconnect");
+                    openHistory(serverIP, 5001);
                     outputArea.appendText("✅ Connecté au serveur\n");
                 } else {
                     client.disconnect();
@@ -203,6 +262,7 @@ public class ClientGUI extends Application {
                 client.disconnect();
             }
             isConnected = false;
+            closeHistory();
             btn.setText("Connect");
             outputArea.appendText("❌ Déconnecté du serveur\n");
         }
@@ -210,29 +270,169 @@ public class ClientGUI extends Application {
 
     /**
      * Exécute la commande entrée par l'utilisateur.
-     * Envoie la commande au serveur et affiche la réponse dans la zone de sortie.
+     * Envoie la commande au serveur et affiche la réponse dans la zone de sortie,
+     * suivie des ressources qu'elle a consommées sur le serveur.
      */
     private void executeCommand() {
-        if (!isConnected) {
-            showErrorDialog("Erreur", "Pas connecté au serveur !");
+        if (!canSendRequest()) {
             return;
         }
         String command = commandField.getText().trim();
         if (command.isEmpty()) return;
         try {
             System.out.println("[ClientGUI] Envoi de la commande : " + command);
-            String response = client.sendCommand(command);
-            historyList.getItems().add(command);
-            outputArea.appendText("$ " + command + "\n" + response + "\n\n");
+            StringBuilder response = new StringBuilder();
+            ResourceUsage usage = client.sendCommand(command, line -> response.append(line).append("\n"));
+            recordHistory(command);
+            outputArea.appendText("$ " + command + "\n" + response.toString().trim() + "\n"
+                    + (usage == null ? "" : "(" + usage + ")\n") + "\n");
             commandField.clear();
         } catch (Exception e) {
             showErrorDialog("Erreur d'exécution", e.getMessage());
         }
     }
 
+    /**
+     * Ouvre une fenêtre affichant la commande saisie, réexécutée chaque seconde par le serveur (WATCH).
+     * La connexion est réservée à cette surveillance jusqu'à la fermeture de la fenêtre.
+     */
+    private void watchCommand() {
+        if (!canSendRequest()) {
+            return;
+        }
+        String command = commandField.getText().trim();
+        if (command.isEmpty()) return;
+        streaming = true;
+        recordHistory(command);
+        new WatchWindow(client, command, 1000, () -> streaming = false).show();
+    }
+
+    /**
+     * Charge en arrière-plan l'historique persistant d'un serveur et l'affiche une fois chargé.
+     *
+     * @param host L'adresse du serveur.
+     * @param port Le port du serveur.
+     */
+    private void openHistory(String host, int port) {
+        closeHistory();
+        CompletableFuture<CommandHistory> loading = CommandHistory.load(CommandHistory.defaultFile(host, port));
+        history = loading;
+        loading.whenComplete((loaded, error) -> Platform.runLater(() -> {
+            if (error != null) {
+                outputArea.appendText("⚠ Historique indisponible : " + error.getMessage() + "\n");
+            } else if (history == loading) {
+                refreshHistory();
+            }
+        }));
+    }
+
+    /**
+     * Ferme l'historique du serveur et vide la liste affichée.
+     */
+    private void closeHistory() {
+        if (history != null) {
+            history.thenAccept(loaded -> {
+                try {
+                    loaded.close();
+                } catch (IOException e) {
+                    System.err.println("[ClientGUI] Fermeture de l'historique impossible : " + e.getMessage());
+                }
+            });
+            history = null;
+        }
+        suggestionsMenu.hide();
+        historyList.getItems().clear();
+    }
+
+    /**
+     * Ajoute une commande à l'historique persistant, après son chargement s'il est en cours.
+     *
+     * @param command La commande exécutée.
+     */
+    private void recordHistory(String command) {
+        if (history == null) {
+            return;
+        }
+        CompletableFuture<CommandHistory> current = history;
+        current.thenAccept(loaded -> {
+            try {
+                loaded.add(command);
+            } catch (IOException e) {
+                System.err.println("[ClientGUI] Écriture de l'historique impossible : " + e.getMessage());
+            }
+            Platform.runLater(() -> {
+                if (history == current) {
+                    refreshHistory();
+                }
+            });
+        });
+    }
+
+    /**
+     * @return L'historique du serveur connecté, ou `null` s'il n'est pas (encore) chargé.
+     */
+    private CommandHistory loadedHistory() {
+        return history != null && history.isDone() && !history.isCompletedExceptionally() ? history.join() : null;
+    }
+
+    /**
+     * Affiche les dernières commandes, ou celles contenant le texte recherché.
+     */
+    private void refreshHistory() {
+        CommandHistory loaded = loadedHistory();
+        if (loaded == null) {
+            return;
+        }
+        String query = historySearchField.getText().trim();
+        List<String> commands = query.isEmpty()
+                ? loaded.recent(HISTORY_DISPLAY_LIMIT)
+                : loaded.search(query, HISTORY_DISPLAY_LIMIT);
+        historyList.getItems().setAll(commands);
+    }
+
+    /**
+     * Propose sous le champ de saisie les commandes les plus fréquentes commençant par le texte saisi.
+     *
+     * @param text Le texte saisi.
+     */
+    private void showSuggestions(String text) {
+        CommandHistory loaded = loadedHistory();
+        if (loaded == null || text.isEmpty() || !commandField.isFocused()) {
+            suggestionsMenu.hide();
+            return;
+        }
+        List<String> suggestions = loaded.suggest(text, CommandHistory.MAX_SUGGESTIONS);
+        if (suggestions.isEmpty() || suggestions.size() == 1 && suggestions.get(0).equals(text)) {
+            suggestionsMenu.hide();
+            return;
+        }
+        suggestionsMenu.getItems().clear();
+        for (String suggestion : suggestions) {
+            MenuItem item = new MenuItem(suggestion);
+            item.setMnemonicParsing(false);
+            item.setOnAction(e -> setCommandText(suggestion));
+            suggestionsMenu.getItems().add(item);
+        }
+        if (!suggestionsMenu.isShowing()) {
+            suggestionsMenu.show(commandField, Side.BOTTOM, 0, 0);
+        }
+    }
+
+    /**
+     * Place une commande de l'historique dans le champ de saisie, sans rouvrir les suggestions.
+     *
+     * @param command La commande.
+     */
+    private void setCommandText(String command) {
+        suggestionsMenu.hide();
+        commandField.setText(command);
+        suggestionsMenu.hide();
+        commandField.requestFocus();
+        commandField.positionCaret(command.length());
+    }
+
     private void uploadFile() {
-        if (!isConnected) {
-            showErrorDialog("Erreur", "Pas connecté au serveur !");
+        if (!canSendRequest()) {
             return;
         }
 
@@ -251,8 +451,7 @@ public class ClientGUI extends Application {
 
 
     private void downloadFile() {
-        if (!isConnected) {
-            showErrorDialog("Erreur", "Pas connecté au serveur !");
+        if (!canSendRequest()) {
             return;
         }
 
@@ -287,6 +486,159 @@ public class ClientGUI extends Application {
         }
     }
 
+    /**
+     * Envoie un répertoire local complet au serveur, en une seule archive, dans un répertoire
+     * du même nom sous le répertoire partagé.
+     */
+    private void uploadDirectory() {
+        if (!canSendRequest()) {
+            return;
+        }
+        DirectoryChooser directoryChooser = new DirectoryChooser();
+        directoryChooser.setTitle("Choisir un répertoire à envoyer");
+        File directory = directoryChooser.showDialog(null);
+        if (directory != null) {
+            try {
+                ArchiveSummary summary = client.uploadDirectory(directory.getAbsolutePath(), directory.getName());
+                outputArea.appendText("✅ Répertoire envoyé : " + directory.getName() + " (" + summary + ")\n");
+            } catch (IOException e) {
+                showErrorDialog("Erreur d’upload", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Télécharge un répertoire complet du serveur, en une seule archive, dans un répertoire local choisi.
+     */
+    private void downloadDirectory() {
+        if (!canSendRequest()) {
+            return;
+        }
+        TextInputDialog dialog = new TextInputDialog();
+        dialog.setTitle("Télécharger un répertoire");
+        dialog.setHeaderText("Entrez le nom du répertoire à télécharger (. pour tout le répertoire partagé)");
+        dialog.setContentText("Répertoire :");
+        Optional<String> result = dialog.showAndWait();
+        if (result.isEmpty() || result.get().trim().isEmpty()) {
+            return;
+        }
+        String remoteDirectory = result.get().trim();
+        DirectoryChooser directoryChooser = new DirectoryChooser();
+        directoryChooser.setTitle("Choisir où sauvegarder le répertoire");
+        File destination = directoryChooser.showDialog(null);
+        if (destination != null) {
+            String name = ".".equals(remoteDirectory) ? "server_files" : new File(remoteDirectory).getName();
+            File target = new File(destination, name);
+            try {
+                ArchiveSummary summary = client.downloadDirectory(remoteDirectory, target.getAbsolutePath());
+                outputArea.appendText("📥 Répertoire téléchargé dans " + target + " (" + summary + ")\n");
+                if (!summary.isComplete()) {
+                    showErrorDialog("Téléchargement incomplet", String.join("\n", summary.getErrors()));
+                }
+            } catch (IOException e) {
+                showErrorDialog("Erreur de téléchargement", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Ouvre le navigateur des fichiers du répertoire partagé du serveur.
+     */
+    private void browseFiles() {
+        if (!canSendRequest()) {
+            return;
+        }
+        new RemoteFileBrowser(client, message -> outputArea.appendText(message + "\n")).show();
+    }
+
+    /**
+     * Démarre ou arrête le suivi d'un fichier du serveur (FOLLOW).
+     * Le suivi s'exécute dans un thread dédié ; les lignes reçues sont ajoutées à la zone de sortie
+     * par lots, afin qu'un fichier très actif ne sature pas le thread de l'interface.
+     *
+     * @param btn Le bouton "Follow File" qui a été cliqué.
+     */
+    private void toggleFollow(ToggleButton btn) {
+        if (!btn.isSelected()) {
+            client.stopFollow();
+            return;
+        }
+        if (!canSendRequest()) {
+            btn.setSelected(false);
+            return;
+        }
+        TextInputDialog dialog = new TextInputDialog();
+        dialog.setTitle("Suivre un fichier");
+        dialog.setHeaderText("Entrez le chemin du fichier à suivre sur le serveur");
+        dialog.setContentText("Chemin :");
+        Optional<String> result = dialog.showAndWait();
+        if (result.isEmpty() || result.get().trim().isEmpty()) {
+            btn.setSelected(false);
+            return;
+        }
+        String path = result.get().trim();
+        streaming = true;
+        btn.setText("Stop Follow");
+        outputArea.appendText("👁 Suivi de " + path + "\n");
+        Thread followThread = new Thread(() -> {
+            String error = null;
+            try {
+                client.follow(path, 50, this::appendFollowedLine);
+            } catch (IOException e) {
+                error = e.getMessage();
+            }
+            String message = error;
+            Platform.runLater(() -> {
+                streaming = false;
+                btn.setSelected(false);
+                btn.setText("Follow File");
+                if (message != null) {
+                    showErrorDialog("Erreur de suivi", message);
+                } else {
+                    outputArea.appendText("⏹ Fin du suivi de " + path + "\n");
+                }
+            });
+        }, "follow-" + path);
+        followThread.setDaemon(true);
+        followThread.start();
+    }
+
+    /**
+     * Met une ligne suivie en attente d'affichage et planifie, si besoin, son ajout à la zone de sortie.
+     */
+    private void appendFollowedLine(String line) {
+        followedLines.add(line);
+        if (followRefreshScheduled.compareAndSet(false, true)) {
+            Platform.runLater(() -> {
+                followRefreshScheduled.set(false);
+                StringBuilder text = new StringBuilder();
+                String pending;
+                while ((pending = followedLines.poll()) != null) {
+                    text.append(pending).append("\n");
+                }
+                outputArea.appendText(text.toString());
+            });
+        }
+    }
+
+    /**
+     * Vérifie qu'une requête peut être envoyée au serveur : le client doit être connecté
+     * et aucun suivi de fichier ni surveillance de commande ne doit occuper la connexion.
+     *
+     * @return true si une requête peut être envoyée.
+     */
+    private boolean canSendRequest() {
+        if (!isConnected) {
+            showErrorDialog("Erreur", "Pas connecté au serveur !");
+            return false;
+        }
+        if (streaming) {
+            showErrorDialog("Erreur", "Un suivi ou une surveillance est en cours, arrêtez-le d'abord.");
+            return false;
+        }
+        return true;
+    }
+
     /**
      * Affiche une boîte de dialogue d'erreur.
      *
@@ -0,0 +1,157 @@
+package fr.uvsq.client.gui;
+
+import fr.uvsq.client.Client;
+import fr.uvsq.core.FileListing;
+import fr.uvsq.core.RemoteFile;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.Scene;
+import javafx.scene.control.Alert;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.control.TextField;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.stage.FileChooser;
+import javafx.stage.Stage;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.function.Consumer;
+
+/**
+ * La classe `RemoteFileBrowser` est une fenêtre de navigation dans le répertoire partagé du serveur.
+ * Elle s'appuie sur les requêtes LIST et STAT : la liste est paginée et filtrable (préfixe ou motif glob),
+ * et le fichier sélectionné peut être téléchargé sans en connaître le nom exact à l'avance.
+ */
+public class RemoteFileBrowser {
+    private static final int PAGE_SIZE = 100;
+
+    private final Client client;
+    private final Consumer<String> outputCallback;
+    private final Stage stage = new Stage();
+    private final TextField filterField = new TextField();
+    private final ListView<RemoteFile> filesList = new ListView<>();
+    private final Label pageLabel = new Label();
+    private final Button previousBtn = new Button("◀ Précédent");
+    private final Button nextBtn = new Button("Suivant ▶");
+    private int offset = 0;
+    private int total = 0;
+
+    /**
+     * Constructeur de `RemoteFileBrowser`.
+     *
+     * @param client         Le client connecté et authentifié.
+     * @param outputCallback Une fonction de rappel recevant les messages à afficher dans la zone de sortie.
+     */
+    public RemoteFileBrowser(Client client, Consumer<String> outputCallback) {
+        this.client = client;
+        this.outputCallback = outputCallback;
+    }
+
+    /**
+     * Affiche la fenêtre et charge la première page.
+     */
+    public void show() {
+        stage.setTitle("Fichiers du serveur");
+
+        filterField.setPromptText("Préfixe ou motif (ex. *.log)");
+        HBox.setHgrow(filterField, Priority.ALWAYS);
+        filterField.setOnAction(e -> loadPage(0));
+        Button searchBtn = new Button("Rechercher");
+        searchBtn.getStyleClass().add("action-btn");
+        searchBtn.setOnAction(e -> loadPage(0));
+        HBox top = new HBox(10, filterField, searchBtn);
+        top.setPadding(new Insets(10));
+
+        filesList.setPlaceholder(new Label("Aucun fichier"));
+        filesList.setCellFactory(list -> new ListCell<>() {
+            private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+
+            @Override
+            protected void updateItem(RemoteFile file, boolean empty) {
+                super.updateItem(file, empty);
+                if (empty || file == null) {
+                    setText(null);
+                } else if (file.isDirectory()) {
+                    setText("📁 " + file.getName() + "/");
+                } else {
+                    setText("📄 " + file.getName() + "   " + file.getSize() + " octets   "
+                            + dateFormat.format(new Date(file.getLastModified())));
+                }
+            }
+        });
+
+        previousBtn.setOnAction(e -> loadPage(Math.max(0, offset - PAGE_SIZE)));
+        nextBtn.setOnAction(e -> loadPage(offset + PAGE_SIZE));
+        Button downloadBtn = new Button("Download File");
+        downloadBtn.getStyleClass().add("action-btn");
+        downloadBtn.setOnAction(e -> downloadSelected());
+        HBox bottom = new HBox(10, previousBtn, pageLabel, nextBtn, downloadBtn);
+        bottom.setAlignment(Pos.CENTER_LEFT);
+        bottom.setPadding(new Insets(10));
+
+        BorderPane root = new BorderPane(filesList, top, null, bottom, null);
+        root.getStylesheets().add(getClass().getResource("/styles/main.css").toExternalForm());
+        stage.setScene(new Scene(root, 600, 500));
+        stage.show();
+        loadPage(0);
+    }
+
+    /**
+     * Charge une page de la liste à partir de la position donnée.
+     *
+     * @param newOffset La position du premier fichier de la page.
+     */
+    private void loadPage(int newOffset) {
+        try {
+            FileListing listing = client.listFiles(filterField.getText().trim(), newOffset, PAGE_SIZE);
+            offset = newOffset;
+            total = listing.getTotal();
+            filesList.getItems().setAll(listing.getFiles());
+            int last = offset + listing.getFiles().size();
+            pageLabel.setText(total == 0 ? "0 fichier" : (offset + 1) + "–" + last + " sur " + total);
+            previousBtn.setDisable(offset == 0);
+            nextBtn.setDisable(last >= total);
+        } catch (IOException | RuntimeException e) {
+            showErrorDialog("Erreur de listage", e.getMessage());
+        }
+    }
+
+    /**
+     * Télécharge le fichier sélectionné après vérification de son existence (STAT).
+     */
+    private void downloadSelected() {
+        RemoteFile selected = filesList.getSelectionModel().getSelectedItem();
+        if (selected == null || selected.isDirectory()) {
+            showErrorDialog("Erreur", "Sélectionnez un fichier à télécharger.");
+            return;
+        }
+        try {
+            RemoteFile file = client.statFile(selected.getName());
+            FileChooser fileChooser = new FileChooser();
+            fileChooser.setTitle("Choisir où sauvegarder le fichier");
+            fileChooser.setInitialFileName(new File(file.getName()).getName());
+            File saveFile = fileChooser.showSaveDialog(stage);
+            if (saveFile != null) {
+                String response = client.downloadFile(file.getName(), saveFile.getAbsolutePath());
+                outputCallback.accept("📥 " + response);
+            }
+        } catch (IOException | RuntimeException e) {
+            showErrorDialog("Erreur de téléchargement", e.getMessage());
+        }
+    }
+
+    private void showErrorDialog(String title, String message) {
+        Alert alert = new Alert(Alert.AlertType.ERROR);
+        alert.setTitle(title);
+        alert.setHeaderText(null);
+        alert.setContentText(message);
+        alert.showAndWait();
+    }
+}
@@ -0,0 +1,104 @@
+package fr.uvsq.client.gui;
+
+import fr.uvsq.client.Client;
+import fr.uvsq.core.CommandResult;
+import javafx.application.Platform;
+import javafx.geometry.Insets;
+import javafx.scene.Scene;
+import javafx.scene.control.Alert;
+import javafx.scene.control.Label;
+import javafx.scene.control.TextArea;
+import javafx.scene.layout.BorderPane;
+import javafx.stage.Stage;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * La classe `WatchWindow` affiche la sortie d'une commande exécutée périodiquement par le serveur (WATCH),
+ * à la manière de la commande `watch`. Seules les modifications de la sortie transitent sur le réseau ;
+ * la fenêtre n'est redessinée que lorsque la sortie change. Fermer la fenêtre arrête la surveillance.
+ */
+public class WatchWindow {
+    private final Client client;
+    private final String command;
+    private final long intervalMillis;
+    private final Runnable onFinished;
+    private final Stage stage = new Stage();
+    private final TextArea outputArea = new TextArea();
+    private final Label statusLabel = new Label("En attente de la première exécution...");
+    // Dernier résultat reçu, affiché au prochain passage du thread de l'interface.
+    private final AtomicReference<CommandResult> latest = new AtomicReference<>();
+
+    /**
+     * Constructeur de `WatchWindow`.
+     *
+     * @param client         Le client connecté et authentifié.
+     * @param command        La commande à surveiller.
+     * @param intervalMillis L'intervalle entre deux exécutions, en millisecondes.
+     * @param onFinished     Une fonction de rappel appelée, dans le thread de l'interface, à la fin de la surveillance.
+     */
+    public WatchWindow(Client client, String command, long intervalMillis, Runnable onFinished) {
+        this.client = client;
+        this.command = command;
+        this.intervalMillis = intervalMillis;
+        this.onFinished = onFinished;
+    }
+
+    /**
+     * Affiche la fenêtre et démarre la surveillance dans un thread dédié.
+     */
+    public void show() {
+        stage.setTitle("Watch : " + command);
+        outputArea.setEditable(false);
+        outputArea.setStyle("-fx-font-family: monospace;");
+        statusLabel.setPadding(new Insets(5, 10, 5, 10));
+
+        BorderPane root = new BorderPane(outputArea, null, null, statusLabel, null);
+        root.getStylesheets().add(getClass().getResource("/styles/main.css").toExternalForm());
+        stage.setScene(new Scene(root, 700, 500));
+        stage.setOnCloseRequest(e -> client.stopWatch());
+        stage.show();
+
+        Thread watchThread = new Thread(() -> {
+            String error = null;
+            try {
+                client.watch(command, intervalMillis, this::update);
+            } catch (IOException e) {
+                error = e.getMessage();
+            }
+            String message = error;
+            Platform.runLater(() -> {
+                stage.close();
+                onFinished.run();
+                if (message != null) {
+                    Alert alert = new Alert(Alert.AlertType.ERROR);
+                    alert.setTitle("Erreur de surveillance");
+                    alert.setHeaderText(null);
+                    alert.setContentText(message);
+                    alert.showAndWait();
+                }
+            });
+        }, "watch-" + command);
+        watchThread.setDaemon(true);
+        watchThread.start();
+    }
+
+    /**
+     * Reçoit un nouveau résultat ; seul le plus récent est affiché si plusieurs arrivent entre deux rafraîchissements.
+     */
+    private void update(CommandResult result) {
+        if (latest.getAndSet(result) == null) {
+            Platform.runLater(() -> {
+                CommandResult current = latest.getAndSet(null);
+                double scroll = outputArea.getScrollTop();
+                outputArea.setText(current.getOutput());
+                outputArea.setScrollTop(scroll);
+                statusLabel.setText("Toutes les " + intervalMillis + " ms — code de sortie " + current.getExitCode()
+                        + " — mis à jour à " + new SimpleDateFormat("HH:mm:ss").format(new Date()));
+            });
+        }
+    }
+}
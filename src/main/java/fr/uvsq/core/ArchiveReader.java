@@ -0,0 +1,304 @@
+package fr.uvsq.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * La classe `ArchiveReader` reçoit une archive produite par `ArchiveWriter` et recrée
+ * l'arborescence dans un répertoire cible, en conservant les chemins relatifs et les dates.
+ *
+ * Les petits fichiers sont reçus en mémoire puis écrits par un pool de threads, pendant que
+ * la lecture du réseau se poursuit ; les gros fichiers sont écrits au fil de leur réception.
+ * Chaque fichier est écrit dans un fichier temporaire et n'est installé qu'après vérification
+ * de son empreinte CRC32C : un transfert interrompu ne laisse aucun fichier partiel.
+ *
+ * Chaque chemin est vérifié : un chemin absolu, contenant `..` ou traversant un lien symbolique
+ * qui sortirait du répertoire cible est refusé. Une entrée refusée ou impossible à écrire est consignée
+ * dans les erreurs du résumé et la lecture de l'archive se poursuit jusqu'à sa fin, afin que
+ * le flux reste utilisable pour les requêtes suivantes.
+ */
+public class ArchiveReader {
+    private static final Logger logger = LoggerFactory.getLogger(ArchiveReader.class);
+    // Nombre maximal de petits fichiers reçus en attente d'écriture.
+    private static final int MAX_PENDING_WRITES = 32;
+
+    private final int parallelism;
+    private final AtomicFileWriter.SyncPolicy syncPolicy;
+
+    /**
+     * Constructeur de `ArchiveReader` sans synchronisation sur disque des fichiers reçus.
+     *
+     * @param parallelism Le nombre de threads écrivant les fichiers reçus.
+     */
+    public ArchiveReader(int parallelism) {
+        this(parallelism, AtomicFileWriter.SyncPolicy.NONE);
+    }
+
+    /**
+     * Constructeur de `ArchiveReader`.
+     *
+     * @param parallelism Le nombre de threads écrivant les fichiers reçus.
+     * @param syncPolicy  La politique de synchronisation sur disque de chaque fichier reçu.
+     */
+    public ArchiveReader(int parallelism, AtomicFileWriter.SyncPolicy syncPolicy) {
+        this.parallelism = Math.max(1, parallelism);
+        this.syncPolicy = syncPolicy;
+    }
+
+    /**
+     * Lit une archive complète et recrée son contenu sous le répertoire cible.
+     *
+     * @param input  Le flux contenant l'archive (il n'est pas fermé).
+     * @param target Le répertoire cible, créé si besoin.
+     * @return Le résumé du contenu reçu, avec les éventuelles erreurs.
+     * @throws IOException Si le flux est interrompu ou si l'archive est corrompue.
+     */
+    public ArchiveSummary read(InputStream input, Path target) throws IOException {
+        DataInputStream in = new DataInputStream(input);
+        Path root = target.toAbsolutePath().normalize();
+        List<String> errors = Collections.synchronizedList(new ArrayList<>());
+        Path realRoot = null;
+        try {
+            Files.createDirectories(root);
+            realRoot = root.toRealPath();
+        } catch (IOException e) {
+            errors.add("Création impossible de " + root + " : " + e.getMessage());
+        }
+        // Les dates des répertoires sont appliquées à la fin : écrire leur contenu les modifierait.
+        Map<Path, Long> directoryDates = new LinkedHashMap<>();
+        List<Future<?>> writes = new ArrayList<>();
+        Semaphore pendingWrites = new Semaphore(MAX_PENDING_WRITES);
+        int files = 0;
+        long bytes = 0;
+
+        ExecutorService writers = Executors.newFixedThreadPool(parallelism, new DaemonThreadFactory("archive-write"));
+        try {
+            while (true) {
+                byte type = in.readByte();
+                if (type == ArchiveWriter.END) {
+                    break;
+                } else if (type == ArchiveWriter.ERROR) {
+                    errors.add(in.readUTF());
+                } else if (type == ArchiveWriter.DIRECTORY) {
+                    String name = in.readUTF();
+                    long lastModified = in.readLong();
+                    Path directory = resolve(root, realRoot, name, errors);
+                    if (directory != null) {
+                        try {
+                            Files.createDirectories(directory);
+                            directoryDates.put(directory, lastModified);
+                        } catch (IOException e) {
+                            errors.add("Création impossible de " + name + " : " + e.getMessage());
+                        }
+                    }
+                } else if (type == ArchiveWriter.FILE) {
+                    String name = in.readUTF();
+                    long lastModified = in.readLong();
+                    Path file = resolve(root, realRoot, name, errors);
+                    long size = receiveFile(in, file, name, lastModified, writers, writes, pendingWrites, errors);
+                    if (size >= 0) {
+                        files++;
+                        bytes += size;
+                    }
+                } else {
+                    throw new IOException("Archive corrompue (entrée inconnue : " + type + ")");
+                }
+            }
+            for (Future<?> write : writes) {
+                write.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Réception interrompue", e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            writers.shutdown();
+        }
+        List<Path> directories = new ArrayList<>(directoryDates.keySet());
+        Collections.reverse(directories);
+        for (Path directory : directories) {
+            try {
+                Files.setLastModifiedTime(directory, FileTime.fromMillis(directoryDates.get(directory)));
+            } catch (IOException e) {
+                logger.warn("Cannot set date of {}: {}", directory, e.getMessage());
+            }
+        }
+        return new ArchiveSummary(files, directoryDates.size(), bytes, new ArrayList<>(errors));
+    }
+
+    /**
+     * Reçoit le contenu d'un fichier. Un petit fichier est confié au pool d'écriture ; un gros fichier
+     * est écrit au fil de sa réception. Si `file` est `null` (chemin refusé), le contenu est ignoré.
+     * Dans les deux cas, le fichier n'est installé qu'après vérification de son empreinte (voir `AtomicFileWriter`).
+     *
+     * @return La taille reçue, ou -1 si le fichier n'a pas été écrit (envoi interrompu, chemin refusé).
+     */
+    private long receiveFile(DataInputStream in, Path file, String name, long lastModified, ExecutorService writers,
+                             List<Future<?>> writes, Semaphore pendingWrites, List<String> errors)
+            throws IOException, InterruptedException {
+        ByteArrayOutputStream small = new ByteArrayOutputStream();
+        AtomicFileWriter large = null;
+        long size = 0;
+        String expectedDigest;
+        try (BufferPool.Buffer pooled = BufferPool.shared().acquire(ArchiveWriter.CHUNK_SIZE)) {
+            byte[] chunk = pooled.array();
+            int length;
+            while ((length = in.readInt()) != 0) {
+                if (length == ArchiveWriter.ABORTED_CHUNK) {
+                    return -1;
+                }
+                if (length < 0 || length > ArchiveWriter.CHUNK_SIZE) {
+                    throw new IOException("Archive corrompue (bloc de " + length + " octets)");
+                }
+                in.readFully(chunk, 0, length);
+                size += length;
+                if (file == null) {
+                    continue;
+                }
+                if (large == null && small.size() + length > ArchiveWriter.MAX_PREFETCH_SIZE) {
+                    large = open(file, name, errors);
+                    if (large == null) {
+                        file = null;
+                        continue;
+                    }
+                    try {
+                        large.write(small.toByteArray(), 0, small.size());
+                    } catch (IOException e) {
+                        file = abandon(large, name, e, errors);
+                        continue;
+                    }
+                }
+                if (large != null) {
+                    try {
+                        large.write(chunk, 0, length);
+                    } catch (IOException e) {
+                        file = abandon(large, name, e, errors);
+                    }
+                } else {
+                    small.write(chunk, 0, length);
+                }
+            }
+            expectedDigest = in.readUTF();
+            if (file == null) {
+                return -1;
+            }
+            if (large != null) {
+                try {
+                    large.commit(expectedDigest);
+                } catch (IOException e) {
+                    abandon(large, name, e, errors);
+                    return -1;
+                }
+                setLastModified(file, lastModified);
+                return size;
+            }
+        } finally {
+            if (large != null) {
+                large.close();
+            }
+        }
+        Path destination = file;
+        byte[] content = small.toByteArray();
+        pendingWrites.acquire();
+        writes.add(writers.submit(() -> {
+            try (AtomicFileWriter out = open(destination, name, errors)) {
+                if (out != null) {
+                    out.write(content, 0, content.length);
+                    out.commit(expectedDigest);
+                    setLastModified(destination, lastModified);
+                }
+            } catch (IOException e) {
+                errors.add("Écriture impossible de " + name + " : " + e.getMessage());
+            } finally {
+                pendingWrites.release();
+            }
+        }));
+        return size;
+    }
+
+    /**
+     * Abandonne un fichier qui ne peut pas être écrit ; le reste de son contenu sera ignoré.
+     *
+     * @return `null`, le fichier n'ayant plus de destination.
+     */
+    private static Path abandon(AtomicFileWriter writer, String name, IOException e, List<String> errors) {
+        writer.abort();
+        errors.add("Écriture impossible de " + name + " : " + e.getMessage());
+        return null;
+    }
+
+    /**
+     * Crée le fichier temporaire d'un fichier à recevoir.
+     *
+     * @return Le fichier temporaire, ou `null` (erreur consignée) s'il ne peut pas être créé.
+     */
+    private AtomicFileWriter open(Path file, String name, List<String> errors) {
+        try {
+            return new AtomicFileWriter(file, -1, ArchiveWriter.DIGEST_ALGORITHM, syncPolicy);
+        } catch (IOException e) {
+            errors.add("Écriture impossible de " + name + " : " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static void setLastModified(Path file, long lastModified) {
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(lastModified));
+        } catch (IOException e) {
+            logger.warn("Cannot set date of {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Résout un chemin de l'archive sous le répertoire cible.
+     *
+     * @return Le chemin absolu, ou `null` (erreur consignée) si le chemin sort du répertoire cible.
+     */
+    private static Path resolve(Path root, Path realRoot, String name, List<String> errors) {
+        if (realRoot == null) {
+            return null;
+        }
+        try {
+            Path relative = Paths.get(name);
+            Path resolved = root.resolve(relative).normalize();
+            if (!relative.isAbsolute() && resolved.startsWith(root) && !resolved.equals(root)) {
+                // Le plus proche ancêtre existant, une fois les liens symboliques résolus, doit rester
+                // sous la racine : sinon, créer les répertoires manquants écrirait hors du répertoire cible.
+                Path parent = resolved.getParent();
+                Path existing = parent;
+                while (!Files.exists(existing)) {
+                    existing = existing.getParent();
+                }
+                if (existing.toRealPath().startsWith(realRoot)) {
+                    Files.createDirectories(parent);
+                    return resolved;
+                }
+            }
+        } catch (InvalidPathException | IOException e) {
+            // Traité ci-dessous comme un chemin refusé.
+        }
+        errors.add("Chemin refusé : " + name);
+        return null;
+    }
+}
@@ -0,0 +1,70 @@
+package fr.uvsq.core;
+
+import java.util.List;
+
+/**
+ * La classe `ArchiveSummary` résume le transfert d'une archive de répertoire :
+ * nombre de fichiers et de répertoires, volume transféré et erreurs rencontrées.
+ */
+public class ArchiveSummary {
+    private final int fileCount;
+    private final int directoryCount;
+    private final long byteCount;
+    private final List<String> errors;
+
+    /**
+     * Constructeur de `ArchiveSummary`.
+     *
+     * @param fileCount      Le nombre de fichiers transférés.
+     * @param directoryCount Le nombre de répertoires transférés.
+     * @param byteCount      Le nombre d'octets de contenu transférés.
+     * @param errors         Les erreurs rencontrées (fichiers illisibles, chemins refusés...).
+     */
+    public ArchiveSummary(int fileCount, int directoryCount, long byteCount, List<String> errors) {
+        this.fileCount = fileCount;
+        this.directoryCount = directoryCount;
+        this.byteCount = byteCount;
+        this.errors = errors;
+    }
+
+    /**
+     * @return Le nombre de fichiers transférés.
+     */
+    public int getFileCount() {
+        return fileCount;
+    }
+
+    /**
+     * @return Le nombre de répertoires transférés.
+     */
+    public int getDirectoryCount() {
+        return directoryCount;
+    }
+
+    /**
+     * @return Le nombre d'octets de contenu transférés.
+     */
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    /**
+     * @return Les erreurs rencontrées, vide si le transfert est complet.
+     */
+    public List<String> getErrors() {
+        return errors;
+    }
+
+    /**
+     * @return true si aucune erreur n'a été rencontrée.
+     */
+    public boolean isComplete() {
+        return errors.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return fileCount + " fichier(s), " + directoryCount + " répertoire(s), " + byteCount + " octets"
+                + (errors.isEmpty() ? "" : ", " + errors.size() + " erreur(s)");
+    }
+}
@@ -0,0 +1,249 @@
+package fr.uvsq.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * La classe `ArchiveWriter` envoie une arborescence de fichiers sous la forme d'une archive continue,
+ * en une seule requête, au lieu d'une requête (et d'un aller-retour) par fichier.
+ *
+ * Format de l'archive (types `DataOutputStream`), une entrée après l'autre :
+ * - `D` chemin date : un répertoire ;
+ * - `F` chemin date, puis des blocs `<longueur int><octets>` terminés par une longueur 0 et par
+ *   l'empreinte CRC32C du contenu : un fichier. Une longueur -1 (sans empreinte) signale un fichier
+ *   devenu illisible en cours d'envoi ;
+ * - `X` message : une erreur de lecture côté émetteur ;
+ * - `E` : la fin de l'archive.
+ * Les chemins sont relatifs à la racine de l'archive, avec `/` comme séparateur ;
+ * les dates sont en millisecondes depuis l'époque.
+ *
+ * Les lectures sont parallélisées et anticipées : un pool de threads lit d'avance les petits fichiers
+ * suivants (dans une fenêtre bornée) pendant que le fichier courant est écrit sur le réseau.
+ * Les gros fichiers sont lus au fil de l'envoi pour ne pas les charger en mémoire.
+ */
+public class ArchiveWriter {
+    private static final Logger logger = LoggerFactory.getLogger(ArchiveWriter.class);
+    /** Nombre de threads de lecture par défaut. */
+    public static final int DEFAULT_PARALLELISM = 4;
+
+    static final byte DIRECTORY = 'D';
+    static final byte FILE = 'F';
+    static final byte ERROR = 'X';
+    static final byte END = 'E';
+    static final int CHUNK_SIZE = 64 * 1024;
+    static final int ABORTED_CHUNK = -1;
+    static final String DIGEST_ALGORITHM = StreamDigest.CRC32C_ALGORITHM;
+    // Taille jusqu'à laquelle un fichier est lu d'avance en mémoire, et nombre de fichiers lus d'avance.
+    static final int MAX_PREFETCH_SIZE = 256 * 1024;
+    private static final int PREFETCH_WINDOW = 32;
+
+    private final int parallelism;
+
+    /**
+     * Constructeur de `ArchiveWriter`.
+     *
+     * @param parallelism Le nombre de threads lisant les fichiers d'avance.
+     */
+    public ArchiveWriter(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Écrit l'archive d'un répertoire. Les fichiers spéciaux et les liens symboliques sont ignorés.
+     *
+     * @param source Le répertoire à archiver.
+     * @param output Le flux de destination (il est vidé mais pas fermé).
+     * @return Le résumé du contenu envoyé.
+     * @throws IOException Si le répertoire ne peut pas être parcouru ou si l'écriture échoue.
+     */
+    public ArchiveSummary write(Path source, OutputStream output) throws IOException {
+        Path root = source.toAbsolutePath().normalize();
+        List<Entry> entries = listEntries(root);
+        DataOutputStream out = new DataOutputStream(output);
+        List<String> errors = new ArrayList<>();
+        int files = 0;
+        int directories = 0;
+        long bytes = 0;
+
+        ExecutorService readers = Executors.newFixedThreadPool(parallelism, new DaemonThreadFactory("archive-read"));
+        try {
+            Deque<Future<byte[]>> prefetched = new ArrayDeque<>();
+            int submitted = 0;
+            for (Entry entry : entries) {
+                while (submitted < entries.size() && prefetched.size() < PREFETCH_WINDOW) {
+                    Entry next = entries.get(submitted++);
+                    prefetched.add(readers.submit(() -> next.prefetch()));
+                }
+                byte[] content;
+                InputStream in = null;
+                try {
+                    content = prefetched.poll().get();
+                    if (content == null && !entry.directory) {
+                        in = Files.newInputStream(entry.path);
+                    }
+                } catch (ExecutionException | IOException e) {
+                    Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+                    writeError(out, errors, entry, cause.getMessage());
+                    continue;
+                }
+                if (entry.directory) {
+                    out.writeByte(DIRECTORY);
+                    out.writeUTF(entry.name);
+                    out.writeLong(entry.lastModified);
+                    directories++;
+                    continue;
+                }
+                out.writeByte(FILE);
+                out.writeUTF(entry.name);
+                out.writeLong(entry.lastModified);
+                if (content != null) {
+                    StreamDigest digest = StreamDigest.create(DIGEST_ALGORITHM);
+                    for (int offset = 0; offset < content.length; offset += CHUNK_SIZE) {
+                        int length = Math.min(CHUNK_SIZE, content.length - offset);
+                        out.writeInt(length);
+                        out.write(content, offset, length);
+                    }
+                    digest.update(content, 0, content.length);
+                    out.writeInt(0);
+                    out.writeUTF(digest.toHex());
+                    bytes += content.length;
+                    files++;
+                } else {
+                    long sent = stream(entry, in, out, errors);
+                    if (sent >= 0) {
+                        bytes += sent;
+                        files++;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Archivage interrompu", e);
+        } finally {
+            readers.shutdownNow();
+        }
+        out.writeByte(END);
+        out.flush();
+        return new ArchiveSummary(files, directories, bytes, errors);
+    }
+
+    /**
+     * Envoie un gros fichier par blocs, au fil de sa lecture.
+     *
+     * @return Le nombre d'octets envoyés, ou -1 si le fichier est devenu illisible en cours d'envoi.
+     */
+    private long stream(Entry entry, InputStream file, DataOutputStream out, List<String> errors) throws IOException {
+        StreamDigest digest = StreamDigest.create(DIGEST_ALGORITHM);
+        long sent = 0;
+        try (InputStream in = file; BufferPool.Buffer pooled = BufferPool.shared().acquire(CHUNK_SIZE)) {
+            byte[] chunk = pooled.array();
+            int read;
+            while (true) {
+                try {
+                    read = in.readNBytes(chunk, 0, CHUNK_SIZE);
+                } catch (IOException e) {
+                    out.writeInt(ABORTED_CHUNK);
+                    writeError(out, errors, entry, e.getMessage());
+                    return -1;
+                }
+                if (read == 0) {
+                    break;
+                }
+                out.writeInt(read);
+                out.write(chunk, 0, read);
+                digest.update(chunk, 0, read);
+                sent += read;
+            }
+        }
+        out.writeInt(0);
+        out.writeUTF(digest.toHex());
+        return sent;
+    }
+
+    /**
+     * Signale dans l'archive un fichier qui n'a pas pu être lu.
+     */
+    private static void writeError(DataOutputStream out, List<String> errors, Entry entry, String reason) throws IOException {
+        String message = "Lecture impossible de " + entry.name + " : " + reason;
+        logger.warn("Cannot archive {}: {}", entry.path, reason);
+        errors.add(message);
+        out.writeByte(ERROR);
+        out.writeUTF(message);
+    }
+
+    /**
+     * Parcourt l'arborescence : les répertoires précèdent toujours leur contenu.
+     */
+    private static List<Entry> listEntries(Path root) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+                if (!dir.equals(root)) {
+                    entries.add(new Entry(root, dir, attributes));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (attributes.isRegularFile()) {
+                    entries.add(new Entry(root, file, attributes));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                logger.warn("Cannot archive {}: {}", file, e.getMessage());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return entries;
+    }
+
+    /**
+     * Fichier ou répertoire à archiver.
+     */
+    private static final class Entry {
+        private final Path path;
+        private final String name;
+        private final long lastModified;
+        private final long size;
+        private final boolean directory;
+
+        Entry(Path root, Path path, BasicFileAttributes attributes) {
+            this.path = path;
+            this.name = root.relativize(path).toString().replace(File.separatorChar, '/');
+            this.lastModified = attributes.lastModifiedTime().toMillis();
+            this.size = attributes.size();
+            this.directory = attributes.isDirectory();
+        }
+
+        /**
+         * @return Le contenu d'un petit fichier, ou `null` pour un répertoire ou un fichier lu au fil de l'envoi.
+         */
+        byte[] prefetch() throws IOException {
+            return directory || size > MAX_PREFETCH_SIZE ? null : Files.readAllBytes(path);
+        }
+    }
+}
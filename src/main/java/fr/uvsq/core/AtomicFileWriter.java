@@ -0,0 +1,179 @@
+package fr.uvsq.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * La classe `AtomicFileWriter` écrit un fichier reçu par le réseau sans jamais exposer de fichier partiel.
+ *
+ * Les données sont écrites dans un fichier temporaire caché du même répertoire (`.<nom>.<aléa>.part`)
+ * tandis que leur empreinte est calculée au fil de l'eau. Le fichier n'est renommé vers sa destination,
+ * de façon atomique, qu'une fois l'empreinte vérifiée ; sinon il est supprimé.
+ * Un transfert interrompu ne laisse donc qu'un fichier temporaire, jamais listé ni servi.
+ *
+ * L'espace disque nécessaire est vérifié avant l'écriture, afin qu'un transfert voué à l'échec
+ * soit refusé d'emblée plutôt qu'après l'envoi d'une partie des données.
+ */
+public class AtomicFileWriter implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(AtomicFileWriter.class);
+    /** Suffixe des fichiers temporaires. */
+    public static final String TEMP_SUFFIX = ".part";
+
+    /**
+     * Politique de synchronisation sur disque lors de la validation d'un fichier.
+     */
+    public enum SyncPolicy {
+        /** Aucune synchronisation : le système écrit les données quand il le souhaite. */
+        NONE,
+        /** Les données du fichier sont écrites sur disque avant le renommage. */
+        DATA,
+        /** Les données et métadonnées du fichier, puis le répertoire après renommage, sont écrits sur disque. */
+        FULL
+    }
+
+    private final Path target;
+    private final Path temp;
+    private final FileChannel channel;
+    private final StreamDigest digest;
+    private final SyncPolicy syncPolicy;
+    private long size = 0;
+    private boolean finished = false;
+
+    /**
+     * Crée le fichier temporaire d'un fichier à recevoir.
+     *
+     * @param target       Le fichier de destination.
+     * @param expectedSize La taille annoncée, ou -1 si elle est inconnue.
+     * @param algorithm    L'algorithme d'empreinte (voir `StreamDigest`).
+     * @param syncPolicy   La politique de synchronisation sur disque.
+     * @throws IOException Si l'espace disque est insuffisant ou si le fichier temporaire ne peut pas être créé.
+     */
+    public AtomicFileWriter(Path target, long expectedSize, String algorithm, SyncPolicy syncPolicy) throws IOException {
+        this.target = target;
+        this.digest = StreamDigest.create(algorithm);
+        this.syncPolicy = syncPolicy;
+        Path directory = target.toAbsolutePath().getParent();
+        if (!Files.isDirectory(directory)) {
+            Files.createDirectories(directory);
+        }
+        if (expectedSize > 0 && Files.getFileStore(directory).getUsableSpace() < expectedSize) {
+            throw new IOException("Espace disque insuffisant pour " + target.getFileName() + " (" + expectedSize + " octets)");
+        }
+        this.temp = directory.resolve("." + target.getFileName() + "."
+                + Long.toHexString(ThreadLocalRandom.current().nextLong()) + TEMP_SUFFIX);
+        this.channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Indique si un nom de fichier désigne un fichier temporaire de `AtomicFileWriter`.
+     *
+     * @param fileName Le nom du fichier (sans répertoire).
+     * @return true pour un fichier temporaire.
+     */
+    public static boolean isTemporary(String fileName) {
+        return fileName.startsWith(".") && fileName.endsWith(TEMP_SUFFIX);
+    }
+
+    /**
+     * Écrit des octets reçus et les ajoute à l'empreinte.
+     *
+     * @param data   Les octets.
+     * @param offset La position du premier octet.
+     * @param length Le nombre d'octets.
+     * @throws IOException Si l'écriture échoue.
+     */
+    public void write(byte[] data, int offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(data, offset, length);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        digest.update(data, offset, length);
+        size += length;
+    }
+
+    /**
+     * @return Le nombre d'octets écrits.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Vérifie l'empreinte puis installe le fichier à sa destination, de façon atomique.
+     * En cas d'échec, le fichier temporaire est supprimé.
+     *
+     * @param expectedDigest L'empreinte annoncée par l'émetteur, en hexadécimal.
+     * @return L'empreinte calculée.
+     * @throws IOException Si l'empreinte ne correspond pas ou si le fichier ne peut pas être installé.
+     */
+    public String commit(String expectedDigest) throws IOException {
+        String actual = digest.toHex();
+        try {
+            if (!actual.equalsIgnoreCase(expectedDigest)) {
+                throw new IOException("Empreinte " + digest.getAlgorithm() + " invalide pour " + target.getFileName()
+                        + " (reçu " + actual + ", attendu " + expectedDigest + ")");
+            }
+            if (syncPolicy != SyncPolicy.NONE) {
+                channel.force(syncPolicy == SyncPolicy.FULL);
+            }
+            channel.close();
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            finished = true;
+            if (syncPolicy == SyncPolicy.FULL) {
+                syncDirectory(target.toAbsolutePath().getParent());
+            }
+            return actual;
+        } finally {
+            if (!finished) {
+                abort();
+            }
+        }
+    }
+
+    /**
+     * Abandonne l'écriture et supprime le fichier temporaire.
+     */
+    public void abort() {
+        finished = true;
+        try {
+            channel.close();
+            Files.deleteIfExists(temp);
+        } catch (IOException e) {
+            logger.warn("Cannot delete temporary file {}: {}", temp, e.getMessage());
+        }
+    }
+
+    /**
+     * Abandonne l'écriture si elle n'a pas été validée.
+     */
+    @Override
+    public void close() {
+        if (!finished) {
+            abort();
+        }
+    }
+
+    private static void syncDirectory(Path directory) {
+        // L'entrée de répertoire créée par le renommage est rendue durable (sans effet sur certains systèmes).
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            logger.debug("Cannot sync directory {}: {}", directory, e.getMessage());
+        }
+    }
+}
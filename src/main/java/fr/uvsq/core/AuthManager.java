@@ -1,19 +1,95 @@
 package fr.uvsq.core;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 /**
  * La classe `AuthManager` gère l'authentification des clients.
  * Elle vérifie si les identifiants (login et mot de passe) fournis par le client sont corrects.
- * Cette classe implémente une authentification simple, avec des identifiants codés en dur.
+ *
+ * Les identifiants proviennent d'un `CredentialStore` et sont comparés à des empreintes salées et lentes
+ * (`PasswordHasher`). Pour que ce calcul coûteux ne puisse pas saturer le serveur, il est effectué sur un
+ * pool dédié de taille fixe avec une file bornée, après un contrôle de débit par adresse et par login
+ * (`AuthThrottle`). Une même instance doit donc être partagée par toutes les sessions du serveur.
  */
 public class AuthManager {
-    // Identifiants valides codés en dur (simples pour ce projet)
-    // Dans une application réelle, ces identifiants ne devraient pas être codés en dur.
-    private static final String VALID_LOGIN = "admin";
-    private static final String VALID_PASSWORD = "password123";
+    private static final Logger logger = LoggerFactory.getLogger(AuthManager.class);
+    private static final int VERIFIER_THREADS = 2;
+    private static final int VERIFIER_QUEUE_SIZE = 32;
+    private static final int VERIFY_TIMEOUT_SECONDS = 5;
+    // Empreinte factice vérifiée pour les logins inconnus, afin que leur temps de réponse soit identique.
+    // Calculée une fois pour toutes (voir `PasswordHasher.main`) pour ne pas ralentir le démarrage du serveur.
+    private static final String UNKNOWN_LOGIN_HASH =
+            "pbkdf2-sha256$120000$u5FLPVfQgF/mZHS7IDr1cQ==$TpcDZNC5E109N+MubKqsZnIu1sGbBhdV37IKsE+fGFY=";
+
+    /**
+     * Résultat d'une tentative d'authentification.
+     */
+    public enum Result {
+        /** Les identifiants sont corrects. */
+        SUCCESS,
+        /** Les identifiants sont incorrects. */
+        FAILURE,
+        /** La tentative a été rejetée sans vérification (débit dépassé, adresse bannie ou vérificateurs saturés). */
+        THROTTLED
+    }
+
+    private final CredentialStore credentialStore;
+    private final AuthThrottle throttle = new AuthThrottle();
+    private final ThreadPoolExecutor verifiers = new ThreadPoolExecutor(
+            VERIFIER_THREADS, VERIFIER_THREADS, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(VERIFIER_QUEUE_SIZE),
+            new DaemonThreadFactory("auth-verify"),
+            new ThreadPoolExecutor.AbortPolicy());
+    private volatile Set<String> trustedAddresses = Set.of();
+
+    /**
+     * Constructeur de `AuthManager` utilisant le compte de démonstration `admin/password123`.
+     */
+    public AuthManager() {
+        this(InMemoryCredentialStore.withDemoAccount());
+    }
+
+    /**
+     * Constructeur de `AuthManager`.
+     *
+     * @param credentialStore Le magasin d'identifiants à utiliser.
+     */
+    public AuthManager(CredentialStore credentialStore) {
+        this.credentialStore = credentialStore;
+    }
+
+    /**
+     * Dispense des adresses de la limitation de débit et du bannissement : leurs tentatives sont toujours
+     * vérifiées. Destiné aux passerelles, qui authentifient chaque connexion avec un même compte de service.
+     *
+     * @param addresses Les adresses IP de confiance.
+     */
+    public void setTrustedAddresses(Set<String> addresses) {
+        this.trustedAddresses = Set.copyOf(addresses);
+    }
+
+    /**
+     * @param address Une adresse IP.
+     * @return true si l'adresse est de confiance (passerelle, voir `setTrustedAddresses`).
+     */
+    public boolean isTrusted(String address) {
+        return trustedAddresses.contains(address);
+    }
 
     /**
      * Vérifie si le login et le mot de passe fournis par le client sont corrects.
-     * Cette méthode compare les identifiants reçus avec les identifiants valides stockés dans la classe.
+     * Cette méthode ne subit aucune limitation de débit ; les sessions réseau doivent utiliser
+     * {@link #authenticate(String, String, String)}.
      *
      * @param login    Le login envoyé par le client.
      * @param password Le mot de passe envoyé par le client.
@@ -21,10 +97,92 @@ public class AuthManager {
      *         Retourne également `false` si le login ou le mot de passe est `null`.
      */
     public boolean authenticate(String login, String password) {
-        // Compare le login et le mot de passe avec les valeurs valides
         if (login == null || password == null) {
             return false; // Si l'un des deux est vide (null), on refuse l'authentification
         }
-        return login.equals(VALID_LOGIN) && password.equals(VALID_PASSWORD);
+        String hash = credentialStore.findPasswordHash(login);
+        if (hash == null) {
+            PasswordHasher.verify(password, UNKNOWN_LOGIN_HASH);
+            return false;
+        }
+        return PasswordHasher.verify(password, hash);
+    }
+
+    /**
+     * Authentifie un client distant en appliquant la limitation de débit.
+     * La vérification est exécutée sur le pool dédié ; si celui-ci est saturé, la tentative
+     * est rejetée immédiatement plutôt que mise en attente.
+     *
+     * @param address  L'adresse IP du client.
+     * @param login    Le login envoyé par le client.
+     * @param password Le mot de passe envoyé par le client.
+     * @return Le résultat de la tentative.
+     */
+    public Result authenticate(String address, String login, String password) {
+        boolean trusted = trustedAddresses.contains(address);
+        if (login == null || password == null) {
+            if (!trusted) {
+                throttle.recordFailure(address);
+            }
+            return Result.FAILURE;
+        }
+        if (!trusted && !throttle.tryAcquire(address, login)) {
+            logger.warn("Authentication attempt from {} for '{}' throttled", address, login);
+            return Result.THROTTLED;
+        }
+
+        Future<Boolean> verification;
+        try {
+            verification = verifiers.submit(() -> authenticate(login, password));
+        } catch (RejectedExecutionException e) {
+            logger.warn("Authentication verifiers saturated, rejecting {}", address);
+            return Result.THROTTLED;
+        }
+
+        try {
+            if (verification.get(VERIFY_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                if (!trusted) {
+                    throttle.recordSuccess(address, login);
+                }
+                return Result.SUCCESS;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            verification.cancel(true);
+            return Result.THROTTLED;
+        } catch (TimeoutException e) {
+            verification.cancel(true);
+            logger.warn("Authentication of {} timed out", address);
+            return Result.THROTTLED;
+        } catch (ExecutionException e) {
+            logger.error("Authentication error: {}", e.getCause().getMessage(), e.getCause());
+        }
+        if (!trusted) {
+            throttle.recordFailure(address);
+        }
+        return Result.FAILURE;
+    }
+
+    /**
+     * Indique si une nouvelle connexion peut être acceptée : elle est refusée, avant toute poignée de main TLS
+     * et tout thread, si l'adresse est bannie ou a déjà épuisé son débit de tentatives (ce refus compte alors
+     * comme un échec). Les adresses de confiance sont toujours acceptées.
+     *
+     * @param address L'adresse IP du client.
+     * @return true si la connexion peut être acceptée.
+     */
+    public boolean admitConnection(String address) {
+        return trustedAddresses.contains(address) || throttle.admitConnection(address);
+    }
+
+    /**
+     * Indique si une adresse est bannie suite à des échecs répétés.
+     * Permet de refuser une connexion avant toute poignée de main TLS et tout thread de session.
+     *
+     * @param address L'adresse IP du client.
+     * @return true si la connexion doit être refusée.
+     */
+    public boolean isBanned(String address) {
+        return throttle.isBanned(address);
     }
-}
\ No newline at end of file
+}
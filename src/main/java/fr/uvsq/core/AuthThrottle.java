@@ -0,0 +1,167 @@
+package fr.uvsq.core;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * La classe `AuthThrottle` limite le débit des tentatives d'authentification.
+ *
+ * Deux seaux à jetons sont tenus à jour : un par adresse IP et un par login. Une tentative
+ * n'est examinée que si les deux seaux contiennent un jeton, ce qui borne aussi bien une
+ * attaque depuis une source unique qu'une attaque distribuée sur un même compte.
+ * Le seau d'un login ne s'applique pas aux adresses depuis lesquelles ce login s'est déjà authentifié
+ * (pendant `KNOWN_ADDRESS_MILLIS`) : sans cela, quelques mauvais mots de passe par minute depuis n'importe
+ * quelle adresse suffiraient à empêcher indéfiniment l'utilisateur légitime de se connecter.
+ * Seule la limite par adresse s'applique alors à ces tentatives.
+ * Une adresse qui accumule trop d'échecs consécutifs est bannie pour une durée fixe ;
+ * ce résultat négatif est mis en cache et consulté avant même l'attribution d'un thread.
+ * Une tentative rejetée pour débit dépassé compte comme un échec : une source qui insiste malgré la
+ * limitation finit bannie.
+ */
+public class AuthThrottle {
+    // Une adresse peut tenter 5 authentifications d'affilée, puis 10 par minute.
+    private static final int ADDRESS_BURST = 5;
+    private static final double ADDRESS_REFILL_PER_SECOND = 10 / 60d;
+    // Un login peut être essayé 5 fois d'affilée, puis 5 fois par minute.
+    private static final int LOGIN_BURST = 5;
+    private static final double LOGIN_REFILL_PER_SECOND = 5 / 60d;
+    private static final int MAX_FAILURES_BEFORE_BAN = 20;
+    private static final long BAN_MILLIS = 15 * 60 * 1000L;
+    // Durée pendant laquelle une adresse reste connue pour un login après une authentification réussie.
+    private static final long KNOWN_ADDRESS_MILLIS = 30L * 24 * 60 * 60 * 1000;
+    // Au-delà de ce nombre d'entrées suivies, les entrées inutiles sont purgées.
+    private static final int MAX_TRACKED_ENTRIES = 10_000;
+
+    private final Map<String, TokenBucket> addressBuckets = new ConcurrentHashMap<>();
+    private final Map<String, TokenBucket> loginBuckets = new ConcurrentHashMap<>();
+    private final Map<String, Integer> failures = new ConcurrentHashMap<>();
+    private final Map<String, Long> bannedUntil = new ConcurrentHashMap<>();
+    // Dernière authentification réussie par couple (login, adresse).
+    private final Map<String, Long> knownAddresses = new ConcurrentHashMap<>();
+
+    /**
+     * Indique si une adresse est actuellement bannie.
+     * Cette vérification est peu coûteuse et peut être faite dès l'acceptation de la connexion.
+     *
+     * @param address L'adresse IP du client.
+     * @return true si l'adresse est bannie.
+     */
+    public boolean isBanned(String address) {
+        Long until = bannedUntil.get(address);
+        if (until == null) {
+            return false;
+        }
+        if (until <= System.currentTimeMillis()) {
+            bannedUntil.remove(address, until);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Indique si une nouvelle connexion de cette adresse peut être acceptée, avant la poignée de main TLS.
+     * Elle est refusée si l'adresse est bannie, ou si son seau est vide : sa tentative serait de toute façon
+     * rejetée. Ce refus compte alors comme un échec. Le seau n'est pas consommé.
+     *
+     * @param address L'adresse IP du client.
+     * @return true si la connexion peut être acceptée.
+     */
+    public boolean admitConnection(String address) {
+        if (isBanned(address)) {
+            return false;
+        }
+        TokenBucket addressBucket = addressBuckets.get(address);
+        if (addressBucket != null && addressBucket.nanosUntilAvailable(1) > 0) {
+            recordFailure(address);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Réserve le droit d'effectuer une tentative d'authentification. Une tentative rejetée pour débit
+     * dépassé compte comme un échec de l'adresse.
+     *
+     * @param address L'adresse IP du client.
+     * @param login   Le login proposé.
+     * @return true si la tentative peut être examinée, false si elle doit être rejetée sans vérification.
+     */
+    public boolean tryAcquire(String address, String login) {
+        if (isBanned(address)) {
+            return false;
+        }
+        purgeIfNeeded();
+        TokenBucket addressBucket = addressBuckets.computeIfAbsent(address,
+                key -> new TokenBucket(ADDRESS_BURST, ADDRESS_REFILL_PER_SECOND));
+        if (!addressBucket.tryConsume(1)) {
+            recordFailure(address);
+            return false;
+        }
+        if (isKnownAddress(address, login)) {
+            return true;
+        }
+        TokenBucket loginBucket = loginBuckets.computeIfAbsent(login,
+                key -> new TokenBucket(LOGIN_BURST, LOGIN_REFILL_PER_SECOND));
+        if (!loginBucket.tryConsume(1)) {
+            recordFailure(address);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Enregistre un échec d'authentification ; l'adresse est bannie après trop d'échecs consécutifs.
+     *
+     * @param address L'adresse IP du client.
+     */
+    public void recordFailure(String address) {
+        int count = failures.merge(address, 1, Integer::sum);
+        if (count >= MAX_FAILURES_BEFORE_BAN) {
+            bannedUntil.put(address, System.currentTimeMillis() + BAN_MILLIS);
+            failures.remove(address);
+        }
+    }
+
+    /**
+     * Enregistre une authentification réussie, ce qui remet à zéro le compteur d'échecs de l'adresse
+     * et dispense désormais cette adresse du seau de ce login.
+     *
+     * @param address L'adresse IP du client.
+     * @param login   Le login authentifié.
+     */
+    public void recordSuccess(String address, String login) {
+        failures.remove(address);
+        knownAddresses.put(knownAddressKey(address, login), System.currentTimeMillis());
+    }
+
+    private boolean isKnownAddress(String address, String login) {
+        Long lastSuccess = knownAddresses.get(knownAddressKey(address, login));
+        return lastSuccess != null && System.currentTimeMillis() - lastSuccess < KNOWN_ADDRESS_MILLIS;
+    }
+
+    private static String knownAddressKey(String address, String login) {
+        // Le caractère nul ne peut figurer ni dans une adresse ni dans un login lu sur une ligne du protocole.
+        return login + '\0' + address;
+    }
+
+    /**
+     * Purge les seaux pleins (inutilisés depuis longtemps) et les bannissements expirés,
+     * afin qu'une attaque utilisant de nombreuses adresses ou logins n'épuise pas la mémoire.
+     */
+    private void purgeIfNeeded() {
+        if (addressBuckets.size() + loginBuckets.size() + bannedUntil.size() + knownAddresses.size() < MAX_TRACKED_ENTRIES) {
+            return;
+        }
+        addressBuckets.values().removeIf(TokenBucket::isFull);
+        loginBuckets.values().removeIf(TokenBucket::isFull);
+        long now = System.currentTimeMillis();
+        bannedUntil.values().removeIf(until -> until <= now);
+        knownAddresses.values().removeIf(lastSuccess -> now - lastSuccess >= KNOWN_ADDRESS_MILLIS);
+        if (knownAddresses.size() >= MAX_TRACKED_ENTRIES) {
+            knownAddresses.clear();
+        }
+        if (failures.size() >= MAX_TRACKED_ENTRIES) {
+            failures.clear();
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package fr.uvsq.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.Cleaner;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * La classe `BufferPool` est une réserve partagée de tampons d'octets pour les entrées/sorties
+ * du protocole et les transferts de fichiers.
+ *
+ * Allouer un tableau de 64 Ko à chaque transfert ou à chaque session remplit la jeune génération
+ * et multiplie les pauses du ramasse-miettes sous charge. Les tampons sont donc rangés par classe
+ * de taille (4 Ko, 16 Ko, 64 Ko) et réutilisés : un tampon emprunté avec `acquire` doit être rendu
+ * avec `Buffer.close`, de préférence dans un `try`-with-resources. Au-delà de la plus grande classe,
+ * le tampon est alloué à la demande et n'est pas conservé.
+ *
+ * Détection des fuites : un tampon emprunté puis abandonné sans être rendu est signalé dans les logs
+ * lorsque le ramasse-miettes le récupère. Avec la propriété système `fr.uvsq.buffers.trace=true`,
+ * la pile d'appels de l'emprunt est jointe au signalement (coûteux, réservé au diagnostic).
+ * Rendre deux fois le même tampon lève une `IllegalStateException`.
+ */
+public final class BufferPool {
+    private static final Logger logger = LoggerFactory.getLogger(BufferPool.class);
+    private static final Cleaner cleaner = Cleaner.create(new DaemonThreadFactory("buffer-leaks"));
+    private static final boolean TRACE = Boolean.getBoolean("fr.uvsq.buffers.trace");
+    private static final int[] CLASS_SIZES = {4 * 1024, 16 * 1024, 64 * 1024};
+    private static final BufferPool SHARED = new BufferPool(64);
+
+    private final SizeClass[] classes = new SizeClass[CLASS_SIZES.length];
+    private final AtomicLong acquisitions = new AtomicLong();
+    private final AtomicLong allocatedBytes = new AtomicLong();
+    private final AtomicLong leaks = new AtomicLong();
+
+    /**
+     * Constructeur de `BufferPool`.
+     *
+     * @param maxIdlePerClass Le nombre maximal de tampons conservés dans chaque classe de taille.
+     */
+    public BufferPool(int maxIdlePerClass) {
+        if (maxIdlePerClass < 0) {
+            throw new IllegalArgumentException("Nombre de tampons invalide : " + maxIdlePerClass);
+        }
+        for (int i = 0; i < CLASS_SIZES.length; i++) {
+            classes[i] = new SizeClass(CLASS_SIZES[i], maxIdlePerClass);
+        }
+    }
+
+    /**
+     * @return La réserve partagée par le serveur, le client et la passerelle.
+     */
+    public static BufferPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * Emprunte un tampon d'au moins `capacity` octets. Son contenu initial est indéterminé.
+     *
+     * @param capacity La taille minimale du tampon.
+     * @return Le tampon, à rendre avec `close`.
+     */
+    public Buffer acquire(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Taille de tampon invalide : " + capacity);
+        }
+        acquisitions.incrementAndGet();
+        for (SizeClass sizeClass : classes) {
+            if (capacity <= sizeClass.size) {
+                Buffer buffer = sizeClass.take();
+                buffer.lease.acquired(TRACE ? new Throwable("Emprunt du tampon") : null);
+                return buffer;
+            }
+        }
+        allocatedBytes.addAndGet(capacity);
+        Buffer buffer = new Buffer(new byte[capacity], null);
+        buffer.lease.acquired(null);
+        return buffer;
+    }
+
+    /**
+     * @return Le nombre d'emprunts depuis la création de la réserve.
+     */
+    public long getAcquisitions() {
+        return acquisitions.get();
+    }
+
+    /**
+     * @return Le nombre total d'octets alloués par la réserve (tampons créés, pas réutilisés).
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+
+    /**
+     * @return Le nombre de tampons empruntés actuellement et pas encore rendus.
+     */
+    public int getInUse() {
+        int inUse = 0;
+        for (SizeClass sizeClass : classes) {
+            inUse += sizeClass.inUse();
+        }
+        return inUse;
+    }
+
+    /**
+     * @return Le nombre de tampons abandonnés sans avoir été rendus.
+     */
+    public long getLeaks() {
+        return leaks.get();
+    }
+
+    /**
+     * Classe de taille : une pile de tampons libres de même taille.
+     */
+    private final class SizeClass {
+        private final int size;
+        private final Buffer[] idle;
+        private int idleCount = 0;
+        private int created = 0;
+
+        private SizeClass(int size, int maxIdle) {
+            this.size = size;
+            this.idle = new Buffer[maxIdle];
+        }
+
+        private Buffer take() {
+            synchronized (this) {
+                if (idleCount > 0) {
+                    Buffer buffer = idle[--idleCount];
+                    idle[idleCount] = null;
+                    return buffer;
+                }
+                created++;
+            }
+            allocatedBytes.addAndGet(size);
+            Buffer buffer = new Buffer(new byte[size], this);
+            buffer.cleanable = cleaner.register(buffer, buffer.lease);
+            return buffer;
+        }
+
+        private void give(Buffer buffer) {
+            synchronized (this) {
+                if (idleCount < idle.length) {
+                    idle[idleCount++] = buffer;
+                    return;
+                }
+                created--;
+            }
+            // Réserve pleine : le tampon est abandonné volontairement, ce n'est pas une fuite.
+            buffer.cleanable.clean();
+        }
+
+        /**
+         * Retire du compte un tampon abandonné sans avoir été rendu.
+         */
+        private synchronized void leaked() {
+            created--;
+        }
+
+        private synchronized int inUse() {
+            return created - idleCount;
+        }
+    }
+
+    /**
+     * État d'emprunt d'un tampon, consulté lorsque le ramasse-miettes le récupère.
+     * Il ne référence pas le tampon, faute de quoi celui-ci ne serait jamais récupéré.
+     */
+    private final class Lease implements Runnable {
+        private final int size;
+        // Classe de taille du tampon, ou `null` pour un tampon hors classe.
+        private final SizeClass sizeClass;
+        private volatile boolean leased = false;
+        private volatile Throwable origin;
+
+        private Lease(int size, SizeClass sizeClass) {
+            this.size = size;
+            this.sizeClass = sizeClass;
+        }
+
+        private void acquired(Throwable origin) {
+            this.origin = origin;
+            leased = true;
+        }
+
+        @Override
+        public void run() {
+            if (leased) {
+                leaks.incrementAndGet();
+                // Le tampon ne reviendra pas : il ne doit plus être compté comme emprunté.
+                if (sizeClass != null) {
+                    sizeClass.leaked();
+                }
+                if (origin != null) {
+                    logger.warn("Buffer of {} bytes was never released", size, origin);
+                } else {
+                    logger.warn("Buffer of {} bytes was never released (use -Dfr.uvsq.buffers.trace=true to find where it was acquired)", size);
+                }
+            }
+        }
+    }
+
+    /**
+     * Tampon emprunté à la réserve.
+     */
+    public final class Buffer implements AutoCloseable {
+        private final byte[] array;
+        private final SizeClass sizeClass;
+        private final Lease lease;
+        private Cleaner.Cleanable cleanable;
+
+        private Buffer(byte[] array, SizeClass sizeClass) {
+            this.array = array;
+            this.sizeClass = sizeClass;
+            this.lease = new Lease(array.length, sizeClass);
+        }
+
+        /**
+         * @return Le tableau d'octets, à ne plus utiliser une fois le tampon rendu.
+         */
+        public byte[] array() {
+            return array;
+        }
+
+        /**
+         * Rend le tampon à la réserve.
+         *
+         * @throws IllegalStateException Si le tampon a déjà été rendu.
+         */
+        @Override
+        public void close() {
+            if (!lease.leased) {
+                throw new IllegalStateException("Tampon de " + array.length + " octets déjà rendu");
+            }
+            lease.leased = false;
+            lease.origin = null;
+            if (sizeClass != null) {
+                sizeClass.give(this);
+            }
+        }
+    }
+}
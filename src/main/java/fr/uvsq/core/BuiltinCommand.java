@@ -0,0 +1,34 @@
+package fr.uvsq.core;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * L'interface `BuiltinCommand` représente une commande exécutée directement dans la JVM,
+ * sans lancer de processus, par le `CommandProcessor`.
+ *
+ * Une commande intégrée doit produire exactement la même sortie que la commande système
+ * qu'elle remplace. Lorsqu'elle ne sait pas reproduire un cas (option non gérée, fichier
+ * absent dont le message d'erreur dépend du système...), elle retourne {@link #FALLBACK}
+ * <em>avant d'avoir écrit la moindre ligne</em> et la commande est confiée au shell.
+ *
+ * Une commande intégrée est soumise au délai d'exécution du `CommandProcessor` : elle est interrompue
+ * par une exception du destinataire `out`, qu'elle doit laisser se propager. Une commande qui peut
+ * travailler longtemps sans rien écrire n'est donc pas interruptible et doit être laissée au shell.
+ */
+@FunctionalInterface
+public interface BuiltinCommand {
+    /** Valeur de retour indiquant que la commande doit être exécutée par le shell. */
+    int FALLBACK = Integer.MIN_VALUE;
+
+    /**
+     * Exécute la commande.
+     *
+     * @param args Les arguments de la commande (sans le nom de la commande).
+     * @param out  Le destinataire de la sortie standard.
+     * @param err  Le destinataire de la sortie d'erreur.
+     * @return Le code de sortie de la commande, ou {@link #FALLBACK}.
+     * @throws IOException Si l'un des destinataires échoue.
+     */
+    int run(List<String> args, CommandProcessor.LineSink out, CommandProcessor.LineSink err) throws IOException;
+}
@@ -0,0 +1,558 @@
+package fr.uvsq.core;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.GroupPrincipal;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * La classe `BuiltinCommands` est la table des commandes intégrées du `CommandProcessor`.
+ *
+ * Les commandes les plus fréquemment interrogées (`pwd`, `echo`, `ls`, `cat`, `stat -c`, `df`) sont
+ * servies directement avec les API NIO (`Files`, `FileStore`), sans `ProcessBuilder` ni `sh -c`.
+ * Leur sortie reproduit celle des outils GNU coreutils ; tout cas non reproduit à l'identique
+ * (option inconnue, caractère spécial du shell, fichier introuvable...) est renvoyé au shell.
+ *
+ * La table est extensible : {@link #register(String, BuiltinCommand)} permet d'ajouter des commandes.
+ */
+public class BuiltinCommands {
+    // Tout caractère interprété par le shell (redirection, variable, joker, guillemets...) impose le shell.
+    private static final String SHELL_METACHARACTERS = "|&;<>()$`\\\"'*?[]{}#~=!\n\r";
+    private static final String STAT_SPECIFIERS = "nsYXZaAFUGughi%";
+    private static final String[] HUMAN_UNITS = {"K", "M", "G", "T", "P", "E"};
+    private static final BuiltinCommands defaultCommands = createDefaults();
+
+    private final Map<String, BuiltinCommand> commands = new ConcurrentHashMap<>();
+
+    /**
+     * @return La table partagée, contenant les commandes intégrées standard.
+     */
+    public static BuiltinCommands getDefault() {
+        return defaultCommands;
+    }
+
+    /**
+     * Enregistre (ou remplace) une commande intégrée.
+     *
+     * @param name    Le nom de la commande, tel que tapé par l'utilisateur.
+     * @param command L'implémentation de la commande.
+     */
+    public void register(String name, BuiltinCommand command) {
+        commands.put(name, command);
+    }
+
+    /**
+     * Retire une commande intégrée ; elle sera de nouveau exécutée par le shell.
+     *
+     * @param name Le nom de la commande.
+     */
+    public void unregister(String name) {
+        commands.remove(name);
+    }
+
+    /**
+     * Recherche la commande intégrée correspondant à une ligne de commande.
+     *
+     * @param commandLine La ligne de commande complète.
+     * @return La commande, ou `null` si la ligne doit être confiée au shell.
+     */
+    public BuiltinCommand find(String commandLine) {
+        List<String> words = tokenize(commandLine);
+        return words == null ? null : commands.get(words.get(0));
+    }
+
+    /**
+     * Découpe une ligne de commande simple en mots.
+     *
+     * @param commandLine La ligne de commande.
+     * @return Les mots de la commande, ou `null` si la ligne est vide ou contient un caractère
+     *         spécial du shell (elle ne peut alors pas être interprétée sans lui).
+     */
+    public static List<String> tokenize(String commandLine) {
+        List<String> words = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < commandLine.length(); i++) {
+            char c = commandLine.charAt(i);
+            if (SHELL_METACHARACTERS.indexOf(c) >= 0) {
+                return null;
+            }
+            if (c == ' ' || c == '\t') {
+                if (word.length() > 0) {
+                    words.add(word.toString());
+                    word.setLength(0);
+                }
+            } else {
+                word.append(c);
+            }
+        }
+        if (word.length() > 0) {
+            words.add(word.toString());
+        }
+        return words.isEmpty() ? null : words;
+    }
+
+    private static BuiltinCommands createDefaults() {
+        BuiltinCommands builtins = new BuiltinCommands();
+        if (System.getProperty("os.name").toLowerCase().contains("win")) {
+            // Les formats reproduits sont ceux des outils GNU ; sous Windows, cmd.exe reste utilisé.
+            return builtins;
+        }
+        builtins.register("pwd", BuiltinCommands::pwd);
+        builtins.register("echo", BuiltinCommands::echo);
+        builtins.register("ls", BuiltinCommands::ls);
+        builtins.register("cat", BuiltinCommands::cat);
+        builtins.register("stat", BuiltinCommands::stat);
+        builtins.register("df", BuiltinCommands::df);
+        return builtins;
+    }
+
+    /**
+     * `pwd` : affiche le répertoire de travail, qui est celui du serveur.
+     */
+    private static int pwd(List<String> args, CommandProcessor.LineSink out, CommandProcessor.LineSink err) throws IOException {
+        if (!args.isEmpty()) {
+            return BuiltinCommand.FALLBACK;
+        }
+        out.accept(Paths.get("").toAbsolutePath().toString());
+        return 0;
+    }
+
+    /**
+     * `echo` : affiche ses arguments séparés par une espace. Les options (`-n`, `-e`) sont laissées au shell.
+     */
+    private static int echo(List<String> args, CommandProcessor.LineSink out, CommandProcessor.LineSink err) throws IOException {
+        if (!args.isEmpty() && args.get(0).startsWith("-")) {
+            return BuiltinCommand.FALLBACK;
+        }
+        out.accept(String.join(" ", args));
+        return 0;
+    }
+
+    /**
+     * `ls [-a|-A|-1] [chemin...]` : liste un fichier par ligne, comme `ls` lorsque sa sortie n'est pas un terminal.
+     * Les noms sont triés par octets, ce qui n'est identique à `ls` qu'avec la collation C.
+     */
+    private static int ls(List<String> args, CommandProcessor.LineSink out, CommandProcessor.LineSink err) throws IOException {
+        if (!isCCollation()) {
+            return BuiltinCommand.FALLBACK;
+        }
+        boolean all = false;
+        boolean almostAll = false;
+        List<String> operands = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("-") && arg.length() > 1) {
+                for (char option : arg.substring(1).toCharArray()) {
+                    switch (option) {
+                        case 'a' -> all = true;
+                        case 'A' -> almostAll = true;
+                        case '1' -> { }
+                        default -> {
+                            return BuiltinCommand.FALLBACK;
+                        }
+                    }
+                }
+            } else {
+                operands.add(arg);
+            }
+        }
+        if (operands.isEmpty()) {
+            operands.add(".");
+        }
+
+        List<String> files = new ArrayList<>();
+        List<String> directories = new ArrayList<>();
+        for (String operand : operands) {
+            Path path = Paths.get(operand);
+            if (!Files.exists(path)) {
+                return BuiltinCommand.FALLBACK;
+            }
+            (Files.isDirectory(path) ? directories : files).add(operand);
+        }
+        Collections.sort(files);
+        Collections.sort(directories);
+
+        // Les répertoires sont lus avant toute écriture, pour pouvoir encore se replier sur le shell.
+        List<List<String>> listings = new ArrayList<>();
+        for (String directory : directories) {
+            List<String> names = new ArrayList<>();
+            if (all) {
+                names.add(".");
+                names.add("..");
+            }
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(Paths.get(directory))) {
+                for (Path entry : entries) {
+                    String name = entry.getFileName().toString();
+                    if (all || almostAll || !name.startsWith(".")) {
+                        names.add(name);
+                    }
+                }
+            } catch (IOException e) {
+                return BuiltinCommand.FALLBACK;
+            }
+            Collections.sort(names);
+            listings.add(names);
+        }
+
+        for (String file : files) {
+            out.accept(file);
+        }
+        boolean separator = !files.isEmpty();
+        for (int i = 0; i < directories.size(); i++) {
+            if (separator) {
+                out.accept("");
+            }
+            separator = true;
+            if (operands.size() > 1) {
+                out.accept(directories.get(i) + ":");
+            }
+            for (String name : listings.get(i)) {
+                out.accept(name);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * `cat fichier...` : concatène des fichiers réguliers. La lecture de l'entrée standard et les options sont laissées au shell.
+     */
+    private static int cat(List<String> args, CommandProcessor.LineSink out, CommandProcessor.LineSink err) throws IOException {
+        if (args.isEmpty()) {
+            return BuiltinCommand.FALLBACK;
+        }
+        for (String arg : args) {
+            Path path = Paths.get(arg);
+            if (arg.startsWith("-") || !Files.isRegularFile(path) || !Files.isReadable(path)) {
+                return BuiltinCommand.FALLBACK;
+            }
+        }
+
+        List<InputStream> streams = new ArrayList<>();
+        try {
+            for (String arg : args) {
+                streams.add(Files.newInputStream(Paths.get(arg)));
+            }
+        } catch (IOException e) {
+            closeAll(streams);
+            return BuiltinCommand.FALLBACK;
+        }
+        // Les fichiers sont lus comme un flux unique : une dernière ligne sans saut de ligne
+        // est collée à la première ligne du fichier suivant, exactement comme avec `cat`.
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new SequenceInputStream(Collections.enumeration(streams)), StandardCharsets.UTF_8))) {
+            while (true) {
+                String line;
+                try {
+                    line = reader.readLine();
+                } catch (IOException e) {
+                    err.accept("cat: " + e.getMessage());
+                    return 1;
+                }
+                if (line == null) {
+                    return 0;
+                }
+                out.accept(line);
+            }
+        } finally {
+            closeAll(streams);
+        }
+    }
+
+    /**
+     * `stat -c FORMAT fichier...` : affiche les attributs demandés, sans suivre les liens symboliques.
+     * Le format par défaut de `stat`, plus verbeux, est laissé au shell.
+     */
+    private static int stat(List<String> args, CommandProcessor.LineSink out, CommandProcessor.LineSink err) throws IOException {
+        if (args.size() < 3 || !"-c".equals(args.get(0))) {
+            return BuiltinCommand.FALLBACK;
+        }
+        String format = args.get(1);
+        for (int i = 0; i < format.length(); i++) {
+            if (format.charAt(i) == '%') {
+                if (++i >= format.length() || STAT_SPECIFIERS.indexOf(format.charAt(i)) < 0) {
+                    return BuiltinCommand.FALLBACK;
+                }
+            }
+        }
+
+        List<String> lines = new ArrayList<>();
+        for (String name : args.subList(2, args.size())) {
+            Map<String, Object> attributes;
+            try {
+                attributes = Files.readAttributes(Paths.get(name), "unix:*", LinkOption.NOFOLLOW_LINKS);
+            } catch (IOException | UnsupportedOperationException e) {
+                return BuiltinCommand.FALLBACK;
+            }
+            lines.add(formatStat(format, name, attributes));
+        }
+        for (String line : lines) {
+            out.accept(line);
+        }
+        return 0;
+    }
+
+    private static String formatStat(String format, String name, Map<String, Object> attributes) {
+        int mode = (Integer) attributes.get("mode");
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < format.length(); i++) {
+            char c = format.charAt(i);
+            if (c != '%') {
+                line.append(c);
+                continue;
+            }
+            switch (format.charAt(++i)) {
+                case 'n' -> line.append(name);
+                case 's' -> line.append(attributes.get("size"));
+                case 'Y' -> line.append(((FileTime) attributes.get("lastModifiedTime")).to(TimeUnit.SECONDS));
+                case 'X' -> line.append(((FileTime) attributes.get("lastAccessTime")).to(TimeUnit.SECONDS));
+                case 'Z' -> line.append(((FileTime) attributes.get("ctime")).to(TimeUnit.SECONDS));
+                case 'a' -> line.append(Integer.toOctalString(mode & 07777));
+                case 'A' -> line.append(permissionString(mode));
+                case 'F' -> line.append(fileType(mode, (Long) attributes.get("size")));
+                case 'U' -> line.append(((UserPrincipal) attributes.get("owner")).getName());
+                case 'G' -> line.append(((GroupPrincipal) attributes.get("group")).getName());
+                case 'u' -> line.append(attributes.get("uid"));
+                case 'g' -> line.append(attributes.get("gid"));
+                case 'h' -> line.append(attributes.get("nlink"));
+                case 'i' -> line.append(attributes.get("ino"));
+                default -> line.append('%');
+            }
+        }
+        return line.toString();
+    }
+
+    private static String fileType(int mode, long size) {
+        return switch (mode & 0170000) {
+            case 0100000 -> size == 0 ? "regular empty file" : "regular file";
+            case 0040000 -> "directory";
+            case 0120000 -> "symbolic link";
+            case 0010000 -> "fifo";
+            case 0140000 -> "socket";
+            case 0020000 -> "character special file";
+            case 0060000 -> "block special file";
+            default -> "weird file";
+        };
+    }
+
+    private static String permissionString(int mode) {
+        char type = switch (mode & 0170000) {
+            case 0040000 -> 'd';
+            case 0120000 -> 'l';
+            case 0010000 -> 'p';
+            case 0140000 -> 's';
+            case 0020000 -> 'c';
+            case 0060000 -> 'b';
+            default -> '-';
+        };
+        char[] chars = {type, '-', '-', '-', '-', '-', '-', '-', '-', '-'};
+        String letters = "rwxrwxrwx";
+        for (int bit = 0; bit < 9; bit++) {
+            if ((mode & (0400 >> bit)) != 0) {
+                chars[bit + 1] = letters.charAt(bit);
+            }
+        }
+        chars[3] = special(mode & 04000, chars[3], 's');
+        chars[6] = special(mode & 02000, chars[6], 's');
+        chars[9] = special(mode & 01000, chars[9], 't');
+        return new String(chars);
+    }
+
+    private static char special(int bit, char current, char letter) {
+        if (bit == 0) {
+            return current;
+        }
+        return current == 'x' ? letter : Character.toUpperCase(letter);
+    }
+
+    /**
+     * `df [-h|-k] [chemin...]` : espace disque des systèmes de fichiers, lu via `FileStore`.
+     * Sans argument, les systèmes de fichiers de taille nulle (proc, sysfs...) et les montages
+     * d'un même périphérique sont ignorés, comme le fait `df`.
+     */
+    private static int df(List<String> args, CommandProcessor.LineSink out, CommandProcessor.LineSink err) throws IOException {
+        boolean human = false;
+        List<String> operands = new ArrayList<>();
+        for (String arg : args) {
+            if ("-h".equals(arg)) {
+                human = true;
+            } else if ("-k".equals(arg)) {
+                human = false;
+            } else if (arg.startsWith("-")) {
+                return BuiltinCommand.FALLBACK;
+            } else {
+                operands.add(arg);
+            }
+        }
+        Path mountTable = Paths.get("/proc/self/mounts");
+        if (!Files.isReadable(mountTable)) {
+            return BuiltinCommand.FALLBACK;
+        }
+        List<String[]> mounts = new ArrayList<>();
+        for (String line : Files.readAllLines(mountTable, StandardCharsets.UTF_8)) {
+            String[] fields = line.split(" ");
+            if (fields.length >= 2) {
+                mounts.add(new String[]{unescapeMountField(fields[0]), unescapeMountField(fields[1])});
+            }
+        }
+
+        List<String[]> rows = new ArrayList<>();
+        rows.add(new String[]{"Filesystem", human ? "Size" : "1K-blocks", "Used", human ? "Avail" : "Available", "Use%", "Mounted on"});
+        if (operands.isEmpty()) {
+            Map<Object, Integer> rowByDevice = new HashMap<>();
+            for (String[] mount : mounts) {
+                try {
+                    Path target = Paths.get(mount[1]);
+                    FileStore store = Files.getFileStore(target);
+                    if (store.getTotalSpace() == 0) {
+                        continue;
+                    }
+                    Object device = Files.getAttribute(target, "unix:dev");
+                    Integer existing = rowByDevice.get(device);
+                    String[] row = dfRow(mount[0], mount[1], store, human);
+                    if (existing == null) {
+                        rowByDevice.put(device, rows.size());
+                        rows.add(row);
+                    } else if (mount[1].length() < rows.get(existing)[5].length()) {
+                        rows.set(existing, row);
+                    }
+                } catch (IOException | UnsupportedOperationException | SecurityException e) {
+                    // Point de montage inaccessible : df l'ignore également.
+                }
+            }
+        } else {
+            for (String operand : operands) {
+                Path path = Paths.get(operand);
+                if (!Files.exists(path)) {
+                    return BuiltinCommand.FALLBACK;
+                }
+                Path real = path.toRealPath();
+                String[] best = null;
+                for (String[] mount : mounts) {
+                    if (real.startsWith(Paths.get(mount[1])) && (best == null || mount[1].length() >= best[1].length())) {
+                        best = mount;
+                    }
+                }
+                if (best == null) {
+                    return BuiltinCommand.FALLBACK;
+                }
+                rows.add(dfRow(best[0], best[1], Files.getFileStore(path), human));
+            }
+        }
+
+        // Largeurs minimales des colonnes utilisées par GNU df.
+        int[] widths = {14, 5, 5, 5, 4};
+        for (String[] row : rows) {
+            for (int i = 0; i < widths.length; i++) {
+                widths[i] = Math.max(widths[i], row[i].length());
+            }
+        }
+        for (String[] row : rows) {
+            StringBuilder line = new StringBuilder(String.format("%-" + widths[0] + "s", row[0]));
+            for (int i = 1; i < widths.length; i++) {
+                line.append(' ').append(String.format("%" + widths[i] + "s", row[i]));
+            }
+            line.append(' ').append(row[5]);
+            out.accept(line.toString());
+        }
+        return 0;
+    }
+
+    private static String[] dfRow(String source, String target, FileStore store, boolean human) throws IOException {
+        long total = store.getTotalSpace();
+        long used = total - store.getUnallocatedSpace();
+        long available = store.getUsableSpace();
+        String percent = "-";
+        if (used + available > 0) {
+            // Pourcentage arrondi à l'entier supérieur, comme df.
+            long numerator = used * 100;
+            long denominator = used + available;
+            percent = (numerator / denominator + (numerator % denominator != 0 ? 1 : 0)) + "%";
+        }
+        return new String[]{source, dfSize(total, human), dfSize(used, human), dfSize(available, human), percent, target};
+    }
+
+    private static String dfSize(long bytes, boolean human) {
+        if (!human) {
+            return Long.toString((bytes + 1023) / 1024);
+        }
+        if (bytes < 1024) {
+            return Long.toString(bytes);
+        }
+        // Format de `df -h` : puissances de 1024, arrondi supérieur, une décimale en dessous de 10.
+        double value = bytes;
+        int unit = -1;
+        while (value >= 1024 && unit < HUMAN_UNITS.length - 1) {
+            value /= 1024;
+            unit++;
+        }
+        if (value < 10) {
+            double rounded = Math.ceil(value * 10) / 10;
+            if (rounded < 10) {
+                return String.format("%.1f%s", rounded, HUMAN_UNITS[unit]);
+            }
+            value = rounded;
+        }
+        long rounded = (long) Math.ceil(value);
+        if (rounded >= 1024 && unit < HUMAN_UNITS.length - 1) {
+            return "1.0" + HUMAN_UNITS[unit + 1];
+        }
+        return rounded + HUMAN_UNITS[unit];
+    }
+
+    private static String unescapeMountField(String field) {
+        // /proc/self/mounts encode les espaces et caractères spéciaux en octal (\040).
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == '\\' && i + 3 < field.length()) {
+                try {
+                    result.append((char) Integer.parseInt(field.substring(i + 1, i + 4), 8));
+                    i += 3;
+                    continue;
+                } catch (NumberFormatException e) {
+                    // Pas une séquence octale : caractère conservé tel quel.
+                }
+            }
+            result.append(c);
+        }
+        return result.toString();
+    }
+
+    private static boolean isCCollation() {
+        String locale = System.getenv("LC_ALL");
+        if (locale == null || locale.isEmpty()) {
+            locale = System.getenv("LC_COLLATE");
+        }
+        if (locale == null || locale.isEmpty()) {
+            locale = System.getenv("LANG");
+        }
+        return locale == null || locale.isEmpty() || locale.equals("C") || locale.equals("POSIX") || locale.startsWith("C.");
+    }
+
+    private static void closeAll(List<InputStream> streams) {
+        for (InputStream stream : streams) {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                // Fermeture best-effort.
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package fr.uvsq.core;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * La classe `CommandDeadline` est le délai d'exécution d'une commande.
+ *
+ * Le temps passé bloqué sur le destinataire de la sortie (un client qui lit lentement, voir `SessionOutput`)
+ * n'est pas décompté : la commande est alors suspendue par la contre-pression et non en train de s'exécuter.
+ *
+ * Lire l'horloge avant et après chaque ligne transmise coûterait autant que la transmission elle-même ;
+ * le thread qui transmet la sortie se contente donc d'indiquer ses entrées et sorties du destinataire
+ * (`enterSink`, `exitSink`). Le temps suspendu est estimé par échantillonnage : le chien de garde, qui vérifie
+ * le délai toutes les `CHECK_INTERVAL_NANOS`, compte l'intervalle écoulé comme suspendu s'il trouve le thread
+ * dans le destinataire. Un appel qui ne bloque pas dure bien moins qu'un intervalle et n'est que rarement
+ * échantillonné ; sur les 5 secondes d'une commande, l'estimation porte sur des centaines d'échantillons.
+ *
+ * Le temps suspendu est lui-même borné : un client qui ne lit plus du tout immobiliserait sinon
+ * indéfiniment le processus, ses threads et le chien de garde. Au-delà de `maxSuspended`, la commande
+ * est déclarée bloquée (`isStalled`) : le délai est dépassé et l'action de blocage est exécutée.
+ */
+final class CommandDeadline {
+    private static final long CHECK_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final long limitNanos;
+    private final long maxSuspendedNanos;
+    private final long startNanos = System.nanoTime();
+    // Nombre d'entrées et de sorties du destinataire : impair pendant un appel.
+    private final AtomicLong sinkCalls = new AtomicLong();
+    // Écrits par le chien de garde uniquement.
+    private volatile long suspendedNanos = 0;
+    private long lastCheckNanos = startNanos;
+    private volatile boolean expired = false;
+    private volatile boolean stalled = false;
+    private boolean cancelled = false;
+    private ScheduledFuture<?> check;
+
+    /**
+     * Constructeur de `CommandDeadline` ; le délai court à partir de sa création.
+     *
+     * @param limit        La durée d'exécution accordée.
+     * @param maxSuspended La durée maximale pendant laquelle la commande peut rester suspendue par le destinataire.
+     * @param unit         L'unité de `limit` et `maxSuspended`.
+     */
+    CommandDeadline(long limit, long maxSuspended, TimeUnit unit) {
+        this.limitNanos = unit.toNanos(limit);
+        this.maxSuspendedNanos = unit.toNanos(maxSuspended);
+    }
+
+    /**
+     * À appeler avant de transmettre une ligne au destinataire, qui peut bloquer.
+     */
+    void enterSink() {
+        // Un seul thread écrit le compteur : une écriture ordonnée, sans barrière complète, suffit.
+        sinkCalls.lazySet(sinkCalls.get() + 1);
+    }
+
+    /**
+     * À appeler après la transmission d'une ligne.
+     */
+    void exitSink() {
+        sinkCalls.lazySet(sinkCalls.get() + 1);
+    }
+
+    /**
+     * @return Le temps d'exécution restant, en nanosecondes (négatif ou nul si le délai est dépassé).
+     */
+    long remainingNanos() {
+        return limitNanos - (System.nanoTime() - startNanos - suspendedNanos);
+    }
+
+    /**
+     * Surveille le délai ; l'action d'expiration est exécutée une fois, par le planificateur, lorsqu'il est dépassé.
+     * La surveillance continue ensuite jusqu'à `cancel`, les dernières lignes pouvant encore bloquer : si la commande
+     * est bloquée par le destinataire, l'action d'expiration puis l'action de blocage sont exécutées.
+     *
+     * @param scheduler Le planificateur du chien de garde.
+     * @param onExpiry  L'action à exécuter à l'expiration (destruction du processus...).
+     * @param onStall   L'action à exécuter si la commande est bloquée (fermeture de la session...).
+     */
+    synchronized void watch(ScheduledExecutorService scheduler, Runnable onExpiry, Runnable onStall) {
+        if (cancelled) {
+            return;
+        }
+        check = scheduler.scheduleAtFixedRate(() -> {
+            long now = System.nanoTime();
+            if ((sinkCalls.get() & 1) == 1) {
+                suspendedNanos += now - lastCheckNanos;
+            }
+            lastCheckNanos = now;
+            if (suspendedNanos >= maxSuspendedNanos) {
+                stalled = true;
+                cancel();
+                expire();
+                onExpiry.run();
+                onStall.run();
+            } else if (!expired && remainingNanos() <= 0) {
+                expire();
+                onExpiry.run();
+            }
+        }, CHECK_INTERVAL_NANOS, CHECK_INTERVAL_NANOS, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Arrête la surveillance programmée par `watch`.
+     */
+    synchronized void cancel() {
+        cancelled = true;
+        if (check != null) {
+            check.cancel(false);
+        }
+    }
+
+    /**
+     * Marque le délai comme dépassé (la commande a été ou va être arrêtée).
+     */
+    void expire() {
+        expired = true;
+    }
+
+    /**
+     * @return true si le délai a été déclaré dépassé.
+     */
+    boolean isExpired() {
+        return expired;
+    }
+
+    /**
+     * @return true si la commande a été arrêtée parce que le destinataire la bloquait depuis trop longtemps.
+     */
+    boolean isStalled() {
+        return stalled;
+    }
+}
@@ -4,7 +4,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -12,9 +21,84 @@ import java.util.concurrent.TimeUnit;
  * Elle prend une commande en entrée et exécute cette commande sur le système sous-jacent.
  * Elle gère également les erreurs potentielles lors de l'exécution de la commande et retourne la sortie
  * ou les erreurs générées par la commande.
+ *
+ * La sortie standard est transmise ligne par ligne au fur et à mesure de sa production : si le
+ * destinataire (`LineSink`) bloque, la lecture du processus est suspendue et le processus lui-même
+ * se retrouve bloqué sur son tube de sortie. Aucune sortie complète n'est donc accumulée en mémoire.
+ *
+ * Une commande est arrêtée après `TIMEOUT_SECONDS` secondes d'exécution (voir `CommandDeadline`) ; le temps
+ * passé bloqué sur un destinataire lent n'est pas décompté, la contre-pression ralentit la commande sans l'arrêter.
+ * Une commande intégrée, exécutée sur le thread appelant, est soumise au même délai : elle est interrompue
+ * à sa ligne de sortie suivante.
+ *
+ * Les commandes simples les plus courantes (`ls`, `cat`, `df`...) sont servies directement dans la JVM
+ * par la table des `BuiltinCommands`, sans lancer de processus ; les autres passent par le shell.
+ *
+ * Chaque exécution est mesurée (voir `run` et `ResourceUsage`) : durée, temps processeur et mémoire
+ * maximale de l'arbre de processus, relevés par un `ProcessSampler`. Une commande intégrée est mesurée
+ * par le temps processeur de son thread ; sa mémoire, partagée avec la JVM, n'est pas mesurée.
  */
 public class CommandProcessor {
     private static final Logger logger = LoggerFactory.getLogger(CommandProcessor.class);
+    private static final int TIMEOUT_SECONDS = 5;
+    /** Durée maximale par défaut pendant laquelle un destinataire qui ne lit plus peut suspendre une commande. */
+    public static final long DEFAULT_STALL_TIMEOUT_MILLIS = 60_000;
+    // Taille maximale conservée pour la sortie d'erreur, qui est renvoyée après la sortie standard.
+    private static final int MAX_ERROR_CHARS = 256 * 1024;
+    /** Code de sortie renvoyé lorsque la commande n'a pas pu être lancée ou a expiré. */
+    public static final int EXIT_FAILURE = -1;
+
+    private static final ExecutorService errorReaders =
+            Executors.newCachedThreadPool(new DaemonThreadFactory("cmd-stderr"));
+    private static final ScheduledExecutorService watchdog =
+            Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("cmd-watchdog"));
+    // Relevés des ressources des processus, séparés du chien de garde pour ne jamais retarder une expiration.
+    private static final ScheduledExecutorService usageSampler =
+            Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("cmd-usage"));
+    private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    private final BuiltinCommands builtins;
+    private volatile long stallTimeoutMillis = DEFAULT_STALL_TIMEOUT_MILLIS;
+    private volatile Runnable onStall = () -> { };
+
+    /**
+     * Destinataire des lignes produites par une commande.
+     * Une exception levée par le destinataire (client déconnecté...) interrompt la commande.
+     */
+    @FunctionalInterface
+    public interface LineSink {
+        void accept(String line) throws IOException;
+    }
+
+    /**
+     * Constructeur de `CommandProcessor` utilisant la table partagée des commandes intégrées.
+     */
+    public CommandProcessor() {
+        this(BuiltinCommands.getDefault());
+    }
+
+    /**
+     * Constructeur de `CommandProcessor`.
+     *
+     * @param builtins La table des commandes intégrées à utiliser.
+     */
+    public CommandProcessor(BuiltinCommands builtins) {
+        this.builtins = builtins;
+    }
+
+    /**
+     * Borne le temps pendant lequel le destinataire de la sortie (un client qui ne lit plus) peut suspendre
+     * une commande. Ce temps n'est pas décompté du délai d'exécution ; au-delà de la borne, la commande est
+     * détruite comme à l'expiration du délai, puis l'action est exécutée, par exemple pour fermer la session
+     * et débloquer l'écriture en cours.
+     *
+     * @param timeoutMillis La durée maximale de suspension, en millisecondes.
+     * @param onStall       L'action à exécuter, depuis le chien de garde.
+     */
+    public void setStallTimeout(long timeoutMillis, Runnable onStall) {
+        this.stallTimeoutMillis = timeoutMillis;
+        this.onStall = onStall;
+    }
 
     /**
      * Exécute une commande système.
@@ -23,67 +107,401 @@ public class CommandProcessor {
      * @return La sortie de la commande (stdout et stderr combinés) ou un message d'erreur en cas d'échec.
      */
     public String executeCommand(String command) {
+        StringBuilder output = new StringBuilder();
         try {
-            // Création d'un constructeur de processus.
-            ProcessBuilder pb = new ProcessBuilder();
+            executeCommand(command, line -> output.append(line).append("\n"));
+        } catch (IOException e) {
+            // Ne peut pas se produire : le destinataire ne lève pas d'exception.
+            logger.error("L'exécution de la commande a échoué: {}", e.getMessage(), e);
+            return "⚠️ Erreur: " + e.getMessage();
+        }
+        return output.toString().trim();
+    }
 
-            // Détermination du système d'exploitation et définition de la commande en conséquence.
-            if (System.getProperty("os.name").toLowerCase().contains("win")) {
-                // Pour Windows, on utilise cmd.exe avec l'option /c pour exécuter la commande.
-                pb.command("cmd.exe", "/c", command);
-            } else {
-                // Pour les autres systèmes (Linux, macOS), on utilise sh avec l'option -c pour exécuter la commande.
-                pb.command("sh", "-c", command);
-            }
+    /**
+     * Exécute une commande système et retourne sa sortie accompagnée de son code de sortie.
+     *
+     * @param command La commande à exécuter.
+     * @return Le résultat de la commande ; la sortie est identique à celle de {@link #executeCommand(String)}.
+     */
+    public CommandResult execute(String command) {
+        return execute(command, Integer.MAX_VALUE);
+    }
 
-            // Démarrage du processus.
-            Process process = pb.start();
+    /**
+     * Exécute une commande système et retourne sa sortie, limitée en taille, accompagnée de son code de sortie.
+     * Au-delà de `maxOutputChars` caractères, les lignes suivantes sont lues mais pas conservées, et un
+     * avertissement indiquant leur nombre termine la sortie.
+     *
+     * @param command        La commande à exécuter.
+     * @param maxOutputChars Le nombre maximal de caractères de sortie conservés.
+     * @return Le résultat de la commande.
+     */
+    public CommandResult execute(String command, int maxOutputChars) {
+        StringBuilder output = new StringBuilder();
+        int[] dropped = {0};
+        ResourceUsage usage;
+        try {
+            usage = run(command, line -> {
+                if (dropped[0] > 0 || output.length() + line.length() >= maxOutputChars) {
+                    dropped[0]++;
+                } else {
+                    output.append(line).append("\n");
+                }
+            });
+        } catch (IOException e) {
+            logger.error("L'exécution de la commande a échoué: {}", e.getMessage(), e);
+            return new CommandResult(command, "⚠️ Erreur: " + e.getMessage(), EXIT_FAILURE);
+        }
+        if (dropped[0] > 0) {
+            output.append("⚠️ Sortie tronquée : ").append(dropped[0]).append(" ligne(s) omise(s)");
+        }
+        return new CommandResult(command, output.toString().trim(), usage.getExitCode(), usage);
+    }
 
-            // Attente de la fin du processus avec un timeout de 5 secondes.
-            boolean finished = process.waitFor(5, TimeUnit.SECONDS);
+    /**
+     * Exécute une commande système en transmettant sa sortie au fur et à mesure.
+     * La sortie transmise est identique à celle de {@link #executeCommand(String)} découpée en lignes :
+     * les lignes vides de début et de fin sont supprimées, puis les erreurs sont ajoutées avec le préfixe `[ERROR]`.
+     *
+     * @param command La commande à exécuter.
+     * @param sink    Le destinataire des lignes de sortie.
+     * @return Le code de sortie du processus, ou `EXIT_FAILURE` s'il n'a pas pu être lancé ou a expiré.
+     * @throws IOException Si le destinataire échoue ; le processus est alors détruit.
+     */
+    public int executeCommand(String command, LineSink sink) throws IOException {
+        return run(command, sink).getExitCode();
+    }
 
-            // Si le processus n'a pas terminé dans le temps imparti, on le détruit et on retourne un message d'erreur.
-            if (!finished) {
-                process.destroy();
-                return "❌ La commande a expiré après 5 secondes";
+    /**
+     * Exécute une commande système en transmettant sa sortie au fur et à mesure, comme
+     * {@link #executeCommand(String, LineSink)}, et mesure les ressources qu'elle a consommées.
+     *
+     * @param command La commande à exécuter.
+     * @param sink    Le destinataire des lignes de sortie.
+     * @return Le code de sortie et les ressources consommées par la commande.
+     * @throws IOException Si le destinataire échoue ; le processus est alors détruit.
+     */
+    public ResourceUsage run(String command, LineSink sink) throws IOException {
+        TrimmingSink output = new TrimmingSink(sink);
+        BuiltinCommand builtin = builtins.find(command);
+        if (builtin != null) {
+            long startNanos = System.nanoTime();
+            long cpuBefore = threads.getCurrentThreadCpuTime();
+            int exitCode = executeBuiltin(builtin, command, output);
+            if (exitCode != BuiltinCommand.FALLBACK) {
+                return new ResourceUsage(exitCode, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos),
+                        TimeUnit.NANOSECONDS.toMillis(threads.getCurrentThreadCpuTime() - cpuBefore), ResourceUsage.UNKNOWN);
             }
+        }
 
-            // Lecture de la sortie du processus.
-            return readOutput(process);
-
-        } catch (Exception e) {
-            // En cas d'erreur, on log l'erreur et on retourne un message d'erreur.
+        ProcessSampler sampler = new ProcessSampler(usageSampler);
+        Process process;
+        try {
+            process = startProcess(command);
+        } catch (IOException e) {
+            sampler.abandon();
             logger.error("L'exécution de la commande a échoué: {}", e.getMessage(), e);
-            return "⚠️ Erreur: " + e.getMessage();
+            output.accept("⚠️ Erreur: " + e.getMessage());
+            output.finish();
+            return sampler.finish(EXIT_FAILURE);
         }
+        sampler.start(process);
+
+        // Le processus (et ses descendants) est détruit s'il n'a pas terminé dans le temps imparti.
+        CommandDeadline deadline = newDeadline();
+        output.track(deadline);
+        deadline.watch(watchdog, () -> destroyTree(process), onStall);
+        Future<List<String>> errors = errorReaders.submit(() -> readErrors(process));
+
+        boolean completed = false;
+        int exitCode = EXIT_FAILURE;
+        ResourceUsage usage;
+        try {
+            try {
+                streamOutput(process, output);
+            } catch (IOException e) {
+                // La destruction du processus à l'expiration ferme ses flux pendant la lecture.
+                if (!deadline.isExpired()) {
+                    throw e;
+                }
+            }
+            // Dernier relevé tant que le processus, qui vient de fermer sa sortie, est encore visible.
+            sampler.sample();
+            if (!process.waitFor(Math.max(0, deadline.remainingNanos()), TimeUnit.NANOSECONDS)) {
+                deadline.expire();
+                destroyTree(process);
+            }
+            if (deadline.isExpired()) {
+                output.accept("❌ La commande a expiré après " + TIMEOUT_SECONDS + " secondes");
+            } else {
+                exitCode = process.exitValue();
+                for (String line : errors.get()) {
+                    output.accept("[ERROR] " + line);
+                }
+            }
+            output.finish();
+            completed = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Exécution interrompue");
+        } catch (ExecutionException e) {
+            logger.error("Lecture de la sortie d'erreur impossible: {}", e.getMessage(), e);
+            output.accept("⚠️ Erreur: " + e.getCause().getMessage());
+            output.finish();
+            completed = true;
+        } finally {
+            deadline.cancel();
+            if (!completed) {
+                destroyTree(process);
+            }
+            // Arrête aussi les relevés d'une commande interrompue, dont le résultat n'est pas renvoyé.
+            usage = sampler.finish(exitCode);
+        }
+        return usage;
     }
 
     /**
-     * Lit la sortie (stdout et stderr) d'un processus.
+     * Exécute une commande intégrée. Comme pour un processus, ses erreurs sont ajoutées après sa sortie standard.
      *
-     * @param process Le processus dont on doit lire la sortie.
-     * @return La sortie du processus sous forme de chaîne de caractères.
-     * @throws IOException Si une erreur d'entrée/sortie se produit lors de la lecture.
+     * @return Le code de sortie, ou `BuiltinCommand.FALLBACK` si la commande doit être confiée au shell.
      */
-    private String readOutput(Process process) throws IOException {
-        StringBuilder output = new StringBuilder();
+    private int executeBuiltin(BuiltinCommand builtin, String command, TrimmingSink output) throws IOException {
+        List<String> words = BuiltinCommands.tokenize(command);
+        List<String> errors = new ArrayList<>();
+        // Le chien de garde ne fait que marquer le délai comme dépassé : la commande, exécutée sur ce thread,
+        // est interrompue par `DeadlineSink` lorsqu'elle écrit sa ligne suivante.
+        CommandDeadline deadline = newDeadline();
+        output.track(deadline);
+        deadline.watch(watchdog, () -> { }, onStall);
+        try {
+            int exitCode;
+            try {
+                exitCode = builtin.run(words.subList(1, words.size()), new DeadlineSink(output, deadline), errors::add);
+            } catch (CommandExpiredException e) {
+                output.accept("❌ La commande a expiré après " + TIMEOUT_SECONDS + " secondes");
+                output.finish();
+                return EXIT_FAILURE;
+            }
+            if (exitCode == BuiltinCommand.FALLBACK) {
+                return exitCode;
+            }
+            for (String line : errors) {
+                output.accept("[ERROR] " + line);
+            }
+            output.finish();
+            return exitCode;
+        } finally {
+            deadline.cancel();
+        }
+    }
+
+    private CommandDeadline newDeadline() {
+        return new CommandDeadline(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS), stallTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Démarre le processus correspondant à la commande selon le système d'exploitation.
+     *
+     * @param command La commande à exécuter.
+     * @return Le processus démarré.
+     * @throws IOException Si le processus ne peut pas être démarré.
+     */
+    private Process startProcess(String command) throws IOException {
+        // Création d'un constructeur de processus.
+        ProcessBuilder pb = new ProcessBuilder();
+
+        // Détermination du système d'exploitation et définition de la commande en conséquence.
+        if (System.getProperty("os.name").toLowerCase().contains("win")) {
+            // Pour Windows, on utilise cmd.exe avec l'option /c pour exécuter la commande.
+            pb.command("cmd.exe", "/c", command);
+        } else {
+            // Pour les autres systèmes (Linux, macOS), on utilise sh avec l'option -c pour exécuter la commande.
+            pb.command("sh", "-c", command);
+        }
 
-        // Utilisation de try-with-resources pour s'assurer de la fermeture des lecteurs.
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
-             BufferedReader errorReader = new BufferedReader(new InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8))) {
+        // Démarrage du processus.
+        return pb.start();
+    }
 
+    /**
+     * Transmet la sortie standard du processus ligne par ligne.
+     *
+     * @param process Le processus dont on lit la sortie.
+     * @param sink    Le destinataire des lignes.
+     * @throws IOException Si la lecture ou la transmission échoue.
+     */
+    private void streamOutput(Process process, LineSink sink) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
             String line;
-            // Lecture de la sortie standard (stdout).
             while ((line = reader.readLine()) != null) {
-                output.append(line).append("\n");
+                sink.accept(line);
             }
+        }
+    }
 
-            // Lecture de la sortie d'erreur (stderr).
+    /**
+     * Lit la sortie d'erreur (stderr) d'un processus.
+     * Le flux est lu entièrement pour ne jamais bloquer le processus, mais seuls les
+     * `MAX_ERROR_CHARS` premiers caractères sont conservés.
+     *
+     * @param process Le processus dont on doit lire la sortie d'erreur.
+     * @return Les lignes d'erreur.
+     * @throws IOException Si une erreur d'entrée/sortie se produit lors de la lecture.
+     */
+    private List<String> readErrors(Process process) throws IOException {
+        List<String> lines = new ArrayList<>();
+        int retained = 0;
+        boolean truncated = false;
+        try (BufferedReader errorReader = new BufferedReader(new InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8))) {
+            String line;
             while ((line = errorReader.readLine()) != null) {
-                output.append("[ERROR] ").append(line).append("\n");
+                if (retained + line.length() <= MAX_ERROR_CHARS) {
+                    lines.add(line);
+                    retained += line.length();
+                } else {
+                    truncated = true;
+                }
             }
         }
-        // Retourne la sortie formatée, en supprimant les espaces superflus au début et à la fin.
-        return output.toString().trim();
+        if (truncated) {
+            lines.add("(sortie d'erreur tronquée)");
+        }
+        return lines;
+    }
+
+    /**
+     * Détruit un processus ainsi que tous ses descendants.
+     *
+     * @param process Le processus à détruire.
+     */
+    private static void destroyTree(Process process) {
+        // Les descendants sont relevés avant la destruction du parent, qui les rendrait orphelins.
+        List<ProcessHandle> descendants = process.descendants().toList();
+        process.destroy();
+        descendants.forEach(ProcessHandle::destroy);
+    }
+
+    /**
+     * Destinataire d'une commande intégrée : l'interrompt, en levant `CommandExpiredException`, dès que son délai
+     * est dépassé.
+     */
+    private static final class DeadlineSink implements LineSink {
+        private final LineSink target;
+        private final CommandDeadline deadline;
+
+        private DeadlineSink(LineSink target, CommandDeadline deadline) {
+            this.target = target;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public void accept(String line) throws IOException {
+            if (deadline.isExpired()) {
+                throw new CommandExpiredException();
+            }
+            target.accept(line);
+        }
+    }
+
+    /**
+     * Interrompt une commande intégrée dont le délai est dépassé.
+     */
+    private static final class CommandExpiredException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private CommandExpiredException() {
+            super("Délai d'exécution dépassé");
+        }
+    }
+
+    /**
+     * Destinataire intermédiaire qui reproduit en flux l'effet de `String.trim()` sur la sortie complète :
+     * les lignes blanches de début et de fin sont supprimées, ainsi que les espaces en tête de la
+     * première ligne et en fin de la dernière.
+     * Chaque transmission, y compris celles de `finish`, est signalée au délai suivi, le destinataire pouvant bloquer.
+     */
+    private static final class TrimmingSink implements LineSink {
+        private final LineSink target;
+        private CommandDeadline deadline;
+        private boolean started = false;
+        private String last;
+        private int pendingBlankLines = 0;
+
+        private TrimmingSink(LineSink target) {
+            this.target = target;
+        }
+
+        @Override
+        public void accept(String line) throws IOException {
+            if (isBlank(line)) {
+                if (started) {
+                    pendingBlankLines++;
+                }
+                return;
+            }
+            if (!started) {
+                started = true;
+                last = stripLeading(line);
+                return;
+            }
+            emit(last);
+            for (; pendingBlankLines > 0; pendingBlankLines--) {
+                emit("");
+            }
+            last = line;
+        }
+
+        private void finish() throws IOException {
+            if (last != null) {
+                emit(stripTrailing(last));
+                last = null;
+            }
+        }
+
+        /**
+         * Signale désormais les transmissions au délai donné.
+         */
+        private void track(CommandDeadline deadline) {
+            this.deadline = deadline;
+        }
+
+        private void emit(String line) throws IOException {
+            if (deadline == null) {
+                target.accept(line);
+                return;
+            }
+            deadline.enterSink();
+            target.accept(line);
+            deadline.exitSink();
+        }
+
+        /**
+         * Équivaut à `line.trim().isEmpty()`, sans créer de chaîne.
+         */
+        private static boolean isBlank(String line) {
+            for (int i = 0; i < line.length(); i++) {
+                if (line.charAt(i) > ' ') {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static String stripLeading(String line) {
+            int start = 0;
+            while (start < line.length() && line.charAt(start) <= ' ') {
+                start++;
+            }
+            return line.substring(start);
+        }
+
+        private static String stripTrailing(String line) {
+            int end = line.length();
+            while (end > 0 && line.charAt(end - 1) <= ' ') {
+                end--;
+            }
+            return line.substring(0, end);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,79 @@
+package fr.uvsq.core;
+
+/**
+ * La classe `CommandResult` représente le résultat de l'exécution d'une commande :
+ * la commande elle-même, sa sortie (stdout et stderr combinés), son code de sortie et, lorsqu'elles
+ * sont connues, les ressources qu'elle a consommées.
+ */
+public class CommandResult {
+    private final String command;
+    private final String output;
+    private final int exitCode;
+    private final ResourceUsage usage;
+
+    /**
+     * Constructeur de `CommandResult`.
+     *
+     * @param command  La commande exécutée.
+     * @param output   La sortie de la commande.
+     * @param exitCode Le code de sortie (0 en cas de succès, `CommandProcessor.EXIT_FAILURE` si elle n'a pas pu aboutir).
+     */
+    public CommandResult(String command, String output, int exitCode) {
+        this(command, output, exitCode, null);
+    }
+
+    /**
+     * Constructeur de `CommandResult` accompagné des ressources consommées par la commande.
+     *
+     * @param command  La commande exécutée.
+     * @param output   La sortie de la commande.
+     * @param exitCode Le code de sortie.
+     * @param usage    Les ressources consommées, ou `null` si elles sont inconnues.
+     */
+    public CommandResult(String command, String output, int exitCode, ResourceUsage usage) {
+        this.command = command;
+        this.output = output;
+        this.exitCode = exitCode;
+        this.usage = usage;
+    }
+
+    /**
+     * @return La commande exécutée.
+     */
+    public String getCommand() {
+        return command;
+    }
+
+    /**
+     * @return La sortie de la commande.
+     */
+    public String getOutput() {
+        return output;
+    }
+
+    /**
+     * @return Le code de sortie de la commande.
+     */
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    /**
+     * @return Les ressources consommées par la commande, ou `null` si elles sont inconnues.
+     */
+    public ResourceUsage getUsage() {
+        return usage;
+    }
+
+    /**
+     * @return true si la commande s'est terminée avec le code de sortie 0.
+     */
+    public boolean isSuccess() {
+        return exitCode == 0;
+    }
+
+    @Override
+    public String toString() {
+        return command + " (exit " + exitCode + ")";
+    }
+}
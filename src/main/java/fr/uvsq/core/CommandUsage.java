@@ -0,0 +1,142 @@
+package fr.uvsq.core;
+
+/**
+ * La classe `CommandUsage` décrit les ressources cumulées des commandes exécutées par un serveur
+ * depuis son démarrage, pour un motif de commande ou pour un utilisateur, telles que renvoyées
+ * par la requête STATS.
+ *
+ * Sur le réseau, elle est décrite par une ligne
+ * `<portée>\t<exécutions>\t<dont WATCH>\t<échecs>\t<durée ms>\t<processeur ms>\t<mémoire Ko>\t<nom>`,
+ * où la portée vaut `PATTERN` ou `USER` et la mémoire est la plus grande mémoire mesurée (`-1` si aucune).
+ * Le nom (motif ou identifiant) est placé en dernier car il peut contenir des tabulations.
+ */
+public class CommandUsage {
+    /**
+     * Portée d'un cumul : un motif de commande ou un utilisateur.
+     */
+    public enum Scope {
+        PATTERN,
+        USER
+    }
+
+    private final Scope scope;
+    private final String name;
+    private final long executions;
+    private final long polledExecutions;
+    private final long failures;
+    private final long wallMillis;
+    private final long cpuMillis;
+    private final long peakMemoryKb;
+
+    /**
+     * Constructeur de `CommandUsage`.
+     *
+     * @param scope            La portée du cumul.
+     * @param name             Le motif de commande ou l'identifiant de l'utilisateur.
+     * @param executions       Le nombre d'exécutions.
+     * @param polledExecutions Le nombre d'exécutions périodiques (WATCH) parmi elles.
+     * @param failures         Le nombre d'exécutions terminées avec un code de sortie non nul.
+     * @param wallMillis       La durée cumulée, en millisecondes.
+     * @param cpuMillis        Le temps processeur cumulé, en millisecondes.
+     * @param peakMemoryKb     La plus grande mémoire mesurée pour une exécution, en Ko, ou `ResourceUsage.UNKNOWN`.
+     */
+    public CommandUsage(Scope scope, String name, long executions, long polledExecutions, long failures,
+                        long wallMillis, long cpuMillis, long peakMemoryKb) {
+        this.scope = scope;
+        this.name = name;
+        this.executions = executions;
+        this.polledExecutions = polledExecutions;
+        this.failures = failures;
+        this.wallMillis = wallMillis;
+        this.cpuMillis = cpuMillis;
+        this.peakMemoryKb = peakMemoryKb;
+    }
+
+    /**
+     * Décode une ligne du protocole.
+     *
+     * @param line La ligne reçue.
+     * @return Le cumul décrit.
+     * @throws IllegalArgumentException Si la ligne est mal formée.
+     */
+    public static CommandUsage parse(String line) {
+        String[] fields = line.split("\t", 8);
+        if (fields.length != 8) {
+            throw new IllegalArgumentException("Description de consommation invalide : " + line);
+        }
+        return new CommandUsage(Scope.valueOf(fields[0]), fields[7], Long.parseLong(fields[1]),
+                Long.parseLong(fields[2]), Long.parseLong(fields[3]), Long.parseLong(fields[4]),
+                Long.parseLong(fields[5]), Long.parseLong(fields[6]));
+    }
+
+    /**
+     * @return La ligne du protocole décrivant ce cumul.
+     */
+    public String toLine() {
+        return scope + "\t" + executions + "\t" + polledExecutions + "\t" + failures + "\t" + wallMillis
+                + "\t" + cpuMillis + "\t" + peakMemoryKb + "\t" + name;
+    }
+
+    /**
+     * @return La portée du cumul.
+     */
+    public Scope getScope() {
+        return scope;
+    }
+
+    /**
+     * @return Le motif de commande ou l'identifiant de l'utilisateur.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return Le nombre d'exécutions.
+     */
+    public long getExecutions() {
+        return executions;
+    }
+
+    /**
+     * @return Le nombre d'exécutions périodiques (WATCH).
+     */
+    public long getPolledExecutions() {
+        return polledExecutions;
+    }
+
+    /**
+     * @return Le nombre d'exécutions terminées avec un code de sortie non nul.
+     */
+    public long getFailures() {
+        return failures;
+    }
+
+    /**
+     * @return La durée cumulée, en millisecondes.
+     */
+    public long getWallMillis() {
+        return wallMillis;
+    }
+
+    /**
+     * @return Le temps processeur cumulé, en millisecondes.
+     */
+    public long getCpuMillis() {
+        return cpuMillis;
+    }
+
+    /**
+     * @return La plus grande mémoire mesurée pour une exécution, en Ko, ou `ResourceUsage.UNKNOWN`.
+     */
+    public long getPeakMemoryKb() {
+        return peakMemoryKb;
+    }
+
+    @Override
+    public String toString() {
+        return name + " : " + executions + " exécution(s)" + (polledExecutions > 0 ? " dont " + polledExecutions + " WATCH" : "")
+                + ", " + failures + " échec(s), " + wallMillis + " ms, CPU " + cpuMillis + " ms"
+                + (peakMemoryKb == ResourceUsage.UNKNOWN ? "" : ", mémoire max " + peakMemoryKb + " Ko");
+    }
+}
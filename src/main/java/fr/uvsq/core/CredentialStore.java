@@ -0,0 +1,16 @@
+package fr.uvsq.core;
+
+/**
+ * L'interface `CredentialStore` représente une source d'identifiants pour l'`AuthManager`.
+ * Elle ne stocke jamais de mot de passe en clair, uniquement des empreintes produites par `PasswordHasher`.
+ */
+public interface CredentialStore {
+
+    /**
+     * Recherche l'empreinte du mot de passe associée à un login.
+     *
+     * @param login Le login recherché.
+     * @return L'empreinte encodée, ou `null` si le login est inconnu.
+     */
+    String findPasswordHash(String login);
+}
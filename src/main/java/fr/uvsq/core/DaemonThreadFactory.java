@@ -0,0 +1,36 @@
+package fr.uvsq.core;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * La classe `DaemonThreadFactory` crée des threads démons nommés.
+ * Elle est utilisée par les pools internes (lecture des flux, minuteries...) afin que
+ * ces threads n'empêchent jamais l'arrêt de la JVM et restent identifiables dans les logs.
+ */
+public class DaemonThreadFactory implements ThreadFactory {
+    private final String prefix;
+    private final AtomicInteger counter = new AtomicInteger(1);
+
+    /**
+     * Constructeur de `DaemonThreadFactory`.
+     *
+     * @param prefix Le préfixe utilisé pour nommer les threads créés (ex. "cmd-stderr").
+     */
+    public DaemonThreadFactory(String prefix) {
+        this.prefix = prefix;
+    }
+
+    /**
+     * Crée un nouveau thread démon.
+     *
+     * @param task La tâche à exécuter.
+     * @return Le thread créé, nommé `prefix-n`.
+     */
+    @Override
+    public Thread newThread(Runnable task) {
+        Thread thread = new Thread(task, prefix + "-" + counter.getAndIncrement());
+        thread.setDaemon(true);
+        return thread;
+    }
+}
@@ -0,0 +1,37 @@
+package fr.uvsq.core;
+
+import java.util.List;
+
+/**
+ * La classe `FileListing` représente une page de résultats d'une requête LIST :
+ * les fichiers de la page et le nombre total de fichiers correspondant au filtre.
+ */
+public class FileListing {
+    private final int total;
+    private final List<RemoteFile> files;
+
+    /**
+     * Constructeur de `FileListing`.
+     *
+     * @param total Le nombre total de fichiers correspondant au filtre, toutes pages confondues.
+     * @param files Les fichiers de la page demandée.
+     */
+    public FileListing(int total, List<RemoteFile> files) {
+        this.total = total;
+        this.files = files;
+    }
+
+    /**
+     * @return Le nombre total de fichiers correspondant au filtre.
+     */
+    public int getTotal() {
+        return total;
+    }
+
+    /**
+     * @return Les fichiers de la page.
+     */
+    public List<RemoteFile> getFiles() {
+        return files;
+    }
+}
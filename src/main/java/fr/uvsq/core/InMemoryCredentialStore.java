@@ -0,0 +1,41 @@
+package fr.uvsq.core;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * La classe `InMemoryCredentialStore` conserve les empreintes des identifiants en mémoire.
+ * Elle sert de magasin par défaut lorsqu'aucun fichier d'identifiants n'est configuré.
+ */
+public class InMemoryCredentialStore implements CredentialStore {
+    // Empreinte de `password123`, calculée une fois pour toutes pour ne pas ralentir le démarrage du serveur.
+    private static final String DEMO_PASSWORD_HASH =
+            "pbkdf2-sha256$120000$EPM9KD5JsDeMJCY9OIluzw==$RzaIhZsbdJQkoQcTodHwOTWhUE+Us1R4SS1Up/1mO1s=";
+    private final Map<String, String> hashes = new ConcurrentHashMap<>();
+
+    /**
+     * Crée le magasin de démonstration contenant uniquement le compte `admin/password123`.
+     *
+     * @return Le magasin de démonstration.
+     */
+    public static InMemoryCredentialStore withDemoAccount() {
+        InMemoryCredentialStore store = new InMemoryCredentialStore();
+        store.hashes.put("admin", DEMO_PASSWORD_HASH);
+        return store;
+    }
+
+    /**
+     * Ajoute (ou remplace) un utilisateur. Le mot de passe est haché avant d'être conservé.
+     *
+     * @param login    Le login de l'utilisateur.
+     * @param password Le mot de passe en clair.
+     */
+    public void addUser(String login, String password) {
+        hashes.put(login, PasswordHasher.hash(password));
+    }
+
+    @Override
+    public String findPasswordHash(String login) {
+        return hashes.get(login);
+    }
+}
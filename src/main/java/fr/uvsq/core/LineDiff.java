@@ -0,0 +1,228 @@
+package fr.uvsq.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * La classe `LineDiff` calcule et applique des différences ligne à ligne entre deux versions d'un texte.
+ * Elle est utilisée par les requêtes WATCH : le serveur n'envoie que les modifications de la sortie
+ * d'une commande par rapport à l'exécution précédente, et le client reconstruit la sortie complète.
+ *
+ * Une différence est une suite d'opérations, une par ligne :
+ * - `=<n>` : conserver les n lignes suivantes de l'ancienne version ;
+ * - `-<n>` : supprimer les n lignes suivantes de l'ancienne version ;
+ * - `+<texte>` : insérer une ligne.
+ *
+ * Le préfixe et le suffixe communs sont retirés avant d'appliquer l'algorithme de Myers (O(ND))
+ * à la partie centrale ; au-delà de `MAX_EDIT_DISTANCE` modifications, la partie centrale est
+ * simplement remplacée, ce qui borne le temps et la mémoire du calcul.
+ */
+public final class LineDiff {
+    /** Nombre maximal de modifications recherchées par l'algorithme de Myers. */
+    public static final int MAX_EDIT_DISTANCE = 1000;
+
+    private LineDiff() {
+    }
+
+    /**
+     * Calcule les opérations transformant `previous` en `current`.
+     *
+     * @param previous L'ancienne version.
+     * @param current  La nouvelle version.
+     * @return Les opérations, vides si les deux versions sont identiques.
+     */
+    public static List<String> diff(List<String> previous, List<String> current) {
+        int prefix = 0;
+        int maxPrefix = Math.min(previous.size(), current.size());
+        while (prefix < maxPrefix && previous.get(prefix).equals(current.get(prefix))) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < maxPrefix - prefix
+                && previous.get(previous.size() - 1 - suffix).equals(current.get(current.size() - 1 - suffix))) {
+            suffix++;
+        }
+        List<String> a = previous.subList(prefix, previous.size() - suffix);
+        List<String> b = current.subList(prefix, current.size() - suffix);
+
+        Script script = new Script();
+        if (a.isEmpty() && b.isEmpty()) {
+            return script.ops;
+        }
+        script.keep(prefix);
+        if (!myers(a, b, script)) {
+            script.delete(a.size());
+            b.forEach(script::insert);
+        }
+        // Le suffixe commun n'a pas besoin d'être décrit : les lignes restantes sont conservées.
+        return script.ops;
+    }
+
+    /**
+     * Applique des opérations à l'ancienne version.
+     *
+     * @param previous L'ancienne version.
+     * @param ops      Les opérations calculées par `diff`.
+     * @return La nouvelle version.
+     * @throws IllegalArgumentException Si une opération est invalide ou ne correspond pas à l'ancienne version.
+     */
+    public static List<String> apply(List<String> previous, List<String> ops) {
+        List<String> result = new ArrayList<>(previous.size());
+        int index = 0;
+        for (String op : ops) {
+            if (op.startsWith("+")) {
+                result.add(op.substring(1));
+                continue;
+            }
+            int count;
+            try {
+                count = Integer.parseInt(op.substring(1));
+            } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+                throw new IllegalArgumentException("Opération invalide : " + op);
+            }
+            if (count < 0 || index + count > previous.size()) {
+                throw new IllegalArgumentException("Opération hors limites : " + op);
+            }
+            if (op.startsWith("=")) {
+                result.addAll(previous.subList(index, index + count));
+            } else if (!op.startsWith("-")) {
+                throw new IllegalArgumentException("Opération invalide : " + op);
+            }
+            index += count;
+        }
+        result.addAll(previous.subList(index, previous.size()));
+        return result;
+    }
+
+    /**
+     * Algorithme de Myers : recherche le plus court script d'édition et l'ajoute à `script`.
+     *
+     * @return false si le nombre de modifications dépasse `MAX_EDIT_DISTANCE`.
+     */
+    private static boolean myers(List<String> a, List<String> b, Script script) {
+        int n = a.size();
+        int m = b.size();
+        int max = Math.min(n + m, MAX_EDIT_DISTANCE);
+        int offset = max + 1;
+        int[] v = new int[2 * max + 3];
+        // trace.get(d) contient les valeurs de v pour k dans [-d, d], conservées pour retrouver le chemin.
+        List<int[]> trace = new ArrayList<>();
+        for (int d = 0; d <= max; d++) {
+            int[] snapshot = new int[2 * d + 1];
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && v[offset + k - 1] < v[offset + k + 1])) {
+                    x = v[offset + k + 1];
+                } else {
+                    x = v[offset + k - 1] + 1;
+                }
+                int y = x - k;
+                while (x < n && y < m && a.get(x).equals(b.get(y))) {
+                    x++;
+                    y++;
+                }
+                v[offset + k] = x;
+                snapshot[k + d] = x;
+                if (x >= n && y >= m) {
+                    trace.add(snapshot);
+                    backtrack(a, b, trace, script);
+                    return true;
+                }
+            }
+            trace.add(snapshot);
+        }
+        return false;
+    }
+
+    /**
+     * Reconstruit le script d'édition à partir des états successifs de l'algorithme de Myers.
+     */
+    private static void backtrack(List<String> a, List<String> b, List<int[]> trace, Script script) {
+        // Les opérations sont retrouvées de la fin vers le début : 0 = conserver, 1 = supprimer, 2 = insérer.
+        List<int[]> reversed = new ArrayList<>();
+        int x = a.size();
+        int y = b.size();
+        for (int d = trace.size() - 1; d > 0; d--) {
+            int[] previous = trace.get(d - 1);
+            int k = x - y;
+            int previousK;
+            if (k == -d || (k != d && previous[k - 1 + d - 1] < previous[k + 1 + d - 1])) {
+                previousK = k + 1;
+            } else {
+                previousK = k - 1;
+            }
+            int previousX = previous[previousK + d - 1];
+            int previousY = previousX - previousK;
+            while (x > previousX && y > previousY) {
+                reversed.add(new int[]{0, x - 1});
+                x--;
+                y--;
+            }
+            if (x == previousX) {
+                reversed.add(new int[]{2, y - 1});
+            } else {
+                reversed.add(new int[]{1, x - 1});
+            }
+            x = previousX;
+            y = previousY;
+        }
+        while (x > 0 && y > 0) {
+            reversed.add(new int[]{0, x - 1});
+            x--;
+            y--;
+        }
+        for (int i = reversed.size() - 1; i >= 0; i--) {
+            int[] op = reversed.get(i);
+            switch (op[0]) {
+                case 0 -> script.keep(1);
+                case 1 -> script.delete(1);
+                default -> script.insert(b.get(op[1]));
+            }
+        }
+    }
+
+    /**
+     * Script d'édition en cours de construction : les conservations et suppressions consécutives
+     * sont regroupées en une seule opération.
+     */
+    private static final class Script {
+        private final List<String> ops = new ArrayList<>();
+        private char pendingKind = 0;
+        private int pendingCount = 0;
+
+        void keep(int count) {
+            add('=', count);
+        }
+
+        void delete(int count) {
+            add('-', count);
+        }
+
+        void insert(String line) {
+            flush();
+            ops.add("+" + line);
+        }
+
+        private void add(char kind, int count) {
+            if (count == 0) {
+                return;
+            }
+            if (pendingKind != kind) {
+                flush();
+                pendingKind = kind;
+            }
+            pendingCount += count;
+            // L'opération regroupée est écrite dès maintenant et remplacée si elle s'allonge.
+            if (pendingCount == count) {
+                ops.add(String.valueOf(kind) + count);
+            } else {
+                ops.set(ops.size() - 1, String.valueOf(kind) + pendingCount);
+            }
+        }
+
+        private void flush() {
+            pendingKind = 0;
+            pendingCount = 0;
+        }
+    }
+}
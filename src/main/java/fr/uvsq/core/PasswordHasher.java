@@ -0,0 +1,87 @@
+package fr.uvsq.core;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * La classe `PasswordHasher` calcule et vérifie des empreintes de mots de passe salées et lentes.
+ *
+ * L'algorithme utilisé est PBKDF2-HMAC-SHA256. Une empreinte est stockée sous la forme
+ * `pbkdf2-sha256$<itérations>$<sel base64>$<empreinte base64>`, ce qui permet d'augmenter
+ * le nombre d'itérations sans invalider les empreintes existantes.
+ */
+public class PasswordHasher {
+    private static final String PREFIX = "pbkdf2-sha256";
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int DEFAULT_ITERATIONS = 120_000;
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+    private static final SecureRandom random = new SecureRandom();
+
+    /**
+     * Calcule l'empreinte d'un mot de passe avec un sel aléatoire.
+     *
+     * @param password Le mot de passe en clair.
+     * @return L'empreinte encodée, prête à être stockée.
+     */
+    public static String hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        byte[] hash = pbkdf2(password, salt, DEFAULT_ITERATIONS);
+        Base64.Encoder encoder = Base64.getEncoder();
+        return PREFIX + "$" + DEFAULT_ITERATIONS + "$" + encoder.encodeToString(salt) + "$" + encoder.encodeToString(hash);
+    }
+
+    /**
+     * Vérifie un mot de passe par rapport à une empreinte stockée.
+     * La comparaison s'effectue en temps constant.
+     *
+     * @param password Le mot de passe en clair.
+     * @param stored   L'empreinte encodée.
+     * @return true si le mot de passe correspond, false sinon (y compris si l'empreinte est mal formée).
+     */
+    public static boolean verify(String password, String stored) {
+        String[] parts = stored.split("\\$");
+        if (parts.length != 4 || !PREFIX.equals(parts[0])) {
+            return false;
+        }
+        try {
+            int iterations = Integer.parseInt(parts[1]);
+            Base64.Decoder decoder = Base64.getDecoder();
+            byte[] salt = decoder.decode(parts[2]);
+            byte[] expected = decoder.decode(parts[3]);
+            return MessageDigest.isEqual(expected, pbkdf2(password, salt, iterations));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("PBKDF2 indisponible", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    /**
+     * Affiche l'empreinte d'un mot de passe, à copier dans le fichier des identifiants.
+     * Usage : `java fr.uvsq.core.PasswordHasher <login> <mot de passe>`
+     *
+     * @param args Le login et le mot de passe.
+     */
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.err.println("Usage : PasswordHasher <login> <mot de passe>");
+            System.exit(1);
+        }
+        System.out.println(args[0] + "=" + hash(args[1]));
+    }
+}
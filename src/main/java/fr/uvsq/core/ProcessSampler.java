@@ -0,0 +1,237 @@
+package fr.uvsq.core;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Mesure les ressources consommées par l'arbre de processus d'une commande (voir `ResourceUsage`).
+ *
+ * Sous Linux, le processus et ses descendants sont relevés dans `/proc` : temps processeur
+ * (`/proc/<pid>/stat`, y compris celui des enfants déjà terminés) et mémoire résidente
+ * (`/proc/<pid>/status`). Les relevés sont rapprochés au début de la commande puis espacés,
+ * pour mesurer correctement les commandes brèves sans coûter cher aux commandes longues.
+ * Un dernier relevé est fait à la fin de la sortie standard, juste avant que le processus ne disparaisse.
+ *
+ * Le temps processeur d'un processus terminé entre deux relevés serait perdu : lorsque la commande
+ * était le seul processus lancé par le serveur pendant toute son exécution, il est donc complété par
+ * le temps des enfants de la JVM (`cutime` et `cstime` de `/proc/self/stat`), qui est alors exactement le sien.
+ * Sur les autres systèmes, seul le temps processeur des processus vivants est relevé (`ProcessHandle`)
+ * et la mémoire n'est pas mesurée. Elle ne l'est pas non plus pour une commande terminée avant le premier relevé.
+ */
+final class ProcessSampler {
+    private static final Path PROC = Paths.get("/proc");
+    private static final boolean PROC_AVAILABLE = Files.isReadable(PROC.resolve("self/stat"));
+    // Les temps de /proc/<pid>/stat sont exprimés en tops d'horloge (USER_HZ), qui valent 100 sous Linux.
+    private static final long TICKS_PER_SECOND = 100;
+    private static final long FIRST_SAMPLE_MILLIS = 10;
+    private static final long MAX_SAMPLE_INTERVAL_MILLIS = 250;
+
+    // Processus lancés et pas encore terminés, et nombre total de lancements : permettent de savoir
+    // si une commande a été seule à s'exécuter, et donc si le temps des enfants de la JVM est le sien.
+    private static final AtomicInteger running = new AtomicInteger();
+    private static final AtomicLong launches = new AtomicLong();
+
+    private final ScheduledExecutorService scheduler;
+    private final long startNanos = System.nanoTime();
+    private final long launch;
+    private final boolean alone;
+    private final long childrenCpuBefore;
+    private Process process;
+    private ScheduledFuture<?> next;
+    private long delayMillis = FIRST_SAMPLE_MILLIS;
+    private boolean stopped = false;
+    private long cpuMillis = 0;
+    private long peakMemoryKb = ResourceUsage.UNKNOWN;
+
+    /**
+     * Prépare la mesure d'une commande. À appeler juste avant le lancement de son processus.
+     *
+     * @param scheduler Le planificateur des relevés.
+     */
+    ProcessSampler(ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+        this.childrenCpuBefore = childrenCpuMillis();
+        this.alone = running.incrementAndGet() == 1;
+        this.launch = launches.incrementAndGet();
+    }
+
+    /**
+     * Commence les relevés du processus lancé.
+     *
+     * @param process Le processus de la commande.
+     */
+    synchronized void start(Process process) {
+        this.process = process;
+        process.onExit().whenComplete((p, e) -> running.decrementAndGet());
+        next = scheduler.schedule(this::tick, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Abandonne la mesure d'une commande dont le processus n'a pas pu être lancé.
+     */
+    void abandon() {
+        running.decrementAndGet();
+    }
+
+    /**
+     * Relève immédiatement l'arbre de processus, tant que le processus n'a pas disparu.
+     */
+    synchronized void sample() {
+        if (PROC_AVAILABLE) {
+            sampleProc();
+        } else {
+            sampleHandles();
+        }
+    }
+
+    /**
+     * Arrête les relevés et retourne les ressources consommées.
+     *
+     * @param exitCode Le code de sortie de la commande.
+     * @return Les ressources consommées par la commande.
+     */
+    synchronized ResourceUsage finish(int exitCode) {
+        stopped = true;
+        if (next != null) {
+            next.cancel(false);
+        }
+        if (alone && launches.get() == launch && process != null && !process.isAlive()) {
+            long children = childrenCpuMillis();
+            if (children >= 0 && childrenCpuBefore >= 0) {
+                cpuMillis = Math.max(cpuMillis, children - childrenCpuBefore);
+            }
+        }
+        long wallMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        return new ResourceUsage(exitCode, wallMillis, cpuMillis, peakMemoryKb);
+    }
+
+    private synchronized void tick() {
+        if (stopped) {
+            return;
+        }
+        sample();
+        delayMillis = Math.min(delayMillis * 2, MAX_SAMPLE_INTERVAL_MILLIS);
+        next = scheduler.schedule(this::tick, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private List<Long> treePids() {
+        List<Long> pids = new ArrayList<>();
+        pids.add(process.pid());
+        process.descendants().forEach(handle -> pids.add(handle.pid()));
+        return pids;
+    }
+
+    private void sampleProc() {
+        long ticks = 0;
+        long residentKb = 0;
+        long highWaterKb = 0;
+        boolean found = false;
+        for (long pid : treePids()) {
+            long processTicks = readCpuTicks(PROC.resolve(pid + "/stat"));
+            if (processTicks < 0) {
+                continue; // Processus terminé depuis l'énumération.
+            }
+            ticks += processTicks;
+            found = true;
+            long[] memory = readMemoryKb(PROC.resolve(pid + "/status"));
+            residentKb += memory[0];
+            highWaterKb = Math.max(highWaterKb, memory[1]);
+        }
+        if (found) {
+            cpuMillis = Math.max(cpuMillis, ticks * 1000 / TICKS_PER_SECOND);
+        }
+        // Un processus terminé mais pas encore attendu par son parent n'a plus de mémoire à relever.
+        if (residentKb > 0 || highWaterKb > 0) {
+            peakMemoryKb = Math.max(peakMemoryKb, Math.max(residentKb, highWaterKb));
+        }
+    }
+
+    private void sampleHandles() {
+        long millis = cpuMillis(process.toHandle());
+        for (ProcessHandle handle : process.descendants().toList()) {
+            millis += cpuMillis(handle);
+        }
+        cpuMillis = Math.max(cpuMillis, millis);
+    }
+
+    private static long cpuMillis(ProcessHandle handle) {
+        return handle.info().totalCpuDuration().map(duration -> duration.toMillis()).orElse(0L);
+    }
+
+    /**
+     * @return Le temps processeur des enfants terminés de la JVM, en millisecondes, ou -1 s'il est inconnu.
+     */
+    private static long childrenCpuMillis() {
+        if (!PROC_AVAILABLE) {
+            return -1;
+        }
+        String[] fields = readStatFields(PROC.resolve("self/stat"));
+        if (fields == null) {
+            return -1;
+        }
+        return (Long.parseLong(fields[13]) + Long.parseLong(fields[14])) * 1000 / TICKS_PER_SECOND;
+    }
+
+    /**
+     * @return Le temps processeur d'un processus et de ses enfants terminés, en tops d'horloge,
+     * ou -1 si le processus n'existe plus.
+     */
+    private static long readCpuTicks(Path stat) {
+        String[] fields = readStatFields(stat);
+        if (fields == null) {
+            return -1;
+        }
+        return Long.parseLong(fields[11]) + Long.parseLong(fields[12])
+                + Long.parseLong(fields[13]) + Long.parseLong(fields[14]);
+    }
+
+    /**
+     * Lit les champs de `/proc/<pid>/stat` qui suivent le nom du processus (entre parenthèses, il peut
+     * contenir des espaces) : le premier est l'état, `utime` et `stime` sont les 12e et 13e,
+     * `cutime` et `cstime` les 14e et 15e.
+     *
+     * @return Les champs, ou `null` si le processus n'existe plus.
+     */
+    private static String[] readStatFields(Path stat) {
+        try {
+            String line = Files.readString(stat);
+            return line.substring(line.lastIndexOf(')') + 2).split(" ");
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return La mémoire résidente actuelle (`VmRSS`) et maximale (`VmHWM`) d'un processus, en Ko
+     * (0 pour un processus terminé, dont la mémoire est déjà libérée).
+     */
+    private static long[] readMemoryKb(Path status) {
+        long[] memory = new long[2];
+        try {
+            for (String line : Files.readAllLines(status)) {
+                if (line.startsWith("VmRSS:")) {
+                    memory[0] = parseKb(line);
+                } else if (line.startsWith("VmHWM:")) {
+                    memory[1] = parseKb(line);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // Processus terminé entre la lecture de stat et celle de status.
+        }
+        return memory;
+    }
+
+    private static long parseKb(String line) {
+        String value = line.substring(line.indexOf(':') + 1).trim();
+        return Long.parseLong(value.substring(0, value.indexOf(' ')));
+    }
+}
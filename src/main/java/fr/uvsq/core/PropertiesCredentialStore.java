@@ -0,0 +1,37 @@
+package fr.uvsq.core;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * La classe `PropertiesCredentialStore` lit les identifiants depuis un fichier `.properties`.
+ * Chaque ligne associe un login à l'empreinte de son mot de passe :
+ *
+ * <pre>admin=pbkdf2-sha256$120000$...$...</pre>
+ *
+ * Les lignes peuvent être générées avec `PasswordHasher`.
+ */
+public class PropertiesCredentialStore implements CredentialStore {
+    private final Properties hashes = new Properties();
+
+    /**
+     * Constructeur de `PropertiesCredentialStore`.
+     *
+     * @param file Le fichier des identifiants.
+     * @throws IOException Si le fichier ne peut pas être lu.
+     */
+    public PropertiesCredentialStore(Path file) throws IOException {
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            hashes.load(reader);
+        }
+    }
+
+    @Override
+    public String findPasswordHash(String login) {
+        return hashes.getProperty(login);
+    }
+}
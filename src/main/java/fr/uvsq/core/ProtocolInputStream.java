@@ -0,0 +1,122 @@
+package fr.uvsq.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * La classe `ProtocolInputStream` est le flux d'entrée d'une connexion : elle permet de lire
+ * aussi bien les lignes du protocole (UTF-8, terminées par `\n`) que des données binaires
+ * (contenu d'un fichier, archive) sur le même flux.
+ *
+ * Un `BufferedReader` placé sur le socket lit d'avance plus d'octets que la ligne demandée ;
+ * les octets binaires qui suivent une ligne pouvaient alors être consommés par le lecteur de texte
+ * et perdus pour la lecture binaire. Ici, un seul tampon sert aux deux types de lecture.
+ */
+public class ProtocolInputStream extends InputStream {
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+    private int position = 0;
+    private int limit = 0;
+
+    /**
+     * Constructeur de `ProtocolInputStream`.
+     *
+     * @param in Le flux d'entrée du socket.
+     */
+    public ProtocolInputStream(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Lit une ligne du protocole.
+     *
+     * Si la lecture est interrompue par le délai du socket (`SocketTimeoutException`), le début de ligne
+     * déjà reçu est conservé : l'appel suivant reprend la même ligne.
+     *
+     * @return La ligne, sans son saut de ligne (ni `\r` final), ou `null` en fin de flux.
+     * @throws IOException Si la lecture échoue.
+     */
+    public String readLine() throws IOException {
+        while (true) {
+            if (position == limit && !fill()) {
+                return line.size() == 0 ? null : decode();
+            }
+            for (int i = position; i < limit; i++) {
+                if (buffer[i] == '\n') {
+                    if (line.size() == 0) {
+                        // Cas courant : la ligne est entière dans le tampon, elle est décodée sans copie intermédiaire.
+                        String decoded = decode(buffer, position, i - position);
+                        position = i + 1;
+                        return decoded;
+                    }
+                    line.write(buffer, position, i - position);
+                    position = i + 1;
+                    return decode();
+                }
+            }
+            line.write(buffer, position, limit - position);
+            position = limit;
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (position < limit) {
+            int count = Math.min(len, limit - position);
+            System.arraycopy(buffer, position, b, off, count);
+            position += count;
+            return count;
+        }
+        // Tampon vide : les lectures volumineuses vont directement dans le tableau de l'appelant.
+        return len >= buffer.length ? in.read(b, off, len) : (fill() ? read(b, off, len) : -1);
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (limit - position) + in.available();
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private boolean fill() throws IOException {
+        int count = in.read(buffer, 0, buffer.length);
+        if (count <= 0) {
+            return false;
+        }
+        position = 0;
+        limit = count;
+        return true;
+    }
+
+    private String decode() {
+        byte[] bytes = line.toByteArray();
+        line.reset();
+        return decode(bytes, 0, bytes.length);
+    }
+
+    private static String decode(byte[] bytes, int offset, int length) {
+        if (length > 0 && bytes[offset + length - 1] == '\r') {
+            length--;
+        }
+        return new String(bytes, offset, length, StandardCharsets.UTF_8);
+    }
+}
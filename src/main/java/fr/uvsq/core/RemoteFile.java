@@ -0,0 +1,86 @@
+package fr.uvsq.core;
+
+/**
+ * La classe `RemoteFile` décrit un fichier du répertoire partagé du serveur (`server_files/`),
+ * tel que renvoyé par les requêtes LIST et STAT.
+ *
+ * Sur le réseau, un fichier est décrit par une ligne `<type>\t<taille>\t<date>\t<nom>`, où le type
+ * vaut `F` (fichier) ou `D` (répertoire) et la date est exprimée en millisecondes depuis l'époque.
+ * Le nom, relatif au répertoire partagé, est placé en dernier car il peut contenir des tabulations.
+ */
+public class RemoteFile {
+    private final String name;
+    private final long size;
+    private final long lastModified;
+    private final boolean directory;
+
+    /**
+     * Constructeur de `RemoteFile`.
+     *
+     * @param name         Le chemin relatif au répertoire partagé, avec `/` comme séparateur.
+     * @param size         La taille en octets.
+     * @param lastModified La date de dernière modification, en millisecondes depuis l'époque.
+     * @param directory    true s'il s'agit d'un répertoire.
+     */
+    public RemoteFile(String name, long size, long lastModified, boolean directory) {
+        this.name = name;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.directory = directory;
+    }
+
+    /**
+     * Décode une ligne du protocole.
+     *
+     * @param line La ligne reçue.
+     * @return Le fichier décrit.
+     * @throws IllegalArgumentException Si la ligne est mal formée.
+     */
+    public static RemoteFile parse(String line) {
+        String[] fields = line.split("\t", 4);
+        if (fields.length != 4 || !(fields[0].equals("F") || fields[0].equals("D"))) {
+            throw new IllegalArgumentException("Description de fichier invalide : " + line);
+        }
+        return new RemoteFile(fields[3], Long.parseLong(fields[1]), Long.parseLong(fields[2]), fields[0].equals("D"));
+    }
+
+    /**
+     * @return La ligne du protocole décrivant ce fichier.
+     */
+    public String toLine() {
+        return (directory ? "D" : "F") + "\t" + size + "\t" + lastModified + "\t" + name;
+    }
+
+    /**
+     * @return Le chemin relatif au répertoire partagé.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return La taille en octets.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return La date de dernière modification, en millisecondes depuis l'époque.
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * @return true s'il s'agit d'un répertoire.
+     */
+    public boolean isDirectory() {
+        return directory;
+    }
+
+    @Override
+    public String toString() {
+        return name + (directory ? "/" : " (" + size + " octets)");
+    }
+}
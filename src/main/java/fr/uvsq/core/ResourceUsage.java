@@ -0,0 +1,90 @@
+package fr.uvsq.core;
+
+/**
+ * La classe `ResourceUsage` décrit les ressources consommées par l'exécution d'une commande :
+ * son code de sortie, sa durée, le temps processeur et la mémoire maximale de son arbre de processus.
+ *
+ * Sur le réseau, elle est décrite par une ligne `<code de sortie> <durée ms> <processeur ms> <mémoire Ko>`,
+ * où la mémoire vaut `-1` lorsqu'elle n'a pas pu être mesurée (commande intégrée, système sans `/proc`).
+ */
+public class ResourceUsage {
+    /** Valeur d'une mesure indisponible. */
+    public static final long UNKNOWN = -1;
+
+    private final int exitCode;
+    private final long wallMillis;
+    private final long cpuMillis;
+    private final long peakMemoryKb;
+
+    /**
+     * Constructeur de `ResourceUsage`.
+     *
+     * @param exitCode     Le code de sortie de la commande.
+     * @param wallMillis   La durée d'exécution, en millisecondes.
+     * @param cpuMillis    Le temps processeur (utilisateur et système) de la commande et de ses descendants, en millisecondes.
+     * @param peakMemoryKb La mémoire résidente maximale de l'arbre de processus, en Ko, ou `UNKNOWN`.
+     */
+    public ResourceUsage(int exitCode, long wallMillis, long cpuMillis, long peakMemoryKb) {
+        this.exitCode = exitCode;
+        this.wallMillis = wallMillis;
+        this.cpuMillis = cpuMillis;
+        this.peakMemoryKb = peakMemoryKb;
+    }
+
+    /**
+     * Décode une ligne du protocole.
+     *
+     * @param line La ligne reçue.
+     * @return Les ressources décrites.
+     * @throws IllegalArgumentException Si la ligne est mal formée.
+     */
+    public static ResourceUsage parse(String line) {
+        String[] fields = line.trim().split(" ");
+        if (fields.length != 4) {
+            throw new IllegalArgumentException("Description de ressources invalide : " + line);
+        }
+        return new ResourceUsage(Integer.parseInt(fields[0]), Long.parseLong(fields[1]),
+                Long.parseLong(fields[2]), Long.parseLong(fields[3]));
+    }
+
+    /**
+     * @return La ligne du protocole décrivant ces ressources.
+     */
+    public String toLine() {
+        return exitCode + " " + wallMillis + " " + cpuMillis + " " + peakMemoryKb;
+    }
+
+    /**
+     * @return Le code de sortie de la commande.
+     */
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    /**
+     * @return La durée d'exécution, en millisecondes.
+     */
+    public long getWallMillis() {
+        return wallMillis;
+    }
+
+    /**
+     * @return Le temps processeur de la commande et de ses descendants, en millisecondes.
+     */
+    public long getCpuMillis() {
+        return cpuMillis;
+    }
+
+    /**
+     * @return La mémoire résidente maximale de l'arbre de processus, en Ko, ou `UNKNOWN`.
+     */
+    public long getPeakMemoryKb() {
+        return peakMemoryKb;
+    }
+
+    @Override
+    public String toString() {
+        return "exit " + exitCode + ", " + wallMillis + " ms, CPU " + cpuMillis + " ms"
+                + (peakMemoryKb == UNKNOWN ? "" : ", mémoire " + peakMemoryKb + " Ko");
+    }
+}
@@ -0,0 +1,63 @@
+package fr.uvsq.core;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+
+/**
+ * La classe `SslContexts` crée les contextes TLS à partir d'un keystore, sans passer par les propriétés
+ * système `javax.net.ssl.*` : plusieurs serveurs ou passerelles peuvent ainsi coexister dans la même JVM
+ * avec des keystores différents.
+ */
+public final class SslContexts {
+    private SslContexts() {
+    }
+
+    /**
+     * Crée le contexte d'un serveur TLS.
+     *
+     * @param keystore Le keystore contenant la clé privée et le certificat du serveur.
+     * @param password Le mot de passe du keystore et de la clé.
+     * @return Le contexte TLS.
+     * @throws IOException              Si le keystore ne peut pas être lu.
+     * @throws GeneralSecurityException Si le keystore est invalide ou le mot de passe incorrect.
+     */
+    public static SSLContext server(Path keystore, String password) throws IOException, GeneralSecurityException {
+        KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagers.init(load(keystore, password), password.toCharArray());
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(keyManagers.getKeyManagers(), null, null);
+        return context;
+    }
+
+    /**
+     * Crée le contexte d'un client TLS, qui n'accepte que les certificats du truststore.
+     *
+     * @param truststore Le keystore contenant les certificats de confiance.
+     * @param password   Le mot de passe du truststore.
+     * @return Le contexte TLS.
+     * @throws IOException              Si le truststore ne peut pas être lu.
+     * @throws GeneralSecurityException Si le truststore est invalide ou le mot de passe incorrect.
+     */
+    public static SSLContext client(Path truststore, String password) throws IOException, GeneralSecurityException {
+        TrustManagerFactory trustManagers = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagers.init(load(truststore, password));
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(null, trustManagers.getTrustManagers(), null);
+        return context;
+    }
+
+    private static KeyStore load(Path file, String password) throws IOException, GeneralSecurityException {
+        KeyStore keyStore = KeyStore.getInstance("JKS");
+        try (InputStream in = Files.newInputStream(file)) {
+            keyStore.load(in, password.toCharArray());
+        }
+        return keyStore;
+    }
+}
@@ -0,0 +1,84 @@
+package fr.uvsq.core;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.zip.CRC32C;
+
+/**
+ * La classe `StreamDigest` calcule l'empreinte d'un flux au fil de son transfert, sans relire les données.
+ *
+ * Deux algorithmes sont disponibles :
+ * - `CRC32C` (par défaut) : détecte les corruptions et troncatures au débit du réseau
+ *   (instruction matérielle sur les processeurs récents) ;
+ * - `SHA-256` : empreinte cryptographique, plus coûteuse, pour une vérification forte.
+ */
+public class StreamDigest {
+    /** Algorithme par défaut. */
+    public static final String CRC32C_ALGORITHM = "CRC32C";
+    /** Algorithme cryptographique. */
+    public static final String SHA256_ALGORITHM = "SHA-256";
+
+    private final String algorithm;
+    private final CRC32C crc;
+    private final MessageDigest sha;
+
+    private StreamDigest(String algorithm, CRC32C crc, MessageDigest sha) {
+        this.algorithm = algorithm;
+        this.crc = crc;
+        this.sha = sha;
+    }
+
+    /**
+     * Crée un calcul d'empreinte.
+     *
+     * @param algorithm `CRC32C` ou `SHA-256`.
+     * @return Le calcul d'empreinte, initialisé.
+     * @throws IllegalArgumentException Si l'algorithme n'est pas supporté.
+     */
+    public static StreamDigest create(String algorithm) {
+        if (CRC32C_ALGORITHM.equals(algorithm)) {
+            return new StreamDigest(algorithm, new CRC32C(), null);
+        }
+        if (SHA256_ALGORITHM.equals(algorithm)) {
+            try {
+                return new StreamDigest(algorithm, null, MessageDigest.getInstance(SHA256_ALGORITHM));
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 indisponible", e);
+            }
+        }
+        throw new IllegalArgumentException("Algorithme d'empreinte non supporté : " + algorithm);
+    }
+
+    /**
+     * Ajoute des octets au calcul.
+     *
+     * @param data   Les octets.
+     * @param offset La position du premier octet.
+     * @param length Le nombre d'octets.
+     */
+    public void update(byte[] data, int offset, int length) {
+        if (crc != null) {
+            crc.update(data, offset, length);
+        } else {
+            sha.update(data, offset, length);
+        }
+    }
+
+    /**
+     * @return L'empreinte des octets reçus, en hexadécimal. Le calcul ne doit plus être utilisé ensuite.
+     */
+    public String toHex() {
+        if (crc != null) {
+            return String.format("%08x", crc.getValue());
+        }
+        return HexFormat.of().formatHex(sha.digest());
+    }
+
+    /**
+     * @return Le nom de l'algorithme.
+     */
+    public String getAlgorithm() {
+        return algorithm;
+    }
+}
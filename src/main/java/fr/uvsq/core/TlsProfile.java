@@ -0,0 +1,125 @@
+package fr.uvsq.core;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLParameters;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Profils TLS nommés, appliqués aux sockets du serveur, du client et de la passerelle : versions du
+ * protocole, suites de chiffrement (par ordre de préférence) et groupes d'échange de clés autorisés.
+ *
+ * Le débit des transferts dépend surtout de la suite de chiffrement : AES-GCM profite des instructions
+ * AES-NI des processeurs récents, ChaCha20-Poly1305 est plus rapide sur ceux qui en sont dépourvus.
+ * Le coût de la poignée de main dépend surtout du groupe d'échange de clés (x25519 est le plus rapide).
+ * Le benchmark `fr.uvsq.bench.TlsBenchmark` mesure les deux pour chaque profil sur la machine cible.
+ *
+ * Hors `DEFAULT`, c'est l'ordre de préférence du serveur qui choisit la suite : un client d'un autre profil
+ * reste accepté tant qu'ils ont une suite en commun. Seules les suites et les groupes disponibles
+ * dans la JVM sont retenus.
+ */
+public enum TlsProfile {
+    /** Versions et suites par défaut de la JVM. */
+    DEFAULT("default", null, null, null),
+    /** TLS 1.3 avec AES-GCM en priorité : le plus rapide sur les processeurs dotés d'AES-NI. */
+    MAX_THROUGHPUT("max-throughput",
+            new String[]{"TLSv1.3"},
+            new String[]{"TLS_AES_128_GCM_SHA256", "TLS_AES_256_GCM_SHA384", "TLS_CHACHA20_POLY1305_SHA256"},
+            new String[]{"x25519", "secp256r1"}),
+    /** TLS 1.3 avec ChaCha20-Poly1305 en priorité : le plus rapide sans AES-NI (processeurs ARM modestes...). */
+    CHACHA20("chacha20",
+            new String[]{"TLSv1.3"},
+            new String[]{"TLS_CHACHA20_POLY1305_SHA256", "TLS_AES_128_GCM_SHA256", "TLS_AES_256_GCM_SHA384"},
+            new String[]{"x25519", "secp256r1"}),
+    /** TLS 1.3 et 1.2, suites AEAD puis CBC à échange de clés éphémère : pour les clients plus anciens. */
+    COMPATIBILITY("compatibility",
+            new String[]{"TLSv1.3", "TLSv1.2"},
+            new String[]{"TLS_AES_128_GCM_SHA256", "TLS_AES_256_GCM_SHA384", "TLS_CHACHA20_POLY1305_SHA256",
+                    "TLS_ECDHE_ECDSA_WITH_AES_128_GCM_SHA256", "TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256",
+                    "TLS_ECDHE_ECDSA_WITH_AES_256_GCM_SHA384", "TLS_ECDHE_RSA_WITH_AES_256_GCM_SHA384",
+                    "TLS_ECDHE_ECDSA_WITH_CHACHA20_POLY1305_SHA256", "TLS_ECDHE_RSA_WITH_CHACHA20_POLY1305_SHA256",
+                    "TLS_DHE_RSA_WITH_AES_128_GCM_SHA256", "TLS_DHE_RSA_WITH_AES_256_GCM_SHA384",
+                    "TLS_ECDHE_ECDSA_WITH_AES_128_CBC_SHA256", "TLS_ECDHE_RSA_WITH_AES_128_CBC_SHA256",
+                    "TLS_ECDHE_ECDSA_WITH_AES_256_CBC_SHA384", "TLS_ECDHE_RSA_WITH_AES_256_CBC_SHA384"},
+            null);
+
+    private final String name;
+    private final String[] protocols;
+    private final String[] cipherSuites;
+    private final String[] namedGroups;
+
+    TlsProfile(String name, String[] protocols, String[] cipherSuites, String[] namedGroups) {
+        this.name = name;
+        this.protocols = protocols;
+        this.cipherSuites = cipherSuites;
+        this.namedGroups = namedGroups;
+    }
+
+    /**
+     * Retrouve un profil par son nom (`max-throughput`...).
+     *
+     * @param name Le nom du profil.
+     * @return Le profil.
+     * @throws IllegalArgumentException Si aucun profil ne porte ce nom.
+     */
+    public static TlsProfile fromName(String name) {
+        for (TlsProfile profile : values()) {
+            if (profile.name.equals(name.trim().toLowerCase(Locale.ROOT))) {
+                return profile;
+            }
+        }
+        List<String> names = new ArrayList<>();
+        for (TlsProfile profile : values()) {
+            names.add(profile.name);
+        }
+        throw new IllegalArgumentException("Profil TLS inconnu : " + name + " (" + String.join(", ", names) + ")");
+    }
+
+    /**
+     * @return Le nom du profil, tel qu'il s'écrit dans la configuration.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Calcule les paramètres d'un socket TLS créé à partir d'un contexte, à appliquer avec
+     * `SSLSocket.setSSLParameters` ou `SSLServerSocket.setSSLParameters` avant la poignée de main.
+     *
+     * @param context Le contexte TLS du socket.
+     * @return Les paramètres du profil, restreints à ce que le contexte prend en charge.
+     * @throws SSLException Si le contexte ne prend en charge aucune version ou aucune suite du profil.
+     */
+    public SSLParameters parameters(SSLContext context) throws SSLException {
+        SSLParameters parameters = context.getDefaultSSLParameters();
+        if (this == DEFAULT) {
+            return parameters;
+        }
+        SSLParameters supported = context.getSupportedSSLParameters();
+        parameters.setProtocols(available(protocols, supported.getProtocols(), "Aucune version"));
+        parameters.setCipherSuites(available(cipherSuites, supported.getCipherSuites(), "Aucune suite de chiffrement"));
+        if (namedGroups != null && supported.getNamedGroups() != null) {
+            parameters.setNamedGroups(available(namedGroups, supported.getNamedGroups(), "Aucun groupe d'échange de clés"));
+        }
+        parameters.setUseCipherSuitesOrder(true);
+        return parameters;
+    }
+
+    private String[] available(String[] wanted, String[] supported, String none) throws SSLException {
+        Set<String> supportedSet = Set.of(supported);
+        String[] retained = Arrays.stream(wanted).filter(supportedSet::contains).toArray(String[]::new);
+        if (retained.length == 0) {
+            throw new SSLException(none + " du profil TLS " + name + " n'est disponible");
+        }
+        return retained;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
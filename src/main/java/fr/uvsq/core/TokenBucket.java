@@ -0,0 +1,76 @@
+package fr.uvsq.core;
+
+/**
+ * La classe `TokenBucket` implémente un seau à jetons classique.
+ * Le seau contient au plus `capacity` jetons et se remplit continûment à raison de
+ * `refillPerSecond` jetons par seconde. Chaque opération consomme un ou plusieurs jetons ;
+ * lorsqu'il n'y en a plus assez, l'opération est refusée (ou doit attendre).
+ */
+public class TokenBucket {
+    private final double capacity;
+    private final double refillPerNano;
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * Constructeur de `TokenBucket`. Le seau est initialement plein.
+     *
+     * @param capacity        Le nombre maximal de jetons (taille de la rafale autorisée).
+     * @param refillPerSecond Le nombre de jetons ajoutés par seconde.
+     */
+    public TokenBucket(double capacity, double refillPerSecond) {
+        if (capacity <= 0 || refillPerSecond < 0) {
+            throw new IllegalArgumentException("Paramètres de seau invalides : " + capacity + ", " + refillPerSecond);
+        }
+        this.capacity = capacity;
+        this.refillPerNano = refillPerSecond / 1_000_000_000d;
+        this.tokens = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Tente de consommer des jetons.
+     *
+     * @param amount Le nombre de jetons à consommer.
+     * @return true si les jetons ont été consommés, false si le seau n'en contient pas assez.
+     */
+    public synchronized boolean tryConsume(double amount) {
+        refill();
+        if (tokens >= amount) {
+            tokens -= amount;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Calcule le délai nécessaire avant de pouvoir consommer des jetons.
+     *
+     * @param amount Le nombre de jetons souhaité (au plus `capacity`).
+     * @return Le délai d'attente en nanosecondes, 0 si les jetons sont disponibles immédiatement.
+     */
+    public synchronized long nanosUntilAvailable(double amount) {
+        refill();
+        if (tokens >= amount) {
+            return 0;
+        }
+        if (refillPerNano == 0) {
+            return Long.MAX_VALUE;
+        }
+        return (long) Math.ceil((amount - tokens) / refillPerNano);
+    }
+
+    /**
+     * @return true si le seau est plein, c'est-à-dire inutilisé depuis suffisamment longtemps.
+     */
+    public synchronized boolean isFull() {
+        refill();
+        return tokens >= capacity;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * refillPerNano);
+        lastRefill = now;
+    }
+}
@@ -0,0 +1,109 @@
+package fr.uvsq.gateway;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * La classe `Backend` représente un serveur vers lequel la passerelle relaie des sessions :
+ * son état (disponible ou non), sa charge (sessions en cours), son temps de réponse aux vérifications
+ * et ses connexions authentifiées prêtes à l'emploi.
+ */
+public class Backend {
+    // Poids de la dernière mesure dans la moyenne mobile du temps de réponse.
+    private static final double LATENCY_SMOOTHING = 0.3;
+
+    private final InetSocketAddress address;
+    private final AtomicInteger activeSessions = new AtomicInteger();
+    private final AtomicInteger totalSessions = new AtomicInteger();
+    // Connexions prêtes : la plus récemment vérifiée en tête.
+    final ConcurrentLinkedDeque<BackendConnection> idle = new ConcurrentLinkedDeque<>();
+    private volatile boolean healthy = false;
+    private volatile boolean checked = false;
+    private volatile double latencyMillis = 0;
+
+    Backend(InetSocketAddress address) {
+        this.address = address;
+    }
+
+    /**
+     * @return L'adresse du serveur.
+     */
+    public InetSocketAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * @return true si le serveur a répondu à la dernière vérification.
+     */
+    public boolean isHealthy() {
+        return healthy;
+    }
+
+    /**
+     * @return Le nombre de sessions relayées en cours vers ce serveur.
+     */
+    public int getActiveSessions() {
+        return activeSessions.get();
+    }
+
+    /**
+     * @return Le nombre de sessions relayées vers ce serveur depuis le démarrage de la passerelle.
+     */
+    public int getTotalSessions() {
+        return totalSessions.get();
+    }
+
+    /**
+     * @return Le nombre de connexions authentifiées prêtes à l'emploi.
+     */
+    public int getIdleConnections() {
+        return idle.size();
+    }
+
+    /**
+     * @return Le temps de réponse moyen aux vérifications (PING), en millisecondes.
+     */
+    public double getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    /**
+     * @return true si le serveur a déjà été vérifié au moins une fois.
+     */
+    boolean wasChecked() {
+        return checked;
+    }
+
+    void markHealthy(long pingNanos) {
+        double millis = pingNanos / 1_000_000.0;
+        latencyMillis = healthy ? latencyMillis + LATENCY_SMOOTHING * (millis - latencyMillis) : millis;
+        healthy = true;
+        checked = true;
+    }
+
+    void markUnhealthy() {
+        healthy = false;
+        checked = true;
+        BackendConnection connection;
+        while ((connection = idle.poll()) != null) {
+            connection.close();
+        }
+    }
+
+    void sessionStarted() {
+        activeSessions.incrementAndGet();
+        totalSessions.incrementAndGet();
+    }
+
+    void sessionEnded() {
+        activeSessions.decrementAndGet();
+    }
+
+    @Override
+    public String toString() {
+        return address.getHostString() + ":" + address.getPort() + (healthy ? "" : " (indisponible)")
+                + ", " + activeSessions.get() + " session(s), " + idle.size() + " connexion(s) prête(s), "
+                + String.format("%.1f ms", latencyMillis);
+    }
+}
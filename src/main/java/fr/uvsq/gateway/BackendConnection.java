@@ -0,0 +1,138 @@
+package fr.uvsq.gateway;
+
+import fr.uvsq.core.ProtocolInputStream;
+
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Connexion TLS authentifiée de la passerelle vers un serveur. Elle est établie à l'avance
+ * (poignée de main et authentification faites), puis confiée à une seule session client.
+ */
+final class BackendConnection implements Closeable {
+    private final SSLSocket socket;
+    private final ProtocolInputStream in;
+    private final OutputStream out;
+    private volatile long lastCheckedNanos = System.nanoTime();
+
+    private BackendConnection(SSLSocket socket) throws IOException {
+        this.socket = socket;
+        this.in = new ProtocolInputStream(socket.getInputStream());
+        this.out = socket.getOutputStream();
+    }
+
+    /**
+     * Ouvre une connexion vers un serveur et s'y authentifie.
+     *
+     * @param factory       La fabrique de sockets TLS (truststore des serveurs).
+     * @param parameters    Les paramètres TLS de la connexion (profil TLS de la passerelle).
+     * @param address       L'adresse du serveur.
+     * @param login         Le login du compte de service.
+     * @param password      Son mot de passe.
+     * @param timeoutMillis Le délai maximal de connexion, de poignée de main et de réponse.
+     * @return La connexion authentifiée.
+     * @throws IOException Si le serveur est injoignable ou refuse l'authentification.
+     */
+    static BackendConnection open(SSLSocketFactory factory, SSLParameters parameters, InetSocketAddress address,
+                                  String login, String password, int timeoutMillis) throws IOException {
+        SSLSocket socket = (SSLSocket) factory.createSocket();
+        try {
+            socket.setSSLParameters(parameters);
+            socket.connect(new InetSocketAddress(address.getHostString(), address.getPort()), timeoutMillis);
+            socket.setSoTimeout(timeoutMillis);
+            socket.setTcpNoDelay(true);
+            socket.startHandshake();
+            BackendConnection connection = new BackendConnection(socket);
+            connection.writeLines("AUTH\n" + login + "\n" + password + "\n");
+            String response = connection.in.readLine();
+            if (!"OK".equals(response)) {
+                throw new IOException("Authentification refusée par " + address + " : " + response);
+            }
+            return connection;
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Vérifie que le serveur répond (requête PING).
+     *
+     * @return Le temps de réponse en nanosecondes.
+     * @throws IOException Si le serveur ne répond pas dans le délai ou répond autre chose que PONG.
+     */
+    long ping() throws IOException {
+        long start = System.nanoTime();
+        writeLines("PING\n");
+        String response = in.readLine();
+        if (!"PONG".equals(response)) {
+            throw new IOException("Réponse inattendue à PING : " + response);
+        }
+        lastCheckedNanos = System.nanoTime();
+        return lastCheckedNanos - start;
+    }
+
+    /**
+     * @return La date (`System.nanoTime`) de la dernière vérification réussie.
+     */
+    long getLastCheckedNanos() {
+        return lastCheckedNanos;
+    }
+
+    /**
+     * Attribue la session à l'utilisateur authentifié par la passerelle (requête ON_BEHALF), pour que
+     * le serveur lui impute les actions dans son journal d'audit et ses cumuls de consommation.
+     *
+     * @param login Le login de l'utilisateur.
+     * @return true si le serveur a accepté, false s'il a refusé (adresse de la passerelle non déclarée
+     *         dans ses `trusted-addresses`).
+     * @throws IOException Si le serveur ne répond pas dans le délai ou répond autre chose que OK ou ERROR.
+     */
+    boolean delegate(String login) throws IOException {
+        writeLines("ON_BEHALF " + login + "\n");
+        String response = in.readLine();
+        if ("OK".equals(response)) {
+            return true;
+        }
+        if ("ERROR".equals(response)) {
+            in.readLine();
+            return false;
+        }
+        throw new IOException("Réponse inattendue à ON_BEHALF : " + response);
+    }
+
+    /**
+     * Prépare la connexion au relais d'une session : plus de délai de lecture, une session pouvant rester inactive.
+     */
+    void attach() throws IOException {
+        socket.setSoTimeout(0);
+    }
+
+    ProtocolInputStream getInputStream() {
+        return in;
+    }
+
+    OutputStream getOutputStream() {
+        return out;
+    }
+
+    private void writeLines(String lines) throws IOException {
+        out.write(lines.getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    @Override
+    public void close() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Connexion déjà rompue.
+        }
+    }
+}
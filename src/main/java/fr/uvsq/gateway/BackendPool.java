@@ -0,0 +1,268 @@
+package fr.uvsq.gateway;
+
+import fr.uvsq.core.DaemonThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ensemble des serveurs de la passerelle : choix du serveur le moins chargé pour une nouvelle session,
+ * vérifications périodiques de disponibilité (PING) et réserve de connexions authentifiées par serveur.
+ *
+ * Un serveur qui ne répond pas est écarté jusqu'à ce qu'une vérification réussisse à nouveau.
+ * Les connexions de la réserve sont vérifiées à chaque passage ; celle qui n'a pas été vérifiée
+ * depuis plus d'un intervalle l'est avant d'être confiée à une session.
+ */
+final class BackendPool implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(BackendPool.class);
+
+    private final List<Backend> backends = new ArrayList<>();
+    private final SSLSocketFactory factory;
+    private final SSLParameters parameters;
+    private final GatewayConfig config;
+    // Un seul thread vérifie les serveurs et complète les réserves : pas d'ouvertures concurrentes en trop.
+    private final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("gateway-health"));
+    private int rotation = 0;
+
+    /**
+     * Constructeur de `BackendPool`.
+     *
+     * @param config  La configuration de la passerelle (serveurs, compte de service, réserve, délais).
+     * @param factory    La fabrique de sockets TLS vers les serveurs.
+     * @param parameters Les paramètres TLS des connexions vers les serveurs.
+     */
+    BackendPool(GatewayConfig config, SSLSocketFactory factory, SSLParameters parameters) {
+        this.config = config;
+        this.factory = factory;
+        this.parameters = parameters;
+        for (InetSocketAddress address : config.getBackends()) {
+            backends.add(new Backend(address));
+        }
+    }
+
+    /**
+     * Démarre les vérifications périodiques ; la première a lieu immédiatement.
+     */
+    void start() {
+        scheduler.scheduleWithFixedDelay(this::checkAll, 0, config.getHealthIntervalMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return Les serveurs, dans l'ordre de la configuration.
+     */
+    List<Backend> getBackends() {
+        return backends;
+    }
+
+    /**
+     * Attribue une connexion du serveur le moins chargé à une nouvelle session, au nom de l'utilisateur
+     * authentifié par la passerelle (voir `BackendConnection.delegate`). Un serveur injoignable ou qui
+     * refuse la délégation est écarté et le suivant est essayé.
+     *
+     * @param login Le login de l'utilisateur de la session.
+     * @return La connexion attribuée, à rendre avec `release`.
+     * @throws IOException Si aucun serveur n'est disponible.
+     */
+    Lease acquire(String login) throws IOException {
+        Set<Backend> failed = new HashSet<>();
+        while (true) {
+            Backend backend = chooseLeastLoaded(failed);
+            if (backend == null) {
+                throw new IOException("Aucun serveur disponible");
+            }
+            try {
+                BackendConnection connection = takeConnection(backend);
+                if (!connection.delegate(login)) {
+                    // Erreur de configuration et non panne : le serveur n'est pas marqué indisponible.
+                    logger.warn("Backend {} refused to act on behalf of {}: gateway address is not trusted",
+                            backend.getAddress(), login);
+                    connection.close();
+                    backend.sessionEnded();
+                    failed.add(backend);
+                    continue;
+                }
+                connection.attach();
+                scheduler.execute(() -> refill(backend));
+                return new Lease(backend, connection);
+            } catch (IOException e) {
+                backend.sessionEnded();
+                failed.add(backend);
+                unavailable(backend, e);
+            }
+        }
+    }
+
+    /**
+     * Rend la connexion d'une session terminée. Elle est fermée : l'état d'une session (suivi en cours,
+     * transfert interrompu...) ne doit pas être hérité par la suivante.
+     *
+     * @param lease La connexion attribuée par `acquire`.
+     */
+    void release(Lease lease) {
+        lease.connection.close();
+        lease.backend.sessionEnded();
+    }
+
+    /**
+     * Choisit, parmi les serveurs disponibles, celui qui a le moins de sessions en cours, puis le plus rapide ;
+     * à égalité, les serveurs sont pris à tour de rôle. La session lui est aussitôt comptée.
+     */
+    private synchronized Backend chooseLeastLoaded(Set<Backend> excluded) {
+        Backend best = null;
+        int start = rotation++;
+        for (int i = 0; i < backends.size(); i++) {
+            Backend backend = backends.get(Math.floorMod(start + i, backends.size()));
+            if (!backend.isHealthy() || excluded.contains(backend)) {
+                continue;
+            }
+            if (best == null || backend.getActiveSessions() < best.getActiveSessions()
+                    || backend.getActiveSessions() == best.getActiveSessions()
+                    && backend.getLatencyMillis() < best.getLatencyMillis() / 2) {
+                best = backend;
+            }
+        }
+        if (best != null) {
+            best.sessionStarted();
+        }
+        return best;
+    }
+
+    /**
+     * Prend une connexion de la réserve (vérifiée si elle est ancienne) ou en ouvre une nouvelle.
+     */
+    private BackendConnection takeConnection(Backend backend) throws IOException {
+        long staleNanos = TimeUnit.MILLISECONDS.toNanos(config.getHealthIntervalMillis());
+        BackendConnection connection;
+        while ((connection = backend.idle.pollFirst()) != null) {
+            if (System.nanoTime() - connection.getLastCheckedNanos() < staleNanos) {
+                return connection;
+            }
+            try {
+                backend.markHealthy(connection.ping());
+                return connection;
+            } catch (IOException e) {
+                connection.close();
+            }
+        }
+        return open(backend);
+    }
+
+    private BackendConnection open(Backend backend) throws IOException {
+        return BackendConnection.open(factory, parameters, backend.getAddress(), config.getBackendLogin(),
+                config.getBackendPassword(), config.getConnectTimeoutMillis());
+    }
+
+    /**
+     * Vérifie chaque serveur : ses connexions en réserve, ou une nouvelle connexion si la réserve est vide.
+     */
+    private void checkAll() {
+        for (Backend backend : backends) {
+            try {
+                check(backend);
+            } catch (RuntimeException e) {
+                logger.error("Health check of {} failed: {}", backend.getAddress(), e.getMessage(), e);
+            }
+        }
+    }
+
+    private void check(Backend backend) {
+        boolean responded = false;
+        // Seules les connexions présentes au début du passage sont vérifiées ; une session peut en prendre entre-temps.
+        for (int i = backend.idle.size(); i > 0; i--) {
+            BackendConnection connection = backend.idle.pollLast();
+            if (connection == null) {
+                break;
+            }
+            try {
+                backend.markHealthy(connection.ping());
+                backend.idle.offerFirst(connection);
+                responded = true;
+            } catch (IOException e) {
+                connection.close();
+            }
+        }
+        if (!responded) {
+            try {
+                BackendConnection connection = open(backend);
+                boolean wasHealthy = backend.isHealthy();
+                backend.markHealthy(connection.ping());
+                backend.idle.offerFirst(connection);
+                if (!wasHealthy) {
+                    logger.info("Backend {} is available", backend.getAddress());
+                }
+            } catch (IOException e) {
+                unavailable(backend, e);
+                return;
+            }
+        }
+        refill(backend);
+    }
+
+    /**
+     * Complète la réserve de connexions d'un serveur disponible.
+     */
+    private void refill(Backend backend) {
+        while (backend.isHealthy() && backend.idle.size() < config.getWarmConnections()) {
+            try {
+                backend.idle.offerFirst(open(backend));
+            } catch (IOException e) {
+                unavailable(backend, e);
+                return;
+            }
+        }
+    }
+
+    private void unavailable(Backend backend, IOException cause) {
+        // Seul le passage à l'état indisponible est signalé, pas chaque vérification échouée.
+        if (backend.isHealthy() || !backend.wasChecked()) {
+            logger.warn("Backend {} is unavailable: {}", backend.getAddress(), cause.toString());
+        }
+        backend.markUnhealthy();
+    }
+
+    /**
+     * Arrête les vérifications et ferme les connexions en réserve.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        try {
+            // Un passage en cours peut encore remettre une connexion en réserve : il est attendu avant de la vider.
+            if (!scheduler.awaitTermination(config.getConnectTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+                logger.warn("Health check still running after {} ms", config.getConnectTimeoutMillis());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Backend backend : backends) {
+            // Écarte le serveur et ferme ses connexions en réserve.
+            backend.markUnhealthy();
+        }
+    }
+
+    /**
+     * Connexion d'un serveur attribuée à une session.
+     */
+    static final class Lease {
+        final Backend backend;
+        final BackendConnection connection;
+
+        Lease(Backend backend, BackendConnection connection) {
+            this.backend = backend;
+            this.connection = connection;
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package fr.uvsq.gateway;
+
+import fr.uvsq.core.AuthManager;
+import fr.uvsq.core.BufferPool;
+import fr.uvsq.core.CredentialStore;
+import fr.uvsq.core.DaemonThreadFactory;
+import fr.uvsq.core.InMemoryCredentialStore;
+import fr.uvsq.core.PropertiesCredentialStore;
+import fr.uvsq.core.ProtocolInputStream;
+import fr.uvsq.core.SslContexts;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * La classe `Gateway` est une passerelle qui répartit les sessions des clients entre plusieurs serveurs.
+ *
+ * Elle se présente aux clients comme un serveur ordinaire : elle termine leur connexion TLS et les
+ * authentifie elle-même (mêmes identifiants et même limitation des tentatives que le serveur).
+ * Chaque session authentifiée est ensuite confiée au serveur le moins chargé, via une connexion
+ * déjà ouverte et authentifiée avec le compte de service de la passerelle (voir `BackendPool`),
+ * puis relayée octet par octet dans les deux sens : toutes les requêtes du protocole
+ * (commandes, transferts, FOLLOW, WATCH...) fonctionnent sans que la passerelle les interprète.
+ *
+ * Usage : `java fr.uvsq.gateway.Gateway [--config=<fichier>] [--<clé>=<valeur>...]` (voir `GatewayConfig`).
+ */
+public class Gateway {
+    private static final Logger logger = LoggerFactory.getLogger(Gateway.class);
+    private static final int AUTH_TIMEOUT_MILLIS = 30_000;
+    private static final int RELAY_BUFFER_SIZE = 64 * 1024;
+    // Étape d'authentification, en amont des threads de session : quelques threads et une file bornée,
+    // au-delà de laquelle les connexions sont refusées.
+    private static final int AUTH_THREADS = 4;
+    private static final int AUTH_QUEUE_SIZE = 64;
+
+    private final GatewayConfig config;
+    private volatile boolean running = true;
+    private volatile SSLServerSocket serverSocket;
+    private final BackendPool pool;
+    private ExecutorService sessions;
+    private ExecutorService authStage;
+    // Threads relayant les réponses des serveurs vers les clients, un par session.
+    private final ExecutorService relays = Executors.newCachedThreadPool(new DaemonThreadFactory("gateway-relay"));
+
+    /**
+     * Constructeur de `Gateway`.
+     *
+     * @param config La configuration de la passerelle.
+     * @throws IOException              Si le truststore ne peut pas être lu ou si le profil TLS est indisponible.
+     * @throws GeneralSecurityException Si le truststore est invalide.
+     */
+    public Gateway(GatewayConfig config) throws IOException, GeneralSecurityException {
+        this.config = config;
+        SSLContext backendContext = SslContexts.client(config.getTruststore(), config.getTruststorePassword());
+        this.pool = new BackendPool(config, backendContext.getSocketFactory(),
+                config.getTlsProfile().parameters(backendContext));
+    }
+
+    /**
+     * @return Les serveurs de la passerelle, avec leur état et leur charge.
+     */
+    public List<Backend> getBackends() {
+        return pool.getBackends();
+    }
+
+    /**
+     * Démarre la passerelle : vérification des serveurs, puis écoute des clients jusqu'à `stop`.
+     */
+    public void start() {
+        sessions = Executors.newFixedThreadPool(config.getMaxClients(), new DaemonThreadFactory("gateway-session"));
+        authStage = new ThreadPoolExecutor(AUTH_THREADS, AUTH_THREADS, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(AUTH_QUEUE_SIZE), new DaemonThreadFactory("gateway-auth"),
+                new ThreadPoolExecutor.AbortPolicy());
+        try {
+            AuthManager authManager = new AuthManager(loadCredentialStore());
+            SSLContext context = SslContexts.server(config.getKeystore(), config.getKeystorePassword());
+            serverSocket = (SSLServerSocket) context.getServerSocketFactory().createServerSocket(config.getPort());
+            serverSocket.setSSLParameters(config.getTlsProfile().parameters(context));
+            pool.start();
+            logger.info("Gateway listening on port {} for backends {}", config.getPort(), config.getBackends());
+            while (running) {
+                Socket socket = serverSocket.accept();
+                if (!authManager.admitConnection(socket.getInetAddress().getHostAddress())) {
+                    logger.warn("Rejected banned or throttled address {}", socket.getInetAddress());
+                    socket.close();
+                    continue;
+                }
+                try {
+                    authStage.execute(() -> authenticate(socket, authManager));
+                } catch (RejectedExecutionException e) {
+                    logger.warn("Authentication stage saturated, rejecting {}", socket.getInetAddress());
+                    socket.close();
+                }
+            }
+        } catch (Exception e) {
+            if (running) {
+                logger.error("Gateway error: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Arrête la passerelle : plus aucune session n'est acceptée et les sessions en cours sont coupées.
+     */
+    public void stop() {
+        running = false;
+        if (serverSocket != null) {
+            try {
+                serverSocket.close();
+            } catch (IOException e) {
+                logger.warn("Cannot close gateway socket: {}", e.getMessage());
+            }
+        }
+        if (authStage != null) {
+            authStage.shutdownNow();
+        }
+        if (sessions != null) {
+            sessions.shutdownNow();
+        }
+        relays.shutdownNow();
+        pool.close();
+    }
+
+    private CredentialStore loadCredentialStore() throws IOException {
+        if (Files.exists(config.getCredentialsFile())) {
+            logger.info("Loading credentials from {}", config.getCredentialsFile().toAbsolutePath());
+            return new PropertiesCredentialStore(config.getCredentialsFile());
+        }
+        logger.warn("No {} found, using the demo account", config.getCredentialsFile());
+        return InMemoryCredentialStore.withDemoAccount();
+    }
+
+    /**
+     * Authentifie un client sur l'étape d'authentification, lui attribue le serveur le moins chargé,
+     * puis confie le relais de sa session aux threads de session.
+     */
+    private void authenticate(Socket socket, AuthManager authManager) {
+        String clientId = socket.getInetAddress() + ":" + socket.getPort();
+        BackendPool.Lease lease = null;
+        boolean handedOff = false;
+        try {
+            socket.setSoTimeout(AUTH_TIMEOUT_MILLIS);
+            ProtocolInputStream in = new ProtocolInputStream(socket.getInputStream());
+            OutputStream out = socket.getOutputStream();
+            if (!"AUTH".equals(in.readLine())) {
+                writeLine(out, "ERROR: Authentification requise.");
+                return;
+            }
+            String login = in.readLine();
+            String password = in.readLine();
+            AuthManager.Result result = authManager.authenticate(socket.getInetAddress().getHostAddress(), login, password);
+            if (result == AuthManager.Result.THROTTLED) {
+                writeLine(out, "ERROR: Trop de tentatives, réessayez plus tard.");
+                return;
+            } else if (result != AuthManager.Result.SUCCESS) {
+                logger.warn("Gateway authentication failed for {}", clientId);
+                writeLine(out, "ERROR: Identifiants incorrects.");
+                return;
+            }
+            try {
+                lease = pool.acquire(login);
+            } catch (IOException e) {
+                logger.warn("No backend for {}: {}", clientId, e.getMessage());
+                writeLine(out, "ERROR: Aucun serveur disponible.");
+                return;
+            }
+            logger.info("Session {} ({}) routed to {}", clientId, login, lease.backend.getAddress());
+            writeLine(out, "OK");
+            socket.setSoTimeout(0);
+            BackendPool.Lease routed = lease;
+            sessions.execute(() -> serve(socket, clientId, in, out, routed));
+            handedOff = true;
+        } catch (IOException | RejectedExecutionException e) {
+            logger.debug("Gateway session {} ended: {}", clientId, e.getMessage());
+        } finally {
+            if (!handedOff) {
+                if (lease != null) {
+                    pool.release(lease);
+                }
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    // Connexion déjà rompue.
+                }
+            }
+        }
+    }
+
+    /**
+     * Relaie la session authentifiée d'un client vers le serveur qui lui a été attribué.
+     */
+    private void serve(Socket socket, String clientId, InputStream in, OutputStream out, BackendPool.Lease lease) {
+        try (socket) {
+            relay(socket, in, out, lease.connection);
+        } catch (IOException e) {
+            logger.debug("Gateway session {} ended: {}", clientId, e.getMessage());
+        } finally {
+            pool.release(lease);
+            logger.info("Session {} closed", clientId);
+        }
+    }
+
+    /**
+     * Relaie les octets entre le client et le serveur jusqu'à ce que l'un des deux ferme la connexion.
+     */
+    private void relay(Socket client, InputStream clientIn, OutputStream clientOut, BackendConnection backend) {
+        AtomicBoolean closed = new AtomicBoolean(false);
+        Runnable closeBoth = () -> {
+            if (closed.compareAndSet(false, true)) {
+                backend.close();
+                try {
+                    client.close();
+                } catch (IOException e) {
+                    // Connexion déjà rompue.
+                }
+            }
+        };
+        relays.execute(() -> {
+            try {
+                pump(backend.getInputStream(), clientOut);
+            } catch (IOException e) {
+                // Fin de session côté client ou serveur.
+            } finally {
+                closeBoth.run();
+            }
+        });
+        try {
+            pump(clientIn, backend.getOutputStream());
+        } catch (IOException e) {
+            // Fin de session côté client ou serveur.
+        } finally {
+            closeBoth.run();
+        }
+    }
+
+    private static void pump(InputStream in, OutputStream out) throws IOException {
+        try (BufferPool.Buffer pooled = BufferPool.shared().acquire(RELAY_BUFFER_SIZE)) {
+            byte[] buffer = pooled.array();
+            int read;
+            while ((read = in.read(buffer, 0, buffer.length)) != -1) {
+                out.write(buffer, 0, read);
+                out.flush();
+            }
+        }
+    }
+
+    private static void writeLine(OutputStream out, String line) throws IOException {
+        out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    /**
+     * Point d'entrée de la passerelle.
+     *
+     * @param args La configuration, sous la forme `--<clé>=<valeur>`.
+     */
+    public static void main(String[] args) {
+        Gateway gateway;
+        try {
+            GatewayConfig config = GatewayConfig.fromArguments(args);
+            logger.info("Gateway configuration: {}", config);
+            gateway = new Gateway(config);
+        } catch (Exception e) {
+            System.err.println("Configuration invalide : " + e.getMessage());
+            System.exit(2);
+            return;
+        }
+        AtomicBoolean stopping = new AtomicBoolean(false);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            stopping.set(true);
+            logger.info("Stopping gateway");
+            gateway.stop();
+        }, "gateway-shutdown"));
+        gateway.start();
+        if (!stopping.get()) {
+            System.exit(1);
+        }
+    }
+}
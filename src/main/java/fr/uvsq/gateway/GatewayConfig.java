@@ -0,0 +1,304 @@
+package fr.uvsq.gateway;
+
+import fr.uvsq.core.TlsProfile;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * La classe `GatewayConfig` regroupe les paramètres de la passerelle : port d'écoute, keystore et
+ * identifiants des clients, profil TLS (côté clients comme côté serveurs), liste des serveurs (backends), compte de service utilisé auprès d'eux,
+ * nombre de connexions préparées et fréquence des vérifications de disponibilité.
+ *
+ * Comme pour `ServerConfig`, les paramètres se lisent dans un fichier `.properties` et sur la ligne
+ * de commande avec les mêmes clés, par exemple `--backends=10.0.0.1:5001,10.0.0.2:5001`.
+ */
+public class GatewayConfig {
+    /** Fichier de configuration lu par défaut, s'il existe. */
+    public static final String DEFAULT_FILE = "gateway.properties";
+    /** Port d'écoute par défaut. */
+    public static final int DEFAULT_PORT = 5000;
+
+    private int port = DEFAULT_PORT;
+    private int maxClients = 50;
+    private Path keystore = Paths.get("server_keystore.jks");
+    private String keystorePassword = "password";
+    private Path credentialsFile = Paths.get("credentials.properties");
+    private List<InetSocketAddress> backends = new ArrayList<>(List.of(new InetSocketAddress("127.0.0.1", 5001)));
+    private String backendLogin = "admin";
+    private String backendPassword = "password123";
+    private Path truststore = Paths.get("server_keystore.jks");
+    private String truststorePassword = "password";
+    private TlsProfile tlsProfile = TlsProfile.DEFAULT;
+    private int warmConnections = 2;
+    private long healthIntervalMillis = 5000;
+    private int connectTimeoutMillis = 3000;
+
+    /**
+     * Lit la configuration de la ligne de commande : le fichier désigné par `--config=<fichier>`
+     * (ou `gateway.properties` s'il existe), puis les paramètres `--<clé>=<valeur>` qui le complètent.
+     *
+     * @param args Les arguments de la ligne de commande.
+     * @return La configuration.
+     * @throws IOException              Si le fichier de configuration ne peut pas être lu.
+     * @throws IllegalArgumentException Si un argument ou une valeur est invalide.
+     */
+    public static GatewayConfig fromArguments(String[] args) throws IOException {
+        Properties arguments = new Properties();
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (!arg.startsWith("--") || equals < 0) {
+                throw new IllegalArgumentException("Argument invalide : " + arg + " (attendu : --<clé>=<valeur>)");
+            }
+            arguments.setProperty(arg.substring(2, equals), arg.substring(equals + 1));
+        }
+        String file = (String) arguments.remove("config");
+        GatewayConfig config = new GatewayConfig();
+        Path path = Paths.get(file != null ? file : DEFAULT_FILE);
+        if (file != null || Files.exists(path)) {
+            Properties properties = new Properties();
+            try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            }
+            config.apply(properties);
+        }
+        config.apply(arguments);
+        return config;
+    }
+
+    /**
+     * Applique des paramètres à la configuration.
+     *
+     * @param properties Les paramètres, avec les clés du fichier de configuration.
+     * @throws IllegalArgumentException Si une clé est inconnue ou une valeur invalide.
+     */
+    public void apply(Properties properties) {
+        for (String key : properties.stringPropertyNames()) {
+            String value = properties.getProperty(key).trim();
+            switch (key) {
+                case "port" -> setPort(parseInt(key, value));
+                case "max-clients" -> setMaxClients(parseInt(key, value));
+                case "keystore" -> keystore = Paths.get(value);
+                case "keystore-password" -> keystorePassword = value;
+                case "credentials" -> credentialsFile = Paths.get(value);
+                case "backends" -> setBackends(parseBackends(value));
+                case "backend-login" -> backendLogin = value;
+                case "backend-password" -> backendPassword = value;
+                case "truststore" -> truststore = Paths.get(value);
+                case "truststore-password" -> truststorePassword = value;
+                case "tls-profile" -> tlsProfile = TlsProfile.fromName(value);
+                case "warm-connections" -> setWarmConnections(parseInt(key, value));
+                case "health-interval-ms" -> setHealthIntervalMillis(parseInt(key, value));
+                case "connect-timeout-ms" -> setConnectTimeoutMillis(parseInt(key, value));
+                default -> throw new IllegalArgumentException("Paramètre inconnu : " + key);
+            }
+        }
+    }
+
+    private static int parseInt(String key, String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Valeur invalide pour " + key + " : " + value);
+        }
+    }
+
+    /**
+     * Lit une liste de serveurs `hôte:port` séparés par des virgules.
+     */
+    static List<InetSocketAddress> parseBackends(String value) {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (String item : value.split(",")) {
+            String address = item.trim();
+            int colon = address.lastIndexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException("Serveur invalide : " + address + " (attendu : hôte:port)");
+            }
+            addresses.add(InetSocketAddress.createUnresolved(address.substring(0, colon),
+                    parseInt("backends", address.substring(colon + 1))));
+        }
+        return addresses;
+    }
+
+    /**
+     * @return Le port d'écoute des clients.
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * @param port Le port d'écoute des clients, entre 1 et 65535.
+     */
+    public void setPort(int port) {
+        if (port < 1 || port > 65535) {
+            throw new IllegalArgumentException("Port invalide : " + port);
+        }
+        this.port = port;
+    }
+
+    /**
+     * @return Le nombre maximal de sessions relayées simultanément.
+     */
+    public int getMaxClients() {
+        return maxClients;
+    }
+
+    /**
+     * @param maxClients Le nombre maximal de sessions relayées simultanément (au moins 1).
+     */
+    public void setMaxClients(int maxClients) {
+        if (maxClients < 1) {
+            throw new IllegalArgumentException("Nombre de clients invalide : " + maxClients);
+        }
+        this.maxClients = maxClients;
+    }
+
+    /**
+     * @return Le keystore contenant la clé et le certificat présentés aux clients.
+     */
+    public Path getKeystore() {
+        return keystore;
+    }
+
+    /**
+     * @return Le mot de passe du keystore.
+     */
+    public String getKeystorePassword() {
+        return keystorePassword;
+    }
+
+    /**
+     * @return Le profil TLS appliqué aux connexions des clients et à celles ouvertes vers les serveurs.
+     */
+    public TlsProfile getTlsProfile() {
+        return tlsProfile;
+    }
+
+    /**
+     * @return Le fichier d'identifiants des clients ; à défaut, seul le compte de démonstration est disponible.
+     */
+    public Path getCredentialsFile() {
+        return credentialsFile;
+    }
+
+    /**
+     * @return Les serveurs vers lesquels les sessions sont réparties.
+     */
+    public List<InetSocketAddress> getBackends() {
+        return backends;
+    }
+
+    /**
+     * @param backends Les serveurs vers lesquels les sessions sont réparties (au moins un).
+     */
+    public void setBackends(List<InetSocketAddress> backends) {
+        if (backends.isEmpty()) {
+            throw new IllegalArgumentException("Aucun serveur configuré");
+        }
+        this.backends = new ArrayList<>(backends);
+    }
+
+    /**
+     * @return Le login du compte de service avec lequel la passerelle s'authentifie auprès des serveurs.
+     */
+    public String getBackendLogin() {
+        return backendLogin;
+    }
+
+    /**
+     * @return Le mot de passe du compte de service.
+     */
+    public String getBackendPassword() {
+        return backendPassword;
+    }
+
+    /**
+     * @param login    Le login du compte de service utilisé auprès des serveurs.
+     * @param password Son mot de passe.
+     */
+    public void setBackendCredentials(String login, String password) {
+        this.backendLogin = login;
+        this.backendPassword = password;
+    }
+
+    /**
+     * @return Le truststore contenant les certificats des serveurs.
+     */
+    public Path getTruststore() {
+        return truststore;
+    }
+
+    /**
+     * @return Le mot de passe du truststore.
+     */
+    public String getTruststorePassword() {
+        return truststorePassword;
+    }
+
+    /**
+     * @return Le nombre de connexions authentifiées tenues prêtes vers chaque serveur.
+     */
+    public int getWarmConnections() {
+        return warmConnections;
+    }
+
+    /**
+     * @param warmConnections Le nombre de connexions authentifiées tenues prêtes vers chaque serveur (0 ou plus).
+     */
+    public void setWarmConnections(int warmConnections) {
+        if (warmConnections < 0) {
+            throw new IllegalArgumentException("Nombre de connexions invalide : " + warmConnections);
+        }
+        this.warmConnections = warmConnections;
+    }
+
+    /**
+     * @return L'intervalle entre deux vérifications de disponibilité des serveurs, en millisecondes.
+     */
+    public long getHealthIntervalMillis() {
+        return healthIntervalMillis;
+    }
+
+    /**
+     * @param healthIntervalMillis L'intervalle entre deux vérifications de disponibilité, en millisecondes.
+     */
+    public void setHealthIntervalMillis(long healthIntervalMillis) {
+        if (healthIntervalMillis < 100) {
+            throw new IllegalArgumentException("Intervalle invalide : " + healthIntervalMillis);
+        }
+        this.healthIntervalMillis = healthIntervalMillis;
+    }
+
+    /**
+     * @return Le délai maximal de connexion, de poignée de main et de réponse d'un serveur, en millisecondes.
+     */
+    public int getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    /**
+     * @param connectTimeoutMillis Le délai maximal de connexion et de réponse d'un serveur, en millisecondes.
+     */
+    public void setConnectTimeoutMillis(int connectTimeoutMillis) {
+        if (connectTimeoutMillis < 1) {
+            throw new IllegalArgumentException("Délai invalide : " + connectTimeoutMillis);
+        }
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "port=" + port + ", max-clients=" + maxClients + ", tls-profile=" + tlsProfile + ", backends=" + backends
+                + ", backend-login=" + backendLogin + ", warm-connections=" + warmConnections
+                + ", health-interval-ms=" + healthIntervalMillis + ", connect-timeout-ms=" + connectTimeoutMillis;
+    }
+}
@@ -0,0 +1,296 @@
+package fr.uvsq.server;
+
+import fr.uvsq.core.TokenBucket;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * La classe `BandwidthShaper` limite le débit réseau des sessions, afin qu'un transfert volumineux
+ * ne sature ni la carte réseau ni le disque au détriment des autres clients.
+ *
+ * Deux limites, modifiables à tout moment, sont appliquées par des seaux à jetons (`TokenBucket`) :
+ * - une limite par session, qui s'applique à chaque session indépendamment ;
+ * - une limite globale, partagée par toutes les sessions.
+ * Tous les octets d'une session sont comptés, dans les deux sens : transferts de fichiers et d'archives,
+ * sorties de commandes, suivi de fichiers...
+ *
+ * Lorsque la limite globale est atteinte, la capacité est partagée entre les sessions en attente
+ * par une file équitable pondérée (ordonnancement par étiquettes de fin) : chaque bloc reçoit une étiquette
+ * de début (le temps virtuel, ou la fin du bloc précédent de la session si elle est postérieure) et une étiquette
+ * de fin (début + taille / poids), et le bloc de plus petite étiquette de fin est servi le premier. Chaque session
+ * obtient ainsi une part proportionnelle à son poids, et la capacité inutilisée par une session est
+ * redistribuée aux autres. Sans limite, une écriture ne coûte qu'une lecture de champ `volatile`.
+ */
+public class BandwidthShaper {
+    /** Valeur d'une limite désactivée. */
+    public static final long UNLIMITED = 0;
+    /** Poids par défaut d'une session. */
+    public static final int DEFAULT_WEIGHT = 1;
+    /** Poids maximal d'une session. */
+    public static final int MAX_WEIGHT = 16;
+    // Rafale autorisée, en secondes de débit, et rafale minimale (un bloc de transfert complet).
+    private static final double BURST_SECONDS = 0.1;
+    private static final int MIN_BURST = 64 * 1024;
+
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final Object lock = new Object();
+    // Sessions en attente de la capacité globale, servies par étiquette de fin croissante.
+    private final PriorityQueue<Waiter> waiters = new PriorityQueue<>(
+            Comparator.comparingDouble((Waiter waiter) -> waiter.finish).thenComparingLong(waiter -> waiter.sequence));
+    private volatile TokenBucket globalBucket;
+    private volatile long globalLimit = UNLIMITED;
+    private volatile long sessionLimit = UNLIMITED;
+    private double virtualTime = 0;
+    private long sequence = 0;
+
+    /**
+     * Définit la limite globale, partagée par toutes les sessions.
+     *
+     * @param bytesPerSecond Le débit maximal en octets par seconde, ou `UNLIMITED`.
+     */
+    public void setGlobalLimit(long bytesPerSecond) {
+        synchronized (lock) {
+            globalLimit = Math.max(UNLIMITED, bytesPerSecond);
+            globalBucket = createBucket(globalLimit);
+            // Les sessions en attente réévaluent leur délai avec la nouvelle limite.
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * @return La limite globale en octets par seconde, ou `UNLIMITED`.
+     */
+    public long getGlobalLimit() {
+        return globalLimit;
+    }
+
+    /**
+     * Définit la limite de chaque session, y compris des sessions déjà ouvertes.
+     *
+     * @param bytesPerSecond Le débit maximal d'une session en octets par seconde, ou `UNLIMITED`.
+     */
+    public void setSessionLimit(long bytesPerSecond) {
+        sessionLimit = Math.max(UNLIMITED, bytesPerSecond);
+        for (Session session : sessions.values()) {
+            session.bucket = createBucket(sessionLimit);
+        }
+    }
+
+    /**
+     * @return La limite de chaque session en octets par seconde, ou `UNLIMITED`.
+     */
+    public long getSessionLimit() {
+        return sessionLimit;
+    }
+
+    /**
+     * Définit le poids d'une session dans le partage de la capacité globale.
+     *
+     * @param clientId L'identifiant de la session (adresse et port du client).
+     * @param weight   Le poids, entre 1 et `MAX_WEIGHT` : une session de poids 2 obtient deux fois plus de débit.
+     * @return false si aucune session ne porte cet identifiant.
+     */
+    public boolean setWeight(String clientId, int weight) {
+        Session session = sessions.get(clientId);
+        if (session == null) {
+            return false;
+        }
+        session.weight = Math.max(1, Math.min(MAX_WEIGHT, weight));
+        return true;
+    }
+
+    /**
+     * @param clientId L'identifiant de la session.
+     * @return Le poids de la session, ou `DEFAULT_WEIGHT` si elle n'existe pas.
+     */
+    public int getWeight(String clientId) {
+        Session session = sessions.get(clientId);
+        return session == null ? DEFAULT_WEIGHT : session.weight;
+    }
+
+    /**
+     * Enregistre une session. Elle doit être fermée à la déconnexion du client.
+     *
+     * @param clientId L'identifiant de la session (adresse et port du client).
+     * @return La session, dont les flux sont à envelopper avec `wrap`.
+     */
+    public Session register(String clientId) {
+        Session session = new Session(clientId);
+        sessions.put(clientId, session);
+        return session;
+    }
+
+    private static TokenBucket createBucket(long bytesPerSecond) {
+        if (bytesPerSecond <= UNLIMITED) {
+            return null;
+        }
+        return new TokenBucket(Math.max(MIN_BURST, bytesPerSecond * BURST_SECONDS), bytesPerSecond);
+    }
+
+    /**
+     * Réserve la capacité globale pour un bloc, dans l'ordre équitable pondéré.
+     */
+    private void acquireGlobal(Session session, int amount) throws InterruptedException {
+        synchronized (lock) {
+            if (globalBucket == null) {
+                return;
+            }
+            double start = Math.max(virtualTime, session.lastFinish);
+            Waiter waiter = new Waiter(start, start + (double) amount / session.weight, sequence++);
+            session.lastFinish = waiter.finish;
+            waiters.add(waiter);
+            try {
+                while (globalBucket != null) {
+                    if (waiters.peek() != waiter) {
+                        lock.wait();
+                        continue;
+                    }
+                    long nanos = globalBucket.nanosUntilAvailable(amount);
+                    if (nanos == 0 && globalBucket.tryConsume(amount)) {
+                        break;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(lock, Math.max(nanos, 1));
+                }
+                virtualTime = Math.max(virtualTime, waiter.start);
+            } finally {
+                waiters.remove(waiter);
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private static void acquire(TokenBucket bucket, int amount) throws InterruptedException {
+        while (!bucket.tryConsume(amount)) {
+            TimeUnit.NANOSECONDS.sleep(Math.max(bucket.nanosUntilAvailable(amount), 1));
+        }
+    }
+
+    /**
+     * Demande d'un bloc en attente de la capacité globale.
+     */
+    private static final class Waiter {
+        private final double start;
+        private final double finish;
+        private final long sequence;
+
+        Waiter(double start, double finish, long sequence) {
+            this.start = start;
+            this.finish = finish;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * Session limitée par le `BandwidthShaper`. Les flux du socket de la session sont enveloppés
+     * par `wrap` : chaque bloc lu ou écrit consomme des jetons de la session et de la limite globale.
+     */
+    public final class Session implements Closeable {
+        private final String clientId;
+        private volatile TokenBucket bucket;
+        private volatile int weight = DEFAULT_WEIGHT;
+        private double lastFinish = 0;
+
+        private Session(String clientId) {
+            this.clientId = clientId;
+            this.bucket = createBucket(sessionLimit);
+        }
+
+        /**
+         * Attend que le débit autorisé permette de transférer des octets.
+         *
+         * @param bytes Le nombre d'octets transférés.
+         * @throws InterruptedIOException Si le thread est interrompu pendant l'attente.
+         */
+        public void acquire(int bytes) throws InterruptedIOException {
+            if (bucket == null && globalBucket == null) {
+                return;
+            }
+            try {
+                // Les gros blocs sont découpés pour ne jamais dépasser la rafale d'un seau.
+                for (int remaining = bytes; remaining > 0; remaining -= MIN_BURST) {
+                    int amount = Math.min(remaining, MIN_BURST);
+                    TokenBucket sessionBucket = bucket;
+                    if (sessionBucket != null) {
+                        BandwidthShaper.acquire(sessionBucket, amount);
+                    }
+                    if (globalBucket != null) {
+                        acquireGlobal(this, amount);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Transfert interrompu");
+            }
+        }
+
+        /**
+         * Enveloppe le flux d'entrée du socket : le débit est régulé après chaque lecture,
+         * ce qui ralentit l'émetteur par le contrôle de flux de TCP.
+         *
+         * @param in Le flux d'entrée du socket.
+         * @return Le flux limité.
+         */
+        public InputStream wrap(InputStream in) {
+            return new FilterInputStream(in) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b >= 0) {
+                        acquire(1);
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] data, int offset, int length) throws IOException {
+                    int read = super.read(data, offset, length);
+                    if (read > 0) {
+                        acquire(read);
+                    }
+                    return read;
+                }
+            };
+        }
+
+        /**
+         * Enveloppe le flux de sortie du socket : chaque écriture attend le débit autorisé.
+         *
+         * @param out Le flux de sortie du socket.
+         * @return Le flux limité.
+         */
+        public OutputStream wrap(OutputStream out) {
+            return new FilterOutputStream(out) {
+                @Override
+                public void write(int b) throws IOException {
+                    acquire(1);
+                    out.write(b);
+                }
+
+                @Override
+                public void write(byte[] data, int offset, int length) throws IOException {
+                    acquire(length);
+                    out.write(data, offset, length);
+                }
+            };
+        }
+
+        /**
+         * Retire la session du `BandwidthShaper`.
+         */
+        @Override
+        public void close() {
+            sessions.remove(clientId, this);
+        }
+    }
+}
@@ -1,15 +1,41 @@
 package fr.uvsq.server;
 
 import fr.uvsq.core.CommandProcessor;
+import fr.uvsq.core.CommandResult;
+import fr.uvsq.core.ArchiveReader;
+import fr.uvsq.core.ArchiveSummary;
+import fr.uvsq.core.ArchiveWriter;
+import fr.uvsq.core.AtomicFileWriter;
 import fr.uvsq.core.AuthManager;
+import fr.uvsq.core.BufferPool;
+import fr.uvsq.core.CommandUsage;
+import fr.uvsq.core.FileListing;
+import fr.uvsq.core.ProtocolInputStream;
+import fr.uvsq.core.RemoteFile;
+import fr.uvsq.core.ResourceUsage;
+import fr.uvsq.core.StreamDigest;
+import fr.uvsq.server.journal.AuditJournal;
+import fr.uvsq.server.journal.JournalRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.net.Socket;
-import java.nio.charset.StandardCharsets;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 
 /**
@@ -21,19 +47,70 @@ import java.nio.file.Paths;
  * - L'authentification du client.
  * - La réception des commandes envoyées par un client.
  * - L'exécution de ces commandes via un `CommandProcessor`.
- * - L'envoi des résultats de l'exécution au client.
- * - La gestion des transferts de fichiers (upload et download).
+ * - L'envoi des résultats de l'exécution au client, accompagnés des ressources consommées (voir `ResourceUsage`).
+ * - Le cumul de ces ressources par motif de commande et par utilisateur, consultable par la requête STATS
+ *   (voir `CommandAccounting`).
+ * - L'exécution de lots de commandes (BATCH) en un seul aller-retour.
+ * - La gestion des transferts de fichiers (upload et download), y compris de répertoires entiers sous forme d'archive.
+ * - La consultation du répertoire partagé (LIST et STAT), servie depuis le `FileIndex`.
+ * - Le suivi en continu d'un fichier (FOLLOW), via le `FollowService`.
+ * - L'exécution périodique d'une commande (WATCH), dont seules les différences sont envoyées.
+ * - La limitation du débit de la session (voir `BandwidthShaper`).
+ * - La consignation de chaque action dans le journal d'audit (voir `AuditJournal`).
+ * - L'attribution d'une session relayée par une passerelle à l'utilisateur authentifié par celle-ci (ON_BEHALF).
+ * - La fin de session à l'arrêt du serveur (voir `drain`).
  * - La gestion des erreurs de communication et la déconnexion du client.
  */
 public class ClientHandler implements Runnable {
     private static final Logger logger = LoggerFactory.getLogger(ClientHandler.class);
     private static final String END_MARKER = "###END###";
+    // Précède, juste avant `END_MARKER`, les ressources consommées par une commande (`ResourceUsage.toLine`).
+    private static final String STATS_MARKER = "###STATS###";
+    /** Annonce, suivie d'une ligne de message, de la fermeture de la session par le serveur qui s'arrête. */
+    public static final String GOODBYE_MARKER = "###BYE###";
+    // Requête d'une passerelle, suivie du login de l'utilisateur pour le compte duquel elle relaie la session.
+    private static final String ON_BEHALF_PREFIX = "ON_BEHALF ";
+    // État de la session : une session inactive (en attente d'une requête) peut être close à tout moment ;
+    // une session occupée termine sa requête avant de l'être.
+    private static final int IDLE = 0;
+    private static final int BUSY = 1;
+    private static final int CLOSED = 2;
+    // Délai maximal accordé à un client pour terminer la poignée de main TLS et s'authentifier.
+    private static final int AUTH_TIMEOUT_MILLIS = 10_000;
+    // Intervalle auquel une session inactive vérifie si le serveur s'arrête.
+    private static final int DRAIN_POLL_MILLIS = 250;
+    // Limites d'une requête BATCH.
+    private static final int MAX_BATCH_SIZE = 1000;
+    private static final int MAX_BATCH_PARALLELISM = 8;
+    // Sortie conservée par commande d'un lot, en attendant son envoi : au plus MAX_BATCH_PARALLELISM fois cette
+    // taille par lot.
+    private static final int MAX_BATCH_OUTPUT_CHARS = 1024 * 1024;
+    // Nombre de threads lisant ou écrivant les fichiers d'une archive de répertoire.
+    private static final int ARCHIVE_PARALLELISM = ArchiveWriter.DEFAULT_PARALLELISM;
+    private static final int TRANSFER_BUFFER_SIZE = 64 * 1024;
 
     private final Socket clientSocket;
     private final CommandProcessor processor = new CommandProcessor();
-    private final AuthManager authManager = new AuthManager();
+    private final AuthManager authManager;
+    private final FileIndex fileIndex;
+    private final FollowService followService;
+    private final AtomicFileWriter.SyncPolicy syncPolicy;
+    private final BandwidthShaper bandwidthShaper;
+    private final AuditJournal auditJournal;
+    private final CommandAccounting commandAccounting;
+    private final ExecutorService batchExecutor;
     private final Consumer<String> logCallback;
     private final String clientId;
+    private String login;
+    // Vrai si une passerelle a attribué la session à un utilisateur (requête ON_BEHALF).
+    private boolean delegated = false;
+    private final AtomicInteger state = new AtomicInteger(BUSY);
+    private volatile boolean draining = false;
+    // Flux de la session, ouverts par `authenticate`.
+    private BandwidthShaper.Session shaping;
+    private ProtocolInputStream in;
+    private SessionOutput out;
+    private boolean authenticated = false;
 
     /**
      * Constructeur de `ClientHandler`.
@@ -41,116 +118,920 @@ public class ClientHandler implements Runnable {
      * @param socket      Le socket de communication avec le client.
      * @param logCallback Une fonction de rappel (callback) pour l'affichage des logs.
      *                    Cette fonction prend une chaîne de caractères (le message de log) en entrée.
+     * @param context     Les services partagés par toutes les sessions du serveur.
      */
-    public ClientHandler(Socket socket, Consumer<String> logCallback) {
+    public ClientHandler(Socket socket, Consumer<String> logCallback, ServerContext context) {
         this.clientSocket = socket;
         this.logCallback = logCallback;
+        this.authManager = context.getAuthManager();
+        this.fileIndex = context.getFileIndex();
+        this.followService = context.getFollowService();
+        this.syncPolicy = context.getSyncPolicy();
+        this.bandwidthShaper = context.getBandwidthShaper();
+        this.auditJournal = context.getAuditJournal();
+        this.commandAccounting = context.getCommandAccounting();
+        this.batchExecutor = context.getBatchExecutor();
         this.clientId = socket.getInetAddress() + ":" + socket.getPort();
+        // Un client qui ne lit plus sa sortie suspend la commande ; au-delà de la borne, la session est fermée,
+        // ce qui débloque l'écriture en cours sur le socket.
+        processor.setStallTimeout(CommandProcessor.DEFAULT_STALL_TIMEOUT_MILLIS, () -> {
+            logger.warn("Client {} stopped reading command output, closing session", clientId);
+            forceClose();
+        });
     }
 
     /**
-     * Méthode exécutée par le thread lorsque le `ClientHandler` est démarré.
-     * Gère la communication avec le client :
-     * - Établit les flux d'entrée/sortie pour la communication.
-     * - Récupère l'identifiant du client (adresse IP et port).
-     * - Effectue l'authentification du client.
-     * - Boucle pour lire les commandes envoyées par le client.
-     * - Exécute les commandes via le `CommandProcessor`.
-     * - Gère les demandes d'upload de fichiers.
-     * - Gère les demandes de download de fichiers.
-     * - Envoie la réponse au client, suivie du marqueur de fin `END_MARKER` pour les commandes.
-     * - Gère les erreurs de communication.
-     * - Gère la déconnexion du client.
+     * Ouvre les flux de la session et authentifie le client : poignée de main TLS, lecture des identifiants
+     * et vérification, bornées par `AUTH_TIMEOUT_MILLIS`. Le serveur l'appelle depuis ses threads
+     * d'authentification, avant de confier la session à un thread de session : un client lent ou malveillant
+     * n'immobilise ainsi aucun de ces threads. À défaut, `run` l'appelle lui-même.
+     * En cas d'échec, la session est fermée.
+     *
+     * @return true si le client est authentifié et la session peut être servie.
      */
-    @Override
-    public void run() {
-        try (BufferedReader in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream(), StandardCharsets.UTF_8));
-             PrintWriter out = new PrintWriter(new OutputStreamWriter(clientSocket.getOutputStream(), StandardCharsets.UTF_8), true)) {
+    boolean authenticate() {
+        try {
+            // Un seul flux tampon pour les lignes du protocole et les données binaires (fichiers, archives).
+            // Les deux sens de la session sont soumis à la limitation de débit.
+            shaping = bandwidthShaper.register(clientId);
+            in = new ProtocolInputStream(shaping.wrap(clientSocket.getInputStream()));
+            // Tampon d'envoi borné : un client lent bloque le producteur au lieu de remplir la mémoire.
+            out = new SessionOutput(shaping.wrap(clientSocket.getOutputStream()));
+            // Session acceptée juste avant l'arrêt du serveur, restée en attente d'un thread.
+            if (draining) {
+                sayGoodbye(out);
+                closeSession();
+                return false;
+            }
 
             logger.info("Handling client: {}", clientId);
             logCallback.accept(" Handling client: " + clientId);
 
-            // Phase d'authentification
+            // Phase d'authentification, bornée dans le temps pour ne pas immobiliser le thread
+            clientSocket.setSoTimeout(AUTH_TIMEOUT_MILLIS);
             String authSignal = in.readLine();
             if (!"AUTH".equals(authSignal)) {
                 logger.warn("Client {} did not send AUTH", clientId);
                 logCallback.accept("⚠️ Client " + clientId + " n'a pas envoyé AUTH.");
-                out.println("ERROR: Authentification requise.");
-                return;
+                out.writeLine("ERROR: Authentification requise.");
+                out.flush();
+                closeSession();
+                return false;
             }
 
-            String login = in.readLine();
+            long authStart = System.currentTimeMillis();
+            login = in.readLine();
             String password = in.readLine();
-            if (authManager.authenticate(login, password)) {
+            AuthManager.Result result = authManager.authenticate(clientSocket.getInetAddress().getHostAddress(), login, password);
+            journal(JournalRecord.Kind.AUTH, result.name(), result == AuthManager.Result.SUCCESS ? 0 : 1, authStart, 0);
+            if (result == AuthManager.Result.SUCCESS) {
                 logger.info("Client {} authenticated successfully", clientId);
                 logCallback.accept("✅ Client " + clientId + " authentifié avec succès.");
-                out.println("OK");
+                out.writeLine("OK");
+                out.flush();
+                clientSocket.setSoTimeout(0);
+                authenticated = true;
+                return true;
+            } else if (result == AuthManager.Result.THROTTLED) {
+                logger.warn("Authentication throttled for client {}", clientId);
+                logCallback.accept("⛔ Authentification limitée pour " + clientId);
+                out.writeLine("ERROR: Trop de tentatives, réessayez plus tard.");
             } else {
                 logger.warn("Authentication failed for client {}", clientId);
                 logCallback.accept(" Échec de l'authentification pour " + clientId);
-                out.println("ERROR: Identifiants incorrects.");
+                out.writeLine("ERROR: Identifiants incorrects.");
+            }
+            out.flush();
+        } catch (Exception e) {
+            logConnectionError(e);
+        }
+        closeSession();
+        return false;
+    }
+
+    /**
+     * Méthode exécutée par le thread lorsque le `ClientHandler` est démarré.
+     * Gère la communication avec le client :
+     * - Effectue l'authentification du client, si le serveur ne l'a pas déjà fait (voir `authenticate`).
+     * - Boucle pour lire les commandes envoyées par le client.
+     * - Exécute les commandes via le `CommandProcessor`.
+     * - Gère les demandes d'upload de fichiers.
+     * - Gère les demandes de download de fichiers.
+     * - Envoie la réponse au client, suivie du marqueur de fin `END_MARKER` pour les commandes.
+     * - Gère les erreurs de communication.
+     * - Gère la déconnexion du client.
+     */
+    @Override
+    public void run() {
+        if (!authenticated && !authenticate()) {
+            return;
+        }
+        try {
+            // Session authentifiée juste avant l'arrêt du serveur, restée en attente d'un thread.
+            if (draining) {
+                sayGoodbye(out);
                 return;
             }
 
             // Boucle de traitement des commandes
             String command;
-            while ((command = in.readLine()) != null) {
+            while ((command = nextRequest(in)) != null) {
+                // Vérification de disponibilité (passerelle, supervision), répétée : ni journalisée ni affichée
+                if ("PING".equals(command)) {
+                    out.writeLine("PONG");
+                    out.flush();
+                    continue;
+                }
                 logger.info("Received from {}: {}", clientId, command);
                 logCallback.accept("Received command: " + command);
 
                 // Gestion de l'upload de fichier
                 if ("UPLOAD".equals(command)) {
-                    String fileName = in.readLine();
-                    long fileSize = Long.parseLong(in.readLine());
-                    String savePath = "server_files/" + fileName;
-                    Files.createDirectories(Paths.get("server_files")); // Création du dossier si inexistant
-                    try (FileOutputStream fos = new FileOutputStream(savePath)) {
-                        byte[] buffer = new byte[4096];
-                        long bytesReceived = 0;
-                        int bytesRead;
-                        InputStream inputStream = clientSocket.getInputStream();
-                        while (bytesReceived < fileSize && (bytesRead = inputStream.read(buffer)) != -1) {
-                            fos.write(buffer, 0, bytesRead);
-                            bytesReceived += bytesRead;
-                        }
-                        fos.flush();
-                    }
-                    out.println("OK");
-                    logger.info("File received from {}: {}", clientId, fileName);
-                    logCallback.accept("📤 Fichier reu : " + fileName);
+                    handleUpload(in, out);
                     // Gestion du download de fichier
                 } else if ("DOWNLOAD".equals(command)) {
-                    String fileName = in.readLine();
-                    File file = new File("server_files/" + fileName);
-                    if (file.exists()) {
-                        out.println(file.length());
-                        try (FileInputStream fis = new FileInputStream(file)) {
-                            byte[] buffer = new byte[4096];
-                            int bytesRead;
-                            while ((bytesRead = fis.read(buffer)) != -1) {
-                                clientSocket.getOutputStream().write(buffer, 0, bytesRead);
-                            }
-                            clientSocket.getOutputStream().flush();
-                        }
-                    } else {
-                        out.println(-1);
-                        out.println("Fichier non trouvé : " + fileName);
+                    handleDownload(in, out);
+                    // Transfert d'un répertoire complet sous forme d'archive
+                } else if ("UPLOAD_DIR".equals(command)) {
+                    handleUploadDirectory(in, out);
+                } else if ("DOWNLOAD_DIR".equals(command)) {
+                    handleDownloadDirectory(in, out);
+                    // Gestion des lots de commandes
+                } else if ("BATCH".equals(command)) {
+                    handleBatch(in, out);
+                    // Consultation du répertoire partagé
+                } else if ("LIST".equals(command)) {
+                    handleList(in, out);
+                } else if ("STAT".equals(command)) {
+                    handleStat(in, out);
+                    // Ressources consommées par les commandes
+                } else if ("STATS".equals(command)) {
+                    handleStats(out);
+                    // Session relayée par une passerelle pour le compte d'un utilisateur
+                } else if (command.startsWith(ON_BEHALF_PREFIX)) {
+                    handleOnBehalf(command.substring(ON_BEHALF_PREFIX.length()), out);
+                    // Suivi d'un fichier
+                } else if ("FOLLOW".equals(command)) {
+                    if (!handleFollow(in, out)) {
+                        break;
+                    }
+                    // Exécution périodique d'une commande
+                } else if ("WATCH".equals(command)) {
+                    if (!handleWatch(in, out)) {
+                        break;
                     }
-                    logger.info("File requested by {}: {}", clientId, fileName);
-                    logCallback.accept("📥 Fichier demandé : " + fileName);
                     // Gestion des commandes système
                 } else {
-                    String response = processor.executeCommand(command);
-                    out.println(response);
-                    out.println(END_MARKER);
+                    // La sortie est envoyée au fil de l'eau, sans être construite entièrement en mémoire.
+                    long start = System.currentTimeMillis();
+                    long bytesBefore = out.getBytesWritten();
+                    ResourceUsage usage = processor.run(command, out::writeLine);
+                    out.writeLine(STATS_MARKER + " " + usage.toLine());
+                    out.writeLine(END_MARKER);
+                    out.flush();
+                    commandAccounting.record(login, command, usage, false);
+                    journal(JournalRecord.Kind.COMMAND, command, usage.getExitCode(), start, out.getBytesWritten() - bytesBefore);
                 }
             }
+            // Session close par l'arrêt du serveur : prévenue depuis son propre thread, une fois le FOLLOW
+            // ou le WATCH en cours arrêté, pour que l'annonce ne s'entrelace pas avec leurs lignes.
+            if (state.get() == CLOSED) {
+                sayGoodbye(out);
+            }
         } catch (Exception e) {
+            logConnectionError(e);
+        } finally {
+            closeSession();
+        }
+    }
+
+    private void logConnectionError(Exception e) {
+        if (state.get() == CLOSED) {
+            logger.info("Client {} closed by server shutdown: {}", clientId, e.getMessage());
+        } else {
             logger.error("Client {} connection error: {}", clientId, e.getMessage(), e);
             logCallback.accept("⚠️ Client connection error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Ferme les flux de la session et son socket.
+     */
+    private void closeSession() {
+        if (out != null) {
+            out.close();
+        }
+        if (in != null) {
+            try {
+                in.close();
+            } catch (IOException e) {
+                logger.debug("Cannot close input of {}: {}", clientId, e.getMessage());
+            }
+        }
+        if (shaping != null) {
+            shaping.close();
+        }
+        closeSocket();
+        logger.info("Client {} disconnected", clientId);
+        logCallback.accept("🔌 Client disconnected");
+    }
+
+    /**
+     * Attend la requête suivante du client (ou la demande d'arrêt d'un FOLLOW ou d'un WATCH).
+     * Pendant cette attente la session est inactive : la lecture est interrompue toutes les
+     * `DRAIN_POLL_MILLIS` ms pour vérifier si le serveur s'arrête, auquel cas la session est close.
+     *
+     * @return La ligne reçue, ou `null` si le client s'est déconnecté ou si le serveur s'arrête
+     * (l'état est alors `CLOSED` et `run` prévient le client).
+     * @throws IOException Si la communication avec le client échoue.
+     */
+    private String nextRequest(ProtocolInputStream in) throws IOException {
+        state.set(IDLE);
+        clientSocket.setSoTimeout(DRAIN_POLL_MILLIS);
+        try {
+            while (true) {
+                if (draining && state.compareAndSet(IDLE, CLOSED)) {
+                    return null;
+                }
+                try {
+                    String line = in.readLine();
+                    if (line == null || !state.compareAndSet(IDLE, BUSY)) {
+                        return null;
+                    }
+                    return line;
+                } catch (SocketTimeoutException e) {
+                    // Aucune requête pendant l'intervalle : nouvelle vérification de l'arrêt.
+                }
+            }
+        } finally {
+            if (state.get() != CLOSED) {
+                clientSocket.setSoTimeout(0);
+            }
+        }
+    }
+
+    /**
+     * Prépare la fin de la session à l'arrêt du serveur, sans écrire sur le socket : une session inactive
+     * s'en aperçoit dans les `DRAIN_POLL_MILLIS` ms, prévient le client et se termine ; une session occupée
+     * le fait dès la fin de sa requête en cours. Un client qui ne lit plus ne peut donc pas bloquer l'arrêt
+     * du serveur, borné par `forceClose`.
+     */
+    void drain() {
+        draining = true;
+    }
+
+    /**
+     * Ferme la session sans attendre la fin de sa requête en cours (délai d'arrêt du serveur dépassé, client
+     * qui ne lit plus la sortie d'une commande).
+     */
+    void forceClose() {
+        state.set(CLOSED);
+        try {
+            // Sans délai de fermeture, `SSLSocket.close` attend le verrou d'écriture TLS, détenu par le thread
+            // de la session s'il est bloqué sur un client qui ne lit plus ; avec un délai nul, il ne l'attend pas
+            // et la connexion est réinitialisée.
+            clientSocket.setSoLinger(true, 0);
+        } catch (IOException e) {
+            logger.debug("Cannot set linger on socket of {}: {}", clientId, e.getMessage());
+        }
+        closeSocket();
+    }
+
+    private void sayGoodbye(SessionOutput out) throws IOException {
+        out.writeLine(GOODBYE_MARKER);
+        out.writeLine("Le serveur s'arrête.");
+        out.flush();
+    }
+
+    private void closeSocket() {
+        try {
+            clientSocket.close();
+        } catch (IOException e) {
+            logger.debug("Cannot close socket of {}: {}", clientId, e.getMessage());
+        }
+    }
+
+    /**
+     * Traite une requête UPLOAD : réception d'un fichier dans le répertoire partagé.
+     *
+     * Format de la requête : le nom du fichier, sa taille, l'algorithme d'empreinte (voir `StreamDigest`),
+     * puis les octets du fichier et leur empreinte en hexadécimal sur une ligne. Le fichier est écrit
+     * dans un fichier temporaire, pendant que son empreinte est calculée, et n'est installé qu'après
+     * vérification (voir `AtomicFileWriter`). Le serveur répond `OK <empreinte>`, ou `ERROR` et un message ;
+     * les octets sont lus jusqu'au bout même en cas d'erreur, afin que la session reste utilisable.
+     *
+     * @param in  Le flux d'entrée de la session.
+     * @param out Le flux de sortie de la session.
+     * @throws IOException Si la communication avec le client échoue ou si la requête est mal formée.
+     */
+    private void handleUpload(ProtocolInputStream in, SessionOutput out) throws IOException {
+        long start = System.currentTimeMillis();
+        String fileName = in.readLine();
+        long fileSize = parseSize(in.readLine());
+        String algorithm = in.readLine();
+        Path target = resolveSharedFile(fileName);
+        String error = null;
+        AtomicFileWriter writer = null;
+        if (target == null) {
+            error = "Chemin invalide : " + fileName;
+        } else {
+            try {
+                writer = new AtomicFileWriter(target, fileSize, algorithm, syncPolicy);
+            } catch (IOException | IllegalArgumentException e) {
+                error = e.getMessage();
+            }
+        }
+        try (BufferPool.Buffer pooled = BufferPool.shared().acquire(TRANSFER_BUFFER_SIZE)) {
+            byte[] buffer = pooled.array();
+            long bytesReceived = 0;
+            while (bytesReceived < fileSize) {
+                int bytesRead = in.read(buffer, 0, (int) Math.min(buffer.length, fileSize - bytesReceived));
+                if (bytesRead == -1) {
+                    throw new EOFException("Envoi de " + fileName + " interrompu");
+                }
+                bytesReceived += bytesRead;
+                if (writer != null) {
+                    try {
+                        writer.write(buffer, 0, bytesRead);
+                    } catch (IOException e) {
+                        writer.abort();
+                        writer = null;
+                        error = "Écriture impossible de " + fileName + " : " + e.getMessage();
+                    }
+                }
+            }
+            String expectedDigest = in.readLine();
+            if (writer != null) {
+                try {
+                    String digest = writer.commit(expectedDigest);
+                    fileIndex.refresh(target);
+                    out.writeLine("OK " + digest);
+                    out.flush();
+                    logger.info("File received from {}: {} ({} {})", clientId, fileName, algorithm, digest);
+                    logCallback.accept("📤 Fichier reçu : " + fileName);
+                    journal(JournalRecord.Kind.UPLOAD, fileName, 0, start, fileSize);
+                    return;
+                } catch (IOException e) {
+                    error = e.getMessage();
+                }
+            }
         } finally {
-            logger.info("Client {} disconnected", clientId);
-            logCallback.accept("🔌 Client disconnected");
+            if (writer != null) {
+                writer.close();
+            }
+        }
+        logger.warn("Upload of {} from {} rejected: {}", fileName, clientId, error);
+        out.writeLine("ERROR");
+        out.writeLine(error);
+        out.flush();
+        journal(JournalRecord.Kind.UPLOAD, fileName, 1, start, fileSize);
+    }
+
+    /**
+     * Traite une requête DOWNLOAD : envoi d'un fichier du répertoire partagé.
+     *
+     * Format de la requête : le nom du fichier puis l'algorithme d'empreinte. La réponse est la taille
+     * du fichier, ses octets et leur empreinte en hexadécimal sur une ligne, calculée au fil de l'envoi ;
+     * ou `-1` et un message. Si le fichier raccourcit pendant l'envoi, la taille annoncée est complétée
+     * et l'empreinte `-` signale au client un contenu invalide.
+     *
+     * @param in  Le flux d'entrée de la session.
+     * @param out Le flux de sortie de la session.
+     * @throws IOException Si la communication avec le client échoue.
+     */
+    private void handleDownload(ProtocolInputStream in, SessionOutput out) throws IOException {
+        long start = System.currentTimeMillis();
+        String fileName = in.readLine();
+        String algorithm = in.readLine();
+        logger.info("File requested by {}: {}", clientId, fileName);
+        logCallback.accept("📥 Fichier demandé : " + fileName);
+        Path file = resolveSharedFile(fileName);
+        StreamDigest digest;
+        try {
+            digest = StreamDigest.create(algorithm);
+        } catch (IllegalArgumentException e) {
+            out.writeLine("-1");
+            out.writeLine(e.getMessage());
+            out.flush();
+            journal(JournalRecord.Kind.DOWNLOAD, fileName, 1, start, 0);
+            return;
+        }
+        InputStream fileIn;
+        long fileSize;
+        try {
+            if (file == null || !Files.isRegularFile(file)) {
+                throw new NoSuchFileException(fileName);
+            }
+            // La taille est lue avant l'ouverture : aucun flux à fermer si elle échoue.
+            fileSize = Files.size(file);
+            fileIn = Files.newInputStream(file);
+        } catch (IOException e) {
+            out.writeLine("-1");
+            out.writeLine("Fichier non trouvé : " + fileName);
+            out.flush();
+            journal(JournalRecord.Kind.DOWNLOAD, fileName, 1, start, 0);
+            return;
+        }
+        out.writeLine(String.valueOf(fileSize));
+        long bytesSent = 0;
+        boolean complete;
+        try (BufferPool.Buffer pooled = BufferPool.shared().acquire(TRANSFER_BUFFER_SIZE)) {
+            byte[] buffer = pooled.array();
+            try (InputStream input = fileIn) {
+                // La lecture du fichier est suspendue tant que le tampon d'envoi est plein.
+                while (bytesSent < fileSize) {
+                    int bytesRead = input.read(buffer, 0, (int) Math.min(buffer.length, fileSize - bytesSent));
+                    if (bytesRead == -1) {
+                        break;
+                    }
+                    out.write(buffer, 0, bytesRead);
+                    digest.update(buffer, 0, bytesRead);
+                    bytesSent += bytesRead;
+                }
+            } catch (IOException e) {
+                logger.warn("Cannot read {} for {}: {}", file, clientId, e.getMessage());
+            }
+            complete = bytesSent == fileSize;
+            if (!complete) {
+                // La taille annoncée est respectée pour que le client reste synchronisé sur le flux.
+                Arrays.fill(buffer, (byte) 0);
+                while (bytesSent < fileSize) {
+                    int length = (int) Math.min(buffer.length, fileSize - bytesSent);
+                    out.write(buffer, 0, length);
+                    bytesSent += length;
+                }
+            }
+        }
+        out.writeLine(complete ? digest.toHex() : "-");
+        out.flush();
+        journal(JournalRecord.Kind.DOWNLOAD, fileName, complete ? 0 : 1, start, bytesSent);
+    }
+
+    /**
+     * Résout le nom d'un fichier du répertoire partagé ; les fichiers temporaires des envois en cours sont exclus.
+     *
+     * @return Le chemin absolu, ou `null` s'il sort du répertoire partagé ou désigne un fichier temporaire.
+     */
+    private Path resolveSharedFile(String name) {
+        Path file = fileIndex.resolve(name);
+        return file == null || AtomicFileWriter.isTemporary(file.getFileName().toString()) ? null : file;
+    }
+
+    private static long parseSize(String line) throws IOException {
+        try {
+            long size = Long.parseLong(line);
+            if (size >= 0) {
+                return size;
+            }
+        } catch (NumberFormatException e) {
+            // Traité ci-dessous comme une requête mal formée.
+        }
+        throw new IOException("Taille invalide : " + line);
+    }
+
+    /**
+     * Traite une requête UPLOAD_DIR : réception d'un répertoire complet sous forme d'archive (voir `ArchiveWriter`).
+     *
+     * Format de la requête : le nom du répertoire de destination, relatif au répertoire partagé
+     * (`.` pour le répertoire partagé lui-même). Le serveur répond `READY` ou `ERROR` ; après `READY`,
+     * le client envoie l'archive et le serveur répond `OK <fichiers> <répertoires> <octets>`
+     * ou `ERROR` et un message si des entrées n'ont pas pu être écrites.
+     *
+     * @param in  Le flux d'entrée de la session.
+     * @param out Le flux de sortie de la session.
+     * @throws IOException Si la communication avec le client échoue.
+     */
+    private void handleUploadDirectory(ProtocolInputStream in, SessionOutput out) throws IOException {
+        long start = System.currentTimeMillis();
+        String directoryName = in.readLine();
+        Path target = resolveSharedDirectory(directoryName);
+        if (target == null) {
+            out.writeLine("ERROR");
+            out.writeLine("Chemin invalide : " + directoryName);
+            out.flush();
+            journal(JournalRecord.Kind.UPLOAD_DIR, directoryName, 1, start, 0);
+            return;
+        }
+        out.writeLine("READY");
+        out.flush();
+        ArchiveSummary summary = new ArchiveReader(ARCHIVE_PARALLELISM, syncPolicy).read(in, target);
+        fileIndex.refreshTree(target);
+        logger.info("Directory {} received from {}: {}", directoryName, clientId, summary);
+        logCallback.accept("📤 Répertoire reçu : " + directoryName + " (" + summary + ")");
+        if (summary.isComplete()) {
+            out.writeLine("OK " + summary.getFileCount() + " " + summary.getDirectoryCount() + " " + summary.getByteCount());
+        } else {
+            out.writeLine("ERROR");
+            out.writeLine(summary + " ; " + summary.getErrors().get(0));
+        }
+        out.flush();
+        journal(JournalRecord.Kind.UPLOAD_DIR, directoryName, summary.isComplete() ? 0 : 1, start, summary.getByteCount());
+    }
+
+    /**
+     * Traite une requête DOWNLOAD_DIR : envoi d'un répertoire du répertoire partagé sous forme d'archive.
+     * La réponse est `ARCHIVE` suivie de l'archive (voir `ArchiveWriter`), ou `ERROR` et un message.
+     *
+     * @param in  Le flux d'entrée de la session.
+     * @param out Le flux de sortie de la session.
+     * @throws IOException Si la communication avec le client échoue.
+     */
+    private void handleDownloadDirectory(ProtocolInputStream in, SessionOutput out) throws IOException {
+        long start = System.currentTimeMillis();
+        String directoryName = in.readLine();
+        Path source = resolveSharedDirectory(directoryName);
+        if (source == null || !Files.isDirectory(source)) {
+            out.writeLine("ERROR");
+            out.writeLine("Répertoire non trouvé : " + directoryName);
+            out.flush();
+            journal(JournalRecord.Kind.DOWNLOAD_DIR, directoryName, 1, start, 0);
+            return;
+        }
+        out.writeLine("ARCHIVE");
+        ArchiveSummary summary = new ArchiveWriter(ARCHIVE_PARALLELISM).write(source, out);
+        out.flush();
+        logger.info("Directory {} sent to {}: {}", directoryName, clientId, summary);
+        logCallback.accept("📥 Répertoire envoyé : " + directoryName + " (" + summary + ")");
+        journal(JournalRecord.Kind.DOWNLOAD_DIR, directoryName, summary.isComplete() ? 0 : 1, start, summary.getByteCount());
+    }
+
+    /**
+     * Résout un nom de répertoire relatif au répertoire partagé ; `.` désigne le répertoire partagé lui-même.
+     *
+     * @return Le chemin absolu, ou `null` s'il sort du répertoire partagé.
+     */
+    private Path resolveSharedDirectory(String name) {
+        return ".".equals(name) ? fileIndex.getRoot() : fileIndex.resolve(name);
+    }
+
+    /**
+     * Traite une requête LIST : liste paginée du répertoire partagé, servie depuis l'index en mémoire.
+     *
+     * Format de la requête : le filtre (motif glob ou préfixe, ligne vide pour tout lister),
+     * puis `<offset> <limit>`. La réponse commence par `TOTAL <n>`, suivie d'une ligne par fichier
+     * (voir `RemoteFile`) et de `END_MARKER`, ou `ERROR` et un message si la pagination ou le filtre
+     * (motif glob mal formé) est invalide.
+     *
+     * @param in  Le flux d'entrée de la session.
+     * @param out Le flux de sortie de la session.
+     * @throws IOException Si la communication avec le client échoue.
+     */
+    private void handleList(ProtocolInputStream in, SessionOutput out) throws IOException {
+        String filter = in.readLine();
+        String paging = in.readLine();
+        int offset;
+        int limit;
+        try {
+            String[] bounds = String.valueOf(paging).trim().split("\\s+");
+            offset = Integer.parseInt(bounds[0]);
+            limit = Integer.parseInt(bounds[1]);
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            out.writeLine("ERROR");
+            out.writeLine("Pagination invalide : " + paging);
+            out.flush();
+            return;
+        }
+        FileListing listing;
+        try {
+            listing = fileIndex.list(filter, Math.max(0, offset), limit);
+        } catch (IllegalArgumentException e) {
+            out.writeLine("ERROR");
+            out.writeLine("Filtre invalide : " + filter);
+            out.flush();
+            return;
+        }
+        out.writeLine("TOTAL " + listing.getTotal());
+        for (RemoteFile file : listing.getFiles()) {
+            out.writeLine(file.toLine());
+        }
+        out.writeLine(END_MARKER);
+        out.flush();
+    }
+
+    /**
+     * Traite une requête STAT : description d'un fichier du répertoire partagé.
+     * La réponse est la ligne décrivant le fichier suivie de `END_MARKER`, ou `ERROR` et un message.
+     *
+     * @param in  Le flux d'entrée de la session.
+     * @param out Le flux de sortie de la session.
+     * @throws IOException Si la communication avec le client échoue.
+     */
+    private void handleStat(ProtocolInputStream in, SessionOutput out) throws IOException {
+        String fileName = in.readLine();
+        RemoteFile file = fileIndex.stat(fileName);
+        if (file == null) {
+            out.writeLine("ERROR");
+            out.writeLine("Fichier non trouvé : " + fileName);
+        } else {
+            out.writeLine(file.toLine());
+            out.writeLine(END_MARKER);
+        }
+        out.flush();
+    }
+
+    /**
+     * Traite une requête STATS : ressources consommées par les commandes depuis le démarrage du serveur.
+     * La réponse est la liste des cumuls par motif de commande, puis par utilisateur, chacune par temps
+     * processeur décroissant (une ligne `CommandUsage.toLine` par cumul), suivie de `END_MARKER`.
+     *
+     * @param out Le flux de sortie de la session.
+     * @throws IOException Si la communication avec le client échoue.
+     */
+    private void handleStats(SessionOutput out) throws IOException {
+        for (CommandUsage usage : commandAccounting.byPattern()) {
+            out.writeLine(usage.toLine());
+        }
+        for (CommandUsage usage : commandAccounting.byUser()) {
+            out.writeLine(usage.toLine());
+        }
+        out.writeLine(END_MARKER);
+        out.flush();
+    }
+
+    /**
+     * Traite une requête FOLLOW : envoie les dernières lignes d'un fichier, puis chaque ligne qui
+     * lui est ajoutée, jusqu'à ce que le client envoie `STOP`.
+     *
+     * Format de la requête : le chemin du fichier (absolu ou relatif au répertoire du serveur),
+     * puis le nombre de dernières lignes à envoyer d'abord. Les lignes sont envoyées au fil de l'eau ;
+     * après `STOP`, la réponse se termine par `END_MARKER`. Les événements (rotation, troncature)
+     * sont signalés par des lignes commençant par `###`.
+     *
+     * @param in  Le flux d'entrée de la session.
+     * @param out Le flux de sortie de la session.
+     * @return false si le client s'est déconnecté pendant le suivi.
+     * @throws IOException Si la communication avec le client échoue.
+     */
+    private boolean handleFollow(ProtocolInputStream in, SessionOutput out) throws IOException {
+        long start = System.currentTimeMillis();
+        long bytesBefore = out.getBytesWritten();
+        String fileName = in.readLine();
+        String linesLine = in.readLine();
+        FollowService.Subscription subscription;
+        try {
+            int initialLines = Integer.parseInt(String.valueOf(linesLine).trim());
+            subscription = followService.subscribe(Paths.get(String.valueOf(fileName)), initialLines, out);
+        } catch (NoSuchFileException e) {
+            out.writeLine("ERROR");
+            out.writeLine("Fichier non trouvé : " + fileName);
+            out.flush();
+            journal(JournalRecord.Kind.FOLLOW, fileName, 1, start, 0);
+            return true;
+        } catch (NumberFormatException | InvalidPathException | IOException e) {
+            out.writeLine("ERROR");
+            out.writeLine("Suivi impossible de " + fileName + " : " + e.getMessage());
+            out.flush();
+            journal(JournalRecord.Kind.FOLLOW, fileName, 1, start, 0);
+            return true;
+        }
+        logger.info("Client {} follows {}", clientId, fileName);
+        logCallback.accept("👁 Suivi du fichier : " + fileName);
+        // Les lignes sont envoyées par le service ; ce thread attend la demande d'arrêt.
+        String stop;
+        try {
+            stop = nextRequest(in);
+        } finally {
+            subscription.close();
+            journal(JournalRecord.Kind.FOLLOW, fileName, 0, start, out.getBytesWritten() - bytesBefore);
+        }
+        if (stop == null) {
+            return false;
+        }
+        out.writeLine(END_MARKER);
+        out.flush();
+        return true;
+    }
+
+    /**
+     * Traite une requête WATCH : exécute une commande à intervalle régulier et n'envoie que les
+     * différences de sa sortie (voir `CommandWatcher`), jusqu'à ce que le client envoie `STOP`.
+     *
+     * Format de la requête : l'intervalle en millisecondes, puis la commande.
+     * Après `STOP`, la réponse se termine par `END_MARKER`.
+     *
+     * @param in  Le flux d'entrée de la session.
+     * @param out Le flux de sortie de la session.
+     * @return false si le client s'est déconnecté pendant la surveillance.
+     * @throws IOException Si la communication avec le client échoue.
+     */
+    private boolean handleWatch(ProtocolInputStream in, SessionOutput out) throws IOException {
+        long start = System.currentTimeMillis();
+        long bytesBefore = out.getBytesWritten();
+        String intervalLine = in.readLine();
+        String watchedCommand = in.readLine();
+        long intervalMillis;
+        try {
+            intervalMillis = Long.parseLong(String.valueOf(intervalLine).trim());
+        } catch (NumberFormatException e) {
+            out.writeLine("ERROR");
+            out.writeLine("Intervalle invalide : " + intervalLine);
+            out.flush();
+            return true;
+        }
+        if (watchedCommand == null) {
+            return false;
+        }
+        logger.info("Client {} watches '{}' every {} ms", clientId, watchedCommand, intervalMillis);
+        logCallback.accept("⏱ Surveillance de la commande : " + watchedCommand);
+        CommandWatcher watcher = new CommandWatcher(processor, watchedCommand, intervalMillis, out,
+                usage -> commandAccounting.record(login, watchedCommand, usage, true));
+        watcher.start();
+        // Les trames sont envoyées par le `CommandWatcher` ; ce thread attend la demande d'arrêt.
+        String stop;
+        try {
+            stop = nextRequest(in);
+        } finally {
+            watcher.close();
+            journal(JournalRecord.Kind.WATCH, watchedCommand, 0, start, out.getBytesWritten() - bytesBefore);
+        }
+        if (stop == null) {
+            return false;
+        }
+        out.writeLine(END_MARKER);
+        out.flush();
+        return true;
+    }
+
+    /**
+     * Traite une requête BATCH : plusieurs commandes envoyées en un seul aller-retour.
+     *
+     * Format de la requête (une valeur par ligne) :
+     * - le mode : `SEQUENTIAL` (arrêt à la première commande en échec) ou `PARALLEL <n>` (au plus n commandes simultanées) ;
+     * - le nombre de commandes ;
+     * - les commandes, une par ligne.
+     *
+     * Pour chaque commande, la réponse contient soit `RESULT <index> <code de sortie> <nombre de lignes>`
+     * suivi des lignes de sa sortie, soit `SKIPPED <index>` si elle n'a pas été exécutée.
+     * La réponse se termine par `END_MARKER`. En mode parallèle, les résultats sont envoyés
+     * dans l'ordre où les commandes se terminent.
+     *
+     * Les commandes parallèles sont confiées aux threads des lots, partagés par toutes les sessions ; un lot n'en
+     * soumet pas plus de n à la fois. La sortie d'une commande, conservée jusqu'à son envoi (son nombre de lignes
+     * précède ses lignes), est limitée à `MAX_BATCH_OUTPUT_CHARS` caractères.
+     *
+     * @param in  Le flux d'entrée de la session.
+     * @param out Le flux de sortie de la session.
+     * @throws IOException Si la communication avec le client échoue.
+     */
+    private void handleBatch(ProtocolInputStream in, SessionOutput out) throws IOException {
+        String mode = in.readLine();
+        String countLine = in.readLine();
+        int parallelism = 0;
+        int count = -1;
+        try {
+            if ("SEQUENTIAL".equals(mode)) {
+                parallelism = 1;
+            } else if (mode != null && mode.startsWith("PARALLEL ")) {
+                parallelism = Integer.parseInt(mode.substring("PARALLEL ".length()).trim());
+            }
+            count = Integer.parseInt(String.valueOf(countLine).trim());
+        } catch (NumberFormatException e) {
+            // Traité ci-dessous comme une requête invalide.
+        }
+        if (parallelism < 1 || count < 0 || count > MAX_BATCH_SIZE) {
+            out.writeLine("ERROR");
+            out.writeLine("Requête BATCH invalide (au plus " + MAX_BATCH_SIZE + " commandes)");
+            out.flush();
+            // Les commandes du lot ne peuvent pas être délimitées : la session est interrompue.
+            throw new IOException("Requête BATCH invalide : " + mode + " / " + countLine);
+        }
+        List<String> commands = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String line = in.readLine();
+            if (line == null) {
+                throw new EOFException("Lot de commandes incomplet");
+            }
+            commands.add(line);
+        }
+
+        logger.info("Batch of {} commands from {} ({})", count, clientId, mode);
+        logCallback.accept("📦 Lot de " + count + " commandes reçu");
+        if ("SEQUENTIAL".equals(mode)) {
+            boolean failed = false;
+            for (int i = 0; i < count; i++) {
+                if (failed) {
+                    out.writeLine("SKIPPED " + i);
+                    continue;
+                }
+                failed = !runBatchCommand(out, i, commands.get(i)).isSuccess();
+            }
+        } else {
+            int threads = Math.max(1, Math.min(count, Math.min(parallelism, MAX_BATCH_PARALLELISM)));
+            Semaphore slots = new Semaphore(threads);
+            List<Future<?>> pending = new ArrayList<>();
+            try {
+                for (int i = 0; i < count; i++) {
+                    slots.acquire();
+                    int index = i;
+                    pending.add(batchExecutor.submit(() -> {
+                        try {
+                            runBatchCommand(out, index, commands.get(index));
+                        } finally {
+                            slots.release();
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<?> future : pending) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Lot interrompu");
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+            } catch (RejectedExecutionException e) {
+                throw new IOException("Lot refusé : le serveur s'arrête", e);
+            } finally {
+                for (Future<?> future : pending) {
+                    future.cancel(true);
+                }
+            }
+        }
+        out.writeLine(END_MARKER);
+        out.flush();
+    }
+
+    /**
+     * Exécute une commande d'un lot, écrit son résultat et la consigne dans le journal d'audit
+     * avec le nombre d'octets envoyés au client, comme une commande isolée.
+     *
+     * @return Le résultat de la commande.
+     */
+    private CommandResult runBatchCommand(SessionOutput out, int index, String command) throws IOException {
+        long start = System.currentTimeMillis();
+        CommandResult result = processor.execute(command, MAX_BATCH_OUTPUT_CHARS);
+        if (result.getUsage() != null) {
+            commandAccounting.record(login, command, result.getUsage(), false);
+        }
+        long bytes = writeBatchResult(out, index, result);
+        journal(JournalRecord.Kind.COMMAND, command, result.getExitCode(), start, bytes);
+        return result;
+    }
+
+    /**
+     * Traite une requête `ON_BEHALF <login>` : une passerelle, authentifiée avec son compte de service,
+     * indique l'utilisateur qu'elle a authentifié. Les actions suivantes de la session lui sont attribuées
+     * dans le journal d'audit et dans les cumuls de consommation ; la délégation est elle-même journalisée
+     * (AUTH, avec le compte de service). Seules les adresses de confiance (`trusted-addresses`) peuvent
+     * la demander, une seule fois par session. Le serveur répond `OK`, ou `ERROR` suivi d'un message.
+     *
+     * La requête tient sur une ligne : un serveur qui ne la connaît pas l'exécute comme une commande,
+     * qui échoue sans effet (`ON_BEHALF` n'est pas un programme).
+     */
+    private void handleOnBehalf(String user, SessionOutput out) throws IOException {
+        long start = System.currentTimeMillis();
+        String address = clientSocket.getInetAddress().getHostAddress();
+        if (delegated || user.isBlank() || !authManager.isTrusted(address)) {
+            logger.warn("Client {} ({}) may not act on behalf of {}", clientId, login, user);
+            journal(JournalRecord.Kind.AUTH, "ON_BEHALF " + user, 1, start, 0);
+            out.writeLine("ERROR");
+            out.writeLine("Délégation refusée.");
+            out.flush();
+            return;
+        }
+        journal(JournalRecord.Kind.AUTH, "ON_BEHALF " + user, 0, start, 0);
+        logger.info("Client {} ({}) acts on behalf of {}", clientId, login, user);
+        login = user;
+        delegated = true;
+        out.writeLine("OK");
+        out.flush();
+    }
+
+    /**
+     * Consigne une action de la session dans le journal d'audit, sans attendre son écriture.
+     *
+     * @param kind   Le type d'action.
+     * @param detail La commande, le nom du fichier ou du répertoire...
+     * @param status Le code de sortie d'une commande, 0 (succès) ou 1 (échec) pour les autres actions.
+     * @param start  La date de début de l'action.
+     * @param bytes  Le nombre d'octets transférés.
+     */
+    private void journal(JournalRecord.Kind kind, String detail, int status, long start, long bytes) {
+        auditJournal.record(new JournalRecord(start, clientId, login, kind, detail, status,
+                System.currentTimeMillis() - start, bytes));
+    }
+
+    /**
+     * Écrit le résultat d'une commande d'un lot. L'en-tête et les lignes sont écrits sans être
+     * entrelacés avec les résultats des autres commandes exécutées en parallèle.
+     * L'en-tête `RESULT <index> <code de sortie> <nombre de lignes>` est suivi, lorsqu'elles sont connues,
+     * des ressources consommées : durée, temps processeur et mémoire (voir `ResourceUsage`).
+     *
+     * @return Le nombre d'octets écrits (en-tête compris).
+     */
+    private long writeBatchResult(SessionOutput out, int index, CommandResult result) throws IOException {
+        String[] lines = result.getOutput().isEmpty() ? new String[0] : result.getOutput().split("\n", -1);
+        ResourceUsage usage = result.getUsage();
+        String header = "RESULT " + index + " " + result.getExitCode() + " " + lines.length
+                + (usage == null ? "" : " " + usage.getWallMillis() + " " + usage.getCpuMillis() + " " + usage.getPeakMemoryKb());
+        synchronized (out) {
+            long bytesBefore = out.getBytesWritten();
+            out.writeLine(header);
+            for (String line : lines) {
+                out.writeLine(line);
+            }
+            return out.getBytesWritten() - bytesBefore;
         }
     }
 }
\ No newline at end of file
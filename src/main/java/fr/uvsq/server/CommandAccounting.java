@@ -0,0 +1,177 @@
+package fr.uvsq.server;
+
+import fr.uvsq.core.CommandUsage;
+import fr.uvsq.core.ResourceUsage;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * La classe `CommandAccounting` cumule les ressources consommées par les commandes exécutées
+ * sur le serveur (voir `ResourceUsage`), par motif de commande et par utilisateur.
+ *
+ * Le motif d'une commande conserve les noms des programmes et leurs options, et remplace les
+ * arguments par `*` : `tail -n 50 app.log` et `tail -n 10 other.log` partagent le motif `tail -n * *`.
+ * Les cumuls par motif indiquent quelles commandes, notamment périodiques (WATCH), mériteraient d'être
+ * mises en cache ou remplacées ; les cumuls par utilisateur, quels clients chargent le serveur.
+ * Au-delà de `MAX_PATTERNS` motifs distincts, les nouveaux motifs sont regroupés sous `OTHER_PATTERN`.
+ */
+public class CommandAccounting {
+    /** Nombre maximal de motifs distincts suivis. */
+    public static final int MAX_PATTERNS = 1000;
+    /** Motif regroupant les commandes au-delà de `MAX_PATTERNS` motifs. */
+    public static final String OTHER_PATTERN = "(autres)";
+    private static final int MAX_PATTERN_LENGTH = 200;
+    private static final String SEPARATOR_CHARACTERS = "|;&";
+
+    private final Map<String, Tally> patterns = new ConcurrentHashMap<>();
+    private final Map<String, Tally> users = new ConcurrentHashMap<>();
+
+    /**
+     * Enregistre une exécution.
+     *
+     * @param login   L'identifiant de l'utilisateur qui l'a demandée.
+     * @param command La commande exécutée.
+     * @param usage   Les ressources consommées.
+     * @param polled  true s'il s'agit d'une exécution périodique (WATCH).
+     */
+    public void record(String login, String command, ResourceUsage usage, boolean polled) {
+        String pattern = pattern(command);
+        Tally tally = patterns.get(pattern);
+        if (tally == null) {
+            // Limite approximative sous concurrence : quelques motifs de plus au pire.
+            tally = patterns.size() < MAX_PATTERNS
+                    ? patterns.computeIfAbsent(pattern, key -> new Tally())
+                    : patterns.computeIfAbsent(OTHER_PATTERN, key -> new Tally());
+        }
+        tally.add(usage, polled);
+        users.computeIfAbsent(String.valueOf(login), key -> new Tally()).add(usage, polled);
+    }
+
+    /**
+     * @return Les cumuls par motif de commande, par temps processeur décroissant.
+     */
+    public List<CommandUsage> byPattern() {
+        return snapshot(patterns, CommandUsage.Scope.PATTERN);
+    }
+
+    /**
+     * @return Les cumuls par utilisateur, par temps processeur décroissant.
+     */
+    public List<CommandUsage> byUser() {
+        return snapshot(users, CommandUsage.Scope.USER);
+    }
+
+    /**
+     * Calcule le motif d'une commande : les programmes (premier mot et mots suivant un séparateur
+     * `|`, `&&`, `;`...), les options (mots commençant par `-`) et les séparateurs sont conservés ;
+     * les autres mots, y compris les chaînes entre guillemets, sont remplacés par `*`.
+     *
+     * @param command La commande.
+     * @return Son motif.
+     */
+    public static String pattern(String command) {
+        StringBuilder pattern = new StringBuilder();
+        boolean program = true;
+        for (String word : words(command)) {
+            if (pattern.length() > 0) {
+                pattern.append(' ');
+            }
+            if (SEPARATOR_CHARACTERS.indexOf(word.charAt(0)) >= 0) {
+                pattern.append(word);
+                program = true;
+            } else if (program || word.startsWith("-")) {
+                pattern.append(word);
+                program = false;
+            } else {
+                pattern.append('*');
+            }
+            if (pattern.length() > MAX_PATTERN_LENGTH) {
+                pattern.setLength(MAX_PATTERN_LENGTH);
+                return pattern.append("...").toString();
+            }
+        }
+        return pattern.toString();
+    }
+
+    /**
+     * Découpe une commande en mots et en séparateurs (`|`, `||`, `&&`, `;`, `&`), même collés aux mots.
+     * Les espaces et séparateurs entre guillemets font partie du mot.
+     */
+    private static List<String> words(String command) {
+        List<String> words = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        char quote = 0;
+        for (int i = 0; i < command.length(); i++) {
+            char c = command.charAt(i);
+            if (quote != 0) {
+                word.append(c);
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"') {
+                word.append(c);
+                quote = c;
+            } else if (Character.isWhitespace(c) || SEPARATOR_CHARACTERS.indexOf(c) >= 0) {
+                if (word.length() > 0) {
+                    words.add(word.toString());
+                    word.setLength(0);
+                }
+                if (!Character.isWhitespace(c)) {
+                    // `||` et `&&` forment un seul séparateur.
+                    boolean doubled = (c == '|' || c == '&') && i + 1 < command.length() && command.charAt(i + 1) == c;
+                    words.add(doubled ? "" + c + c : String.valueOf(c));
+                    if (doubled) {
+                        i++;
+                    }
+                }
+            } else {
+                word.append(c);
+            }
+        }
+        if (word.length() > 0) {
+            words.add(word.toString());
+        }
+        return words;
+    }
+
+    private static List<CommandUsage> snapshot(Map<String, Tally> tallies, CommandUsage.Scope scope) {
+        List<CommandUsage> usages = new ArrayList<>();
+        tallies.forEach((name, tally) -> usages.add(tally.toUsage(scope, name)));
+        usages.sort(Comparator.comparingLong(CommandUsage::getCpuMillis).reversed()
+                .thenComparing(Comparator.comparingLong(CommandUsage::getExecutions).reversed()));
+        return usages;
+    }
+
+    /**
+     * Cumul des exécutions d'un motif ou d'un utilisateur.
+     */
+    private static final class Tally {
+        private long executions = 0;
+        private long polledExecutions = 0;
+        private long failures = 0;
+        private long wallMillis = 0;
+        private long cpuMillis = 0;
+        private long peakMemoryKb = ResourceUsage.UNKNOWN;
+
+        private synchronized void add(ResourceUsage usage, boolean polled) {
+            executions++;
+            if (polled) {
+                polledExecutions++;
+            }
+            if (usage.getExitCode() != 0) {
+                failures++;
+            }
+            wallMillis += usage.getWallMillis();
+            cpuMillis += usage.getCpuMillis();
+            peakMemoryKb = Math.max(peakMemoryKb, usage.getPeakMemoryKb());
+        }
+
+        private synchronized CommandUsage toUsage(CommandUsage.Scope scope, String name) {
+            return new CommandUsage(scope, name, executions, polledExecutions, failures, wallMillis, cpuMillis, peakMemoryKb);
+        }
+    }
+}
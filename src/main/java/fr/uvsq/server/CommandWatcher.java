@@ -0,0 +1,126 @@
+package fr.uvsq.server;
+
+import fr.uvsq.core.CommandProcessor;
+import fr.uvsq.core.DaemonThreadFactory;
+import fr.uvsq.core.LineDiff;
+import fr.uvsq.core.ResourceUsage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * La classe `CommandWatcher` exécute une commande à intervalle régulier pour une requête WATCH
+ * et n'envoie au client que les différences de sa sortie par rapport à l'exécution précédente.
+ *
+ * Chaque exécution dont la sortie ou le code de sortie a changé donne lieu à une trame
+ * `FRAME <code de sortie> <nombre d'opérations>` suivie des opérations de `LineDiff`.
+ * La première trame décrit la sortie complète ; une exécution identique à la précédente n'envoie rien.
+ * Si une exécution dure plus longtemps que l'intervalle, la suivante démarre dès sa fin.
+ */
+public class CommandWatcher implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(CommandWatcher.class);
+    /** Intervalle minimal entre deux exécutions, en millisecondes. */
+    public static final long MIN_INTERVAL_MILLIS = 250;
+
+    private final CommandProcessor processor;
+    private final String command;
+    private final long intervalMillis;
+    private final SessionOutput out;
+    private final Consumer<ResourceUsage> usageConsumer;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private final Thread thread;
+    private List<String> previousLines = List.of();
+    private int previousExitCode = Integer.MIN_VALUE;
+    private long runs = 0;
+    private long frames = 0;
+
+    /**
+     * Constructeur de `CommandWatcher`.
+     *
+     * @param processor      Le processeur de commandes de la session.
+     * @param command        La commande à exécuter.
+     * @param intervalMillis L'intervalle entre deux exécutions (au moins `MIN_INTERVAL_MILLIS`).
+     * @param out            Le flux de sortie de la session.
+     * @param usageConsumer  Le destinataire des ressources consommées par chaque exécution.
+     */
+    public CommandWatcher(CommandProcessor processor, String command, long intervalMillis, SessionOutput out,
+                          Consumer<ResourceUsage> usageConsumer) {
+        this.processor = processor;
+        this.command = command;
+        this.intervalMillis = Math.max(MIN_INTERVAL_MILLIS, intervalMillis);
+        this.out = out;
+        this.usageConsumer = usageConsumer;
+        this.thread = new DaemonThreadFactory("cmd-watch").newThread(this::watchLoop);
+    }
+
+    /**
+     * Démarre les exécutions périodiques.
+     */
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * Arrête les exécutions et attend la fin de la trame en cours d'envoi, afin que la session
+     * puisse ensuite écrire la fin de réponse sans entrelacement.
+     */
+    @Override
+    public void close() {
+        stopped.countDown();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logger.info("Watch of '{}' stopped after {} runs, {} frames sent", command, runs, frames);
+    }
+
+    private void watchLoop() {
+        try {
+            do {
+                long start = System.nanoTime();
+                runOnce();
+                long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                if (stopped.await(Math.max(0, intervalMillis - elapsedMillis), TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            } while (true);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            logger.warn("Cannot send watch frame for '{}': {}", command, e.getMessage());
+        }
+    }
+
+    /**
+     * Exécute la commande une fois et envoie la différence avec l'exécution précédente.
+     */
+    private void runOnce() throws IOException {
+        List<String> lines = new ArrayList<>();
+        ResourceUsage usage = processor.run(command, lines::add);
+        usageConsumer.accept(usage);
+        int exitCode = usage.getExitCode();
+        runs++;
+        List<String> ops = LineDiff.diff(previousLines, lines);
+        if (ops.isEmpty() && exitCode == previousExitCode) {
+            return;
+        }
+        synchronized (out) {
+            out.writeLine("FRAME " + exitCode + " " + ops.size());
+            for (String op : ops) {
+                out.writeLine(op);
+            }
+        }
+        out.flush();
+        frames++;
+        previousLines = lines;
+        previousExitCode = exitCode;
+    }
+}
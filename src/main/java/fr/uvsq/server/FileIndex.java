@@ -0,0 +1,377 @@
+package fr.uvsq.server;
+
+import fr.uvsq.core.AtomicFileWriter;
+import fr.uvsq.core.DaemonThreadFactory;
+import fr.uvsq.core.FileListing;
+import fr.uvsq.core.RemoteFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * La classe `FileIndex` maintient en mémoire l'index du répertoire partagé du serveur (`server_files/`).
+ *
+ * Le répertoire est parcouru une seule fois au démarrage, en arrière-plan (les requêtes attendent la fin
+ * de ce premier parcours) ; l'index est ensuite tenu à jour par un
+ * `WatchService`. Les requêtes LIST et STAT sont ainsi servies depuis la mémoire, sans processus
+ * ni parcours du disque, même pour des répertoires de plusieurs centaines de milliers d'entrées.
+ * Les entrées sont triées par nom, ce qui permet de servir un filtre par préfixe sans tout parcourir.
+ *
+ * Le résultat d'un filtre (la liste de toutes les entrées correspondantes) est conservé tant que l'index
+ * ne change pas : la première page d'un filtre coûte un parcours des entrées candidates, les pages
+ * suivantes ne coûtent que leur copie. Toute modification de l'index invalide ces résultats.
+ */
+public class FileIndex implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(FileIndex.class);
+    /** Nombre maximal d'entrées renvoyées par page. */
+    public static final int MAX_PAGE_SIZE = 1000;
+    // Nombre de filtres dont le résultat est conservé ; au-delà, tous les résultats sont oubliés.
+    private static final int MAX_CACHED_VIEWS = 16;
+
+    private final Path root;
+    private final ConcurrentSkipListMap<String, RemoteFile> entries = new ConcurrentSkipListMap<>();
+    private final Map<WatchKey, Path> watchedDirectories = new ConcurrentHashMap<>();
+    private final CountDownLatch ready = new CountDownLatch(1);
+    // Incrémentée à chaque modification de `entries`, pour invalider les résultats de filtres conservés.
+    private final AtomicLong version = new AtomicLong();
+    private final Map<String, FilteredView> views = new ConcurrentHashMap<>();
+    private WatchService watchService;
+
+    /**
+     * Constructeur de `FileIndex`.
+     *
+     * @param root Le répertoire partagé à indexer.
+     */
+    public FileIndex(Path root) {
+        this.root = root.toAbsolutePath().normalize();
+    }
+
+    /**
+     * Crée le répertoire si besoin et démarre, en arrière-plan, la construction de l'index initial
+     * puis la surveillance. Le démarrage du serveur n'attend donc pas le parcours du répertoire.
+     *
+     * @throws IOException Si le répertoire ne peut pas être créé ou surveillé.
+     */
+    public void start() throws IOException {
+        Files.createDirectories(root);
+        watchService = root.getFileSystem().newWatchService();
+        new DaemonThreadFactory("file-index").newThread(() -> {
+            rescan();
+            ready.countDown();
+            logger.info("Indexed {} entries under {}", entries.size(), root);
+            watchLoop();
+        }).start();
+    }
+
+    /**
+     * @return Le répertoire partagé indexé.
+     */
+    public Path getRoot() {
+        return root;
+    }
+
+    /**
+     * Résout un nom relatif au répertoire partagé en refusant tout chemin qui en sortirait.
+     *
+     * @param name Le nom (ou chemin relatif) envoyé par le client.
+     * @return Le chemin absolu, ou `null` si le nom est vide, invalide (caractère nul...), absolu
+     *         ou sort du répertoire partagé.
+     */
+    public Path resolve(String name) {
+        if (name == null || name.isEmpty()) {
+            return null;
+        }
+        Path relative;
+        try {
+            relative = Paths.get(name);
+        } catch (InvalidPathException e) {
+            return null;
+        }
+        if (relative.isAbsolute()) {
+            return null;
+        }
+        Path resolved = root.resolve(relative).normalize();
+        return resolved.startsWith(root) && !resolved.equals(root) ? resolved : null;
+    }
+
+    /**
+     * Retourne la description d'un fichier indexé.
+     *
+     * @param name Le chemin relatif au répertoire partagé.
+     * @return La description du fichier, ou `null` s'il n'existe pas.
+     */
+    public RemoteFile stat(String name) {
+        awaitReady();
+        Path path = resolve(name);
+        return path == null ? null : entries.get(keyOf(path));
+    }
+
+    /**
+     * Liste une page des fichiers indexés.
+     *
+     * Le filtre est soit un motif glob (`*.log`, `logs/**`), appliqué au chemin relatif, soit,
+     * s'il ne contient aucun caractère spécial, un préfixe du chemin relatif.
+     * Tant que l'index ne change pas, seule la première page d'un filtre parcourt les entrées.
+     *
+     * @param filter Le filtre, vide pour tout lister.
+     * @param offset Le nombre d'entrées à sauter.
+     * @param limit  Le nombre maximal d'entrées à renvoyer (plafonné à `MAX_PAGE_SIZE`).
+     * @return La page demandée et le nombre total d'entrées correspondant au filtre.
+     * @throws IllegalArgumentException Si le filtre n'est pas un motif glob valide (`PatternSyntaxException`).
+     */
+    public FileListing list(String filter, int offset, int limit) {
+        awaitReady();
+        String key = filter == null ? "" : filter;
+        // Version lue avant le parcours : une modification concurrente rendra ce résultat obsolète.
+        long current = version.get();
+        FilteredView view = views.get(key);
+        if (view == null || view.version != current) {
+            view = new FilteredView(current, filter(key));
+            if (views.size() >= MAX_CACHED_VIEWS) {
+                views.clear();
+            }
+            views.put(key, view);
+        }
+        List<RemoteFile> matches = view.matches;
+        int from = Math.min(Math.max(0, offset), matches.size());
+        int pageSize = Math.max(0, Math.min(Math.min(limit, MAX_PAGE_SIZE), matches.size() - from));
+        return new FileListing(matches.size(), new ArrayList<>(matches.subList(from, from + pageSize)));
+    }
+
+    /**
+     * Parcourt les entrées correspondant à un filtre (voir `list`).
+     */
+    private List<RemoteFile> filter(String filter) {
+        NavigableMap<String, RemoteFile> candidates = entries;
+        PathMatcher matcher = null;
+        if (!filter.isEmpty()) {
+            if (filter.chars().anyMatch(c -> "*?[{".indexOf(c) >= 0)) {
+                matcher = FileSystems.getDefault().getPathMatcher("glob:" + filter);
+            } else {
+                candidates = entries.subMap(filter, true, filter + Character.MAX_VALUE, false);
+            }
+        }
+        List<RemoteFile> matches = new ArrayList<>();
+        for (Map.Entry<String, RemoteFile> entry : candidates.entrySet()) {
+            if (matcher == null || matcher.matches(Paths.get(entry.getKey()))) {
+                matches.add(entry.getValue());
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Met à jour immédiatement l'entrée d'un fichier, sans attendre la notification du `WatchService`.
+     * Appelée après une écriture (upload) afin qu'un LIST qui suit la voie aussitôt.
+     *
+     * @param path Le chemin absolu du fichier.
+     */
+    public void refresh(Path path) {
+        Path normalized = path.toAbsolutePath().normalize();
+        if (!normalized.startsWith(root) || normalized.equals(root)) {
+            return;
+        }
+        String key = keyOf(normalized);
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(normalized, BasicFileAttributes.class);
+            if (isIndexable(key)) {
+                entries.put(key, toRemoteFile(key, attributes));
+                version.incrementAndGet();
+            }
+        } catch (NoSuchFileException e) {
+            remove(key);
+        } catch (IOException e) {
+            logger.warn("Cannot index {}: {}", normalized, e.getMessage());
+        }
+    }
+
+    /**
+     * Indexe immédiatement toute une arborescence, sans attendre les notifications du `WatchService`.
+     * Appelée après la réception d'un répertoire (UPLOAD_DIR).
+     *
+     * @param directory Le chemin absolu du répertoire.
+     */
+    public void refreshTree(Path directory) {
+        Path normalized = directory.toAbsolutePath().normalize();
+        if (normalized.startsWith(root) && Files.isDirectory(normalized)) {
+            scan(normalized, new HashSet<>());
+        }
+    }
+
+    /**
+     * @return Le nombre d'entrées indexées.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Arrête la surveillance du répertoire.
+     */
+    @Override
+    public void close() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    /**
+     * Attend la fin du parcours initial du répertoire.
+     */
+    private void awaitReady() {
+        try {
+            ready.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Boucle de surveillance : applique à l'index chaque création, modification ou suppression.
+     */
+    private void watchLoop() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            Path directory = watchedDirectories.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW || directory == null) {
+                    // Des événements ont été perdus : l'index est reconstruit.
+                    rescan();
+                    continue;
+                }
+                Path child = directory.resolve((Path) event.context());
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(child)) {
+                    scan(child, new HashSet<>());
+                } else {
+                    refresh(child);
+                }
+            }
+            if (!key.reset()) {
+                watchedDirectories.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Reconstruit l'index complet et retire les entrées qui n'existent plus.
+     */
+    private synchronized void rescan() {
+        Set<String> seen = new HashSet<>();
+        scan(root, seen);
+        entries.keySet().removeIf(key -> !seen.contains(key));
+        version.incrementAndGet();
+    }
+
+    /**
+     * Indexe une arborescence et enregistre ses répertoires auprès du `WatchService`.
+     */
+    private void scan(Path start, Set<String> seen) {
+        try {
+            Files.walkFileTree(start, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) throws IOException {
+                    watchedDirectories.put(dir.register(watchService,
+                            StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_DELETE,
+                            StandardWatchEventKinds.ENTRY_MODIFY), dir);
+                    if (!dir.equals(root)) {
+                        index(dir, attributes);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                    index(file, attributes);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    logger.warn("Cannot index {}: {}", file, e.getMessage());
+                    return FileVisitResult.CONTINUE;
+                }
+
+                private void index(Path path, BasicFileAttributes attributes) {
+                    String key = keyOf(path);
+                    if (isIndexable(key)) {
+                        entries.put(key, toRemoteFile(key, attributes));
+                        version.incrementAndGet();
+                        seen.add(key);
+                    }
+                }
+            });
+        } catch (IOException e) {
+            logger.error("Indexing of {} failed: {}", start, e.getMessage(), e);
+        }
+    }
+
+    private void remove(String key) {
+        entries.remove(key);
+        // Si l'entrée était un répertoire, tout son contenu disparaît avec lui.
+        entries.subMap(key + "/", true, key + "/" + Character.MAX_VALUE, false).clear();
+        version.incrementAndGet();
+    }
+
+    private String keyOf(Path path) {
+        return root.relativize(path).toString().replace(File.separatorChar, '/');
+    }
+
+    private static boolean isIndexable(String key) {
+        // Les noms contenant un saut de ligne ne peuvent pas être transmis par le protocole ligne à ligne,
+        // et les fichiers en cours de réception ne doivent être ni listés ni servis.
+        return key.indexOf('\n') < 0 && key.indexOf('\r') < 0
+                && !AtomicFileWriter.isTemporary(key.substring(key.lastIndexOf('/') + 1));
+    }
+
+    /**
+     * Résultat d'un filtre, valable pour une version de l'index.
+     */
+    private static final class FilteredView {
+        private final long version;
+        private final List<RemoteFile> matches;
+
+        private FilteredView(long version, List<RemoteFile> matches) {
+            this.version = version;
+            this.matches = matches;
+        }
+    }
+
+    private static RemoteFile toRemoteFile(String key, BasicFileAttributes attributes) {
+        return new RemoteFile(key, attributes.isDirectory() ? 0 : attributes.size(),
+                attributes.lastModifiedTime().toMillis(), attributes.isDirectory());
+    }
+}
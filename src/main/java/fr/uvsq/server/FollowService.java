@@ -0,0 +1,510 @@
+package fr.uvsq.server;
+
+import fr.uvsq.core.DaemonThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * La classe `FollowService` permet de suivre des fichiers en continu (équivalent de `tail -F`)
+ * sans relancer de processus.
+ *
+ * Chaque fichier suivi est lu par un unique lecteur partagé par tous ses abonnés : un `FileChannel`
+ * positionné en fin de fichier, réveillé par le `WatchService` du répertoire parent, ne lit que
+ * les octets ajoutés depuis la lecture précédente. Les lignes complètes sont ensuite distribuées
+ * à chaque abonné via une file d'attente bornée, vidée vers la session par un thread dédié :
+ * un client lent ne ralentit donc ni le lecteur ni les autres abonnés.
+ *
+ * La rotation (le fichier est renommé puis recréé) est détectée par le changement d'identifiant
+ * du fichier, la troncature par une taille devenue inférieure à la position de lecture.
+ * Dans les deux cas, la lecture reprend au début du nouveau contenu ; lors d'une rotation,
+ * l'ancien fichier est lu jusqu'au bout avant de passer au nouveau.
+ */
+public class FollowService implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(FollowService.class);
+    /** Nombre maximal de lignes initiales envoyées à un nouvel abonné. */
+    public static final int MAX_INITIAL_LINES = 10_000;
+    // Relecture périodique de tous les fichiers, au cas où une notification serait perdue.
+    private static final long POLL_INTERVAL_MILLIS = 1000;
+    // Nombre de lignes en attente au-delà duquel les lignes destinées à un abonné lent sont ignorées.
+    private static final int MAX_PENDING_LINES = 10_000;
+    // Longueur maximale d'une ligne : au-delà, la ligne est transmise en plusieurs morceaux.
+    private static final int MAX_LINE_LENGTH = 1024 * 1024;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    // Attente maximale de la fin du thread d'envoi d'un abonnement fermé.
+    private static final long SENDER_STOP_TIMEOUT_MILLIS = 2000;
+
+    private final Map<Path, FollowedFile> files = new HashMap<>();
+    private final Map<Path, WatchKey> watchedDirectories = new HashMap<>();
+    private WatchService watchService;
+
+    /**
+     * Abonnement à un fichier suivi. Sa fermeture arrête l'envoi des lignes à l'abonné.
+     */
+    public interface Subscription extends Closeable {
+        @Override
+        void close();
+    }
+
+    /**
+     * Démarre la surveillance des fichiers suivis.
+     *
+     * @throws IOException Si le `WatchService` ne peut pas être créé.
+     */
+    public void start() throws IOException {
+        watchService = FileSystems.getDefault().newWatchService();
+        new DaemonThreadFactory("file-follow").newThread(this::watchLoop).start();
+    }
+
+    /**
+     * Abonne une session à un fichier. Les dernières lignes du fichier sont envoyées immédiatement,
+     * puis chaque ligne ajoutée au fichier, jusqu'à la fermeture de l'abonnement.
+     *
+     * @param file         Le fichier à suivre.
+     * @param initialLines Le nombre de dernières lignes à envoyer d'abord (plafonné à `MAX_INITIAL_LINES`).
+     * @param out          Le flux de sortie de la session abonnée.
+     * @return L'abonnement, à fermer pour arrêter le suivi.
+     * @throws IOException Si le fichier n'existe pas ou ne peut pas être lu.
+     */
+    public synchronized Subscription subscribe(Path file, int initialLines, SessionOutput out) throws IOException {
+        Path path = file.toAbsolutePath().normalize();
+        FollowedFile followed = files.get(path);
+        if (followed == null) {
+            followed = new FollowedFile(path);
+            followed.open();
+            watchDirectory(path.getParent());
+            files.put(path, followed);
+            logger.info("Following {}", path);
+        }
+        Subscriber subscriber = new Subscriber(followed, out);
+        followed.add(subscriber, Math.max(0, Math.min(initialLines, MAX_INITIAL_LINES)));
+        subscriber.start();
+        return subscriber;
+    }
+
+    /**
+     * @return Le nombre de fichiers actuellement suivis.
+     */
+    public synchronized int getFollowedFileCount() {
+        return files.size();
+    }
+
+    /**
+     * Arrête la surveillance et le suivi de tous les fichiers.
+     */
+    @Override
+    public void close() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+        List<FollowedFile> followed;
+        synchronized (this) {
+            followed = new ArrayList<>(files.values());
+            files.clear();
+            watchedDirectories.clear();
+        }
+        for (FollowedFile file : followed) {
+            file.close();
+        }
+    }
+
+    private synchronized void unsubscribe(Subscriber subscriber) {
+        FollowedFile followed = subscriber.file;
+        if (followed.remove(subscriber) && files.get(followed.path) == followed) {
+            // Dernier abonné : le fichier n'est plus lu ni surveillé.
+            files.remove(followed.path);
+            followed.close();
+            Path directory = followed.path.getParent();
+            if (files.keySet().stream().noneMatch(p -> p.getParent().equals(directory))) {
+                WatchKey key = watchedDirectories.remove(directory);
+                if (key != null) {
+                    key.cancel();
+                }
+            }
+            logger.info("Stopped following {}", followed.path);
+        }
+    }
+
+    private void watchDirectory(Path directory) {
+        if (watchedDirectories.containsKey(directory)) {
+            return;
+        }
+        try {
+            watchedDirectories.put(directory, directory.register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE,
+                    StandardWatchEventKinds.ENTRY_MODIFY));
+        } catch (IOException e) {
+            // Le fichier reste suivi par la relecture périodique.
+            logger.warn("Cannot watch {}: {}", directory, e.getMessage());
+        }
+    }
+
+    private synchronized FollowedFile find(Path path) {
+        return files.get(path);
+    }
+
+    private synchronized List<FollowedFile> snapshot() {
+        return new ArrayList<>(files.values());
+    }
+
+    /**
+     * Boucle de surveillance : relit chaque fichier suivi dont le répertoire signale une modification,
+     * et tous les fichiers suivis à intervalle régulier.
+     */
+    private void watchLoop() {
+        long lastFullPoll = System.nanoTime();
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            boolean overflow = false;
+            if (key != null) {
+                Path directory = (Path) key.watchable();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        overflow = true;
+                        continue;
+                    }
+                    FollowedFile followed = find(directory.resolve((Path) event.context()));
+                    if (followed != null) {
+                        followed.poll();
+                    }
+                }
+                key.reset();
+            }
+            if (overflow || System.nanoTime() - lastFullPoll >= TimeUnit.MILLISECONDS.toNanos(POLL_INTERVAL_MILLIS)) {
+                snapshot().forEach(FollowedFile::poll);
+                lastFullPoll = System.nanoTime();
+            }
+        }
+    }
+
+    /**
+     * Lecteur partagé d'un fichier suivi.
+     */
+    private static final class FollowedFile {
+        private final Path path;
+        private final List<Subscriber> subscribers = new ArrayList<>();
+        private final ByteArrayOutputStream partialLine = new ByteArrayOutputStream();
+        private final ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private FileChannel channel;
+        private Object fileKey;
+        private long position;
+        private boolean missing = false;
+
+        FollowedFile(Path path) {
+            this.path = path;
+        }
+
+        /**
+         * Ouvre le fichier et se positionne à la fin de sa dernière ligne complète : une ligne en cours
+         * d'écriture sera transmise entière une fois terminée.
+         */
+        synchronized void open() throws IOException {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            if (!attributes.isRegularFile()) {
+                throw new IOException("Pas un fichier : " + path);
+            }
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+            fileKey = attributes.fileKey();
+            position = endOfLastLine(channel.size());
+        }
+
+        /**
+         * Ajoute un abonné après lui avoir transmis les dernières lignes complètes déjà lues.
+         */
+        synchronized void add(Subscriber subscriber, int initialLines) throws IOException {
+            if (initialLines > 0) {
+                for (String line : readLastLines(position - partialLine.size(), initialLines)) {
+                    subscriber.offer(line);
+                }
+            }
+            subscribers.add(subscriber);
+        }
+
+        /**
+         * @return true si l'abonné était le dernier du fichier.
+         */
+        synchronized boolean remove(Subscriber subscriber) {
+            return subscribers.remove(subscriber) && subscribers.isEmpty();
+        }
+
+        /**
+         * Lit les octets ajoutés depuis la lecture précédente, en tenant compte d'une éventuelle
+         * rotation, troncature ou suppression du fichier.
+         */
+        synchronized void poll() {
+            if (channel == null) {
+                return;
+            }
+            try {
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                } catch (NoSuchFileException e) {
+                    attributes = null;
+                }
+                // Le fichier ouvert reste lu tant qu'il n'est pas remplacé : après un renommage, le
+                // programme qui l'écrit peut encore y ajouter des lignes avant d'ouvrir le nouveau fichier.
+                readAppended();
+                if (attributes == null) {
+                    if (!missing) {
+                        missing = true;
+                        publish("### Fichier supprimé ou renommé : " + path);
+                    }
+                } else if (!Objects.equals(attributes.fileKey(), fileKey)) {
+                    missing = false;
+                    publishPartialLine();
+                    publish("### Fichier remplacé : " + path);
+                    closeChannel();
+                    channel = FileChannel.open(path, StandardOpenOption.READ);
+                    fileKey = attributes.fileKey();
+                    readAppended();
+                } else if (channel.size() < position) {
+                    missing = false;
+                    publish("### Fichier tronqué : " + path);
+                    position = 0;
+                    partialLine.reset();
+                    readAppended();
+                } else {
+                    missing = false;
+                }
+            } catch (IOException e) {
+                logger.warn("Cannot read followed file {}: {}", path, e.getMessage());
+            }
+        }
+
+        synchronized void close() {
+            closeChannel();
+        }
+
+        private void closeChannel() {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    logger.warn("Cannot close {}: {}", path, e.getMessage());
+                }
+                channel = null;
+            }
+            position = 0;
+            partialLine.reset();
+        }
+
+        /**
+         * Lit la fin du fichier à partir de la position courante et publie les lignes complètes.
+         */
+        private void readAppended() throws IOException {
+            int read;
+            while ((read = channel.read(buffer.clear(), position)) > 0) {
+                position += read;
+                byte[] bytes = buffer.array();
+                int start = 0;
+                for (int i = 0; i < read; i++) {
+                    if (bytes[i] == '\n') {
+                        partialLine.write(bytes, start, i - start);
+                        publish(decodeLine(partialLine.toByteArray()));
+                        partialLine.reset();
+                        start = i + 1;
+                    }
+                }
+                partialLine.write(bytes, start, read - start);
+                if (partialLine.size() >= MAX_LINE_LENGTH) {
+                    publish(decodeLine(partialLine.toByteArray()));
+                    partialLine.reset();
+                }
+            }
+        }
+
+        /**
+         * @return La position suivant le dernier saut de ligne avant `end` (0 s'il n'y en a pas),
+         * ou `end` si la dernière ligne dépasse `MAX_LINE_LENGTH`.
+         */
+        private long endOfLastLine(long end) throws IOException {
+            long lowest = Math.max(0, end - MAX_LINE_LENGTH);
+            ByteBuffer block = ByteBuffer.allocate(8192);
+            long searchEnd = end;
+            while (searchEnd > lowest) {
+                long blockStart = Math.max(lowest, searchEnd - block.capacity());
+                block.clear().limit((int) (searchEnd - blockStart));
+                channel.read(block, blockStart);
+                for (int i = block.position() - 1; i >= 0; i--) {
+                    if (block.get(i) == '\n') {
+                        return blockStart + i + 1;
+                    }
+                }
+                searchEnd = blockStart;
+            }
+            return lowest == 0 ? 0 : end;
+        }
+
+        /**
+         * Lit au plus `count` lignes complètes précédant la position `end`, en remontant le fichier par blocs.
+         */
+        private List<String> readLastLines(long end, int count) throws IOException {
+            long lowest = Math.max(0, end - (long) count * 1024 - MAX_LINE_LENGTH);
+            long start = lowest;
+            long searchEnd = end;
+            int found = 0;
+            ByteBuffer block = ByteBuffer.allocate(8192);
+            // Le saut de ligne terminant la dernière ligne ne compte pas comme un séparateur.
+            if (end > 0 && channel.read(block.clear().limit(1), end - 1) == 1 && block.get(0) == '\n') {
+                searchEnd = end - 1;
+            }
+            search:
+            while (searchEnd > lowest) {
+                long blockStart = Math.max(lowest, searchEnd - block.capacity());
+                block.clear().limit((int) (searchEnd - blockStart));
+                channel.read(block, blockStart);
+                for (int i = block.position() - 1; i >= 0; i--) {
+                    if (block.get(i) == '\n' && ++found == count) {
+                        start = blockStart + i + 1;
+                        break search;
+                    }
+                }
+                searchEnd = blockStart;
+            }
+            List<String> lines = new ArrayList<>();
+            if (start >= end) {
+                return lines;
+            }
+            ByteBuffer content = ByteBuffer.allocate((int) (end - start));
+            while (content.hasRemaining() && channel.read(content, start + content.position()) > 0) {
+                // Lecture jusqu'à la fin de la zone demandée.
+            }
+            String text = new String(content.array(), 0, content.position(), StandardCharsets.UTF_8);
+            for (String line : text.split("\n")) {
+                lines.add(line.endsWith("\r") ? line.substring(0, line.length() - 1) : line);
+            }
+            return lines;
+        }
+
+        /**
+         * Publie la dernière ligne d'un fichier qui ne sera plus lu, même sans saut de ligne final.
+         */
+        private void publishPartialLine() {
+            if (partialLine.size() > 0) {
+                publish(decodeLine(partialLine.toByteArray()));
+                partialLine.reset();
+            }
+        }
+
+        private static String decodeLine(byte[] bytes) {
+            int length = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1 : bytes.length;
+            return new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+
+        private void publish(String line) {
+            for (Subscriber subscriber : subscribers) {
+                subscriber.offer(line);
+            }
+        }
+    }
+
+    /**
+     * Abonné d'un fichier suivi : ses lignes sont mises en attente puis envoyées par un thread dédié.
+     */
+    private final class Subscriber implements Subscription {
+        private final FollowedFile file;
+        private final SessionOutput out;
+        private final BlockingQueue<String> pending = new LinkedBlockingQueue<>(MAX_PENDING_LINES);
+        private final AtomicLong dropped = new AtomicLong();
+        private final Thread sender;
+        private volatile boolean closed = false;
+
+        Subscriber(FollowedFile file, SessionOutput out) {
+            this.file = file;
+            this.out = out;
+            this.sender = new DaemonThreadFactory("follow-sender").newThread(this::sendLoop);
+        }
+
+        void start() {
+            sender.start();
+        }
+
+        void offer(String line) {
+            if (!pending.offer(line)) {
+                dropped.incrementAndGet();
+            }
+        }
+
+        private void sendLoop() {
+            try {
+                while (!closed) {
+                    String line = pending.take();
+                    long lost = dropped.getAndSet(0);
+                    if (lost > 0) {
+                        out.writeLine("### " + lost + " lignes ignorées (client trop lent)");
+                    }
+                    out.writeLine(line);
+                    if (pending.isEmpty()) {
+                        out.flush();
+                    }
+                }
+            } catch (InterruptedException e) {
+                // Fin de l'abonnement.
+            } catch (IOException e) {
+                logger.warn("Cannot send followed lines of {}: {}", file.path, e.getMessage());
+                unsubscribe(this);
+            }
+        }
+
+        /**
+         * Arrête le suivi et attend que le thread d'envoi ait terminé sa dernière écriture,
+         * afin que la session puisse ensuite écrire la fin de réponse sans entrelacement.
+         *
+         * Une écriture sur le socket ignore l'interruption : si le client ne lit plus, le thread d'envoi
+         * reste bloqué. L'attente est alors bornée par `SENDER_STOP_TIMEOUT_MILLIS` ; le thread, qui détient
+         * le verrou de `SessionOutput`, termine sa ligne en cours avant toute autre écriture de la session,
+         * puis s'arrête (ou échoue à la fermeture du socket).
+         */
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            unsubscribe(this);
+            sender.interrupt();
+            try {
+                sender.join(SENDER_STOP_TIMEOUT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (sender.isAlive()) {
+                logger.warn("Follow sender of {} still blocked after {} ms, client is not reading",
+                        file.path, SENDER_STOP_TIMEOUT_MILLIS);
+            }
+        }
+    }
+}
@@ -1,10 +1,34 @@
 package fr.uvsq.server;
 
+import fr.uvsq.core.AtomicFileWriter;
+import fr.uvsq.core.AuthManager;
+import fr.uvsq.core.CommandUsage;
+import fr.uvsq.core.CredentialStore;
+import fr.uvsq.core.InMemoryCredentialStore;
+import fr.uvsq.core.PropertiesCredentialStore;
+import fr.uvsq.core.SslContexts;
+import fr.uvsq.core.DaemonThreadFactory;
+import fr.uvsq.server.journal.AuditJournal;
+
 import javax.net.ssl.SSLServerSocket;
-import javax.net.ssl.SSLServerSocketFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import java.io.IOException;
+import java.net.BindException;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.concurrent.CopyOnWriteArrayList;
 import org.slf4j.Logger;
@@ -15,23 +39,74 @@ import org.slf4j.LoggerFactory;
  * Elle gère l'écoute des connexions entrantes des clients, l'authentification,
  * et la gestion des threads pour chaque client connecté.
  * Le serveur utilise SSL pour sécuriser les communications.
+ * Il ne dépend pas de JavaFX : les fonctions de rappel sont facultatives, ce qui permet de l'exécuter
+ * sans interface graphique (`ServerDaemon`).
+ *
+ * L'arrêt (`stop`) est progressif : le port est libéré immédiatement, les clients sont prévenus
+ * (`ClientHandler.GOODBYE_MARKER`) et les requêtes en cours ont jusqu'au délai `drain-timeout-ms`
+ * pour se terminer avant que leurs connexions ne soient coupées.
  */
 public class Server {
+    // Fonction de rappel par défaut : les événements ne sont que journalisés.
+    private static final Consumer<String> IGNORE = message -> { };
+    private static final int BACKLOG = 50;
+    // Le port peut rester occupé quelques instants par l'instance précédente, en cours d'arrêt.
+    private static final long BIND_RETRY_MILLIS = 5_000;
+    private static final long BIND_RETRY_INTERVAL_MILLIS = 100;
+    // Attente des threads des sessions après leur fermeture forcée.
+    private static final long FORCE_CLOSE_WAIT_MILLIS = 2_000;
+    // Étape d'authentification (poignée de main TLS, identifiants, vérification), en amont du pool des sessions :
+    // quelques threads et une file bornée, au-delà de laquelle les connexions sont refusées.
+    private static final int AUTH_THREADS = 4;
+    private static final int AUTH_QUEUE_SIZE = 64;
+
+    private final ServerConfig config;
     private volatile boolean running = true;
-    private Consumer<String> logCallback;
-    private Consumer<String> clientCallback;
-    private Consumer<String> disconnectCallback;
+    private Consumer<String> logCallback = IGNORE;
+    private Consumer<String> clientCallback = IGNORE;
+    private Consumer<String> disconnectCallback = IGNORE;
     private ExecutorService threadPool;
+    private ExecutorService authStage;
+    private ExecutorService batchExecutor;
+    private volatile SSLServerSocket serverSocket;
+    private final Set<ClientHandler> sessions = ConcurrentHashMap.newKeySet();
+    private AuthManager authManager;
+    private FileIndex fileIndex;
+    private FollowService followService;
+    private AuditJournal auditJournal;
+    private AtomicFileWriter.SyncPolicy syncPolicy;
+    private BandwidthShaper bandwidthShaper = new BandwidthShaper();
+    private final CommandAccounting commandAccounting = new CommandAccounting();
     private final CopyOnWriteArrayList<String> connectedClients = new CopyOnWriteArrayList<>();
     private static final Logger logger = LoggerFactory.getLogger(Server.class);
 
+    /**
+     * Constructeur de `Server` avec la configuration par défaut (port 5001, 10 clients...).
+     */
+    public Server() {
+        this(new ServerConfig());
+    }
+
+    /**
+     * Constructeur de `Server`.
+     *
+     * @param config La configuration du serveur : port, keystore, répertoires, limites...
+     */
+    public Server(ServerConfig config) {
+        this.config = config;
+        this.syncPolicy = config.getSyncPolicy();
+        bandwidthShaper.setGlobalLimit(config.getGlobalLimit());
+        bandwidthShaper.setSessionLimit(config.getSessionLimit());
+    }
+
     /**
      * Définit la fonction de rappel (callback) pour la journalisation (logging).
      *
-     * @param logCallback La fonction de rappel qui prend une chaîne de caractères (le message de log) en entrée.
+     * @param logCallback La fonction de rappel qui prend une chaîne de caractères (le message de log) en entrée,
+     *                    ou `null` pour ne pas être notifié.
      */
     public void setLogCallback(Consumer<String> logCallback) {
-        this.logCallback = logCallback;
+        this.logCallback = logCallback != null ? logCallback : IGNORE;
     }
 
     /**
@@ -40,7 +115,7 @@ public class Server {
      * @param clientCallback La fonction de rappel qui prend une chaîne de caractères (l'identifiant du client) en entrée.
      */
     public void setClientCallback(Consumer<String> clientCallback) {
-        this.clientCallback = clientCallback;
+        this.clientCallback = clientCallback != null ? clientCallback : IGNORE;
     }
 
     /**
@@ -49,7 +124,48 @@ public class Server {
      * @param disconnectCallback La fonction de rappel qui prend une chaîne de caractères (l'identifiant du client) en entrée.
      */
     public void setDisconnectCallback(Consumer<String> disconnectCallback) {
-        this.disconnectCallback = disconnectCallback;
+        this.disconnectCallback = disconnectCallback != null ? disconnectCallback : IGNORE;
+    }
+
+    /**
+     * Définit la politique de synchronisation sur disque des fichiers reçus.
+     * Par défaut, les données de chaque fichier sont écrites sur disque avant qu'il soit rendu visible.
+     *
+     * @param syncPolicy La politique à appliquer aux transferts suivants.
+     */
+    public void setSyncPolicy(AtomicFileWriter.SyncPolicy syncPolicy) {
+        this.syncPolicy = syncPolicy;
+    }
+
+    /**
+     * Définit la limitation du débit des sessions. Ses limites peuvent être modifiées pendant l'exécution.
+     *
+     * @param bandwidthShaper La limitation à appliquer aux sessions suivantes.
+     */
+    public void setBandwidthShaper(BandwidthShaper bandwidthShaper) {
+        this.bandwidthShaper = bandwidthShaper;
+    }
+
+    /**
+     * @return La limitation du débit des sessions (sans limite par défaut).
+     */
+    public BandwidthShaper getBandwidthShaper() {
+        return bandwidthShaper;
+    }
+
+    /**
+     * @return Le cumul des ressources consommées par les commandes depuis le démarrage du serveur.
+     */
+    public CommandAccounting getCommandAccounting() {
+        return commandAccounting;
+    }
+
+    /**
+     * @return Le journal d'audit du serveur, à interroger par date, session ou utilisateur ;
+     * `null` tant que le serveur n'est pas démarré.
+     */
+    public AuditJournal getAuditJournal() {
+        return auditJournal;
     }
 
     /**
@@ -61,29 +177,46 @@ public class Server {
 
     /**
      * Démarre le serveur et commence à écouter les connexions entrantes.
-     * Le serveur utilise un pool de threads pour gérer les clients simultanément.
+     * Le serveur utilise un pool de threads pour gérer les clients simultanément ; une session n'en obtient un
+     * qu'une fois authentifiée, par quelques threads dédiés.
      * Il utilise SSL pour sécuriser les communications.
      */
     public void start() {
-        final int PORT = 5001;
-        final int MAX_CLIENTS = 10;
-        threadPool = Executors.newFixedThreadPool(MAX_CLIENTS);
+        final int PORT = config.getPort();
+        threadPool = Executors.newFixedThreadPool(config.getMaxClients());
+        authStage = new ThreadPoolExecutor(AUTH_THREADS, AUTH_THREADS, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(AUTH_QUEUE_SIZE), new DaemonThreadFactory("auth"),
+                new ThreadPoolExecutor.AbortPolicy());
 
         try {
-            // Configuration du keystore SSL
-            System.setProperty("javax.net.ssl.keyStore", "server_keystore.jks");
-            System.setProperty("javax.net.ssl.keyStorePassword", "password");
+            authManager = new AuthManager(loadCredentialStore());
+            authManager.setTrustedAddresses(config.getTrustedAddresses());
+            fileIndex = new FileIndex(config.getSharedDirectory());
+            fileIndex.start();
+            followService = new FollowService();
+            followService.start();
+            auditJournal = new AuditJournal(config.getJournalDirectory());
+            auditJournal.start();
+            batchExecutor = Executors.newFixedThreadPool(config.getBatchThreads(), new DaemonThreadFactory("batch"));
+            ServerContext context = new ServerContext(authManager, fileIndex, followService, syncPolicy, bandwidthShaper,
+                    auditJournal, commandAccounting, batchExecutor);
 
             // Création d'une socket serveur SSL
-            SSLServerSocketFactory factory = (SSLServerSocketFactory) SSLServerSocketFactory.getDefault();
-            SSLServerSocket serverSocket = (SSLServerSocket) factory.createServerSocket(PORT);
+            serverSocket = bind(createContext());
 
-            logger.info("Server started on port {} with SSL", PORT);
+            logger.info("Server started on port {} with SSL (TLS profile {})", PORT, config.getTlsProfile());
             logCallback.accept("✅ Server listening on port " + PORT + " with SSL");
             // Boucle principale du serveur
             while (running) {
                 // Accepte une nouvelle connexion
                 Socket socket = serverSocket.accept();
+                // Une adresse bannie, ou qui a épuisé son débit de tentatives, est refusée avant la poignée de main
+                // TLS et sans consommer de thread.
+                if (!authManager.admitConnection(socket.getInetAddress().getHostAddress())) {
+                    logger.warn("Rejected banned or throttled address {}", socket.getInetAddress());
+                    socket.close();
+                    continue;
+                }
                 String clientInfo = socket.getInetAddress() + ":" + socket.getPort();
                 // Ajoute le client à la liste des clients connectés
                 connectedClients.add(clientInfo);
@@ -91,37 +224,225 @@ public class Server {
                 logCallback.accept("📩 Nouveau client connecté : " + clientInfo);
                 clientCallback.accept(clientInfo);
                 // Exécute le ClientHandler dans un thread séparé
-                threadPool.execute(new ClientHandler(socket, logCallback) {
+                ClientHandler handler = new ClientHandler(socket, logCallback, context) {
                     @Override
                     public void run() {
-                        // Exécution du ClientHandler
-                        super.run();
-                        // Suppression du client de la liste des clients connectés à la fin de la connexion
-                        connectedClients.remove(clientInfo);
-                        logger.info("Client disconnected: {}", clientInfo);
-                        logCallback.accept("🔌 Client déconnecté : " + clientInfo);
-                        // Appel du callback de déconnexion si défini
-                        if (disconnectCallback != null) {
-                            disconnectCallback.accept(clientInfo);
+                        try {
+                            // Exécution du ClientHandler
+                            super.run();
+                        } finally {
+                            sessionEnded(this, clientInfo);
                         }
                     }
-                });
+                };
+                sessions.add(handler);
+                if (!running) {
+                    // Connexion acceptée pendant le début de l'arrêt.
+                    handler.drain();
+                }
+                // La session n'obtient un thread du pool qu'une fois authentifiée.
+                try {
+                    authStage.execute(() -> admit(handler, clientInfo));
+                } catch (RejectedExecutionException e) {
+                    logger.warn("Authentication stage saturated, rejecting {}", clientInfo);
+                    sessions.remove(handler);
+                    connectedClients.remove(clientInfo);
+                    socket.close();
+                }
             }
             serverSocket.close();
         } catch (Exception e) {
-            logger.error("Server error: {}", e.getMessage(), e);
-            logCallback.accept("❌ Server error: " + e.getMessage());
+            // La fermeture du socket d'écoute par `stop` interrompt `accept` : ce n'est pas une erreur.
+            if (running) {
+                logger.error("Server error: {}", e.getMessage(), e);
+                logCallback.accept("❌ Server error: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Authentifie une session sur l'étape d'authentification, puis la confie au pool des sessions.
+     */
+    private void admit(ClientHandler handler, String clientInfo) {
+        if (!handler.authenticate()) {
+            sessionEnded(handler, clientInfo);
+            return;
+        }
+        try {
+            threadPool.execute(handler);
+        } catch (RejectedExecutionException e) {
+            // Serveur en cours d'arrêt : la session est prévenue et fermée depuis ce thread.
+            handler.drain();
+            handler.run();
+        }
+    }
+
+    /**
+     * Retire une session terminée (ou refusée à l'authentification) de la liste des clients connectés.
+     */
+    private void sessionEnded(ClientHandler handler, String clientInfo) {
+        sessions.remove(handler);
+        connectedClients.remove(clientInfo);
+        logger.info("Client disconnected: {}", clientInfo);
+        logCallback.accept("🔌 Client déconnecté : " + clientInfo);
+        disconnectCallback.accept(clientInfo);
+    }
+
+    /**
+     * Ouvre le socket d'écoute. `SO_REUSEADDR` permet de réutiliser le port aussitôt, malgré les connexions
+     * de l'instance précédente encore en cours de fermeture ; si le port est encore écouté (instance
+     * précédente en cours d'arrêt), l'ouverture est retentée pendant quelques secondes.
+     * Le profil TLS de la configuration est appliqué au socket, et donc à toutes les sessions.
+     *
+     * @param context Le contexte TLS du serveur.
+     * @return Le socket d'écoute.
+     * @throws IOException Si le port reste occupé ou ne peut pas être ouvert, ou si le profil TLS est indisponible.
+     */
+    private SSLServerSocket bind(SSLContext context) throws IOException {
+        SSLParameters parameters = config.getTlsProfile().parameters(context);
+        long deadline = System.currentTimeMillis() + BIND_RETRY_MILLIS;
+        while (true) {
+            SSLServerSocket socket = (SSLServerSocket) context.getServerSocketFactory().createServerSocket();
+            try {
+                socket.setSSLParameters(parameters);
+                socket.setReuseAddress(true);
+                socket.bind(new InetSocketAddress(config.getPort()), BACKLOG);
+                return socket;
+            } catch (BindException e) {
+                socket.close();
+                if (!running || System.currentTimeMillis() >= deadline) {
+                    throw e;
+                }
+                logger.debug("Port {} busy, retrying", config.getPort());
+                try {
+                    Thread.sleep(BIND_RETRY_INTERVAL_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
         }
     }
 
     /**
-     * Arrête le serveur.
-     * Arrête l'écoute des connexions et ferme le pool de threads.
+     * Vérifie la configuration sans démarrer le serveur : lecture du keystore, disponibilité du profil TLS
+     * et lecture du fichier d'identifiants.
+     *
+     * @throws IOException              Si un fichier ne peut pas être lu ou si le profil TLS est indisponible.
+     * @throws GeneralSecurityException Si le keystore est invalide ou son mot de passe incorrect.
+     */
+    public void checkConfiguration() throws IOException, GeneralSecurityException {
+        config.getTlsProfile().parameters(createContext());
+        loadCredentialStore();
+    }
+
+    /**
+     * Crée le contexte TLS à partir du keystore de la configuration.
+     *
+     * @return Le contexte TLS du serveur.
+     * @throws IOException              Si le keystore ne peut pas être lu.
+     * @throws GeneralSecurityException Si le keystore est invalide ou son mot de passe incorrect.
+     */
+    private SSLContext createContext() throws IOException, GeneralSecurityException {
+        return SslContexts.server(config.getKeystore(), config.getKeystorePassword());
+    }
+
+    /**
+     * Charge le magasin d'identifiants : le fichier d'identifiants de la configuration s'il existe,
+     * sinon le compte de démonstration en mémoire.
+     *
+     * @return Le magasin d'identifiants.
+     * @throws IOException Si le fichier existe mais ne peut pas être lu.
+     */
+    private CredentialStore loadCredentialStore() throws IOException {
+        Path file = config.getCredentialsFile();
+        if (Files.exists(file)) {
+            logger.info("Loading credentials from {}", file.toAbsolutePath());
+            return new PropertiesCredentialStore(file);
+        }
+        logger.warn("No {} found, using the demo account", file);
+        return InMemoryCredentialStore.withDemoAccount();
+    }
+
+    /**
+     * Arrête le serveur et rend la main une fois les sessions terminées.
+     * Le socket d'écoute est fermé immédiatement ; les clients inactifs sont prévenus et déconnectés,
+     * les requêtes en cours (commandes, transferts) peuvent se terminer jusqu'au délai `drain-timeout-ms`,
+     * au-delà duquel les sessions restantes sont coupées. Les services partagés (journal d'audit...)
+     * sont fermés en dernier.
      */
     public void stop() {
         running = false;
+        SSLServerSocket socket = serverSocket;
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                logger.warn("Cannot close server socket: {}", e.getMessage());
+            }
+        }
         if (threadPool != null) {
-            threadPool.shutdown();
+            drainSessions();
+        }
+        if (batchExecutor != null) {
+            batchExecutor.shutdownNow();
+        }
+        if (fileIndex != null) {
+            try {
+                fileIndex.close();
+            } catch (IOException e) {
+                logger.warn("Cannot stop file index: {}", e.getMessage());
+            }
+        }
+        if (followService != null) {
+            try {
+                followService.close();
+            } catch (IOException e) {
+                logger.warn("Cannot stop file follow service: {}", e.getMessage());
+            }
+        }
+        if (auditJournal != null) {
+            auditJournal.close();
+        }
+        List<CommandUsage> usages = commandAccounting.byPattern();
+        if (!usages.isEmpty()) {
+            logger.info("Most expensive commands: {}", usages.subList(0, Math.min(5, usages.size())));
+        }
+    }
+
+    /**
+     * Termine les sessions : prévenues et fermées dès qu'elles sont inactives, coupées au-delà du délai.
+     */
+    private void drainSessions() {
+        long timeoutMillis = config.getDrainTimeoutMillis();
+        if (!sessions.isEmpty()) {
+            logger.info("Draining {} session(s), up to {} ms", sessions.size(), timeoutMillis);
+            logCallback.accept("⏳ Arrêt : fin des " + sessions.size() + " session(s) en cours...");
+        }
+        for (ClientHandler session : sessions) {
+            session.drain();
+        }
+        // Les sessions en cours d'authentification sont prévenues à son issue, par l'étape d'authentification.
+        authStage.shutdown();
+        threadPool.shutdown();
+        try {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            if (!authStage.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)
+                    || !threadPool.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                logger.warn("Drain timeout reached, closing {} session(s)", sessions.size());
+                for (ClientHandler session : sessions) {
+                    session.forceClose();
+                }
+                authStage.shutdownNow();
+                threadPool.shutdownNow();
+                if (!threadPool.awaitTermination(FORCE_CLOSE_WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+                    logger.warn("{} session thread(s) still running", sessions.size());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            authStage.shutdownNow();
+            threadPool.shutdownNow();
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,382 @@
+package fr.uvsq.server;
+
+import fr.uvsq.core.AtomicFileWriter;
+import fr.uvsq.core.TlsProfile;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * La classe `ServerConfig` regroupe les paramètres du serveur : port, nombre de clients simultanés,
+ * keystore et profil TLS, fichiers et répertoires, synchronisation des fichiers reçus et limites de débit.
+ *
+ * Les paramètres se lisent dans un fichier `.properties` et sur la ligne de commande, avec les mêmes clés :
+ *
+ * <pre>port=5001
+ * max-clients=10
+ * global-limit-kb=2048</pre>
+ *
+ * équivaut à `--port=5001 --max-clients=10 --global-limit-kb=2048`. Un paramètre absent garde sa valeur par défaut.
+ */
+public class ServerConfig {
+    /** Fichier de configuration lu par défaut, s'il existe. */
+    public static final String DEFAULT_FILE = "server.properties";
+    /** Port d'écoute par défaut. */
+    public static final int DEFAULT_PORT = 5001;
+    /** Nombre de clients simultanés par défaut. */
+    public static final int DEFAULT_MAX_CLIENTS = 10;
+    /** Délai par défaut accordé aux requêtes en cours à l'arrêt du serveur. */
+    public static final long DEFAULT_DRAIN_TIMEOUT_MILLIS = 10_000;
+    /** Nombre par défaut de threads exécutant les commandes des lots (BATCH), partagés par toutes les sessions. */
+    public static final int DEFAULT_BATCH_THREADS = 8;
+
+    private int port = DEFAULT_PORT;
+    private int maxClients = DEFAULT_MAX_CLIENTS;
+    private Path keystore = Paths.get("server_keystore.jks");
+    private String keystorePassword = "password";
+    private TlsProfile tlsProfile = TlsProfile.DEFAULT;
+    private Path credentialsFile = Paths.get("credentials.properties");
+    private Path sharedDirectory = Paths.get("server_files");
+    private Path journalDirectory = Paths.get("logs/journal");
+    private AtomicFileWriter.SyncPolicy syncPolicy = AtomicFileWriter.SyncPolicy.DATA;
+    private long globalLimit = BandwidthShaper.UNLIMITED;
+    private long sessionLimit = BandwidthShaper.UNLIMITED;
+    private Set<String> trustedAddresses = Set.of();
+    private long drainTimeoutMillis = DEFAULT_DRAIN_TIMEOUT_MILLIS;
+    private int batchThreads = DEFAULT_BATCH_THREADS;
+
+    /**
+     * Lit un fichier de configuration.
+     *
+     * @param file Le fichier `.properties`.
+     * @return La configuration, avec les valeurs par défaut pour les clés absentes.
+     * @throws IOException              Si le fichier ne peut pas être lu.
+     * @throws IllegalArgumentException Si une valeur est invalide.
+     */
+    public static ServerConfig load(Path file) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        ServerConfig config = new ServerConfig();
+        config.apply(properties);
+        return config;
+    }
+
+    /**
+     * Lit la configuration de la ligne de commande : le fichier désigné par `--config=<fichier>`
+     * (ou `server.properties` s'il existe), puis les paramètres `--<clé>=<valeur>` qui le complètent.
+     *
+     * @param args Les arguments de la ligne de commande.
+     * @return La configuration.
+     * @throws IOException              Si le fichier de configuration ne peut pas être lu.
+     * @throws IllegalArgumentException Si un argument ou une valeur est invalide.
+     */
+    public static ServerConfig fromArguments(String[] args) throws IOException {
+        Properties arguments = new Properties();
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (!arg.startsWith("--") || equals < 0) {
+                throw new IllegalArgumentException("Argument invalide : " + arg + " (attendu : --<clé>=<valeur>)");
+            }
+            arguments.setProperty(arg.substring(2, equals), arg.substring(equals + 1));
+        }
+        String file = (String) arguments.remove("config");
+        ServerConfig config;
+        if (file != null) {
+            config = load(Paths.get(file));
+        } else if (Files.exists(Paths.get(DEFAULT_FILE))) {
+            config = load(Paths.get(DEFAULT_FILE));
+        } else {
+            config = new ServerConfig();
+        }
+        config.apply(arguments);
+        return config;
+    }
+
+    /**
+     * Applique des paramètres à la configuration.
+     *
+     * @param properties Les paramètres, avec les clés du fichier de configuration.
+     * @throws IllegalArgumentException Si une clé est inconnue ou une valeur invalide.
+     */
+    public void apply(Properties properties) {
+        for (String key : properties.stringPropertyNames()) {
+            String value = properties.getProperty(key).trim();
+            switch (key) {
+                case "port" -> setPort(parseInt(key, value));
+                case "max-clients" -> setMaxClients(parseInt(key, value));
+                case "keystore" -> setKeystore(Paths.get(value));
+                case "keystore-password" -> setKeystorePassword(value);
+                case "tls-profile" -> setTlsProfile(TlsProfile.fromName(value));
+                case "credentials" -> setCredentialsFile(Paths.get(value));
+                case "shared-directory" -> setSharedDirectory(Paths.get(value));
+                case "journal-directory" -> setJournalDirectory(Paths.get(value));
+                case "sync-policy" -> setSyncPolicy(parseSyncPolicy(value));
+                case "global-limit-kb" -> setGlobalLimit(parseInt(key, value) * 1024L);
+                case "session-limit-kb" -> setSessionLimit(parseInt(key, value) * 1024L);
+                case "trusted-addresses" -> setTrustedAddresses(parseAddresses(value));
+                case "drain-timeout-ms" -> setDrainTimeoutMillis(parseInt(key, value));
+                case "batch-threads" -> setBatchThreads(parseInt(key, value));
+                default -> throw new IllegalArgumentException("Paramètre inconnu : " + key);
+            }
+        }
+    }
+
+    private static int parseInt(String key, String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Valeur invalide pour " + key + " : " + value);
+        }
+    }
+
+    private static AtomicFileWriter.SyncPolicy parseSyncPolicy(String value) {
+        try {
+            return AtomicFileWriter.SyncPolicy.valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Valeur invalide pour sync-policy : " + value + " (none, data ou full)");
+        }
+    }
+
+    private static Set<String> parseAddresses(String value) {
+        Set<String> addresses = new LinkedHashSet<>();
+        for (String address : value.split(",")) {
+            if (!address.isBlank()) {
+                addresses.add(address.trim());
+            }
+        }
+        return addresses;
+    }
+
+    /**
+     * @return Le port d'écoute.
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * @param port Le port d'écoute, entre 1 et 65535.
+     */
+    public void setPort(int port) {
+        if (port < 1 || port > 65535) {
+            throw new IllegalArgumentException("Port invalide : " + port);
+        }
+        this.port = port;
+    }
+
+    /**
+     * @return Le nombre maximal de clients servis simultanément.
+     */
+    public int getMaxClients() {
+        return maxClients;
+    }
+
+    /**
+     * @param maxClients Le nombre maximal de clients servis simultanément (au moins 1).
+     */
+    public void setMaxClients(int maxClients) {
+        if (maxClients < 1) {
+            throw new IllegalArgumentException("Nombre de clients invalide : " + maxClients);
+        }
+        this.maxClients = maxClients;
+    }
+
+    /**
+     * @return Le keystore contenant la clé et le certificat du serveur.
+     */
+    public Path getKeystore() {
+        return keystore;
+    }
+
+    /**
+     * @param keystore Le keystore contenant la clé et le certificat du serveur.
+     */
+    public void setKeystore(Path keystore) {
+        this.keystore = keystore;
+    }
+
+    /**
+     * @return Le mot de passe du keystore.
+     */
+    public String getKeystorePassword() {
+        return keystorePassword;
+    }
+
+    /**
+     * @param keystorePassword Le mot de passe du keystore.
+     */
+    public void setKeystorePassword(String keystorePassword) {
+        this.keystorePassword = keystorePassword;
+    }
+
+    /**
+     * @return Le fichier d'identifiants ; à défaut, seul le compte de démonstration est disponible.
+     */
+    public Path getCredentialsFile() {
+        return credentialsFile;
+    }
+
+    /**
+     * @param credentialsFile Le fichier d'identifiants.
+     */
+    public void setCredentialsFile(Path credentialsFile) {
+        this.credentialsFile = credentialsFile;
+    }
+
+    /**
+     * @return Le répertoire partagé, servi par UPLOAD/DOWNLOAD et consultable par LIST/STAT.
+     */
+    public Path getSharedDirectory() {
+        return sharedDirectory;
+    }
+
+    /**
+     * @param sharedDirectory Le répertoire partagé.
+     */
+    public void setSharedDirectory(Path sharedDirectory) {
+        this.sharedDirectory = sharedDirectory;
+    }
+
+    /**
+     * @return Le répertoire des segments du journal d'audit.
+     */
+    public Path getJournalDirectory() {
+        return journalDirectory;
+    }
+
+    /**
+     * @param journalDirectory Le répertoire des segments du journal d'audit.
+     */
+    public void setJournalDirectory(Path journalDirectory) {
+        this.journalDirectory = journalDirectory;
+    }
+
+    /**
+     * @return La politique de synchronisation sur disque des fichiers reçus.
+     */
+    public AtomicFileWriter.SyncPolicy getSyncPolicy() {
+        return syncPolicy;
+    }
+
+    /**
+     * @param syncPolicy La politique de synchronisation sur disque des fichiers reçus.
+     */
+    public void setSyncPolicy(AtomicFileWriter.SyncPolicy syncPolicy) {
+        this.syncPolicy = syncPolicy;
+    }
+
+    /**
+     * @return La limite de débit globale en octets par seconde, ou `BandwidthShaper.UNLIMITED`.
+     */
+    public long getGlobalLimit() {
+        return globalLimit;
+    }
+
+    /**
+     * @param globalLimit La limite de débit globale en octets par seconde, ou `BandwidthShaper.UNLIMITED`.
+     */
+    public void setGlobalLimit(long globalLimit) {
+        this.globalLimit = Math.max(BandwidthShaper.UNLIMITED, globalLimit);
+    }
+
+    /**
+     * @return La limite de débit de chaque session en octets par seconde, ou `BandwidthShaper.UNLIMITED`.
+     */
+    public long getSessionLimit() {
+        return sessionLimit;
+    }
+
+    /**
+     * @param sessionLimit La limite de débit de chaque session en octets par seconde, ou `BandwidthShaper.UNLIMITED`.
+     */
+    public void setSessionLimit(long sessionLimit) {
+        this.sessionLimit = Math.max(BandwidthShaper.UNLIMITED, sessionLimit);
+    }
+
+    /**
+     * @return Les adresses IP dispensées de la limitation des tentatives d'authentification (passerelles).
+     */
+    public Set<String> getTrustedAddresses() {
+        return trustedAddresses;
+    }
+
+    /**
+     * Dispense des adresses de la limitation des tentatives d'authentification. À réserver aux passerelles
+     * (`fr.uvsq.gateway.Gateway`), qui ouvrent de nombreuses connexions avec leur compte de service
+     * et limitent elles-mêmes les tentatives de leurs clients.
+     *
+     * @param trustedAddresses Les adresses IP des passerelles.
+     */
+    public void setTrustedAddresses(Set<String> trustedAddresses) {
+        this.trustedAddresses = Set.copyOf(trustedAddresses);
+    }
+
+    /**
+     * @return Le profil TLS du socket d'écoute (versions, suites de chiffrement).
+     */
+    public TlsProfile getTlsProfile() {
+        return tlsProfile;
+    }
+
+    /**
+     * @param tlsProfile Le profil TLS du socket d'écoute ; `TlsProfile.DEFAULT` garde les réglages de la JVM.
+     */
+    public void setTlsProfile(TlsProfile tlsProfile) {
+        this.tlsProfile = tlsProfile;
+    }
+
+    /**
+     * @return Le délai accordé aux requêtes en cours à l'arrêt du serveur, en millisecondes.
+     */
+    public long getDrainTimeoutMillis() {
+        return drainTimeoutMillis;
+    }
+
+    /**
+     * @param drainTimeoutMillis Le délai accordé aux requêtes en cours à l'arrêt du serveur, en millisecondes ;
+     *                           0 ferme les sessions occupées sans attendre.
+     */
+    public void setDrainTimeoutMillis(long drainTimeoutMillis) {
+        if (drainTimeoutMillis < 0) {
+            throw new IllegalArgumentException("Délai invalide : " + drainTimeoutMillis);
+        }
+        this.drainTimeoutMillis = drainTimeoutMillis;
+    }
+
+    /**
+     * @return Le nombre de threads exécutant les commandes des lots, partagés par toutes les sessions.
+     */
+    public int getBatchThreads() {
+        return batchThreads;
+    }
+
+    /**
+     * @param batchThreads Le nombre de threads exécutant les commandes des lots (au moins 1).
+     */
+    public void setBatchThreads(int batchThreads) {
+        if (batchThreads < 1) {
+            throw new IllegalArgumentException("Nombre de threads invalide : " + batchThreads);
+        }
+        this.batchThreads = batchThreads;
+    }
+
+    @Override
+    public String toString() {
+        return "port=" + port + ", max-clients=" + maxClients + ", keystore=" + keystore + ", tls-profile=" + tlsProfile
+                + ", credentials=" + credentialsFile + ", shared-directory=" + sharedDirectory
+                + ", journal-directory=" + journalDirectory + ", sync-policy=" + syncPolicy.name().toLowerCase(Locale.ROOT)
+                + ", global-limit-kb=" + globalLimit / 1024 + ", session-limit-kb=" + sessionLimit / 1024
+                + ", trusted-addresses=" + String.join(",", trustedAddresses) + ", drain-timeout-ms=" + drainTimeoutMillis
+                + ", batch-threads=" + batchThreads;
+    }
+}
@@ -0,0 +1,105 @@
+package fr.uvsq.server;
+
+import fr.uvsq.core.AtomicFileWriter;
+import fr.uvsq.core.AuthManager;
+import fr.uvsq.server.journal.AuditJournal;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * La classe `ServerContext` regroupe les services partagés par toutes les sessions d'un même serveur
+ * (authentification, index des fichiers...). Elle est créée par le `Server` au démarrage et
+ * transmise à chaque `ClientHandler`.
+ */
+public class ServerContext {
+    private final AuthManager authManager;
+    private final FileIndex fileIndex;
+    private final FollowService followService;
+    private final AtomicFileWriter.SyncPolicy syncPolicy;
+    private final BandwidthShaper bandwidthShaper;
+    private final AuditJournal auditJournal;
+    private final CommandAccounting commandAccounting;
+    private final ExecutorService batchExecutor;
+
+    /**
+     * Constructeur de `ServerContext`.
+     *
+     * @param authManager   Le gestionnaire d'authentification.
+     * @param fileIndex     L'index du répertoire partagé.
+     * @param followService Le service de suivi des fichiers (FOLLOW).
+     * @param syncPolicy      La politique de synchronisation sur disque des fichiers reçus.
+     * @param bandwidthShaper La limitation du débit des sessions.
+     * @param auditJournal    Le journal d'audit des actions des clients.
+     * @param commandAccounting Le cumul des ressources consommées par les commandes.
+     * @param batchExecutor   Les threads exécutant les commandes des lots (BATCH).
+     */
+    public ServerContext(AuthManager authManager, FileIndex fileIndex, FollowService followService,
+                         AtomicFileWriter.SyncPolicy syncPolicy, BandwidthShaper bandwidthShaper,
+                         AuditJournal auditJournal, CommandAccounting commandAccounting,
+                         ExecutorService batchExecutor) {
+        this.authManager = authManager;
+        this.fileIndex = fileIndex;
+        this.followService = followService;
+        this.syncPolicy = syncPolicy;
+        this.bandwidthShaper = bandwidthShaper;
+        this.auditJournal = auditJournal;
+        this.commandAccounting = commandAccounting;
+        this.batchExecutor = batchExecutor;
+    }
+
+    /**
+     * @return Le gestionnaire d'authentification.
+     */
+    public AuthManager getAuthManager() {
+        return authManager;
+    }
+
+    /**
+     * @return L'index du répertoire partagé (`server_files/`).
+     */
+    public FileIndex getFileIndex() {
+        return fileIndex;
+    }
+
+    /**
+     * @return Le service de suivi des fichiers, partagé par toutes les sessions.
+     */
+    public FollowService getFollowService() {
+        return followService;
+    }
+
+    /**
+     * @return La politique de synchronisation sur disque des fichiers reçus (UPLOAD, UPLOAD_DIR).
+     */
+    public AtomicFileWriter.SyncPolicy getSyncPolicy() {
+        return syncPolicy;
+    }
+
+    /**
+     * @return La limitation du débit des sessions, modifiable pendant l'exécution du serveur.
+     */
+    public BandwidthShaper getBandwidthShaper() {
+        return bandwidthShaper;
+    }
+
+    /**
+     * @return Le journal d'audit, alimenté par toutes les sessions.
+     */
+    public AuditJournal getAuditJournal() {
+        return auditJournal;
+    }
+
+    /**
+     * @return Le cumul des ressources consommées par les commandes, alimenté par toutes les sessions.
+     */
+    public CommandAccounting getCommandAccounting() {
+        return commandAccounting;
+    }
+
+    /**
+     * @return Les threads exécutant les commandes des lots (BATCH), en nombre borné et partagés par toutes les sessions.
+     */
+    public ExecutorService getBatchExecutor() {
+        return batchExecutor;
+    }
+}
@@ -0,0 +1,85 @@
+package fr.uvsq.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * La classe `ServerDaemon` démarre le serveur sans interface graphique, par exemple comme service système.
+ * Elle ne charge aucune classe JavaFX : le démarrage est rapide et l'empreinte mémoire réduite.
+ *
+ * Usage : `java fr.uvsq.server.ServerDaemon [--config=<fichier>] [--<clé>=<valeur>...] [--check]`
+ * (voir `ServerConfig` pour les clés). Avec `--check`, la configuration, le keystore et le fichier
+ * d'identifiants sont vérifiés puis le programme s'arrête sans écouter ; c'est aussi l'exécution
+ * utilisée pour générer l'archive de partage de classes (profil Maven `daemon`).
+ *
+ * Les événements sont journalisés par SLF4J. Le serveur est arrêté proprement à la réception de SIGTERM
+ * ou SIGINT : le port est libéré aussitôt, les requêtes en cours ont jusqu'à `drain-timeout-ms` pour se
+ * terminer, puis le journal d'audit est écrit sur disque. Une nouvelle version peut donc être démarrée
+ * dès l'envoi du signal, pendant que l'ancienne termine ses requêtes.
+ */
+public class ServerDaemon {
+    private static final Logger logger = LoggerFactory.getLogger(ServerDaemon.class);
+
+    /**
+     * Point d'entrée du serveur sans interface graphique.
+     *
+     * @param args La configuration, sous la forme `--<clé>=<valeur>`, et éventuellement `--check`.
+     */
+    public static void main(String[] args) {
+        boolean check = false;
+        int count = 0;
+        String[] settings = new String[args.length];
+        for (String arg : args) {
+            if (arg.equals("--check")) {
+                check = true;
+            } else if (arg.equals("--help")) {
+                System.out.println("Usage : ServerDaemon [--config=<fichier>] [--<clé>=<valeur>...] [--check]");
+                System.out.println("Clés : port, max-clients, keystore, keystore-password,");
+                System.out.println("       tls-profile (default|max-throughput|chacha20|compatibility), credentials, shared-directory,");
+                System.out.println("       journal-directory, sync-policy (none|data|full), global-limit-kb, session-limit-kb,");
+                System.out.println("       trusted-addresses, drain-timeout-ms");
+                return;
+            } else {
+                settings[count++] = arg;
+            }
+        }
+
+        ServerConfig config;
+        try {
+            config = ServerConfig.fromArguments(Arrays.copyOf(settings, count));
+        } catch (Exception e) {
+            System.err.println("Configuration invalide : " + e.getMessage());
+            System.exit(2);
+            return;
+        }
+        logger.info("Server configuration: {}", config);
+
+        Server server = new Server(config);
+        if (check) {
+            try {
+                server.checkConfiguration();
+                logger.info("Configuration check passed");
+            } catch (Exception e) {
+                logger.error("Configuration check failed: {}", e.getMessage());
+                System.exit(1);
+            }
+            return;
+        }
+
+        AtomicBoolean stopping = new AtomicBoolean(false);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            stopping.set(true);
+            logger.info("Stopping server");
+            server.stop();
+            logger.info("Server stopped");
+        }, "server-shutdown"));
+        server.start();
+        // Hors arrêt demandé, `start` ne rend la main qu'en cas d'erreur (port occupé, keystore invalide...).
+        if (!stopping.get()) {
+            System.exit(1);
+        }
+    }
+}
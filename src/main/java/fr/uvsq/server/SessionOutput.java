@@ -0,0 +1,192 @@
+package fr.uvsq.server;
+
+import fr.uvsq.core.BufferPool;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * La classe `SessionOutput` est le tampon d'envoi borné d'une session client.
+ *
+ * Contrairement au `PrintWriter` auto-flushé utilisé auparavant, les réponses sont accumulées dans
+ * un tampon de taille fixe qui n'est vidé vers le socket que lorsqu'il est plein ou en fin de réponse.
+ * Lorsque le client lit lentement, la fenêtre TCP se remplit et l'écriture sur le socket bloque :
+ * le producteur (processus, lecture de fichier) est alors suspendu au lieu d'accumuler les données
+ * en mémoire. La mémoire consommée par session est ainsi bornée par la taille du tampon.
+ *
+ * Les méthodes sont synchronisées afin que plusieurs producteurs d'une même session
+ * puissent écrire sans entrelacer leurs lignes. En tant qu'`OutputStream`, le tampon peut aussi
+ * recevoir un flux binaire (archive de répertoire...).
+ *
+ * Le tampon est emprunté au `BufferPool` partagé et les lignes y sont encodées directement en UTF-8,
+ * sans chaîne ni tableau intermédiaires. Il est rendu par `close`, en fin de session.
+ */
+public class SessionOutput extends OutputStream {
+    /** Taille par défaut du tampon d'envoi d'une session. */
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final OutputStream out;
+    private final BufferPool.Buffer pooled;
+    private byte[] buffer;
+    // Encodage des lignes sans objet intermédiaire : caractères copiés dans `chars`, octets écrits dans `buffer`.
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private char[] chars = new char[256];
+    private CharBuffer pendingChars = CharBuffer.wrap(chars);
+    private final ByteBuffer free;
+    private int count = 0;
+    private long bytesWritten = 0;
+
+    /**
+     * Constructeur de `SessionOutput` avec la taille de tampon par défaut.
+     *
+     * @param out Le flux de sortie du socket client.
+     */
+    public SessionOutput(OutputStream out) {
+        this(out, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Constructeur de `SessionOutput`.
+     *
+     * @param out        Le flux de sortie du socket client.
+     * @param bufferSize La taille minimale, en octets, du tampon d'envoi.
+     */
+    public SessionOutput(OutputStream out, int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Taille de tampon invalide : " + bufferSize);
+        }
+        this.out = out;
+        this.pooled = BufferPool.shared().acquire(bufferSize);
+        this.buffer = pooled.array();
+        this.free = ByteBuffer.wrap(buffer);
+    }
+
+    /**
+     * Écrit une ligne de texte (encodée en UTF-8) suivie d'un saut de ligne.
+     *
+     * @param line La ligne à écrire.
+     * @throws IOException Si l'écriture sur le socket échoue.
+     */
+    public synchronized void writeLine(String line) throws IOException {
+        ensureOpen();
+        int length = line.length();
+        if (chars.length < length) {
+            chars = new char[Math.max(length, chars.length * 2)];
+            pendingChars = CharBuffer.wrap(chars);
+        }
+        line.getChars(0, length, chars, 0);
+        pendingChars.clear().limit(length);
+        free.clear().position(count);
+        encoder.reset();
+        // L'encodeur recopie les tronçons ASCII d'un bloc ; le tampon est vidé chaque fois qu'il est plein.
+        while (encoder.encode(pendingChars, free, true).isOverflow()) {
+            bytesWritten += free.position() - count;
+            count = free.position();
+            drain();
+            free.clear();
+        }
+        if (!free.hasRemaining()) {
+            bytesWritten += free.position() - count;
+            count = free.position();
+            drain();
+            free.clear();
+        }
+        free.put((byte) '\n');
+        bytesWritten += free.position() - count;
+        count = free.position();
+    }
+
+    /**
+     * Écrit des octets bruts (contenu de fichier...).
+     * Les blocs plus grands que le tampon sont envoyés directement sans copie.
+     *
+     * @param data   Les octets à écrire.
+     * @param offset La position du premier octet.
+     * @param length Le nombre d'octets à écrire.
+     * @throws IOException Si l'écriture sur le socket échoue.
+     */
+    @Override
+    public synchronized void write(byte[] data, int offset, int length) throws IOException {
+        ensureOpen();
+        if (length > buffer.length - count) {
+            drain();
+        }
+        if (length >= buffer.length) {
+            out.write(data, offset, length);
+        } else {
+            System.arraycopy(data, offset, buffer, count, length);
+            count += length;
+        }
+        bytesWritten += length;
+    }
+
+    /**
+     * Écrit un octet brut.
+     *
+     * @param b L'octet à écrire.
+     * @throws IOException Si l'écriture sur le socket échoue.
+     */
+    @Override
+    public synchronized void write(int b) throws IOException {
+        ensureOpen();
+        if (count == buffer.length) {
+            drain();
+        }
+        buffer[count++] = (byte) b;
+        bytesWritten++;
+    }
+
+    /**
+     * Vide le tampon vers le socket. Appelée en fin de réponse.
+     *
+     * @throws IOException Si l'écriture sur le socket échoue.
+     */
+    @Override
+    public synchronized void flush() throws IOException {
+        ensureOpen();
+        drain();
+        out.flush();
+    }
+
+    /**
+     * @return Le nombre total d'octets écrits depuis la création de la session.
+     */
+    public synchronized long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Rend le tampon d'envoi au `BufferPool`, en fin de session. Les octets non vidés sont abandonnés
+     * et le flux du socket, qui appartient à la session, n'est pas fermé. Les écritures suivantes
+     * (suivi de fichier encore actif...) échouent.
+     */
+    @Override
+    public synchronized void close() {
+        if (buffer != null) {
+            buffer = null;
+            count = 0;
+            pooled.close();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (buffer == null) {
+            throw new IOException("Session fermée");
+        }
+    }
+
+    private void drain() throws IOException {
+        if (count > 0) {
+            // Bloque tant que le client n'a pas libéré de place dans sa fenêtre de réception.
+            out.write(buffer, 0, count);
+            count = 0;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package fr.uvsq.server.gui;
 
+import fr.uvsq.server.BandwidthShaper;
 import fr.uvsq.server.Server;
 import javafx.application.Application;
 import javafx.application.Platform;
@@ -10,7 +11,9 @@ import javafx.scene.Scene;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.control.ListView;
+import javafx.scene.control.Spinner;
 import javafx.scene.control.TextArea;
+import javafx.scene.control.TextField;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
@@ -21,6 +24,7 @@ import org.slf4j.LoggerFactory;
 /**
  * La classe `ServerGUI` représente l'interface graphique du serveur pour le système de contrôle à distance.
  * Elle permet de démarrer et d'arrêter le serveur, d'afficher les logs du serveur et de visualiser la liste des clients connectés.
+ * Les limites de débit (globale et par session) et la priorité de chaque client sont modifiables pendant l'exécution.
  */
 public class ServerGUI extends Application {
     private TextArea logArea;
@@ -28,6 +32,8 @@ public class ServerGUI extends Application {
     private ObservableList<String> clients = FXCollections.observableArrayList();
     private Server server;
     private boolean isRunning = false;
+    // Conservé d'un démarrage à l'autre du serveur, avec les limites choisies.
+    private final BandwidthShaper bandwidthShaper = new BandwidthShaper();
     private static final Logger logger = LoggerFactory.getLogger(ServerGUI.class);
 
     /**
@@ -58,7 +64,7 @@ public class ServerGUI extends Application {
         clientBox.setMinWidth(250);
         clientList = new ListView<>(clients);
         clientList.setPlaceholder(new Label("No clients connected"));
-        clientBox.getChildren().addAll(new Label("Connected Clients"), clientList);
+        clientBox.getChildren().addAll(new Label("Connected Clients"), clientList, createBandwidthBox());
 
         // Création de la zone d'affichage des logs
         VBox logBox = new VBox(10);
@@ -74,6 +80,56 @@ public class ServerGUI extends Application {
         primaryStage.show();
     }
 
+    /**
+     * Crée les contrôles de limitation du débit : limites globale et par session (en Ko/s, 0 pour aucune limite),
+     * et priorité du client sélectionné dans le partage de la limite globale.
+     *
+     * @return La zone de contrôles.
+     */
+    private VBox createBandwidthBox() {
+        TextField globalField = new TextField("0");
+        globalField.setPrefColumnCount(6);
+        TextField sessionField = new TextField("0");
+        sessionField.setPrefColumnCount(6);
+        Button applyBtn = new Button("Apply");
+        applyBtn.setOnAction(e -> {
+            try {
+                long global = Long.parseLong(globalField.getText().trim());
+                long session = Long.parseLong(sessionField.getText().trim());
+                bandwidthShaper.setGlobalLimit(global * 1024);
+                bandwidthShaper.setSessionLimit(session * 1024);
+                logArea.appendText("Bandwidth limits: global " + describeLimit(global) + ", per session " + describeLimit(session) + "\n");
+            } catch (NumberFormatException ex) {
+                logArea.appendText("Invalid bandwidth limit\n");
+            }
+        });
+
+        Spinner<Integer> weightSpinner = new Spinner<>(1, BandwidthShaper.MAX_WEIGHT, BandwidthShaper.DEFAULT_WEIGHT);
+        weightSpinner.setPrefWidth(70);
+        clientList.getSelectionModel().selectedItemProperty().addListener((obs, old, client) -> {
+            if (client != null) {
+                weightSpinner.getValueFactory().setValue(bandwidthShaper.getWeight(client));
+            }
+        });
+        Button weightBtn = new Button("Set Priority");
+        weightBtn.setOnAction(e -> {
+            String client = clientList.getSelectionModel().getSelectedItem();
+            if (client != null && bandwidthShaper.setWeight(client, weightSpinner.getValue())) {
+                logArea.appendText("Priority of " + client + ": " + weightSpinner.getValue() + "\n");
+            }
+        });
+
+        VBox bandwidthBox = new VBox(5);
+        bandwidthBox.getChildren().addAll(new Label("Bandwidth (KB/s, 0 = unlimited)"),
+                new HBox(5, new Label("Global"), globalField, new Label("Session"), sessionField),
+                applyBtn, new HBox(5, weightSpinner, weightBtn));
+        return bandwidthBox;
+    }
+
+    private static String describeLimit(long kilobytesPerSecond) {
+        return kilobytesPerSecond <= 0 ? "unlimited" : kilobytesPerSecond + " KB/s";
+    }
+
     /**
      * Gère l'action de démarrage/arrêt du serveur.
      *
@@ -84,6 +140,7 @@ public class ServerGUI extends Application {
             // Démarrage du serveur dans un thread séparé
             new Thread(() -> {
                 server = new Server();
+                server.setBandwidthShaper(bandwidthShaper);
                 // Configuration du callback pour l'affichage des logs
                 server.setLogCallback(message ->
                         Platform.runLater(() -> logArea.appendText(message + "\n"))
@@ -107,15 +164,25 @@ public class ServerGUI extends Application {
             btn.setText("Stop Server");
             logArea.appendText("Server started on port 5001\n");
         } else {
-            // Arrêt du serveur
+            // Arrêt du serveur en arrière-plan : les requêtes en cours peuvent se terminer avant la fermeture
+            btn.setText("Start Server");
             if (server != null) {
-                server.stop();
-                // Mise à jour de la liste des clients connectés
-                clients.clear();
-                clients.addAll(server.getConnectedClients());
+                Server stopping = server;
+                btn.setDisable(true);
+                logArea.appendText("Stopping server...\n");
+                new Thread(() -> {
+                    stopping.stop();
+                    Platform.runLater(() -> {
+                        // Mise à jour de la liste des clients connectés
+                        clients.clear();
+                        clients.addAll(stopping.getConnectedClients());
+                        btn.setDisable(false);
+                        logArea.appendText("Server stopped\n");
+                    });
+                }, "server-stop").start();
+            } else {
+                logArea.appendText("Server stopped\n");
             }
-            btn.setText("Start Server");
-            logArea.appendText("Server stopped\n");
         }
         isRunning = !isRunning;
     }
@@ -0,0 +1,411 @@
+package fr.uvsq.server.journal;
+
+import fr.uvsq.core.DaemonThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * La classe `AuditJournal` est le journal d'audit structuré du serveur : chaque action d'un client
+ * (authentification, commande, transfert...) y est consignée sous la forme d'une entrée `JournalRecord`
+ * de taille fixe, interrogeable par intervalle de dates, par session ou par utilisateur.
+ *
+ * Les entrées sont ajoutées, sans jamais être modifiées, à des segments projetés en mémoire
+ * (`journal-<ordinal>.seg`, `DEFAULT_SEGMENT_RECORDS` entrées chacun). `record` ne fait que déposer
+ * l'entrée dans une file bornée : l'écriture est faite par un thread dédié, et une session n'attend
+ * jamais le disque. Si la file est pleine, l'entrée est abandonnée et comptée (`getDroppedCount`).
+ * Les segments sont écrits sur disque au plus tard une seconde après la dernière écriture.
+ *
+ * Les index sont tenus en mémoire et reconstruits au démarrage en relisant les segments :
+ * un index temporel par blocs dans chaque segment et, pour chaque session et chaque utilisateur,
+ * la liste des ordinaux de ses entrées.
+ *
+ * `close` ferme les segments et libère leur projection ; les requêtes suivantes ne trouvent plus rien.
+ */
+public class AuditJournal implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(AuditJournal.class);
+    /** Nombre d'entrées d'un segment (8 Mo). */
+    public static final int DEFAULT_SEGMENT_RECORDS = 16 * 1024;
+    // Nombre maximal d'entrées en attente d'écriture.
+    private static final int MAX_PENDING_RECORDS = 10_000;
+    private static final long SYNC_INTERVAL_MILLIS = 1000;
+
+    private final Path directory;
+    private final int segmentRecords;
+    private final BlockingQueue<JournalRecord> pending = new ArrayBlockingQueue<>(MAX_PENDING_RECORDS);
+    private final List<JournalSegment> segments = new CopyOnWriteArrayList<>();
+    // Index des ordinaux par session et par utilisateur, protégés par leur propre verrou.
+    private final Map<String, OrdinalList> sessionIndex = new HashMap<>();
+    private final Map<String, OrdinalList> userIndex = new HashMap<>();
+    private final CountDownLatch ready = new CountDownLatch(1);
+    private final AtomicLong dropped = new AtomicLong();
+    // Les requêtes lisent les segments sous le verrou partagé ; `close` ne les ferme que sous le verrou exclusif.
+    private final ReadWriteLock segmentsLock = new ReentrantReadWriteLock();
+    private boolean closed = false;
+    private volatile boolean running = false;
+    private Thread writer;
+
+    /**
+     * Constructeur de `AuditJournal` avec la taille de segment par défaut.
+     *
+     * @param directory Le répertoire des segments.
+     */
+    public AuditJournal(Path directory) {
+        this(directory, DEFAULT_SEGMENT_RECORDS);
+    }
+
+    /**
+     * Constructeur de `AuditJournal`.
+     *
+     * @param directory      Le répertoire des segments.
+     * @param segmentRecords Le nombre d'entrées d'un nouveau segment.
+     */
+    public AuditJournal(Path directory, int segmentRecords) {
+        if (segmentRecords <= 0) {
+            throw new IllegalArgumentException("Taille de segment invalide : " + segmentRecords);
+        }
+        this.directory = directory.toAbsolutePath().normalize();
+        this.segmentRecords = segmentRecords;
+    }
+
+    /**
+     * Crée le répertoire si besoin et démarre le thread d'écriture. Les segments existants sont
+     * relus en arrière-plan ; les requêtes attendent la fin de cette relecture.
+     *
+     * @throws IOException Si le répertoire ne peut pas être créé.
+     */
+    public void start() throws IOException {
+        Files.createDirectories(directory);
+        running = true;
+        writer = new DaemonThreadFactory("audit-journal").newThread(() -> {
+            load();
+            ready.countDown();
+            writeLoop();
+        });
+        writer.start();
+    }
+
+    /**
+     * Consigne une entrée, sans attendre son écriture.
+     *
+     * @param record L'entrée à consigner.
+     */
+    public void record(JournalRecord record) {
+        if (!running || !pending.offer(record)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Recherche les entrées d'un intervalle de dates.
+     *
+     * @param from  La date minimale incluse, en millisecondes depuis l'époque.
+     * @param to    La date maximale exclue.
+     * @param limit Le nombre maximal d'entrées retournées.
+     * @return Les entrées trouvées, dans l'ordre d'écriture.
+     */
+    public List<JournalRecord> findBetween(long from, long to, int limit) {
+        awaitReady();
+        List<JournalRecord> records = new ArrayList<>();
+        segmentsLock.readLock().lock();
+        try {
+            for (JournalSegment segment : segments) {
+                if (records.size() >= limit) {
+                    break;
+                }
+                segment.scan(from, to, index -> {
+                    if (records.size() < limit) {
+                        records.add(segment.read(index));
+                    }
+                });
+            }
+        } finally {
+            segmentsLock.readLock().unlock();
+        }
+        return records;
+    }
+
+    /**
+     * Recherche les entrées d'une session dans un intervalle de dates.
+     *
+     * @param session L'identifiant de la session (adresse et port du client).
+     * @param from    La date minimale incluse, en millisecondes depuis l'époque.
+     * @param to      La date maximale exclue.
+     * @param limit   Le nombre maximal d'entrées retournées.
+     * @return Les entrées trouvées, dans l'ordre d'écriture.
+     */
+    public List<JournalRecord> findBySession(String session, long from, long to, int limit) {
+        return find(sessionIndex, session, from, to, limit);
+    }
+
+    /**
+     * Recherche les entrées d'un utilisateur, toutes sessions confondues, dans un intervalle de dates.
+     *
+     * @param user  Le login de l'utilisateur.
+     * @param from  La date minimale incluse, en millisecondes depuis l'époque.
+     * @param to    La date maximale exclue.
+     * @param limit Le nombre maximal d'entrées retournées.
+     * @return Les entrées trouvées, dans l'ordre d'écriture.
+     */
+    public List<JournalRecord> findByUser(String user, long from, long to, int limit) {
+        return find(userIndex, user, from, to, limit);
+    }
+
+    /**
+     * @return Le nombre d'entrées écrites dans le journal.
+     */
+    public long getRecordCount() {
+        awaitReady();
+        return nextOrdinal();
+    }
+
+    /**
+     * @return Le nombre d'entrées abandonnées (file d'attente pleine ou erreur d'écriture).
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Arrête le thread d'écriture après avoir écrit les entrées en attente, puis ferme les segments.
+     */
+    @Override
+    public void close() {
+        running = false;
+        if (writer != null) {
+            try {
+                writer.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (writer.isAlive()) {
+                // Fermer les segments sous le thread d'écriture le ferait écrire dans une projection libérée.
+                logger.warn("Audit journal writer still running, segments left open");
+                return;
+            }
+        }
+        segmentsLock.writeLock().lock();
+        try {
+            closed = true;
+            for (JournalSegment segment : segments) {
+                try {
+                    segment.close();
+                } catch (IOException e) {
+                    logger.warn("Cannot close journal segment {}: {}", segment.getFile(), e.getMessage());
+                }
+            }
+            segments.clear();
+        } finally {
+            segmentsLock.writeLock().unlock();
+        }
+    }
+
+    private List<JournalRecord> find(Map<String, OrdinalList> index, String key, long from, long to, int limit) {
+        awaitReady();
+        long[] ordinals;
+        synchronized (index) {
+            OrdinalList list = index.get(key);
+            ordinals = list == null ? new long[0] : list.toArray();
+        }
+        List<JournalRecord> records = new ArrayList<>();
+        segmentsLock.readLock().lock();
+        try {
+            if (closed) {
+                return records;
+            }
+            List<JournalSegment> snapshot = new ArrayList<>(segments);
+            for (long ordinal : ordinals) {
+                if (records.size() >= limit) {
+                    break;
+                }
+                JournalSegment segment = segmentOf(snapshot, ordinal);
+                if (segment == null) {
+                    continue;
+                }
+                int position = (int) (ordinal - segment.getFirstOrdinal());
+                long timestamp = segment.getTimestamp(position);
+                if (timestamp >= from && timestamp < to) {
+                    records.add(segment.read(position));
+                }
+            }
+        } finally {
+            segmentsLock.readLock().unlock();
+        }
+        return records;
+    }
+
+    /**
+     * Retrouve le segment d'un ordinal par recherche dichotomique sur les premiers ordinaux.
+     * Les ordinaux des segments ne se suivent pas forcément (segment supprimé, ou illisible au démarrage).
+     *
+     * @return Le segment contenant l'ordinal, ou `null` s'il tombe dans un trou.
+     */
+    private static JournalSegment segmentOf(List<JournalSegment> segments, long ordinal) {
+        int low = 0;
+        int high = segments.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            JournalSegment segment = segments.get(middle);
+            if (ordinal < segment.getFirstOrdinal()) {
+                high = middle - 1;
+            } else if (ordinal >= segment.getFirstOrdinal() + segment.getCount()) {
+                low = middle + 1;
+            } else {
+                return segment;
+            }
+        }
+        return null;
+    }
+
+    private void awaitReady() {
+        try {
+            ready.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Ouvre les segments existants et reconstruit les index.
+     */
+    private void load() {
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(directory)) {
+            files = stream.filter(JournalSegment::isSegment).sorted().collect(Collectors.toList());
+        } catch (IOException e) {
+            logger.error("Cannot list journal directory {}: {}", directory, e.getMessage(), e);
+            return;
+        }
+        for (Path file : files) {
+            try {
+                JournalSegment segment = JournalSegment.open(file);
+                for (int position = 0; position < segment.getCount(); position++) {
+                    long ordinal = segment.getFirstOrdinal() + position;
+                    index(sessionIndex, segment.getSession(position), ordinal);
+                    index(userIndex, segment.getUser(position), ordinal);
+                }
+                segments.add(segment);
+            } catch (IOException | RuntimeException e) {
+                logger.error("Cannot open journal segment {}: {}", file, e.getMessage(), e);
+            }
+        }
+        logger.info("Audit journal opened with {} records in {} segments", nextOrdinal(), segments.size());
+    }
+
+    /**
+     * @return L'ordinal de la prochaine entrée, c'est-à-dire le nombre d'entrées écrites.
+     */
+    private long nextOrdinal() {
+        if (segments.isEmpty()) {
+            return 0;
+        }
+        JournalSegment last = segments.get(segments.size() - 1);
+        return last.getFirstOrdinal() + last.getCount();
+    }
+
+    private void writeLoop() {
+        long lastSync = System.currentTimeMillis();
+        boolean dirty = false;
+        List<JournalRecord> batch = new ArrayList<>();
+        while (running || !pending.isEmpty()) {
+            try {
+                JournalRecord first = pending.poll(200, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    pending.drainTo(batch);
+                    for (JournalRecord record : batch) {
+                        dirty |= append(record);
+                    }
+                    batch.clear();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            long now = System.currentTimeMillis();
+            if (dirty && (now - lastSync >= SYNC_INTERVAL_MILLIS || !running)) {
+                segments.get(segments.size() - 1).force();
+                lastSync = now;
+                dirty = false;
+            }
+        }
+        if (dirty) {
+            segments.get(segments.size() - 1).force();
+        }
+    }
+
+    /**
+     * Écrit une entrée dans le dernier segment, en créant un nouveau segment si besoin.
+     *
+     * @return true si l'entrée a été écrite.
+     */
+    private boolean append(JournalRecord record) {
+        JournalSegment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (segment == null || segment.isFull()) {
+            try {
+                long firstOrdinal = nextOrdinal();
+                if (segment != null) {
+                    segment.force();
+                }
+                segment = JournalSegment.create(directory, firstOrdinal, segmentRecords);
+                segments.add(segment);
+            } catch (IOException e) {
+                logger.error("Cannot create journal segment in {}: {}", directory, e.getMessage());
+                dropped.incrementAndGet();
+                return false;
+            }
+        }
+        long ordinal = segment.getFirstOrdinal() + segment.getCount();
+        segment.append(record);
+        index(sessionIndex, record.getSession(), ordinal);
+        index(userIndex, record.getUser(), ordinal);
+        return true;
+    }
+
+    private static void index(Map<String, OrdinalList> index, String key, long ordinal) {
+        if (key.isEmpty()) {
+            return;
+        }
+        synchronized (index) {
+            index.computeIfAbsent(key, k -> new OrdinalList()).add(ordinal);
+        }
+    }
+
+    /**
+     * Liste extensible d'ordinaux, sans objet par élément.
+     */
+    private static final class OrdinalList {
+        private long[] values = new long[8];
+        private int size = 0;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package fr.uvsq.server.journal;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+/**
+ * La classe `JournalRecord` représente une entrée du journal d'audit : une action d'un client
+ * (authentification, commande, transfert...) avec son résultat, sa durée et le volume transféré.
+ *
+ * Chaque entrée occupe un emplacement de taille fixe (`SIZE` octets) dans un segment du journal :
+ * - 0 : date de début (millisecondes depuis l'époque), écrite en dernier ; 0 pour un emplacement libre ;
+ * - 8 : durée en millisecondes ;
+ * - 16 : nombre d'octets transférés ;
+ * - 24 : statut (code de sortie d'une commande, 0 ou 1 pour les autres actions) ;
+ * - 28 : type d'action (`Kind`), puis un octet d'indicateurs ;
+ * - 30 : longueurs de la session et de l'utilisateur, puis la session (64 octets) et l'utilisateur (32 octets) ;
+ * - 128 : longueur puis détail (commande, nom de fichier...), tronqué au-delà de `MAX_DETAIL_BYTES` octets.
+ * Les chaînes sont encodées en UTF-8.
+ */
+public class JournalRecord {
+    /** Taille d'une entrée dans un segment. */
+    public static final int SIZE = 512;
+    /** Longueur maximale, en octets UTF-8, de l'identifiant de session. */
+    public static final int MAX_SESSION_BYTES = 64;
+    /** Longueur maximale, en octets UTF-8, du nom d'utilisateur. */
+    public static final int MAX_USER_BYTES = 32;
+    private static final int TIMESTAMP_OFFSET = 0;
+    private static final int DURATION_OFFSET = 8;
+    private static final int BYTES_OFFSET = 16;
+    private static final int STATUS_OFFSET = 24;
+    private static final int KIND_OFFSET = 28;
+    private static final int FLAGS_OFFSET = 29;
+    private static final int SESSION_LENGTH_OFFSET = 30;
+    private static final int USER_LENGTH_OFFSET = 31;
+    private static final int SESSION_OFFSET = 32;
+    private static final int USER_OFFSET = SESSION_OFFSET + MAX_SESSION_BYTES;
+    private static final int DETAIL_LENGTH_OFFSET = USER_OFFSET + MAX_USER_BYTES;
+    private static final int DETAIL_OFFSET = DETAIL_LENGTH_OFFSET + 2;
+    /** Longueur maximale, en octets UTF-8, du détail. */
+    public static final int MAX_DETAIL_BYTES = SIZE - DETAIL_OFFSET;
+    private static final byte TRUNCATED = 1;
+
+    /**
+     * Type d'action journalisée.
+     */
+    public enum Kind {
+        AUTH, COMMAND, UPLOAD, DOWNLOAD, UPLOAD_DIR, DOWNLOAD_DIR, FOLLOW, WATCH
+    }
+
+    private final long timestamp;
+    private final String session;
+    private final String user;
+    private final Kind kind;
+    private final String detail;
+    private final int status;
+    private final long durationMillis;
+    private final long bytes;
+    private final boolean truncated;
+
+    /**
+     * Constructeur de `JournalRecord`.
+     *
+     * @param timestamp      La date de début de l'action, en millisecondes depuis l'époque.
+     * @param session        L'identifiant de la session (adresse et port du client).
+     * @param user           Le login du client, ou `null` avant l'authentification.
+     * @param kind           Le type d'action.
+     * @param detail         La commande, le nom du fichier ou du répertoire...
+     * @param status         Le code de sortie d'une commande, 0 (succès) ou 1 (échec) pour les autres actions.
+     * @param durationMillis La durée de l'action en millisecondes.
+     * @param bytes          Le nombre d'octets transférés.
+     */
+    public JournalRecord(long timestamp, String session, String user, Kind kind, String detail,
+                         int status, long durationMillis, long bytes) {
+        this(timestamp, session, user, kind, detail, status, durationMillis, bytes, false);
+    }
+
+    private JournalRecord(long timestamp, String session, String user, Kind kind, String detail,
+                          int status, long durationMillis, long bytes, boolean truncated) {
+        this.timestamp = Math.max(1, timestamp);
+        this.session = session == null ? "" : session;
+        this.user = user == null ? "" : user;
+        this.kind = kind;
+        this.detail = detail == null ? "" : detail;
+        this.status = status;
+        this.durationMillis = durationMillis;
+        this.bytes = bytes;
+        this.truncated = truncated;
+    }
+
+    /**
+     * @return La date de début de l'action, en millisecondes depuis l'époque.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return L'identifiant de la session.
+     */
+    public String getSession() {
+        return session;
+    }
+
+    /**
+     * @return Le login du client, vide s'il n'était pas encore connu.
+     */
+    public String getUser() {
+        return user;
+    }
+
+    /**
+     * @return Le type d'action.
+     */
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return La commande, le nom du fichier ou du répertoire...
+     */
+    public String getDetail() {
+        return detail;
+    }
+
+    /**
+     * @return Le statut de l'action (code de sortie d'une commande).
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * @return La durée de l'action en millisecondes.
+     */
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    /**
+     * @return Le nombre d'octets transférés.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return true si le détail a été tronqué à l'écriture dans le journal.
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * Écrit l'entrée à une position d'un segment. La date est écrite en dernier :
+     * une entrée interrompue par un arrêt brutal reste un emplacement libre.
+     */
+    void writeTo(ByteBuffer buffer, int offset) {
+        buffer.putLong(offset + DURATION_OFFSET, durationMillis);
+        buffer.putLong(offset + BYTES_OFFSET, bytes);
+        buffer.putInt(offset + STATUS_OFFSET, status);
+        buffer.put(offset + KIND_OFFSET, (byte) kind.ordinal());
+        byte[] sessionBytes = encode(session, MAX_SESSION_BYTES);
+        byte[] userBytes = encode(user, MAX_USER_BYTES);
+        byte[] fullDetail = detail.getBytes(StandardCharsets.UTF_8);
+        byte[] detailBytes = truncate(fullDetail, MAX_DETAIL_BYTES);
+        buffer.put(offset + FLAGS_OFFSET, truncated || detailBytes != fullDetail ? TRUNCATED : 0);
+        buffer.put(offset + SESSION_LENGTH_OFFSET, (byte) sessionBytes.length);
+        buffer.put(offset + USER_LENGTH_OFFSET, (byte) userBytes.length);
+        buffer.put(offset + SESSION_OFFSET, sessionBytes);
+        buffer.put(offset + USER_OFFSET, userBytes);
+        buffer.putShort(offset + DETAIL_LENGTH_OFFSET, (short) detailBytes.length);
+        buffer.put(offset + DETAIL_OFFSET, detailBytes);
+        buffer.putLong(offset + TIMESTAMP_OFFSET, timestamp);
+    }
+
+    /**
+     * Lit l'entrée écrite à une position d'un segment.
+     */
+    static JournalRecord readFrom(ByteBuffer buffer, int offset) {
+        Kind[] kinds = Kind.values();
+        int kindIndex = buffer.get(offset + KIND_OFFSET);
+        return new JournalRecord(
+                readTimestamp(buffer, offset),
+                readSession(buffer, offset),
+                readUser(buffer, offset),
+                kindIndex >= 0 && kindIndex < kinds.length ? kinds[kindIndex] : Kind.COMMAND,
+                decode(buffer, offset + DETAIL_OFFSET, buffer.getShort(offset + DETAIL_LENGTH_OFFSET)),
+                buffer.getInt(offset + STATUS_OFFSET),
+                buffer.getLong(offset + DURATION_OFFSET),
+                buffer.getLong(offset + BYTES_OFFSET),
+                buffer.get(offset + FLAGS_OFFSET) == TRUNCATED);
+    }
+
+    static long readTimestamp(ByteBuffer buffer, int offset) {
+        return buffer.getLong(offset + TIMESTAMP_OFFSET);
+    }
+
+    static String readSession(ByteBuffer buffer, int offset) {
+        return decode(buffer, offset + SESSION_OFFSET, buffer.get(offset + SESSION_LENGTH_OFFSET));
+    }
+
+    static String readUser(ByteBuffer buffer, int offset) {
+        return decode(buffer, offset + USER_OFFSET, buffer.get(offset + USER_LENGTH_OFFSET));
+    }
+
+    /**
+     * Encode une chaîne en UTF-8, tronquée sans couper de caractère.
+     */
+    private static byte[] encode(String value, int maxBytes) {
+        return truncate(value.getBytes(StandardCharsets.UTF_8), maxBytes);
+    }
+
+    /**
+     * Tronque une chaîne encodée en UTF-8 sans couper de caractère.
+     *
+     * @return Le tableau lui-même s'il n'est pas trop long, sinon une copie tronquée.
+     */
+    private static byte[] truncate(byte[] bytes, int maxBytes) {
+        if (bytes.length <= maxBytes) {
+            return bytes;
+        }
+        int length = maxBytes;
+        // Un octet de continuation (10xxxxxx) ne peut pas commencer un caractère.
+        while (length > 0 && (bytes[length] & 0xC0) == 0x80) {
+            length--;
+        }
+        byte[] cut = new byte[length];
+        System.arraycopy(bytes, 0, cut, 0, length);
+        return cut;
+    }
+
+    private static String decode(ByteBuffer buffer, int offset, int length) {
+        byte[] bytes = new byte[Math.max(0, length & 0xFFFF)];
+        buffer.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        return Instant.ofEpochMilli(timestamp) + " " + session + (user.isEmpty() ? "" : " " + user) + " " + kind
+                + " " + detail + (truncated ? "…" : "") + " [statut " + status + ", " + durationMillis + " ms, "
+                + bytes + " octets]";
+    }
+}
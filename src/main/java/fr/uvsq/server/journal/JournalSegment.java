@@ -0,0 +1,242 @@
+package fr.uvsq.server.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Segment du journal d'audit : un fichier de taille fixe, projeté en mémoire, contenant des entrées
+ * `JournalRecord` écrites les unes après les autres. Le nom du fichier porte le numéro (ordinal)
+ * de sa première entrée.
+ *
+ * Un seul thread écrit dans un segment ; les lectures concurrentes ne portent que sur les entrées
+ * déjà publiées (`getCount`). Un index temporel par blocs (dates minimale et maximale de chaque bloc
+ * de `BLOCK_RECORDS` entrées) permet d'ignorer sans les lire les blocs hors d'un intervalle.
+ *
+ * Le fichier reste ouvert et projeté jusqu'à `close`, qui libère la projection sans attendre
+ * le ramasse-miettes : un fichier projeté ne peut être ni supprimé ni renommé sous Windows.
+ * Aucune lecture ne doit avoir lieu après `close`.
+ */
+final class JournalSegment implements Closeable {
+    static final String PREFIX = "journal-";
+    static final String SUFFIX = ".seg";
+    private static final int BLOCK_RECORDS = 64;
+
+    // Libère la projection d'un tampon (`Unsafe.invokeCleaner`), ou `null` si l'API est indisponible.
+    private static final Method INVOKE_CLEANER;
+    private static final Object UNSAFE;
+
+    static {
+        Method invokeCleaner = null;
+        Object unsafe = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // La projection sera libérée par le ramasse-miettes.
+        }
+        INVOKE_CLEANER = invokeCleaner;
+        UNSAFE = unsafe;
+    }
+
+    private final Path file;
+    private final FileChannel channel;
+    private final long firstOrdinal;
+    private final int capacity;
+    private final MappedByteBuffer buffer;
+    private final long[] blockMin;
+    private final long[] blockMax;
+    private long minTimestamp = Long.MAX_VALUE;
+    private long maxTimestamp = Long.MIN_VALUE;
+    // Nombre d'entrées publiées : les écritures qui précèdent sont visibles des lecteurs qui le lisent.
+    private volatile int count;
+
+    private JournalSegment(Path file, FileChannel channel, long firstOrdinal, MappedByteBuffer buffer) {
+        this.file = file;
+        this.channel = channel;
+        this.firstOrdinal = firstOrdinal;
+        this.capacity = buffer.capacity() / JournalRecord.SIZE;
+        this.buffer = buffer;
+        int blocks = (capacity + BLOCK_RECORDS - 1) / BLOCK_RECORDS;
+        this.blockMin = new long[blocks];
+        this.blockMax = new long[blocks];
+        Arrays.fill(blockMin, Long.MAX_VALUE);
+        Arrays.fill(blockMax, Long.MIN_VALUE);
+    }
+
+    /**
+     * Crée un segment vide.
+     *
+     * @param directory    Le répertoire du journal.
+     * @param firstOrdinal L'ordinal de la première entrée du segment.
+     * @param capacity     Le nombre d'entrées du segment.
+     */
+    static JournalSegment create(Path directory, long firstOrdinal, int capacity) throws IOException {
+        Path file = directory.resolve(String.format("%s%020d%s", PREFIX, firstOrdinal, SUFFIX));
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            // La projection étend le fichier, rempli de zéros : tous les emplacements sont libres.
+            return new JournalSegment(file, channel, firstOrdinal,
+                    channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) capacity * JournalRecord.SIZE));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Ouvre un segment existant. Les entrées sont comptées jusqu'au premier emplacement libre
+     * et l'index temporel est reconstruit.
+     *
+     * @param file Le fichier du segment.
+     */
+    static JournalSegment open(Path file) throws IOException {
+        String name = file.getFileName().toString();
+        long firstOrdinal = Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long size = channel.size() - channel.size() % JournalRecord.SIZE;
+            JournalSegment segment = new JournalSegment(file, channel, firstOrdinal,
+                    channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+            int count = 0;
+            while (count < segment.capacity) {
+                long timestamp = JournalRecord.readTimestamp(segment.buffer, count * JournalRecord.SIZE);
+                if (timestamp == 0) {
+                    break;
+                }
+                segment.indexTimestamp(count, timestamp);
+                count++;
+            }
+            segment.count = count;
+            return segment;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Indique si un nom de fichier désigne un segment.
+     */
+    static boolean isSegment(Path file) {
+        String name = file.getFileName().toString();
+        return name.startsWith(PREFIX) && name.endsWith(SUFFIX)
+                && name.length() == PREFIX.length() + 20 + SUFFIX.length();
+    }
+
+    /**
+     * Ajoute une entrée. Réservé au thread d'écriture du journal.
+     *
+     * @return false si le segment est plein.
+     */
+    boolean append(JournalRecord record) {
+        int index = count;
+        if (index >= capacity) {
+            return false;
+        }
+        record.writeTo(buffer, index * JournalRecord.SIZE);
+        indexTimestamp(index, record.getTimestamp());
+        count = index + 1;
+        return true;
+    }
+
+    private void indexTimestamp(int index, long timestamp) {
+        int block = index / BLOCK_RECORDS;
+        blockMin[block] = Math.min(blockMin[block], timestamp);
+        blockMax[block] = Math.max(blockMax[block], timestamp);
+        minTimestamp = Math.min(minTimestamp, timestamp);
+        maxTimestamp = Math.max(maxTimestamp, timestamp);
+    }
+
+    /**
+     * Parcourt les entrées publiées dont la date est comprise dans un intervalle, dans l'ordre d'écriture.
+     *
+     * @param from     La date minimale incluse.
+     * @param to       La date maximale exclue.
+     * @param consumer Reçoit la position de chaque entrée trouvée.
+     */
+    void scan(long from, long to, IntConsumer consumer) {
+        int published = count;
+        if (published == 0 || maxTimestamp < from || minTimestamp >= to) {
+            return;
+        }
+        for (int block = 0; block * BLOCK_RECORDS < published; block++) {
+            if (blockMax[block] < from || blockMin[block] >= to) {
+                continue;
+            }
+            int end = Math.min(published, (block + 1) * BLOCK_RECORDS);
+            for (int index = block * BLOCK_RECORDS; index < end; index++) {
+                long timestamp = getTimestamp(index);
+                if (timestamp >= from && timestamp < to) {
+                    consumer.accept(index);
+                }
+            }
+        }
+    }
+
+    long getTimestamp(int index) {
+        return JournalRecord.readTimestamp(buffer, index * JournalRecord.SIZE);
+    }
+
+    String getSession(int index) {
+        return JournalRecord.readSession(buffer, index * JournalRecord.SIZE);
+    }
+
+    String getUser(int index) {
+        return JournalRecord.readUser(buffer, index * JournalRecord.SIZE);
+    }
+
+    JournalRecord read(int index) {
+        return JournalRecord.readFrom(buffer, index * JournalRecord.SIZE);
+    }
+
+    long getFirstOrdinal() {
+        return firstOrdinal;
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    boolean isFull() {
+        return count >= capacity;
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    /**
+     * Écrit sur disque les entrées ajoutées.
+     */
+    void force() {
+        buffer.force();
+    }
+
+    /**
+     * Libère la projection et ferme le fichier.
+     */
+    @Override
+    public void close() throws IOException {
+        if (INVOKE_CLEANER != null) {
+            try {
+                INVOKE_CLEANER.invoke(UNSAFE, buffer);
+            } catch (ReflectiveOperationException e) {
+                // La projection sera libérée par le ramasse-miettes.
+            }
+        }
+        channel.close();
+    }
+}
@@ -0,0 +1,153 @@
+package fr.uvsq.bench;
+
+import fr.uvsq.core.BufferPool;
+import fr.uvsq.server.SessionOutput;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Mesure le débit d'allocation des chemins chauds du serveur, avant et après le `BufferPool` :
+ * encodage des lignes de réponse, boucles de transfert de fichiers et tampons d'envoi des sessions.
+ * Les variantes « allocation » reproduisent le code d'origine (`(ligne + "\n").getBytes(...)`,
+ * `new byte[...]` à chaque transfert ou session).
+ *
+ * Usage : `mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=fr.uvsq.bench.AllocationBenchmark`
+ * (ajouter `-Xmx64m` via `MAVEN_OPTS` pour rendre les pauses du ramasse-miettes plus visibles).
+ */
+public class AllocationBenchmark {
+    private static final int ROUNDS = 5;
+    private static final int LINES = 200_000;
+    private static final int TRANSFERS = 2_000;
+    private static final int TRANSFER_SIZE = 256 * 1024;
+    private static final int SESSIONS = 20_000;
+    private static final int TRANSFER_BUFFER_SIZE = 64 * 1024;
+
+    private static final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // Sortie qui ignore les octets, comme un socket infiniment rapide.
+    private static final OutputStream DISCARD = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    @FunctionalInterface
+    private interface Scenario {
+        void run() throws IOException;
+    }
+
+    public static void main(String[] args) throws IOException {
+        String[] lines = sampleLines();
+        byte[] file = new byte[TRANSFER_SIZE];
+
+        System.out.printf("%-34s %12s %12s %10s %6s%n", "scénario", "Mo alloués", "octets/op", "ns/op", "GC");
+        measure("réponses, allocation", LINES, () -> {
+            try (SessionOutput out = new SessionOutput(DISCARD)) {
+                for (int i = 0; i < LINES; i++) {
+                    byte[] bytes = (lines[i % lines.length] + "\n").getBytes(StandardCharsets.UTF_8);
+                    out.write(bytes, 0, bytes.length);
+                }
+            }
+        });
+        measure("réponses, encodage dans le tampon", LINES, () -> {
+            try (SessionOutput out = new SessionOutput(DISCARD)) {
+                for (int i = 0; i < LINES; i++) {
+                    out.writeLine(lines[i % lines.length]);
+                }
+            }
+        });
+        measure("transferts, allocation", TRANSFERS, () -> {
+            for (int i = 0; i < TRANSFERS; i++) {
+                transfer(new ByteArrayInputStream(file), new byte[TRANSFER_BUFFER_SIZE]);
+            }
+        });
+        measure("transferts, BufferPool", TRANSFERS, () -> {
+            for (int i = 0; i < TRANSFERS; i++) {
+                try (BufferPool.Buffer buffer = BufferPool.shared().acquire(TRANSFER_BUFFER_SIZE)) {
+                    transfer(new ByteArrayInputStream(file), buffer.array());
+                }
+            }
+        });
+        measure("sessions, allocation", SESSIONS, () -> {
+            for (int i = 0; i < SESSIONS; i++) {
+                byte[] buffer = new byte[SessionOutput.DEFAULT_BUFFER_SIZE];
+                buffer[0] = 'O';
+                DISCARD.write(buffer, 0, 1);
+            }
+        });
+        measure("sessions, BufferPool", SESSIONS, () -> {
+            for (int i = 0; i < SESSIONS; i++) {
+                try (SessionOutput out = new SessionOutput(DISCARD)) {
+                    out.write('O');
+                }
+            }
+        });
+        System.out.println("Fuites détectées : " + BufferPool.shared().getLeaks()
+                + ", tampons empruntés non rendus : " + BufferPool.shared().getInUse());
+    }
+
+    /**
+     * Exécute un scénario plusieurs fois et affiche la meilleure manche (les premières servent à l'échauffement).
+     */
+    private static void measure(String name, int operations, Scenario scenario) throws IOException {
+        long bestBytes = Long.MAX_VALUE;
+        long bestNanos = Long.MAX_VALUE;
+        long gcs = 0;
+        long threadId = Thread.currentThread().threadId();
+        for (int round = 0; round < ROUNDS; round++) {
+            long gcBefore = collections();
+            long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            scenario.run();
+            long nanos = System.nanoTime() - start;
+            long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+            if (round > 0) {
+                bestBytes = Math.min(bestBytes, allocated);
+                bestNanos = Math.min(bestNanos, nanos);
+                gcs += collections() - gcBefore;
+            }
+        }
+        System.out.printf("%-34s %12.1f %12d %10d %6d%n", name, bestBytes / 1e6, bestBytes / operations,
+                bestNanos / operations, gcs);
+    }
+
+    private static void transfer(InputStream in, byte[] buffer) throws IOException {
+        int read;
+        while ((read = in.read(buffer, 0, buffer.length)) != -1) {
+            DISCARD.write(buffer, 0, read);
+        }
+    }
+
+    private static long collections() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+    }
+
+    /**
+     * Lignes typiques d'une sortie de commande (`ls -l`, journaux), dont certaines accentuées.
+     */
+    private static String[] sampleLines() {
+        return new String[]{
+                "-rw-r--r-- 1 admin admin   48213 oct. 19 10:57 rapport-annuel.pdf",
+                "drwxr-xr-x 4 admin admin    4096 oct. 18 09:12 server_files",
+                "-rw-r--r-- 1 admin admin     912 oct. 17 16:03 notes_réunion.txt",
+                "2026-10-19 10:57:53 [pool-1-thread-3] INFO  fr.uvsq.server.Server - Client connected",
+                "",
+                "total 128",
+        };
+    }
+}
@@ -0,0 +1,160 @@
+package fr.uvsq.bench;
+
+import fr.uvsq.core.SslContexts;
+import fr.uvsq.core.TlsProfile;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+
+/**
+ * Mesure, pour chaque `TlsProfile`, le nombre de poignées de main complètes par seconde et le débit
+ * d'un transfert en masse sur la boucle locale, afin de choisir le profil le plus rapide pour la machine.
+ * Le client et le serveur utilisent le même profil ; la suite négociée est affichée.
+ *
+ * Le débit est mesuré pour plusieurs tailles d'écriture : JSSE découpe chaque écriture en
+ * enregistrements TLS de 16 Ko au plus, de petites écritures multiplient donc les enregistrements
+ * et leur coût fixe (en-tête, étiquette d'authentification, appel système).
+ *
+ * Usage : `mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=fr.uvsq.bench.TlsBenchmark`
+ * depuis la racine du projet (keystore `server_keystore.jks`, mot de passe `password`), ou avec
+ * `-Dexec.args="<keystore> <mot de passe>"`.
+ */
+public class TlsBenchmark {
+    private static final int HANDSHAKE_WARMUP = 50;
+    private static final int HANDSHAKES = 300;
+    private static final long TRANSFER_BYTES = 256L * 1024 * 1024;
+    private static final int[] WRITE_SIZES = {4 * 1024, 16 * 1024, 64 * 1024};
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        Path keystore = Paths.get(args.length > 0 ? args[0] : "server_keystore.jks");
+        String password = args.length > 1 ? args[1] : "password";
+        SSLContext serverContext = SslContexts.server(keystore, password);
+        SSLContext clientContext = SslContexts.client(keystore, password);
+
+        System.out.printf("%-15s %-8s %-30s %14s", "profil", "version", "suite", "poignées/s");
+        for (int size : WRITE_SIZES) {
+            System.out.printf(" %13s", "Mo/s (" + size / 1024 + " Ko)");
+        }
+        System.out.println();
+        for (TlsProfile profile : TlsProfile.values()) {
+            measure(profile, serverContext, clientContext);
+        }
+    }
+
+    private static void measure(TlsProfile profile, SSLContext serverContext, SSLContext clientContext)
+            throws IOException, GeneralSecurityException {
+        SSLParameters clientParameters = profile.parameters(clientContext);
+        try (SSLServerSocket server = (SSLServerSocket) serverContext.getServerSocketFactory()
+                .createServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            server.setSSLParameters(profile.parameters(serverContext));
+            Thread acceptor = new Thread(() -> serve(server), "tls-bench-server");
+            acceptor.setDaemon(true);
+            acceptor.start();
+            InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getLocalPort());
+
+            String[] negotiated = new String[2];
+            handshakes(clientContext, clientParameters, address, HANDSHAKE_WARMUP, negotiated);
+            long start = System.nanoTime();
+            handshakes(clientContext, clientParameters, address, HANDSHAKES, negotiated);
+            double handshakesPerSecond = HANDSHAKES / ((System.nanoTime() - start) / 1e9);
+
+            System.out.printf("%-15s %-8s %-30s %14.0f", profile.getName(), negotiated[0], negotiated[1], handshakesPerSecond);
+            for (int size : WRITE_SIZES) {
+                double best = 0;
+                for (int round = 0; round < ROUNDS; round++) {
+                    best = Math.max(best, transfer(clientContext, clientParameters, address, size));
+                }
+                System.out.printf(" %13.0f", best);
+            }
+            System.out.println();
+        }
+    }
+
+    /**
+     * Ouvre des connexions successives, chacune avec une poignée de main complète (session non réutilisée).
+     */
+    private static void handshakes(SSLContext context, SSLParameters parameters, InetSocketAddress address,
+                                   int count, String[] negotiated) throws IOException {
+        for (int i = 0; i < count; i++) {
+            try (SSLSocket socket = connect(context, parameters, address)) {
+                socket.startHandshake();
+                negotiated[0] = socket.getSession().getProtocol();
+                negotiated[1] = socket.getSession().getCipherSuite();
+                // Empêche la reprise de session : chaque connexion refait l'échange de clés complet.
+                socket.getSession().invalidate();
+                OutputStream out = socket.getOutputStream();
+                out.write(0);
+                out.flush();
+                socket.getInputStream().read();
+            }
+        }
+    }
+
+    /**
+     * Envoie `TRANSFER_BYTES` octets par écritures de `writeSize` octets et attend l'accusé de réception.
+     *
+     * @return Le débit en Mo/s.
+     */
+    private static double transfer(SSLContext context, SSLParameters parameters, InetSocketAddress address,
+                                   int writeSize) throws IOException {
+        byte[] chunk = new byte[writeSize];
+        try (SSLSocket socket = connect(context, parameters, address)) {
+            socket.startHandshake();
+            OutputStream out = socket.getOutputStream();
+            out.write(1);
+            long start = System.nanoTime();
+            for (long sent = 0; sent < TRANSFER_BYTES; sent += writeSize) {
+                out.write(chunk, 0, writeSize);
+            }
+            out.flush();
+            socket.shutdownOutput();
+            if (socket.getInputStream().read() < 0) {
+                throw new IOException("Transfert interrompu");
+            }
+            return TRANSFER_BYTES / 1e6 / ((System.nanoTime() - start) / 1e9);
+        }
+    }
+
+    private static SSLSocket connect(SSLContext context, SSLParameters parameters, InetSocketAddress address)
+            throws IOException {
+        SSLSocket socket = (SSLSocket) context.getSocketFactory().createSocket();
+        socket.setSSLParameters(parameters);
+        socket.setTcpNoDelay(true);
+        socket.connect(address);
+        return socket;
+    }
+
+    /**
+     * Serveur du benchmark : le premier octet indique une poignée de main (0, réponse immédiate)
+     * ou un transfert (1, lecture jusqu'à la fin du flux puis réponse).
+     */
+    private static void serve(SSLServerSocket server) {
+        byte[] buffer = new byte[64 * 1024];
+        while (!server.isClosed()) {
+            try (SSLSocket socket = (SSLSocket) server.accept()) {
+                socket.setTcpNoDelay(true);
+                InputStream in = socket.getInputStream();
+                if (in.read() == 1) {
+                    while (in.read(buffer) >= 0) {
+                        // Octets reçus ignorés.
+                    }
+                }
+                socket.getOutputStream().write(0);
+                socket.getOutputStream().flush();
+            } catch (IOException e) {
+                // Socket fermé à la fin de la mesure, ou client interrompu.
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package fr.uvsq.client;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests de `CommandHistory` : classement des suggestions par préfixe (arbre radix) et des recherches
+ * de sous-chaînes (index des fragments), comparés à un parcours exhaustif.
+ */
+class CommandHistoryTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void suggestionsAreRankedByFrequencyThenRecency() throws IOException {
+        try (CommandHistory history = load()) {
+            add(history, "git status", 3);
+            add(history, "git stash", 1);
+            add(history, "git commit", 3);
+            add(history, "gist", 1);
+            add(history, "ls", 5);
+
+            assertEquals(List.of("git commit", "git status", "gist", "git stash"), history.suggest("gi", 10));
+            // Préfixe s'arrêtant au milieu d'une arête de l'arbre.
+            assertEquals(List.of("git status", "git stash"), history.suggest("git st", 10));
+            assertEquals(List.of("git status"), history.suggest("git statu", 10));
+            assertEquals(List.of("git commit"), history.suggest("gi", 1));
+            assertTrue(history.suggest("git x", 10).isEmpty());
+            assertTrue(history.suggest("git status -s", 10).isEmpty());
+            assertEquals("ls", history.suggest("", 10).get(0));
+
+            // À fréquence égale, la plus récente passe devant.
+            history.add("git stash");
+            history.add("git stash");
+            assertEquals(List.of("git stash", "git commit", "git status", "gist"), history.suggest("gi", 10));
+        }
+    }
+
+    @Test
+    void searchIsCaseInsensitiveAndRanked() throws IOException {
+        try (CommandHistory history = load()) {
+            add(history, "cat README.md", 2);
+            add(history, "vi readme.txt", 4);
+            add(history, "ls -la", 1);
+            add(history, "grep Readme *.java", 2);
+
+            assertEquals(List.of("vi readme.txt", "grep Readme *.java", "cat README.md"), history.search("ReadMe", 10));
+            assertEquals(List.of("vi readme.txt", "grep Readme *.java"), history.search("e", 2));
+            assertEquals(List.of("ls -la"), history.search("-l", 10));
+            assertTrue(history.search("readmes", 10).isEmpty());
+            assertEquals(4, history.search("", 10).size());
+        }
+    }
+
+    @Test
+    void rankingsMatchExhaustiveSearch() throws IOException {
+        Random random = new Random(7);
+        Model model = new Model();
+        try (CommandHistory history = load()) {
+            // Assez de commandes pour que les fragments courants dépassent le seuil de l'index.
+            for (int i = 0; i < 6000; i++) {
+                String command = randomCommand(random, i < 3000 ? 3000 : 400);
+                history.add(command);
+                model.add(command);
+            }
+            assertRankings(history, model, random);
+        }
+        // Après rechargement, les fréquences et l'ordre de récence sont conservés.
+        try (CommandHistory reloaded = load()) {
+            assertEquals(model.counts.size(), reloaded.size());
+            assertRankings(reloaded, model, random);
+            assertEquals(model.byRecency().subList(0, 5), reloaded.recent(5));
+        }
+    }
+
+    @Test
+    void recentListsDistinctCommandsNewestFirst() throws IOException {
+        try (CommandHistory history = load()) {
+            history.add("a");
+            history.add("b");
+            history.add("a");
+            history.add("c");
+            history.add("multi\nligne");
+            assertEquals(List.of("c", "a", "b"), history.recent(10));
+            assertEquals(List.of("c", "a"), history.recent(2));
+        }
+    }
+
+    private CommandHistory load() {
+        return CommandHistory.load(directory.resolve("test.history")).join();
+    }
+
+    private static void add(CommandHistory history, String command, int times) throws IOException {
+        for (int i = 0; i < times; i++) {
+            history.add(command);
+        }
+    }
+
+    private static void assertRankings(CommandHistory history, Model model, Random random) {
+        List<String> commands = new ArrayList<>(model.counts.keySet());
+        for (int i = 0; i < 200; i++) {
+            String command = commands.get(random.nextInt(commands.size()));
+            String prefix = command.substring(0, random.nextInt(command.length() + 1));
+            assertEquals(model.matching(c -> c.startsWith(prefix), CommandHistory.MAX_SUGGESTIONS),
+                    history.suggest(prefix, CommandHistory.MAX_SUGGESTIONS), "préfixe " + prefix);
+            int start = random.nextInt(command.length());
+            String text = command.substring(start, Math.min(command.length(), start + 1 + random.nextInt(5)));
+            String needle = text.toLowerCase(Locale.ROOT);
+            assertEquals(model.matching(c -> c.toLowerCase(Locale.ROOT).contains(needle), 20),
+                    history.search(text.toUpperCase(Locale.ROOT), 20), "texte " + text);
+        }
+    }
+
+    private static String randomCommand(Random random, int vocabulary) {
+        String[] programs = {"ls", "cat", "grep", "git", "Tail", "echo"};
+        return programs[random.nextInt(programs.length)] + " arg" + random.nextInt(vocabulary);
+    }
+
+    /**
+     * Historique de référence : fréquence et date de dernière utilisation de chaque commande.
+     */
+    private static final class Model {
+        private final Map<String, Integer> counts = new HashMap<>();
+        private final Map<String, Integer> lastUsed = new HashMap<>();
+        private int clock = 0;
+
+        void add(String command) {
+            counts.merge(command, 1, Integer::sum);
+            lastUsed.put(command, ++clock);
+        }
+
+        List<String> matching(Predicate<String> filter, int limit) {
+            return counts.keySet().stream()
+                    .filter(filter)
+                    .sorted(Comparator.comparing((String c) -> counts.get(c)).reversed()
+                            .thenComparing(Comparator.comparing((String c) -> lastUsed.get(c)).reversed()))
+                    .limit(limit)
+                    .collect(Collectors.toList());
+        }
+
+        List<String> byRecency() {
+            return counts.keySet().stream()
+                    .sorted(Comparator.comparing((String c) -> lastUsed.get(c)).reversed())
+                    .collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package fr.uvsq.core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests de `ArchiveWriter` et `ArchiveReader` : aller-retour d'une arborescence, et refus des entrées
+ * qui sortiraient du répertoire cible ou dont l'empreinte ne correspond pas.
+ */
+class ArchiveTest {
+    private static final long DATE = 1_600_000_000_000L;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void roundTripPreservesTree() throws IOException {
+        Path source = Files.createDirectories(directory.resolve("source"));
+        byte[] large = new byte[ArchiveWriter.MAX_PREFETCH_SIZE * 2 + 123];
+        new Random(42).nextBytes(large);
+        Files.writeString(source.resolve("small.txt"), "hello");
+        Files.write(Files.createDirectories(source.resolve("a/b")).resolve("large.bin"), large);
+        Files.writeString(source.resolve("a/empty.txt"), "");
+        Files.createDirectories(source.resolve("empty-dir"));
+        for (String name : List.of("small.txt", "a/b/large.bin", "a/empty.txt")) {
+            Files.setLastModifiedTime(source.resolve(name), FileTime.fromMillis(DATE));
+        }
+        Files.setLastModifiedTime(source.resolve("a/b"), FileTime.fromMillis(DATE));
+
+        Path target = directory.resolve("target");
+        ArchiveSummary received = roundTrip(source, target);
+
+        assertTrue(received.isComplete(), received.getErrors().toString());
+        assertEquals(3, received.getFileCount());
+        assertEquals(5 + large.length, received.getByteCount());
+        assertEquals("hello", Files.readString(target.resolve("small.txt")));
+        assertArrayEquals(large, Files.readAllBytes(target.resolve("a/b/large.bin")));
+        assertEquals(0, Files.size(target.resolve("a/empty.txt")));
+        assertTrue(Files.isDirectory(target.resolve("empty-dir")));
+        for (String name : List.of("small.txt", "a/b/large.bin", "a/empty.txt", "a/b")) {
+            assertEquals(DATE, Files.getLastModifiedTime(target.resolve(name)).toMillis(), name);
+        }
+        assertEquals(List.of(), temporaryFiles(target));
+    }
+
+    @Test
+    void symbolicLinksAreNotArchived() throws IOException {
+        Path source = Files.createDirectories(directory.resolve("source"));
+        Path outside = Files.writeString(directory.resolve("secret.txt"), "secret");
+        Files.writeString(source.resolve("kept.txt"), "kept");
+        Files.createSymbolicLink(source.resolve("link.txt"), outside);
+        Files.createSymbolicLink(source.resolve("link-dir"), directory);
+
+        Path target = directory.resolve("target");
+        ArchiveSummary received = roundTrip(source, target);
+
+        assertEquals(1, received.getFileCount());
+        assertEquals("kept", Files.readString(target.resolve("kept.txt")));
+        assertFalse(Files.exists(target.resolve("link.txt"), LinkOption.NOFOLLOW_LINKS));
+        assertFalse(Files.exists(target.resolve("link-dir"), LinkOption.NOFOLLOW_LINKS));
+    }
+
+    @Test
+    void unsafePathsAreRejected() throws IOException {
+        Path target = Files.createDirectories(directory.resolve("target"));
+        Path outside = Files.createDirectories(directory.resolve("outside"));
+        Files.createSymbolicLink(target.resolve("escape"), outside);
+        Path absolute = directory.resolve("absolute.txt");
+
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(archive);
+        writeFile(out, "../evil.txt", "evil");
+        writeFile(out, absolute.toString(), "absolute");
+        writeFile(out, "escape/through-link.txt", "link");
+        writeDirectory(out, "a/../../evil-dir");
+        // Les entrées suivantes restent lues et écrites normalement.
+        writeFile(out, "ok.txt", "ok");
+        out.writeByte(ArchiveWriter.END);
+
+        ArchiveSummary received = new ArchiveReader(2).read(new ByteArrayInputStream(archive.toByteArray()), target);
+
+        assertEquals(4, received.getErrors().size(), received.getErrors().toString());
+        assertTrue(received.getErrors().stream().allMatch(error -> error.startsWith("Chemin refusé")));
+        assertFalse(Files.exists(directory.resolve("evil.txt")));
+        assertFalse(Files.exists(absolute));
+        assertFalse(Files.exists(outside.resolve("through-link.txt")));
+        assertFalse(Files.exists(directory.resolve("evil-dir")));
+        assertEquals(1, received.getFileCount());
+        assertEquals("ok", Files.readString(target.resolve("ok.txt")));
+    }
+
+    @Test
+    void digestMismatchLeavesNoFile() throws IOException {
+        Path target = Files.createDirectories(directory.resolve("target"));
+        byte[] large = new byte[ArchiveWriter.MAX_PREFETCH_SIZE + 1];
+
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(archive);
+        // Un petit fichier, écrit par le pool, et un gros fichier, écrit au fil de sa réception.
+        writeFile(out, "small.txt", "content".getBytes(StandardCharsets.UTF_8), "00000000");
+        writeFile(out, "large.bin", large, "00000000");
+        writeFile(out, "ok.txt", "ok");
+        out.writeByte(ArchiveWriter.END);
+
+        ArchiveSummary received = new ArchiveReader(2).read(new ByteArrayInputStream(archive.toByteArray()), target);
+
+        assertEquals(2, received.getErrors().size(), received.getErrors().toString());
+        assertFalse(Files.exists(target.resolve("small.txt")));
+        assertFalse(Files.exists(target.resolve("large.bin")));
+        assertEquals("ok", Files.readString(target.resolve("ok.txt")));
+        assertEquals(List.of(), temporaryFiles(target));
+    }
+
+    private static ArchiveSummary roundTrip(Path source, Path target) throws IOException {
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        ArchiveSummary sent = new ArchiveWriter(2).write(source, archive);
+        ArchiveSummary received = new ArchiveReader(2).read(new ByteArrayInputStream(archive.toByteArray()), target);
+        assertEquals(sent.getFileCount(), received.getFileCount());
+        assertEquals(sent.getByteCount(), received.getByteCount());
+        return received;
+    }
+
+    private static void writeDirectory(DataOutputStream out, String name) throws IOException {
+        out.writeByte(ArchiveWriter.DIRECTORY);
+        out.writeUTF(name);
+        out.writeLong(DATE);
+    }
+
+    private static void writeFile(DataOutputStream out, String name, String content) throws IOException {
+        byte[] data = content.getBytes(StandardCharsets.UTF_8);
+        StreamDigest digest = StreamDigest.create(ArchiveWriter.DIGEST_ALGORITHM);
+        digest.update(data, 0, data.length);
+        writeFile(out, name, data, digest.toHex());
+    }
+
+    private static void writeFile(DataOutputStream out, String name, byte[] data, String digest) throws IOException {
+        out.writeByte(ArchiveWriter.FILE);
+        out.writeUTF(name);
+        out.writeLong(DATE);
+        for (int offset = 0; offset < data.length; offset += ArchiveWriter.CHUNK_SIZE) {
+            int length = Math.min(ArchiveWriter.CHUNK_SIZE, data.length - offset);
+            out.writeInt(length);
+            out.write(data, offset, length);
+        }
+        out.writeInt(0);
+        out.writeUTF(digest);
+    }
+
+    private static List<Path> temporaryFiles(Path root) throws IOException {
+        try (Stream<Path> files = Files.walk(root)) {
+            return files.filter(file -> AtomicFileWriter.isTemporary(file.getFileName().toString())).toList();
+        }
+    }
+}
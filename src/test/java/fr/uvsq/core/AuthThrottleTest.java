@@ -0,0 +1,99 @@
+package fr.uvsq.core;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests de `AuthThrottle` : limitation par adresse et par login, et bannissement, y compris d'une source
+ * qui insiste malgré la limitation.
+ */
+class AuthThrottleTest {
+    private static final String ADDRESS = "192.0.2.1";
+
+    @Test
+    void addressIsThrottledAfterBurst() {
+        AuthThrottle throttle = new AuthThrottle();
+        for (int i = 0; i < 5; i++) {
+            assertTrue(throttle.tryAcquire(ADDRESS, "user" + i));
+        }
+        assertFalse(throttle.tryAcquire(ADDRESS, "other"));
+        // Les autres adresses ne sont pas concernées.
+        assertTrue(throttle.tryAcquire("192.0.2.2", "other"));
+    }
+
+    @Test
+    void loginIsThrottledAcrossAddresses() {
+        AuthThrottle throttle = new AuthThrottle();
+        for (int i = 0; i < 5; i++) {
+            assertTrue(throttle.tryAcquire("192.0.2." + i, "admin"));
+        }
+        assertFalse(throttle.tryAcquire("192.0.2.100", "admin"));
+    }
+
+    @Test
+    void knownAddressIsNotLimitedByLoginBucket() {
+        AuthThrottle throttle = new AuthThrottle();
+        throttle.recordSuccess(ADDRESS, "admin");
+        for (int i = 0; i < 5; i++) {
+            assertTrue(throttle.tryAcquire("192.0.2." + (10 + i), "admin"));
+        }
+        assertFalse(throttle.tryAcquire("192.0.2.100", "admin"));
+        assertTrue(throttle.tryAcquire(ADDRESS, "admin"));
+    }
+
+    @Test
+    void repeatedFailuresBanAddress() {
+        AuthThrottle throttle = new AuthThrottle();
+        for (int i = 0; i < 19; i++) {
+            throttle.recordFailure(ADDRESS);
+        }
+        assertFalse(throttle.isBanned(ADDRESS));
+        throttle.recordFailure(ADDRESS);
+        assertTrue(throttle.isBanned(ADDRESS));
+        assertFalse(throttle.admitConnection(ADDRESS));
+        assertFalse(throttle.tryAcquire(ADDRESS, "admin"));
+    }
+
+    @Test
+    void successResetsFailures() {
+        AuthThrottle throttle = new AuthThrottle();
+        for (int i = 0; i < 19; i++) {
+            throttle.recordFailure(ADDRESS);
+        }
+        throttle.recordSuccess(ADDRESS, "admin");
+        throttle.recordFailure(ADDRESS);
+        assertFalse(throttle.isBanned(ADDRESS));
+    }
+
+    @Test
+    void throttledAttemptsCountTowardBan() {
+        AuthThrottle throttle = new AuthThrottle();
+        for (int i = 0; i < 5; i++) {
+            assertTrue(throttle.tryAcquire(ADDRESS, "user" + i));
+        }
+        // Aucune tentative n'est plus examinée, mais chacune compte comme un échec.
+        for (int i = 0; i < 19; i++) {
+            assertFalse(throttle.tryAcquire(ADDRESS, "user"));
+            assertFalse(throttle.isBanned(ADDRESS));
+        }
+        assertFalse(throttle.tryAcquire(ADDRESS, "user"));
+        assertTrue(throttle.isBanned(ADDRESS));
+    }
+
+    @Test
+    void throttledConnectionsAreRefusedAndCountTowardBan() {
+        AuthThrottle throttle = new AuthThrottle();
+        assertTrue(throttle.admitConnection(ADDRESS));
+        for (int i = 0; i < 5; i++) {
+            assertTrue(throttle.tryAcquire(ADDRESS, "user" + i));
+        }
+        for (int i = 0; i < 19; i++) {
+            assertFalse(throttle.admitConnection(ADDRESS));
+            assertFalse(throttle.isBanned(ADDRESS));
+        }
+        assertFalse(throttle.admitConnection(ADDRESS));
+        assertTrue(throttle.isBanned(ADDRESS));
+    }
+}
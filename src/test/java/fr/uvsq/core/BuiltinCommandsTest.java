@@ -0,0 +1,78 @@
+package fr.uvsq.core;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Tests des commandes intégrées : leur sortie et leur code de sortie sont ceux de la même commande
+ * exécutée par le shell.
+ */
+class BuiltinCommandsTest {
+
+    @TempDir
+    Path directory;
+
+    private final CommandProcessor builtins = new CommandProcessor();
+    private final CommandProcessor shell = new CommandProcessor(new BuiltinCommands());
+
+    @BeforeEach
+    void createFiles() throws IOException {
+        Files.writeString(directory.resolve("a.txt"), "hello\n\nworld\n");
+        Files.writeString(directory.resolve("b.log"), "  no trailing newline");
+        Files.writeString(directory.resolve(".hidden"), "");
+        Files.createDirectory(directory.resolve("sub"));
+    }
+
+    @Test
+    void builtinOutputMatchesProcessOutput() {
+        String a = directory.resolve("a.txt").toString();
+        String b = directory.resolve("b.log").toString();
+        List<String> commands = List.of(
+                "echo hello   world",
+                "echo",
+                "pwd",
+                "ls " + directory,
+                "ls -a " + directory,
+                "ls -A1 " + directory,
+                "cat " + a,
+                "cat " + a + " " + b,
+                "stat -c %n/%s/%a/%A/%F/%h " + a,
+                "stat -c %F " + directory.resolve("sub"));
+        for (String command : commands) {
+            assertNotNull(BuiltinCommands.getDefault().find(command), command);
+            assertSameResult(command);
+        }
+    }
+
+    @Test
+    void unsupportedCasesFallBackToShell() {
+        String missing = directory.resolve("missing").toString();
+        for (String command : List.of("echo -n hello", "ls -l " + directory, "cat " + missing)) {
+            assertSameResult(command);
+        }
+    }
+
+    @Test
+    void shellSyntaxIsNotHandledByBuiltins() {
+        assertNull(BuiltinCommands.getDefault().find("echo $HOME"));
+        assertNull(BuiltinCommands.getDefault().find("ls | wc -l"));
+        assertNull(BuiltinCommands.getDefault().find("cat 'a b'"));
+    }
+
+    private void assertSameResult(String command) {
+        CommandResult expected = shell.execute(command);
+        CommandResult actual = builtins.execute(command);
+        assertEquals(expected.getOutput(), actual.getOutput(), command);
+        assertEquals(expected.getExitCode(), actual.getExitCode(), command);
+    }
+}
@@ -0,0 +1,95 @@
+package fr.uvsq.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests de `CommandProcessor` face à un destinataire lent : le temps passé suspendu n'est pas décompté
+ * du délai d'exécution, mais reste borné.
+ */
+class CommandProcessorTest {
+
+    private static final String EXPIRED = "❌ La commande a expiré après 5 secondes";
+
+    @Test
+    void slowSinkDoesNotConsumeDeadline() throws Exception {
+        CommandProcessor processor = new CommandProcessor();
+        List<String> lines = new ArrayList<>();
+        // 3 lignes à 2 secondes chacune : au-delà du délai de 5 secondes, passées suspendu sur le destinataire.
+        processor.run("printf 'a\\nb\\nc\\n'", line -> {
+            lines.add(line);
+            sleep(2000);
+        });
+        assertEquals(List.of("a", "b", "c"), lines);
+    }
+
+    @Test
+    void runningCommandStillExpires() throws Exception {
+        CommandProcessor processor = new CommandProcessor();
+        List<String> lines = new ArrayList<>();
+        long start = System.nanoTime();
+        processor.run("sleep 30", lines::add);
+        long elapsed = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start);
+        assertEquals(List.of(EXPIRED), lines);
+        assertTrue(elapsed < 15, "expiration après " + elapsed + " s");
+    }
+
+    @Test
+    void blockedSinkTriggersStallAction() throws Exception {
+        CommandProcessor processor = new CommandProcessor();
+        CountDownLatch stalled = new CountDownLatch(1);
+        processor.setStallTimeout(300, stalled::countDown);
+        List<String> lines = new ArrayList<>();
+        long start = System.nanoTime();
+        // Le destinataire reste bloqué sur la première ligne jusqu'à ce que l'action de blocage le libère,
+        // comme la fermeture de la session débloque une écriture sur le socket.
+        processor.run("echo first; echo second; sleep 30", line -> {
+            lines.add(line);
+            if (lines.size() == 1) {
+                await(stalled);
+            }
+        });
+        long elapsed = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start);
+        assertEquals(0, stalled.getCount());
+        assertEquals(List.of("first", "second", EXPIRED), lines);
+        assertTrue(elapsed < 5, "blocage détecté après " + elapsed + " s");
+    }
+
+    @Test
+    void blockedSinkStallsBuiltinOnLastLine() throws Exception {
+        CommandProcessor processor = new CommandProcessor();
+        CountDownLatch stalled = new CountDownLatch(1);
+        processor.setStallTimeout(300, stalled::countDown);
+        List<String> lines = new ArrayList<>();
+        processor.run("echo first", line -> {
+            lines.add(line);
+            if (lines.size() == 1) {
+                await(stalled);
+            }
+        });
+        assertEquals(0, stalled.getCount());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
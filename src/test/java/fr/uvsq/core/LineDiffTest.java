@@ -0,0 +1,119 @@
+package fr.uvsq.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests de `LineDiff` : une différence appliquée à l'ancienne version redonne la nouvelle.
+ */
+class LineDiffTest {
+
+    @Test
+    void identicalVersionsHaveNoOperations() {
+        List<String> lines = List.of("a", "b", "c");
+        assertTrue(LineDiff.diff(lines, lines).isEmpty());
+        assertEquals(lines, LineDiff.apply(lines, List.of()));
+    }
+
+    @Test
+    void commonPrefixAndSuffixAreKept() {
+        List<String> previous = List.of("a", "b", "c", "d");
+        List<String> current = List.of("a", "x", "c", "d");
+        List<String> ops = LineDiff.diff(previous, current);
+        assertEquals(List.of("=1", "-1", "+x"), ops);
+        assertEquals(current, LineDiff.apply(previous, ops));
+    }
+
+    @Test
+    void shortestEditScriptKeepsMovedBlock() {
+        List<String> previous = List.of("a", "b", "c", "a", "b", "b", "a");
+        List<String> current = List.of("c", "b", "a", "b", "a", "c");
+        List<String> ops = LineDiff.diff(previous, current);
+        assertEquals(current, LineDiff.apply(previous, ops));
+        // Distance d'édition minimale de l'exemple de Myers : 5 (3 suppressions, 2 insertions).
+        assertEquals(5, edits(ops));
+    }
+
+    @Test
+    void emptyVersionsRoundTrip() {
+        List<String> lines = List.of("a", "", "b");
+        assertEquals(lines, LineDiff.apply(List.of(), LineDiff.diff(List.of(), lines)));
+        assertEquals(List.of(), LineDiff.apply(lines, LineDiff.diff(lines, List.of())));
+    }
+
+    @Test
+    void insertedLineStartingWithOperatorIsPreserved() {
+        List<String> previous = List.of("a");
+        List<String> current = List.of("=3", "-1", "+b", "a");
+        assertEquals(current, LineDiff.apply(previous, LineDiff.diff(previous, current)));
+    }
+
+    @Test
+    void randomEditsRoundTrip() {
+        Random random = new Random(42);
+        for (int round = 0; round < 500; round++) {
+            List<String> previous = randomLines(random, random.nextInt(40));
+            List<String> current = new ArrayList<>(previous);
+            for (int edit = random.nextInt(10); edit > 0; edit--) {
+                int index = current.isEmpty() ? 0 : random.nextInt(current.size());
+                if (random.nextBoolean() && !current.isEmpty()) {
+                    current.remove(index);
+                } else {
+                    current.add(index, "l" + random.nextInt(5));
+                }
+            }
+            assertEquals(current, LineDiff.apply(previous, LineDiff.diff(previous, current)));
+        }
+    }
+
+    @Test
+    void beyondMaxEditDistanceReplacesMiddle() {
+        List<String> previous = new ArrayList<>();
+        List<String> current = new ArrayList<>();
+        previous.add("début");
+        current.add("début");
+        for (int i = 0; i < LineDiff.MAX_EDIT_DISTANCE; i++) {
+            previous.add("old" + i);
+            current.add("new" + i);
+        }
+        List<String> ops = LineDiff.diff(previous, current);
+        assertEquals("=1", ops.get(0));
+        assertEquals("-" + LineDiff.MAX_EDIT_DISTANCE, ops.get(1));
+        assertEquals(current, LineDiff.apply(previous, ops));
+    }
+
+    @Test
+    void invalidOperationsAreRejected() {
+        List<String> previous = List.of("a", "b");
+        assertThrows(IllegalArgumentException.class, () -> LineDiff.apply(previous, List.of("=3")));
+        assertThrows(IllegalArgumentException.class, () -> LineDiff.apply(previous, List.of("*1")));
+        assertThrows(IllegalArgumentException.class, () -> LineDiff.apply(previous, List.of("=")));
+    }
+
+    private static List<String> randomLines(Random random, int count) {
+        List<String> lines = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            lines.add("l" + random.nextInt(5));
+        }
+        return lines;
+    }
+
+    private static int edits(List<String> ops) {
+        int edits = 0;
+        for (String op : ops) {
+            if (op.startsWith("+")) {
+                edits++;
+            } else if (op.startsWith("-")) {
+                edits += Integer.parseInt(op.substring(1));
+            }
+        }
+        return edits;
+    }
+}
@@ -0,0 +1,63 @@
+package fr.uvsq.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Tests des ressources mesurées pour chaque commande et renvoyées avec son résultat (`CommandResult.getUsage`).
+ */
+class ResourceUsageTest {
+
+    private final CommandProcessor processor = new CommandProcessor();
+
+    @Test
+    void usageCarriesExitCodeAndDuration() {
+        CommandResult result = processor.execute("sleep 0.5; exit 3");
+        ResourceUsage usage = result.getUsage();
+        assertNotNull(usage);
+        assertEquals(3, result.getExitCode());
+        assertEquals(3, usage.getExitCode());
+        assertTrue(usage.getWallMillis() >= 500, usage.toString());
+        assertTrue(usage.getWallMillis() < 5_000, usage.toString());
+    }
+
+    @Test
+    void processTreeIsMeasured() {
+        assumeTrue(Files.isReadable(Path.of("/proc/self/stat")), "mesure par /proc indisponible");
+        // Boucle du shell lancée dans un sous-processus : son temps processeur est celui d'un descendant.
+        CommandResult result = processor.execute("sh -c 'i=0; while [ $i -lt 300000 ]; do i=$((i+1)); done'; echo done");
+        ResourceUsage usage = result.getUsage();
+        assertEquals("done", result.getOutput());
+        assertEquals(0, usage.getExitCode());
+        assertTrue(usage.getCpuMillis() > 0, usage.toString());
+        assertTrue(usage.getCpuMillis() <= usage.getWallMillis() + 50, usage.toString());
+        assertTrue(usage.getPeakMemoryKb() > 0, usage.toString());
+    }
+
+    @Test
+    void builtinUsageHasNoMemory() {
+        CommandResult result = processor.execute("echo builtin");
+        assertEquals("builtin", result.getOutput());
+        assertEquals(0, result.getUsage().getExitCode());
+        assertEquals(ResourceUsage.UNKNOWN, result.getUsage().getPeakMemoryKb());
+    }
+
+    @Test
+    void protocolLineRoundTrips() {
+        ResourceUsage usage = new ResourceUsage(2, 1500, 120, ResourceUsage.UNKNOWN);
+        ResourceUsage parsed = ResourceUsage.parse(usage.toLine());
+        assertEquals(usage.toLine(), parsed.toLine());
+        assertEquals(2, parsed.getExitCode());
+        assertEquals(ResourceUsage.UNKNOWN, parsed.getPeakMemoryKb());
+        assertThrows(IllegalArgumentException.class, () -> ResourceUsage.parse("0 12 3"));
+        assertThrows(IllegalArgumentException.class, () -> ResourceUsage.parse("0 12 three 4"));
+    }
+}
@@ -0,0 +1,86 @@
+package fr.uvsq.server;
+
+import fr.uvsq.client.Client;
+import fr.uvsq.server.journal.JournalRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests de l'authentification des sessions : elle n'occupe pas les threads des sessions, et une source
+ * limitée est refusée dès la connexion.
+ */
+class AuthenticationTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void pendingAuthenticationDoesNotHoldSessionThread() throws Exception {
+        ServerConfig config = new ServerConfig();
+        config.setMaxClients(1);
+        try (TestServer server = new TestServer(directory, config)) {
+            // Connexion qui n'envoie jamais ses identifiants.
+            Client idle = server.connect();
+            long start = System.nanoTime();
+            Client client = server.login();
+            assertEquals("ok", client.sendCommand("echo ok"));
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+            client.disconnect();
+            idle.disconnect();
+            assertTrue(elapsedMillis < 5_000, "session servie après " + elapsedMillis + " ms");
+        }
+    }
+
+    @Test
+    void throttledAddressIsRefusedBeforeAuthentication() throws Exception {
+        try (TestServer server = new TestServer(directory)) {
+            for (int i = 0; i < 5; i++) {
+                IOException e = assertThrows(IOException.class, () -> login(server, "intruder", "wrong"));
+                assertTrue(e.getMessage().contains("Identifiants incorrects"), e.getMessage());
+            }
+            // Débit épuisé : la connexion est fermée sans poignée de main, même avec les bons identifiants.
+            IOException e = assertThrows(IOException.class, () -> login(server, TestServer.LOGIN, TestServer.PASSWORD));
+            assertTrue(!e.getMessage().contains("Identifiants incorrects"), e.getMessage());
+            Thread.sleep(500);
+            List<JournalRecord> attempts = server.server().getAuditJournal()
+                    .findBetween(0, Long.MAX_VALUE, 100).stream()
+                    .filter(record -> record.getKind() == JournalRecord.Kind.AUTH)
+                    .toList();
+            assertEquals(5, attempts.size());
+        }
+    }
+
+    @Test
+    void insistingSourceIsBanned() throws Exception {
+        try (TestServer server = new TestServer(directory)) {
+            for (int i = 0; i < 5; i++) {
+                assertThrows(IOException.class, () -> login(server, "intruder", "wrong"));
+            }
+            // 5 échecs, puis 15 connexions refusées pour débit dépassé : l'adresse est bannie.
+            for (int i = 0; i < 15; i++) {
+                assertThrows(IOException.class, () -> login(server, TestServer.LOGIN, TestServer.PASSWORD));
+            }
+            // Le seau de l'adresse s'est rempli (une tentative toutes les 6 secondes) et celui du login n'a pas
+            // servi, mais le bannissement dure.
+            Thread.sleep(6_500);
+            assertThrows(IOException.class, () -> login(server, TestServer.LOGIN, TestServer.PASSWORD));
+        }
+    }
+
+    private static void login(TestServer server, String login, String password) throws IOException {
+        Client client = server.connect();
+        try {
+            client.authenticate(login, password);
+        } finally {
+            client.disconnect();
+        }
+    }
+}
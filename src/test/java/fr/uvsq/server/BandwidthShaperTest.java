@@ -0,0 +1,145 @@
+package fr.uvsq.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests du partage de la capacité globale du `BandwidthShaper` entre sessions concurrentes.
+ * Les débits sont mesurés sur une courte fenêtre : les bornes tolèrent l'imprécision de l'ordonnanceur.
+ */
+class BandwidthShaperTest {
+    private static final long GLOBAL_LIMIT = 4L * 1024 * 1024;
+    private static final int BLOCK = 16 * 1024;
+    private static final long WINDOW_MILLIS = 1500;
+
+    @Test
+    void unlimitedDoesNotWait() throws InterruptedIOException {
+        BandwidthShaper shaper = new BandwidthShaper();
+        try (BandwidthShaper.Session session = shaper.register("a")) {
+            long start = System.nanoTime();
+            for (int i = 0; i < 10_000; i++) {
+                session.acquire(BLOCK);
+            }
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+        }
+    }
+
+    @Test
+    void equalWeightsShareEqually() throws InterruptedException {
+        long[] bytes = compete(1, 1);
+        double ratio = (double) bytes[0] / bytes[1];
+        assertTrue(ratio > 0.7 && ratio < 1.4, "ratio " + ratio);
+    }
+
+    @Test
+    void capacityIsSharedInProportionToWeights() throws InterruptedException {
+        long[] bytes = compete(1, 3);
+        double ratio = (double) bytes[1] / bytes[0];
+        assertTrue(ratio > 2 && ratio < 4.5, "ratio " + ratio);
+        // Ensemble, les sessions ne dépassent pas la limite globale (plus la rafale initiale).
+        double seconds = WINDOW_MILLIS / 1000.0;
+        assertTrue(bytes[0] + bytes[1] < GLOBAL_LIMIT * seconds * 1.2, "total " + (bytes[0] + bytes[1]));
+    }
+
+    @Test
+    void idleCapacityIsRedistributed() throws InterruptedException {
+        BandwidthShaper shaper = new BandwidthShaper();
+        shaper.setGlobalLimit(GLOBAL_LIMIT);
+        BandwidthShaper.Session light = shaper.register("light");
+        shaper.setWeight("light", BandwidthShaper.MAX_WEIGHT);
+        BandwidthShaper.Session heavy = shaper.register("heavy");
+        // La session de poids maximal reste inactive : l'autre obtient toute la capacité.
+        long bytes = transfer(heavy, WINDOW_MILLIS);
+        double share = bytes / (GLOBAL_LIMIT * WINDOW_MILLIS / 1000.0);
+        assertTrue(share > 0.8, "share " + share);
+        light.close();
+        heavy.close();
+    }
+
+    @Test
+    void weightsAreClampedAndForgottenWithTheSession() {
+        BandwidthShaper shaper = new BandwidthShaper();
+        BandwidthShaper.Session session = shaper.register("a");
+        assertTrue(shaper.setWeight("a", 100));
+        assertEquals(BandwidthShaper.MAX_WEIGHT, shaper.getWeight("a"));
+        assertTrue(shaper.setWeight("a", 0));
+        assertEquals(1, shaper.getWeight("a"));
+        session.close();
+        assertFalse(shaper.setWeight("a", 2));
+        assertEquals(BandwidthShaper.DEFAULT_WEIGHT, shaper.getWeight("a"));
+    }
+
+    /**
+     * Fait transférer deux sessions en même temps sous la limite globale.
+     *
+     * @return Les octets transférés par chaque session pendant la fenêtre de mesure.
+     */
+    private static long[] compete(int firstWeight, int secondWeight) throws InterruptedException {
+        BandwidthShaper shaper = new BandwidthShaper();
+        shaper.setGlobalLimit(GLOBAL_LIMIT);
+        BandwidthShaper.Session first = shaper.register("first");
+        BandwidthShaper.Session second = shaper.register("second");
+        shaper.setWeight("first", firstWeight);
+        shaper.setWeight("second", secondWeight);
+        // Vide la rafale initiale pour que la mesure ne porte que sur le débit régulé.
+        transfer(first, 100);
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong[] counters = {new AtomicLong(), new AtomicLong()};
+        BandwidthShaper.Session[] sessions = {first, second};
+        CountDownLatch ready = new CountDownLatch(2);
+        Thread[] threads = new Thread[2];
+        for (int i = 0; i < 2; i++) {
+            int index = i;
+            threads[i] = new Thread(() -> {
+                ready.countDown();
+                try {
+                    while (running.get()) {
+                        sessions[index].acquire(BLOCK);
+                        counters[index].addAndGet(BLOCK);
+                    }
+                } catch (InterruptedIOException e) {
+                    // Fin de la mesure.
+                }
+            });
+            threads[i].start();
+        }
+        ready.await();
+        // Les premiers blocs ne comptent pas : les deux sessions doivent être en attente en même temps.
+        Thread.sleep(200);
+        long[] before = {counters[0].get(), counters[1].get()};
+        Thread.sleep(WINDOW_MILLIS);
+        long[] bytes = {counters[0].get() - before[0], counters[1].get() - before[1]};
+        running.set(false);
+        for (Thread thread : threads) {
+            thread.interrupt();
+            thread.join();
+        }
+        first.close();
+        second.close();
+        return bytes;
+    }
+
+    private static long transfer(BandwidthShaper.Session session, long millis) {
+        long bytes = 0;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        try {
+            while (System.nanoTime() < deadline) {
+                session.acquire(BLOCK);
+                bytes += BLOCK;
+            }
+        } catch (InterruptedIOException e) {
+            Thread.currentThread().interrupt();
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,106 @@
+package fr.uvsq.server;
+
+import fr.uvsq.client.Client;
+import fr.uvsq.core.CommandResult;
+import fr.uvsq.server.journal.JournalRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests des requêtes BATCH : ordre des résultats, journalisation, threads partagés et sortie bornée.
+ */
+class BatchTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void parallelResultsFollowBatchOrder() throws Exception {
+        try (TestServer server = new TestServer(directory)) {
+            Client client = server.login();
+            // Les commandes se terminent dans l'ordre inverse du lot.
+            List<CommandResult> results = client.sendBatch(List.of("sleep 1; echo a", "sleep 0.5; echo b", "echo c"), 3);
+            client.disconnect();
+            assertEquals(List.of("a", "b", "c"), results.stream().map(CommandResult::getOutput).toList());
+            assertEquals(List.of(0, 0, 0), results.stream().map(CommandResult::getExitCode).toList());
+        }
+    }
+
+    @Test
+    void sequentialBatchStopsAtFirstFailure() throws Exception {
+        try (TestServer server = new TestServer(directory)) {
+            Client client = server.login();
+            List<CommandResult> results = client.sendBatch(List.of("echo a", "exit 3", "echo c"), 1);
+            assertEquals(List.of("echo a", "exit 3"), results.stream().map(CommandResult::getCommand).toList());
+            assertEquals(3, results.get(1).getExitCode());
+            // La session reste utilisable après le lot.
+            assertEquals("ok", client.sendCommand("echo ok"));
+            client.disconnect();
+        }
+    }
+
+    @Test
+    void batchCommandsAreJournaled() throws Exception {
+        try (TestServer server = new TestServer(directory)) {
+            Client client = server.login();
+            client.sendBatch(List.of("echo one", "echo two", "exit 2"), 2);
+            client.disconnect();
+            List<JournalRecord> commands = awaitCommands(server, 3);
+            assertEquals(Set.of("echo one", "echo two", "exit 2"),
+                    commands.stream().map(JournalRecord::getDetail).collect(Collectors.toSet()));
+            for (JournalRecord record : commands) {
+                assertEquals(TestServer.LOGIN, record.getUser());
+                assertEquals(record.getDetail().equals("exit 2") ? 2 : 0, record.getStatus());
+                assertTrue(record.getBytes() > 0, record.toString());
+            }
+        }
+    }
+
+    @Test
+    void batchThreadsAreSharedAndBounded() throws Exception {
+        ServerConfig config = new ServerConfig();
+        config.setBatchThreads(2);
+        try (TestServer server = new TestServer(directory, config)) {
+            Client client = server.login();
+            long start = System.nanoTime();
+            List<CommandResult> results = client.sendBatch(List.of("sleep 0.5", "sleep 0.5", "sleep 0.5", "sleep 0.5"), 4);
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+            client.disconnect();
+            assertEquals(4, results.size());
+            // Deux threads pour quatre commandes : au moins deux vagues, malgré le parallélisme demandé.
+            assertTrue(elapsedMillis >= 1000, "lot exécuté en " + elapsedMillis + " ms");
+        }
+    }
+
+    @Test
+    void bufferedOutputIsCapped() throws Exception {
+        try (TestServer server = new TestServer(directory)) {
+            Client client = server.login();
+            List<CommandResult> results = client.sendBatch(List.of("yes 0123456789 | head -n 200000", "echo small"), 2);
+            client.disconnect();
+            String output = results.get(0).getOutput();
+            assertTrue(output.length() <= 1024 * 1024 + 100, "sortie de " + output.length() + " caractères");
+            assertTrue(output.endsWith("ligne(s) omise(s)"), output.substring(output.length() - 80));
+            assertEquals("small", results.get(1).getOutput());
+        }
+    }
+
+    private static List<JournalRecord> awaitCommands(TestServer server, int count) throws InterruptedException {
+        List<JournalRecord> commands = List.of();
+        for (int i = 0; i < 50 && commands.size() < count; i++) {
+            Thread.sleep(100);
+            commands = server.server().getAuditJournal().findByUser(TestServer.LOGIN, 0, Long.MAX_VALUE, 100).stream()
+                    .filter(record -> record.getKind() == JournalRecord.Kind.COMMAND)
+                    .toList();
+        }
+        return commands;
+    }
+}
@@ -0,0 +1,81 @@
+package fr.uvsq.server;
+
+import fr.uvsq.client.Client;
+import fr.uvsq.core.CommandResult;
+import fr.uvsq.core.CommandUsage;
+import fr.uvsq.core.ResourceUsage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests des ressources consommées par les commandes : renvoyées au client avec chaque résultat,
+ * puis cumulées par motif de commande et par utilisateur (requête STATS).
+ */
+class CommandAccountingTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void usageIsReturnedWithResults() throws Exception {
+        try (TestServer server = new TestServer(directory)) {
+            Client client = server.login();
+            List<String> lines = new ArrayList<>();
+            ResourceUsage usage = client.sendCommand("sleep 0.3; echo done; exit 4", lines::add);
+            assertEquals(List.of("done"), lines);
+            assertNotNull(usage);
+            assertEquals(4, usage.getExitCode());
+            assertTrue(usage.getWallMillis() >= 300, usage.toString());
+
+            List<CommandResult> results = client.sendBatch(List.of("exit 2", "echo ok"), 2);
+            client.disconnect();
+            assertEquals(2, results.get(0).getUsage().getExitCode());
+            assertEquals(0, results.get(1).getUsage().getExitCode());
+            assertEquals("ok", results.get(1).getOutput());
+        }
+    }
+
+    @Test
+    void usageIsAggregatedPerPatternAndUser() throws Exception {
+        try (TestServer server = new TestServer(directory)) {
+            Client client = server.login();
+            client.sendCommand("sleep 0.1", line -> { });
+            client.sendCommand("sleep 0.2", line -> { });
+            client.sendBatch(List.of("sleep 0.1 && false"), 1);
+            List<CommandUsage> usages = client.commandUsage();
+            client.disconnect();
+
+            CommandUsage sleep = find(usages, CommandUsage.Scope.PATTERN, "sleep *");
+            assertEquals(2, sleep.getExecutions());
+            assertEquals(0, sleep.getFailures());
+            assertTrue(sleep.getWallMillis() >= 300, sleep.toString());
+            CommandUsage failing = find(usages, CommandUsage.Scope.PATTERN, "sleep * && false");
+            assertEquals(1, failing.getFailures());
+            CommandUsage user = find(usages, CommandUsage.Scope.USER, TestServer.LOGIN);
+            assertEquals(3, user.getExecutions());
+            assertEquals(1, user.getFailures());
+        }
+    }
+
+    @Test
+    void patternKeepsProgramsAndOptions() {
+        assertEquals("tail -n * *", CommandAccounting.pattern("tail -n 100 /var/log/syslog"));
+        assertEquals("ps -ef | grep *", CommandAccounting.pattern("ps -ef|grep 'java server'"));
+        assertEquals("cd * && ls -l", CommandAccounting.pattern("cd /tmp && ls -l"));
+    }
+
+    private static CommandUsage find(List<CommandUsage> usages, CommandUsage.Scope scope, String name) {
+        return usages.stream()
+                .filter(usage -> usage.getScope() == scope && usage.getName().equals(name))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError(scope + " " + name + " absent de " + usages));
+    }
+}
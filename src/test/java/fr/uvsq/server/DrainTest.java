@@ -0,0 +1,85 @@
+package fr.uvsq.server;
+
+import fr.uvsq.client.Client;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests de l'arrêt du serveur : les sessions sont prévenues, les requêtes en cours se terminent dans le délai
+ * accordé, et un nouveau serveur peut aussitôt écouter sur le même port.
+ */
+class DrainTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void inFlightCommandCompletesThenServerRebinds() throws Exception {
+        TestServer server = new TestServer(directory);
+        Client client = server.login();
+        CompletableFuture<String> command = send(client, "sleep 1; echo done");
+        // Laisse la commande démarrer avant l'arrêt.
+        Thread.sleep(300);
+        TestServer restarted = server.restart();
+        try (restarted) {
+            assertEquals("done", command.get(10, TimeUnit.SECONDS));
+            // Le client a été prévenu de l'arrêt : sa requête suivante échoue.
+            IOException e = assertThrows(IOException.class, () -> client.sendCommand("echo again"));
+            assertTrue(e.getMessage().contains("Connexion fermée par le serveur"), e.getMessage());
+
+            Client next = restarted.login();
+            assertEquals("ok", next.sendCommand("echo ok"));
+            next.disconnect();
+        }
+    }
+
+    @Test
+    void idleSessionIsToldAndClosed() throws Exception {
+        TestServer server = new TestServer(directory);
+        Client client = server.login();
+        long start = System.nanoTime();
+        server.close();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        // Une session inactive n'attend pas le délai d'arrêt.
+        assertTrue(elapsedMillis < ServerConfig.DEFAULT_DRAIN_TIMEOUT_MILLIS, "arrêt en " + elapsedMillis + " ms");
+        IOException e = assertThrows(IOException.class, () -> client.sendCommand("echo ok"));
+        assertTrue(e.getMessage().contains("Le serveur s'arrête"), e.getMessage());
+    }
+
+    @Test
+    void drainTimeoutCutsLongRequests() throws Exception {
+        ServerConfig config = new ServerConfig();
+        config.setDrainTimeoutMillis(300);
+        TestServer server = new TestServer(directory, config);
+        Client client = server.login();
+        CompletableFuture<String> command = send(client, "sleep 4; echo late");
+        Thread.sleep(300);
+        long start = System.nanoTime();
+        server.close();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsedMillis < 3_000, "arrêt en " + elapsedMillis + " ms");
+        CompletionException e = assertThrows(CompletionException.class, command::join);
+        assertTrue(e.getCause() instanceof UncheckedIOException, e.toString());
+    }
+
+    private static CompletableFuture<String> send(Client client, String command) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return client.sendCommand(command);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+}
@@ -0,0 +1,121 @@
+package fr.uvsq.server;
+
+import fr.uvsq.core.FileListing;
+import fr.uvsq.core.RemoteFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests de `FileIndex` : index initial, mise à jour sur les notifications du `WatchService`,
+ * filtres et résolution des noms envoyés par les clients.
+ */
+class FileIndexTest {
+    private static final long WATCH_TIMEOUT_MILLIS = 10_000;
+
+    @TempDir
+    Path root;
+
+    private FileIndex index;
+
+    @BeforeEach
+    void startIndex() throws IOException {
+        Files.writeString(root.resolve("a.log"), "a");
+        Files.createDirectories(root.resolve("logs"));
+        Files.writeString(root.resolve("logs/b.log"), "bb");
+        Files.writeString(root.resolve("notes.txt"), "n");
+        index = new FileIndex(root);
+        index.start();
+    }
+
+    @AfterEach
+    void closeIndex() throws IOException {
+        index.close();
+    }
+
+    @Test
+    void initialScanIndexesTree() {
+        assertEquals(List.of("a.log", "logs", "logs/b.log", "notes.txt"), names(index.list("", 0, 100)));
+        assertEquals(2, index.stat("logs/b.log").getSize());
+        assertTrue(index.stat("logs").isDirectory());
+    }
+
+    @Test
+    void filtersByGlobOrPrefix() {
+        assertEquals(List.of("a.log"), names(index.list("*.log", 0, 100)));
+        assertEquals(List.of("logs/b.log"), names(index.list("**/*.log", 0, 100)));
+        assertEquals(List.of("logs", "logs/b.log"), names(index.list("logs", 0, 100)));
+        FileListing page = index.list("", 1, 2);
+        assertEquals(4, page.getTotal());
+        assertEquals(List.of("logs", "logs/b.log"), names(page));
+    }
+
+    @Test
+    void invalidGlobIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> index.list("[abc", 0, 100));
+        assertThrows(IllegalArgumentException.class, () -> index.list("{a,b", 0, 100));
+    }
+
+    @Test
+    void createdFilesAreIndexed() throws Exception {
+        // Attend l'index initial : les modifications suivantes ne sont vues que par la surveillance.
+        index.list("", 0, 1);
+        Files.writeString(root.resolve("new.txt"), "new");
+        awaitTrue(() -> index.stat("new.txt") != null);
+        // Un répertoire créé après le démarrage est lui-même surveillé.
+        Files.createDirectories(root.resolve("later/deep"));
+        Files.writeString(root.resolve("later/deep/c.log"), "ccc");
+        awaitTrue(() -> index.stat("later/deep/c.log") != null);
+        Files.writeString(root.resolve("later/deep/d.log"), "d");
+        awaitTrue(() -> index.stat("later/deep/d.log") != null);
+        assertEquals(List.of("later/deep/c.log", "later/deep/d.log", "logs/b.log"), names(index.list("**/*.log", 0, 100)));
+    }
+
+    @Test
+    void modifiedAndDeletedFilesAreUpdated() throws Exception {
+        // Attend l'index initial : les modifications suivantes ne sont vues que par la surveillance.
+        index.list("", 0, 1);
+        Files.writeString(root.resolve("a.log"), "longer content");
+        awaitTrue(() -> index.stat("a.log").getSize() == "longer content".length());
+        Files.delete(root.resolve("notes.txt"));
+        awaitTrue(() -> index.stat("notes.txt") == null);
+        assertEquals(List.of("a.log", "logs", "logs/b.log"), names(index.list("", 0, 100)));
+    }
+
+    @Test
+    void resolveRejectsNamesOutsideRoot() {
+        assertEquals(root.toAbsolutePath().normalize().resolve("logs/b.log"), index.resolve("logs/b.log"));
+        assertNull(index.resolve("../outside"));
+        assertNull(index.resolve("logs/../../outside"));
+        assertNull(index.resolve("/etc/passwd"));
+        assertNull(index.resolve("bad\0name"));
+        assertNull(index.resolve(""));
+        assertNull(index.resolve("."));
+    }
+
+    private static List<String> names(FileListing listing) {
+        return listing.getFiles().stream().map(RemoteFile::getName).toList();
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WATCH_TIMEOUT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Index non mis à jour après " + WATCH_TIMEOUT_MILLIS + " ms");
+            }
+            Thread.sleep(20);
+        }
+    }
+}
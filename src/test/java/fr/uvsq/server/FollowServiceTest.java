@@ -0,0 +1,175 @@
+package fr.uvsq.server;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests de `FollowService` : envoi des dernières lignes puis des lignes ajoutées, et bornes de l'envoi
+ * à un client qui ne lit plus (lignes en attente, fermeture de l'abonnement).
+ */
+class FollowServiceTest {
+    private static final Pattern DROPPED = Pattern.compile("### (\\d+) lignes ignorées \\(client trop lent\\)");
+
+    @TempDir
+    Path directory;
+
+    private final FollowService service = new FollowService();
+    private Path file;
+
+    @BeforeEach
+    void start() throws IOException {
+        service.start();
+        file = directory.resolve("app.log");
+        Files.writeString(file, "one\ntwo\nthree\n");
+    }
+
+    @AfterEach
+    void close() throws IOException {
+        service.close();
+    }
+
+    @Test
+    void sendsLastLinesThenAppendedLines() throws Exception {
+        GatedOutput client = new GatedOutput(true);
+        try (FollowService.Subscription subscription = service.subscribe(file, 2, new SessionOutput(client))) {
+            awaitTrue(() -> client.lines().equals(List.of("two", "three")));
+            append(List.of("four", "five"));
+            awaitTrue(() -> client.lines().equals(List.of("two", "three", "four", "five")));
+            assertEquals(1, service.getFollowedFileCount());
+        }
+        assertEquals(0, service.getFollowedFileCount());
+    }
+
+    @Test
+    void pendingLinesAreBoundedForSlowClient() throws Exception {
+        GatedOutput client = new GatedOutput(false);
+        int appended = 40_000;
+        try (FollowService.Subscription subscription = service.subscribe(file, 0, new SessionOutput(client, 1024))) {
+            StringBuilder lines = new StringBuilder();
+            for (int i = 0; i < appended; i++) {
+                lines.append("line ").append(i).append('\n');
+            }
+            Files.writeString(file, lines, StandardOpenOption.APPEND);
+            // Le client ne lit pas : au-delà des lignes en attente, les suivantes sont ignorées.
+            Thread.sleep(3_000);
+            client.open();
+            // Une dernière ligne fait signaler les lignes ignorées juste avant elle.
+            append(List.of("last"));
+            awaitTrue(() -> client.lines().contains("last"));
+        }
+        List<String> received = client.lines();
+        long dropped = 0;
+        long delivered = 0;
+        for (String line : received) {
+            Matcher matcher = DROPPED.matcher(line);
+            if (matcher.matches()) {
+                dropped += Long.parseLong(matcher.group(1));
+            } else if (line.startsWith("line ")) {
+                delivered++;
+            }
+        }
+        assertTrue(dropped > 0, "aucune ligne ignorée");
+        assertEquals(appended, delivered + dropped);
+    }
+
+    @Test
+    void closeIsBoundedWhenClientStopsReading() throws Exception {
+        GatedOutput client = new GatedOutput(false);
+        FollowService.Subscription subscription = service.subscribe(file, 3, new SessionOutput(client, 16));
+        awaitTrue(client::isBlocked);
+        long start = System.nanoTime();
+        subscription.close();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsedMillis < 5_000, "fermeture en " + elapsedMillis + " ms");
+        assertEquals(0, service.getFollowedFileCount());
+        client.open();
+    }
+
+    private void append(List<String> lines) throws IOException {
+        Files.write(file, lines, StandardOpenOption.APPEND);
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Condition non atteinte après 10 s");
+            }
+            Thread.sleep(20);
+        }
+    }
+
+    /**
+     * Flux d'un client qui ne lit pas tant qu'il n'est pas ouvert : les écritures y restent bloquées.
+     */
+    private static final class GatedOutput extends OutputStream {
+        private final CountDownLatch gate = new CountDownLatch(1);
+        private final ByteArrayOutputStream received = new ByteArrayOutputStream();
+        private volatile boolean blocked = false;
+
+        GatedOutput(boolean open) {
+            if (open) {
+                open();
+            }
+        }
+
+        void open() {
+            gate.countDown();
+        }
+
+        boolean isBlocked() {
+            return blocked;
+        }
+
+        List<String> lines() {
+            synchronized (received) {
+                return received.toString(StandardCharsets.UTF_8).lines().toList();
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) throws IOException {
+            blocked = gate.getCount() > 0;
+            // Comme une écriture sur un socket, l'attente ignore l'interruption.
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    gate.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (received) {
+                received.write(data, offset, length);
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package fr.uvsq.server;
+
+import fr.uvsq.client.Client;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serveur de test : démarré sur un port libre, avec le compte de démonstration, ses fichiers partagés et son
+ * journal dans un répertoire temporaire.
+ */
+final class TestServer implements AutoCloseable {
+    static final String LOGIN = "admin";
+    static final String PASSWORD = "password123";
+
+    private final Server server;
+    private final ServerConfig config;
+
+    TestServer(Path directory) throws Exception {
+        this(directory, new ServerConfig());
+    }
+
+    TestServer(Path directory, ServerConfig config) throws Exception {
+        this(prepare(directory, config));
+    }
+
+    private TestServer(ServerConfig config) throws Exception {
+        this.config = config;
+        this.server = new Server(config);
+        CountDownLatch listening = new CountDownLatch(1);
+        server.setLogCallback(message -> {
+            if (message.startsWith("✅")) {
+                listening.countDown();
+            }
+        });
+        server.setClientCallback(client -> { });
+        server.setDisconnectCallback(client -> { });
+        Thread thread = new Thread(server::start, "test-server");
+        thread.setDaemon(true);
+        thread.start();
+        if (!listening.await(10, TimeUnit.SECONDS)) {
+            throw new IOException("Le serveur de test n'a pas démarré");
+        }
+    }
+
+    private static ServerConfig prepare(Path directory, ServerConfig config) throws IOException {
+        config.setPort(freePort());
+        config.setCredentialsFile(directory.resolve("credentials.properties"));
+        config.setSharedDirectory(directory.resolve("files"));
+        config.setJournalDirectory(directory.resolve("journal"));
+        return config;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    Server server() {
+        return server;
+    }
+
+    ServerConfig config() {
+        return config;
+    }
+
+    int port() {
+        return config.getPort();
+    }
+
+    /**
+     * @return Un client connecté, pas encore authentifié.
+     */
+    Client connect() throws IOException {
+        return new Client("127.0.0.1", port());
+    }
+
+    /**
+     * @return Un client connecté et authentifié avec le compte de démonstration.
+     */
+    Client login() throws IOException {
+        Client client = connect();
+        if (!client.authenticate(LOGIN, PASSWORD)) {
+            throw new IOException("Authentification refusée");
+        }
+        return client;
+    }
+
+    /**
+     * Arrête ce serveur puis en démarre un nouveau sur le même port et avec la même configuration.
+     *
+     * @return Le nouveau serveur.
+     */
+    TestServer restart() throws Exception {
+        close();
+        return new TestServer(config);
+    }
+
+    @Override
+    public void close() {
+        server.stop();
+    }
+}
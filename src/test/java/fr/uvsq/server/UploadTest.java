@@ -0,0 +1,117 @@
+package fr.uvsq.server;
+
+import fr.uvsq.core.AtomicFileWriter;
+import fr.uvsq.core.StreamDigest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests des requêtes UPLOAD : un fichier dont l'empreinte ne correspond pas n'est jamais installé,
+ * ne laisse aucun fichier temporaire, et la session reste utilisable.
+ */
+class UploadTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void digestMismatchLeavesNoFile() throws Exception {
+        try (TestServer server = new TestServer(directory); Session session = new Session(server)) {
+            byte[] data = "corrupted in transit\n".getBytes(StandardCharsets.UTF_8);
+            session.upload("bad.txt", data, "00000000");
+            assertEquals("ERROR", session.readLine());
+            assertTrue(session.readLine().contains("invalide"));
+            Path files = server.config().getSharedDirectory();
+            assertFalse(Files.exists(files.resolve("bad.txt")));
+            assertEquals(List.of(), temporaryFiles(files));
+
+            // Les octets refusés ont été consommés : la requête suivante est lue normalement.
+            session.upload("good.txt", data, digest(data));
+            assertEquals("OK " + digest(data), session.readLine());
+            assertEquals("corrupted in transit\n", Files.readString(files.resolve("good.txt")));
+        }
+    }
+
+    @Test
+    void digestMismatchKeepsExistingFile() throws Exception {
+        try (TestServer server = new TestServer(directory); Session session = new Session(server)) {
+            Path files = server.config().getSharedDirectory();
+            Files.createDirectories(files);
+            Files.writeString(files.resolve("kept.txt"), "original");
+            session.upload("kept.txt", "replacement".getBytes(StandardCharsets.UTF_8), "00000000");
+            assertEquals("ERROR", session.readLine());
+            session.readLine();
+            assertEquals("original", Files.readString(files.resolve("kept.txt")));
+            assertEquals(List.of(), temporaryFiles(files));
+        }
+    }
+
+    private static String digest(byte[] data) {
+        StreamDigest digest = StreamDigest.create(StreamDigest.CRC32C_ALGORITHM);
+        digest.update(data, 0, data.length);
+        return digest.toHex();
+    }
+
+    private static List<Path> temporaryFiles(Path root) throws IOException {
+        try (Stream<Path> files = Files.walk(root)) {
+            return files.filter(file -> AtomicFileWriter.isTemporary(file.getFileName().toString())).toList();
+        }
+    }
+
+    /**
+     * Session authentifiée écrivant directement les requêtes, afin d'envoyer une empreinte erronée.
+     */
+    private static final class Session implements AutoCloseable {
+        private final SSLSocket socket;
+        private final OutputStream out;
+        private final BufferedReader in;
+
+        Session(TestServer server) throws Exception {
+            System.setProperty("javax.net.ssl.trustStore", "server_keystore.jks");
+            System.setProperty("javax.net.ssl.trustStorePassword", "password");
+            socket = (SSLSocket) SSLContext.getDefault().getSocketFactory().createSocket("127.0.0.1", server.port());
+            out = socket.getOutputStream();
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            write("AUTH\n" + TestServer.LOGIN + "\n" + TestServer.PASSWORD + "\n");
+            if (!"OK".equals(readLine())) {
+                throw new IOException("Authentification refusée");
+            }
+        }
+
+        void upload(String name, byte[] data, String digest) throws IOException {
+            write("UPLOAD\n" + name + "\n" + data.length + "\n" + StreamDigest.CRC32C_ALGORITHM + "\n");
+            out.write(data);
+            write(digest + "\n");
+        }
+
+        String readLine() throws IOException {
+            return in.readLine();
+        }
+
+        private void write(String text) throws IOException {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package fr.uvsq.server.journal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static fr.uvsq.server.journal.JournalSegmentTest.assertSameRecord;
+import static fr.uvsq.server.journal.JournalSegmentTest.record;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests de `AuditJournal` : recherches par les index de session et d'utilisateur, sur plusieurs segments,
+ * et reconstruction des index à la réouverture.
+ */
+class AuditJournalTest {
+    private static final long BASE = 1_700_000_000_000L;
+    private static final int SEGMENT_RECORDS = 16;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void indexesFindRecordsAcrossSegments() throws IOException, InterruptedException {
+        AuditJournal journal = open();
+        try {
+            for (int i = 0; i < 50; i++) {
+                journal.record(record(i));
+            }
+            awaitRecords(journal, 50);
+            assertLookups(journal);
+        } finally {
+            journal.close();
+        }
+        assertEquals(4, segmentFiles().size());
+    }
+
+    @Test
+    void reopenedJournalRebuildsIndexesAndContinuesOrdinals() throws IOException, InterruptedException {
+        AuditJournal journal = open();
+        for (int i = 0; i < 50; i++) {
+            journal.record(record(i));
+        }
+        journal.close();
+
+        AuditJournal reopened = open();
+        try {
+            assertEquals(50, reopened.getRecordCount());
+            assertLookups(reopened);
+            // Le dernier segment, partiellement rempli, est complété avant d'en créer un nouveau.
+            for (int i = 50; i < 60; i++) {
+                reopened.record(record(i));
+            }
+            awaitRecords(reopened, 60);
+            assertEquals(30, reopened.findByUser("user0", 0, Long.MAX_VALUE, 100).size());
+            assertSameRecord(record(59), reopened.findBetween(BASE + 59, BASE + 60, 10).get(0));
+        } finally {
+            reopened.close();
+        }
+        assertEquals(4, segmentFiles().size());
+    }
+
+    @Test
+    void truncatedLastSegmentIsFollowedByNewSegment() throws IOException, InterruptedException {
+        AuditJournal journal = open();
+        for (int i = 0; i < 20; i++) {
+            journal.record(record(i));
+        }
+        journal.close();
+        // Arrêt brutal pendant l'extension du dernier segment : il ne contient que 3 entrées complètes.
+        Path last = segmentFiles().get(1);
+        try (FileChannel channel = FileChannel.open(last, StandardOpenOption.WRITE)) {
+            channel.truncate(3L * JournalRecord.SIZE + 1);
+        }
+
+        AuditJournal reopened = open();
+        try {
+            assertEquals(19, reopened.getRecordCount());
+            reopened.record(record(19));
+            awaitRecords(reopened, 20);
+            assertSameRecord(record(19), reopened.findBySession(record(19).getSession(), BASE + 19, BASE + 20, 10).get(0));
+        } finally {
+            reopened.close();
+        }
+        List<Path> files = segmentFiles();
+        assertEquals(3, files.size());
+        assertTrue(files.get(2).getFileName().toString().contains("00000000000000000019"));
+    }
+
+    @Test
+    void missingSegmentLeavesGapInOrdinals() throws IOException {
+        AuditJournal journal = open();
+        for (int i = 0; i < 50; i++) {
+            journal.record(record(i));
+        }
+        journal.close();
+        // Le deuxième segment (entrées 16 à 31) est supprimé : ses ordinaux ne désignent plus rien.
+        Files.delete(segmentFiles().get(1));
+
+        AuditJournal reopened = open();
+        try {
+            List<JournalRecord> byUser = reopened.findByUser("user0", 0, Long.MAX_VALUE, 100);
+            assertEquals(17, byUser.size());
+            assertSameRecord(record(14), byUser.get(7));
+            assertSameRecord(record(32), byUser.get(8));
+            assertEquals(34, reopened.findBetween(0, Long.MAX_VALUE, 100).size());
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    void closeReleasesSegments() throws IOException, InterruptedException {
+        AuditJournal journal = open();
+        for (int i = 0; i < 20; i++) {
+            journal.record(record(i));
+        }
+        awaitRecords(journal, 20);
+        journal.close();
+        assertTrue(journal.findByUser("user0", 0, Long.MAX_VALUE, 100).isEmpty());
+        assertTrue(journal.findBetween(0, Long.MAX_VALUE, 100).isEmpty());
+        // Les fichiers ne sont plus projetés : ils peuvent être déplacés (rotation, archivage).
+        for (Path file : segmentFiles()) {
+            Files.move(file, file.resolveSibling(file.getFileName() + ".old"));
+        }
+        assertTrue(segmentFiles().isEmpty());
+    }
+
+    private AuditJournal open() throws IOException {
+        AuditJournal journal = new AuditJournal(directory, SEGMENT_RECORDS);
+        journal.start();
+        return journal;
+    }
+
+    /**
+     * Vérifie les recherches sur les entrées 0 à 49 écrites par les tests.
+     */
+    private static void assertLookups(AuditJournal journal) {
+        List<JournalRecord> byUser = journal.findByUser("user1", 0, Long.MAX_VALUE, 100);
+        assertEquals(25, byUser.size());
+        for (int i = 0; i < byUser.size(); i++) {
+            assertSameRecord(record(2 * i + 1), byUser.get(i));
+        }
+        // L'intervalle de dates et la limite s'appliquent aux entrées de l'index.
+        List<JournalRecord> bySession = journal.findBySession("/127.0.0.1:40002", BASE + 10, BASE + 40, 5);
+        assertEquals(List.of("echo 11", "echo 14", "echo 17", "echo 20", "echo 23"),
+                bySession.stream().map(JournalRecord::getDetail).collect(Collectors.toList()));
+        assertTrue(journal.findByUser("inconnu", 0, Long.MAX_VALUE, 100).isEmpty());
+        List<JournalRecord> between = journal.findBetween(BASE + 14, BASE + 18, 100);
+        assertEquals(4, between.size());
+        assertSameRecord(record(14), between.get(0));
+        assertSameRecord(record(17), between.get(3));
+    }
+
+    /**
+     * Attend que le thread d'écriture ait écrit les entrées consignées.
+     */
+    private static void awaitRecords(AuditJournal journal, long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (journal.getRecordCount() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, journal.getRecordCount());
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(JournalSegment::isSegment).sorted().collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package fr.uvsq.server.journal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests de `JournalSegment` : réouverture d'un segment partiellement écrit et index temporel par blocs.
+ */
+class JournalSegmentTest {
+    private static final long BASE = 1_700_000_000_000L;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void reopenedSegmentCountsRecordsUpToFirstFreeSlot() throws IOException {
+        JournalSegment segment = JournalSegment.create(directory, 100, 8);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(segment.append(record(i)));
+        }
+        segment.force();
+        // Entrée interrompue par un arrêt brutal : tout est écrit sauf la date, écrite en dernier.
+        ByteBuffer partial = ByteBuffer.allocate(JournalRecord.SIZE);
+        record(3).writeTo(partial, 0);
+        partial.putLong(0, 0);
+        try (FileChannel channel = FileChannel.open(segment.getFile(), StandardOpenOption.WRITE)) {
+            channel.write(partial, 3L * JournalRecord.SIZE);
+        }
+
+        JournalSegment reopened = JournalSegment.open(segment.getFile());
+        assertEquals(100, reopened.getFirstOrdinal());
+        assertEquals(3, reopened.getCount());
+        for (int i = 0; i < 3; i++) {
+            assertSameRecord(record(i), reopened.read(i));
+        }
+        // L'emplacement de l'entrée interrompue est réutilisé.
+        assertTrue(reopened.append(record(7)));
+        assertSameRecord(record(7), reopened.read(3));
+        assertFalse(reopened.isFull());
+    }
+
+    @Test
+    void truncatedFileKeepsCompleteRecords() throws IOException {
+        JournalSegment segment = JournalSegment.create(directory, 0, 8);
+        for (int i = 0; i < 4; i++) {
+            segment.append(record(i));
+        }
+        segment.force();
+        try (FileChannel channel = FileChannel.open(segment.getFile(), StandardOpenOption.WRITE)) {
+            channel.truncate(3L * JournalRecord.SIZE + JournalRecord.SIZE / 2);
+        }
+
+        JournalSegment reopened = JournalSegment.open(segment.getFile());
+        assertEquals(3, reopened.getCount());
+        assertTrue(reopened.isFull());
+        assertFalse(reopened.append(record(3)));
+    }
+
+    @Test
+    void scanSkipsBlocksOutsideInterval() throws IOException {
+        JournalSegment segment = JournalSegment.create(directory, 0, 512);
+        // Dates croissantes, sauf une entrée plus ancienne au milieu du quatrième bloc.
+        for (int i = 0; i < 300; i++) {
+            segment.append(record(i == 220 ? -50 : i));
+        }
+        assertEquals(List.of(10, 11, 12), positions(segment, BASE + 10, BASE + 13));
+        assertEquals(List.of(220), positions(segment, BASE - 50, BASE - 49));
+        assertEquals(List.of(299), positions(segment, BASE + 299, Long.MAX_VALUE));
+        assertTrue(positions(segment, BASE + 300, Long.MAX_VALUE).isEmpty());
+        assertEquals(300, positions(segment, 0, Long.MAX_VALUE).size());
+
+        // L'index reconstruit à la réouverture donne les mêmes résultats.
+        segment.force();
+        JournalSegment reopened = JournalSegment.open(segment.getFile());
+        assertEquals(List.of(10, 11, 12), positions(reopened, BASE + 10, BASE + 13));
+        assertEquals(List.of(220), positions(reopened, BASE - 50, BASE - 49));
+    }
+
+    @Test
+    void segmentNamesAreRecognized() throws IOException {
+        JournalSegment segment = JournalSegment.create(directory, 42, 1);
+        assertTrue(JournalSegment.isSegment(segment.getFile()));
+        assertFalse(JournalSegment.isSegment(directory.resolve("journal-42.seg")));
+        assertFalse(JournalSegment.isSegment(directory.resolve("notes.txt")));
+    }
+
+    static JournalRecord record(int i) {
+        return new JournalRecord(BASE + i, "/127.0.0.1:" + (40000 + i % 3), "user" + i % 2,
+                JournalRecord.Kind.COMMAND, "echo " + i, i % 2, i, 10L * i);
+    }
+
+    static void assertSameRecord(JournalRecord expected, JournalRecord actual) {
+        assertEquals(expected.toString(), actual.toString());
+    }
+
+    private static List<Integer> positions(JournalSegment segment, long from, long to) {
+        List<Integer> positions = new ArrayList<>();
+        segment.scan(from, to, positions::add);
+        return positions;
+    }
+}